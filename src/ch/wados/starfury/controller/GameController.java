@@ -9,18 +9,23 @@ import org.lwjgl.opengl.GL11;
 import ch.wados.starfury.model.Timer;
 import ch.wados.starfury.opengl.Factory;
 import ch.wados.starfury.opengl.Program;
+import ch.wados.starfury.physics.api.FixedStepDriver;
 import ch.wados.starfury.physics.simple.SimplePhysicsManager;
 
 public class GameController implements Scene {
 
 	private static final int TARGET_FPS_UPS = 60;
+	private static final int MAX_CATCH_UP_STEPS = 5;
 
 	private SimplePhysicsManager physicsManager;
+	private FixedStepDriver driver;
 	private SceneManager manager;
 	private Timer timer;
 
 	public GameController() {
 		this.physicsManager = new SimplePhysicsManager();
+		this.driver = new FixedStepDriver(this.physicsManager,
+				1.0 / TARGET_FPS_UPS, MAX_CATCH_UP_STEPS);
 		this.timer = new Timer();
 	}
 
@@ -60,8 +65,9 @@ public class GameController implements Scene {
 			// input();
 
 			/* Update game and timer UPS if enough time has passed */
-			update(delta);
-			timer.updateUPS();
+			int steps = update(delta);
+			for (int i = 0; i < steps; i++)
+				timer.updateUPS();
 
 			/* Render game and update timer FPS */
 			render();
@@ -97,8 +103,8 @@ public class GameController implements Scene {
 
 	}
 
-	private void update(float delta) {
-		this.physicsManager.stepWorld(delta);
+	private int update(float delta) {
+		return this.driver.advance(delta);
 	}
 
 	/**
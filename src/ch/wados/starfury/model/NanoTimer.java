@@ -0,0 +1,22 @@
+package ch.wados.starfury.model;
+
+/**
+ * {@link Timer} backed by {@link System#nanoTime()} instead of GLFW. It does
+ * not require a window or an initialised GLFW context and can therefore be
+ * used on headless servers.
+ */
+public class NanoTimer extends Timer {
+
+	private final long origin = System.nanoTime();
+
+	/**
+	 * Returns the time elapsed since the creation of this timer in seconds.
+	 *
+	 * @return time in seconds
+	 */
+	@Override
+	public double getTime() {
+		return (System.nanoTime() - this.origin) / 1e9;
+	}
+
+}
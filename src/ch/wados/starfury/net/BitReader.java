@@ -0,0 +1,75 @@
+package ch.wados.starfury.net;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * Reads values written by a {@link BitWriter} from a {@link ByteBuffer}. The
+ * reader is reusable and attached to a buffer by {@link #reset(ByteBuffer)}.
+ *
+ * @see BitWriter
+ */
+public final class BitReader {
+
+	private ByteBuffer buffer;
+	private long scratch;
+	private int count;
+
+	/**
+	 * Attaches the reader to a buffer. Reading starts at the current position
+	 * of the buffer.
+	 *
+	 * @param buffer
+	 *            the buffer to read from.
+	 * @return the reader itself
+	 */
+	public BitReader reset(ByteBuffer buffer) {
+		this.buffer = buffer;
+		this.scratch = 0;
+		this.count = 0;
+		return this;
+	}
+
+	/**
+	 * Reads a value.
+	 *
+	 * @param bits
+	 *            the number of bits to read. Must be in the range
+	 *            {@code [0, 32]}.
+	 * @return the value. The bits above the read bits are zero.
+	 * @throws BufferUnderflowException
+	 *             if the buffer holds not enough bits.
+	 */
+	public int read(int bits) {
+		while (this.count < bits) {
+			this.scratch |= (this.buffer.get() & 0xFFL) << this.count;
+			this.count += 8;
+		}
+		int value = (int) (this.scratch & ((1L << bits) - 1));
+		this.scratch >>>= bits;
+		this.count -= bits;
+		return value;
+	}
+
+	/**
+	 * @return the number of bits left to read.
+	 */
+	public long remaining() {
+		return this.buffer.remaining() * 8L + this.count;
+	}
+
+	/**
+	 * Reads a single bit.
+	 */
+	public boolean readBoolean() {
+		return this.read(1) != 0;
+	}
+
+	/**
+	 * Reads a value written by {@link BitWriter#writeVarInt(int)}.
+	 */
+	public int readVarInt() {
+		return this.read(this.read(5));
+	}
+
+}
@@ -0,0 +1,87 @@
+package ch.wados.starfury.net;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * Writes values of arbitrary bit widths into a {@link ByteBuffer}. Bits are
+ * packed least significant first. The writer is reusable: it is attached to a
+ * buffer by {@link #reset(ByteBuffer)} and the last partial byte is written
+ * by {@link #flush()}.
+ *
+ * @see BitReader
+ */
+public final class BitWriter {
+
+	private ByteBuffer buffer;
+	private long scratch;
+	private int count;
+
+	/**
+	 * Attaches the writer to a buffer. Writing starts at the current position
+	 * of the buffer.
+	 *
+	 * @param buffer
+	 *            the buffer to write to.
+	 * @return the writer itself
+	 */
+	public BitWriter reset(ByteBuffer buffer) {
+		this.buffer = buffer;
+		this.scratch = 0;
+		this.count = 0;
+		return this;
+	}
+
+	/**
+	 * Writes the lowest bits of a value.
+	 *
+	 * @param value
+	 *            the value.
+	 * @param bits
+	 *            the number of bits to write. Must be in the range
+	 *            {@code [0, 32]}.
+	 * @throws BufferOverflowException
+	 *             if the buffer is full.
+	 */
+	public void write(int value, int bits) {
+		this.scratch |= (value & ((1L << bits) - 1)) << this.count;
+		this.count += bits;
+		while (this.count >= 8) {
+			this.buffer.put((byte) this.scratch);
+			this.scratch >>>= 8;
+			this.count -= 8;
+		}
+	}
+
+	/**
+	 * Writes a single bit.
+	 */
+	public void writeBoolean(boolean value) {
+		this.write(value ? 1 : 0, 1);
+	}
+
+	/**
+	 * Writes a non-negative value with a 5 bit length prefix. Small values
+	 * take only a few bits.
+	 *
+	 * @param value
+	 *            the value. Must be positive or zero.
+	 */
+	public void writeVarInt(int value) {
+		int length = 32 - Integer.numberOfLeadingZeros(value);
+		this.write(length, 5);
+		this.write(value, length);
+	}
+
+	/**
+	 * Writes the last partial byte, padded with zero bits.
+	 *
+	 * @throws BufferOverflowException
+	 *             if the buffer is full.
+	 */
+	public void flush() {
+		if (this.count > 0)
+			this.write(0, 8 - this.count);
+	}
+
+}
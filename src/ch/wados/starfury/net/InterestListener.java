@@ -0,0 +1,30 @@
+package ch.wados.starfury.net;
+
+import ch.wados.starfury.physics.api.PhysicsEntity;
+
+/**
+ * Listener notified when entities become relevant to an
+ * {@link InterestManager.Observer observer} or stop being relevant.
+ *
+ * @see InterestManager.Observer#addInterestListener(InterestListener)
+ */
+public interface InterestListener {
+
+	/**
+	 * Called when an entity has entered the area of interest.
+	 *
+	 * @param entity
+	 *            the entity.
+	 */
+	void entered(PhysicsEntity entity);
+
+	/**
+	 * Called when an entity has left the area of interest or has been
+	 * despawned.
+	 *
+	 * @param entity
+	 *            the entity.
+	 */
+	void left(PhysicsEntity entity);
+
+}
@@ -0,0 +1,362 @@
+package ch.wados.starfury.net;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import org.dyn4j.geometry.Vector2;
+
+import ch.wados.starfury.physics.api.CollisionBatch;
+import ch.wados.starfury.physics.api.CollisionBatchListener;
+import ch.wados.starfury.physics.api.PhysicsEntity;
+import ch.wados.starfury.physics.api.PhysicsManager;
+
+/**
+ * Area of interest management on top of a {@link PhysicsManager}.
+ * <p>
+ * Every {@link Observer} has a circular area of interest, either at a fixed
+ * point or following an anchor entity. {@link #update()} refreshes the set of
+ * entities relevant to each observer with radius queries against the
+ * broad-phase bounds and notifies the {@link InterestListener listeners} of
+ * all entities that entered or left the set. An entity enters when its bounds
+ * come within the radius and leaves when they are farther away than the
+ * radius plus a margin, so entities at the border do not flicker in and out.
+ * The cost of an update depends on the number of entities around the
+ * observers, not on the size of the world.
+ * </p>
+ * <p>
+ * Registered as a {@link CollisionBatchListener} with the manager, the
+ * interest manager also fans the collision events out: every observer
+ * receives a batch holding only the contact points involving entities
+ * relevant to it. Observers without such contact points are not notified.
+ * </p>
+ * <p>
+ * Notifications are delivered in a deterministic order. The interest manager
+ * is not thread-safe and must not be updated concurrently with a step of the
+ * manager.
+ * </p>
+ *
+ * @see ReplicationServer#addClient(Observer)
+ */
+public final class InterestManager implements CollisionBatchListener {
+
+	/**
+	 * The default margin of the areas of interest.
+	 */
+	public static final double DEFAULT_MARGIN = 10;
+
+	private final PhysicsManager manager;
+	private final List<Observer> observers = new ArrayList<>();
+	// observers interested in each entity, for the event fan-out
+	private final Map<PhysicsEntity, List<Observer>> interested = new IdentityHashMap<>();
+	private final List<Observer> touched = new ArrayList<>();
+	private final List<PhysicsEntity> query = new ArrayList<>();
+	private final Set<PhysicsEntity> retained = Collections.newSetFromMap(new IdentityHashMap<>());
+	private final Vector2 center = new Vector2();
+	private int row = 0;
+
+	/**
+	 * Creates a new interest manager. To fan out collision events it must be
+	 * registered with
+	 * {@link PhysicsManager#addCollisionBatchListener(CollisionBatchListener)}.
+	 *
+	 * @param manager
+	 *            the manager holding the entities. May not be {@code null}.
+	 * @throws NullPointerException
+	 *             if the {@code manager} is {@code null}.
+	 */
+	public InterestManager(PhysicsManager manager) {
+		this.manager = Objects.requireNonNull(manager);
+	}
+
+	/**
+	 * Adds a new observer. Its relevant set is empty until the next
+	 * {@link #update()}.
+	 *
+	 * @param radius
+	 *            the radius of the area of interest. Must be positive or zero
+	 *            and finite.
+	 * @return the observer
+	 * @throws IllegalArgumentException
+	 *             if the {@code radius} is invalid.
+	 */
+	public Observer addObserver(double radius) {
+		Observer observer = new Observer(this).setRadius(radius);
+		this.observers.add(observer);
+		return observer;
+	}
+
+	/**
+	 * Removes an observer. All its relevant entities leave.
+	 *
+	 * @param observer
+	 *            the observer. May not be {@code null}.
+	 * @throws NullPointerException
+	 *             if the {@code observer} is {@code null}.
+	 * @throws IllegalArgumentException
+	 *             if the {@code observer} is not part of this manager.
+	 */
+	public void removeObserver(Observer observer) {
+		Objects.requireNonNull(observer);
+		if (observer.owner != this || !this.observers.remove(observer))
+			throw new IllegalArgumentException("unknown observer");
+		for (int i = observer.relevant.size() - 1; i >= 0; i--)
+			this.leave(observer, observer.relevant.get(i));
+		observer.relevant.clear();
+		observer.owner = null;
+	}
+
+	/**
+	 * Refreshes the relevant sets of all observers. Should be called after
+	 * every step, or at least before every replication.
+	 */
+	public void update() {
+		for (int i = 0; i < this.observers.size(); i++)
+			this.update(this.observers.get(i));
+	}
+
+	private void update(Observer observer) {
+		if (observer.anchor != null) {
+			observer.x = observer.anchor.getTransform().getTranslationX();
+			observer.y = observer.anchor.getTransform().getTranslationY();
+		}
+		this.center.set(observer.x, observer.y);
+		// remove the entities beyond the margin
+		this.manager.queryRadius(this.center, observer.radius + observer.margin, this.query);
+		this.retained.addAll(this.query);
+		List<PhysicsEntity> relevant = observer.relevant;
+		int kept = 0;
+		for (int i = 0; i < relevant.size(); i++) {
+			PhysicsEntity entity = relevant.get(i);
+			if (this.retained.contains(entity))
+				relevant.set(kept++, entity);
+			else
+				this.leave(observer, entity);
+		}
+		relevant.subList(kept, relevant.size()).clear();
+		this.retained.clear();
+		// add the entities within the radius
+		this.manager.queryRadius(this.center, observer.radius, this.query);
+		for (int i = 0; i < this.query.size(); i++) {
+			PhysicsEntity entity = this.query.get(i);
+			if (observer.members.add(entity)) {
+				relevant.add(entity);
+				this.interested.computeIfAbsent(entity, e -> new ArrayList<>(2)).add(observer);
+				for (int l = 0; l < observer.listeners.size(); l++)
+					observer.listeners.get(l).entered(entity);
+			}
+		}
+		this.query.clear();
+	}
+
+	private void leave(Observer observer, PhysicsEntity entity) {
+		observer.members.remove(entity);
+		List<Observer> list = this.interested.get(entity);
+		list.remove(observer);
+		if (list.isEmpty())
+			this.interested.remove(entity);
+		for (int l = 0; l < observer.listeners.size(); l++)
+			observer.listeners.get(l).left(entity);
+	}
+
+	/**
+	 * Delivers the contact points of a step to the observers of the involved
+	 * entities.
+	 */
+	@Override
+	public void collisions(CollisionBatch batch) {
+		for (int i = 0; i < batch.size(); i++) {
+			int row = ++this.row;
+			this.deliver(batch, i, batch.getEntity0(i), row);
+			this.deliver(batch, i, batch.getEntity1(i), row);
+		}
+		for (int i = 0; i < this.touched.size(); i++) {
+			Observer observer = this.touched.get(i);
+			for (int l = 0; l < observer.batchListeners.size(); l++)
+				observer.batchListeners.get(l).collisions(observer.batch);
+			observer.batch.clear();
+		}
+		this.touched.clear();
+	}
+
+	private void deliver(CollisionBatch batch, int index, PhysicsEntity entity, int row) {
+		List<Observer> list = this.interested.get(entity);
+		if (list == null)
+			return;
+		for (int i = 0; i < list.size(); i++) {
+			Observer observer = list.get(i);
+			// an observer of both entities receives the contact point once
+			if (observer.row == row || observer.batchListeners.isEmpty())
+				continue;
+			observer.row = row;
+			if (observer.batch.isEmpty())
+				this.touched.add(observer);
+			observer.batch.add(batch, index);
+		}
+	}
+
+	/**
+	 * Provides the observers an entity is currently relevant to.
+	 *
+	 * @param entity
+	 *            the entity.
+	 * @return an unmodifiable view of the observers. Empty if the entity is not
+	 *         relevant to any observer.
+	 */
+	public List<Observer> getObservers(PhysicsEntity entity) {
+		List<Observer> list = this.interested.get(entity);
+		return list == null ? Collections.emptyList() : Collections.unmodifiableList(list);
+	}
+
+	/**
+	 * @return an unmodifiable view of all observers.
+	 */
+	public List<Observer> getObservers() {
+		return Collections.unmodifiableList(this.observers);
+	}
+
+	/**
+	 * A circular area of interest and the entities relevant to it.
+	 */
+	public static final class Observer {
+
+		private InterestManager owner;
+		private final List<PhysicsEntity> relevant = new ArrayList<>();
+		private final Set<PhysicsEntity> members = Collections.newSetFromMap(new IdentityHashMap<>());
+		private final List<PhysicsEntity> view = Collections.unmodifiableList(this.relevant);
+		private final List<InterestListener> listeners = new ArrayList<>();
+		private final List<CollisionBatchListener> batchListeners = new ArrayList<>();
+		private final CollisionBatch batch = new CollisionBatch();
+		private PhysicsEntity anchor;
+		private double x, y;
+		private double radius;
+		private double margin = DEFAULT_MARGIN;
+		private int row;
+
+		private Observer(InterestManager owner) {
+			this.owner = owner;
+		}
+
+		/**
+		 * sets a fixed centre of the area of interest. Clears the anchor.
+		 *
+		 * @param center
+		 *            the centre in world coordinates. May not be {@code null}.
+		 * @return the observer itself
+		 * @throws NullPointerException
+		 *             if the {@code center} is {@code null}.
+		 */
+		public Observer setCenter(Vector2 center) {
+			Objects.requireNonNull(center);
+			this.anchor = null;
+			this.x = center.x;
+			this.y = center.y;
+			return this;
+		}
+
+		/**
+		 * sets the entity the area of interest follows. The centre is updated
+		 * to the position of the entity on every update.
+		 *
+		 * @param anchor
+		 *            the entity. {@code null} keeps the centre at the last
+		 *            position.
+		 * @return the observer itself
+		 */
+		public Observer setAnchor(PhysicsEntity anchor) {
+			this.anchor = anchor;
+			return this;
+		}
+
+		/**
+		 * sets the radius of the area of interest.
+		 *
+		 * @param radius
+		 *            the radius. Must be positive or zero and finite.
+		 * @return the observer itself
+		 * @throws IllegalArgumentException
+		 *             if the {@code radius} is invalid.
+		 */
+		public Observer setRadius(double radius) {
+			if (!(radius >= 0) || !Double.isFinite(radius))
+				throw new IllegalArgumentException("radius may not be negative. Was " + radius);
+			this.radius = radius;
+			return this;
+		}
+
+		/**
+		 * sets the distance beyond the radius an entity must move to leave the
+		 * area of interest.
+		 *
+		 * @param margin
+		 *            the margin. Must be positive or zero and finite.
+		 * @return the observer itself
+		 * @throws IllegalArgumentException
+		 *             if the {@code margin} is invalid.
+		 */
+		public Observer setMargin(double margin) {
+			if (!(margin >= 0) || !Double.isFinite(margin))
+				throw new IllegalArgumentException("margin may not be negative. Was " + margin);
+			this.margin = margin;
+			return this;
+		}
+
+		public void addInterestListener(InterestListener listener) {
+			this.listeners.add(Objects.requireNonNull(listener));
+		}
+
+		public void removeInterestListener(InterestListener listener) {
+			this.listeners.remove(listener);
+		}
+
+		/**
+		 * Adds a listener receiving the contact points involving relevant
+		 * entities. The batch passed to the listener is reused.
+		 *
+		 * @param listener
+		 *            the listener. May not be {@code null}.
+		 */
+		public void addCollisionBatchListener(CollisionBatchListener listener) {
+			this.batchListeners.add(Objects.requireNonNull(listener));
+		}
+
+		public void removeCollisionBatchListener(CollisionBatchListener listener) {
+			this.batchListeners.remove(listener);
+		}
+
+		/**
+		 * @param entity
+		 *            the entity.
+		 * @return {@code true} if the entity is currently relevant.
+		 */
+		public boolean isRelevant(PhysicsEntity entity) {
+			return this.members.contains(entity);
+		}
+
+		/**
+		 * @return an unmodifiable view of the relevant entities, in the order
+		 *         they entered.
+		 */
+		public List<PhysicsEntity> getRelevant() {
+			return this.view;
+		}
+
+		public PhysicsEntity getAnchor() {
+			return this.anchor;
+		}
+
+		public double getRadius() {
+			return this.radius;
+		}
+
+		public double getMargin() {
+			return this.margin;
+		}
+
+	}
+
+}
@@ -0,0 +1,110 @@
+package ch.wados.starfury.net;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Objects;
+import java.util.Random;
+
+/**
+ * In-process {@link Transport} connecting two ends. Packets sent on one end are
+ * received on the {@link #getPeer() peer} end in sending order. An optional
+ * loss rate drops packets at random to exercise the replication with packet
+ * loss. Packet buffers are pooled, so sending does not allocate in a steady
+ * state. Both ends may be used from different threads.
+ */
+public final class LoopbackTransport implements Transport {
+
+	private final Object lock;
+	private final ArrayDeque<ByteBuffer> inbox = new ArrayDeque<>();
+	private final ArrayDeque<ByteBuffer> pool;
+	private final LoopbackTransport peer;
+	private double loss = 0;
+	private Random random = null;
+
+	/**
+	 * Creates a new pair of connected ends.
+	 */
+	public LoopbackTransport() {
+		this.lock = new Object();
+		this.pool = new ArrayDeque<>();
+		this.peer = new LoopbackTransport(this);
+	}
+
+	private LoopbackTransport(LoopbackTransport peer) {
+		this.lock = peer.lock;
+		this.pool = peer.pool;
+		this.peer = peer;
+	}
+
+	/**
+	 * sets the rate at which packets sent on this end are dropped.
+	 *
+	 * @param rate
+	 *            the loss rate. Must be in the range {@code [0, 1]}.
+	 * @param seed
+	 *            the seed of the random generator deciding the losses.
+	 * @return the transport itself
+	 * @throws IllegalArgumentException
+	 *             if the {@code rate} is out of range.
+	 */
+	public LoopbackTransport setLoss(double rate, long seed) {
+		if (!(rate >= 0 && rate <= 1))
+			throw new IllegalArgumentException("rate must be in [0, 1]. Was " + rate);
+		synchronized (this.lock) {
+			this.loss = rate;
+			this.random = new Random(seed);
+		}
+		return this;
+	}
+
+	@Override
+	public void send(ByteBuffer packet) {
+		Objects.requireNonNull(packet);
+		synchronized (this.lock) {
+			if (this.loss > 0 && this.random.nextDouble() < this.loss) {
+				packet.position(packet.limit());
+				return;
+			}
+			ByteBuffer copy = this.pool.pollFirst();
+			if (copy == null || copy.capacity() < packet.remaining())
+				copy = ByteBuffer.allocate(Math.max(packet.remaining(), 256));
+			copy.clear();
+			copy.put(packet);
+			copy.flip();
+			this.peer.inbox.addLast(copy);
+		}
+	}
+
+	@Override
+	public boolean receive(ByteBuffer target) {
+		Objects.requireNonNull(target);
+		synchronized (this.lock) {
+			ByteBuffer packet = this.inbox.pollFirst();
+			if (packet == null)
+				return false;
+			try {
+				target.put(packet);
+			} finally {
+				this.pool.addLast(packet);
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * @return the number of packets waiting to be received on this end.
+	 */
+	public int getPending() {
+		synchronized (this.lock) {
+			return this.inbox.size();
+		}
+	}
+
+	/**
+	 * @return the other end of the connection.
+	 */
+	public LoopbackTransport getPeer() {
+		return this.peer;
+	}
+
+}
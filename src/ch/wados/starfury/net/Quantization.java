@@ -0,0 +1,211 @@
+package ch.wados.starfury.net;
+
+/**
+ * Quantization settings of the replicated entity state.
+ * <p>
+ * Every replicated value is mapped to an unsigned integer of a configurable
+ * bit width. Positions, velocities and angular velocities are fixed-point
+ * numbers symmetric around zero: a field with {@code b} bits and a range
+ * {@code r} has a resolution of {@code r / 2^(b-1)} and covers
+ * {@code [-r, r)}, values outside are clamped. Zero is represented exactly,
+ * so resting entities do not jitter. The orientation is mapped onto the full
+ * circle and wraps around.
+ * </p>
+ * <p>
+ * The server and all clients must use equal settings. The settings must not
+ * be modified once they are used by a {@link ReplicationServer} or a
+ * {@link ReplicationClient}.
+ * </p>
+ */
+public final class Quantization {
+
+	/**
+	 * Field index of the x coordinate of the position.
+	 */
+	public static final int X = 0;
+	/**
+	 * Field index of the y coordinate of the position.
+	 */
+	public static final int Y = 1;
+	/**
+	 * Field index of the orientation.
+	 */
+	public static final int ANGLE = 2;
+	/**
+	 * Field index of the x component of the linear velocity.
+	 */
+	public static final int VX = 3;
+	/**
+	 * Field index of the y component of the linear velocity.
+	 */
+	public static final int VY = 4;
+	/**
+	 * Field index of the angular velocity.
+	 */
+	public static final int OMEGA = 5;
+	/**
+	 * The number of quantized fields.
+	 */
+	public static final int FIELD_COUNT = 6;
+
+	private static final double TWO_PI = 2 * Math.PI;
+
+	private final int[] bits = new int[FIELD_COUNT];
+	private final double[] resolution = new double[FIELD_COUNT];
+
+	/**
+	 * Creates new settings with the following default values:
+	 * <ul>
+	 * <li>position: 24 bits in {@code [-8192, 8192)} (about 1 mm)</li>
+	 * <li>angle: 16 bits</li>
+	 * <li>velocity: 16 bits in {@code [-512, 512)}</li>
+	 * <li>angular velocity: 14 bits in {@code [-64, 64)}</li>
+	 * </ul>
+	 */
+	public Quantization() {
+		this.setPosition(24, 8192);
+		this.setAngle(16);
+		this.setVelocity(16, 512);
+		this.setAngularVelocity(14, 64);
+	}
+
+	/**
+	 * sets the quantization of both position coordinates.
+	 *
+	 * @param bits
+	 *            the bit width. Must be in the range {@code [2, 31]}.
+	 * @param range
+	 *            the largest absolute coordinate. Must be strictly positive
+	 *            and finite.
+	 * @return the settings itself
+	 * @throws IllegalArgumentException
+	 *             if any argument is invalid.
+	 */
+	public Quantization setPosition(int bits, double range) {
+		this.set(X, bits, range);
+		this.set(Y, bits, range);
+		return this;
+	}
+
+	/**
+	 * sets the quantization of the orientation.
+	 *
+	 * @param bits
+	 *            the bit width. Must be in the range {@code [2, 31]}.
+	 * @return the settings itself
+	 * @throws IllegalArgumentException
+	 *             if the {@code bits} are invalid.
+	 */
+	public Quantization setAngle(int bits) {
+		checkBits(bits);
+		this.bits[ANGLE] = bits;
+		this.resolution[ANGLE] = TWO_PI / (1L << bits);
+		return this;
+	}
+
+	/**
+	 * sets the quantization of both linear velocity components.
+	 *
+	 * @param bits
+	 *            the bit width. Must be in the range {@code [2, 31]}.
+	 * @param range
+	 *            the largest absolute velocity component. Must be strictly
+	 *            positive and finite.
+	 * @return the settings itself
+	 * @throws IllegalArgumentException
+	 *             if any argument is invalid.
+	 */
+	public Quantization setVelocity(int bits, double range) {
+		this.set(VX, bits, range);
+		this.set(VY, bits, range);
+		return this;
+	}
+
+	/**
+	 * sets the quantization of the angular velocity.
+	 *
+	 * @param bits
+	 *            the bit width. Must be in the range {@code [2, 31]}.
+	 * @param range
+	 *            the largest absolute angular velocity. Must be strictly
+	 *            positive and finite.
+	 * @return the settings itself
+	 * @throws IllegalArgumentException
+	 *             if any argument is invalid.
+	 */
+	public Quantization setAngularVelocity(int bits, double range) {
+		this.set(OMEGA, bits, range);
+		return this;
+	}
+
+	private void set(int field, int bits, double range) {
+		checkBits(bits);
+		if (range <= 0 || !Double.isFinite(range))
+			throw new IllegalArgumentException("range must be positive. Was " + range);
+		this.bits[field] = bits;
+		this.resolution[field] = range / (1L << (bits - 1));
+	}
+
+	private static void checkBits(int bits) {
+		if (bits < 2 || bits > 31)
+			throw new IllegalArgumentException("bits must be in [2, 31]. Was " + bits);
+	}
+
+	/**
+	 * @param field
+	 *            the field index.
+	 * @return the bit width of the field.
+	 */
+	public int getBits(int field) {
+		return this.bits[field];
+	}
+
+	/**
+	 * @param field
+	 *            the field index.
+	 * @return the difference between two adjacent quantized values of the
+	 *         field.
+	 */
+	public double getResolution(int field) {
+		return this.resolution[field];
+	}
+
+	/**
+	 * Quantizes a value.
+	 *
+	 * @param field
+	 *            the field index.
+	 * @param value
+	 *            the value.
+	 * @return the quantized value as an unsigned integer of the bit width of
+	 *         the field.
+	 */
+	public int quantize(int field, double value) {
+		int bits = this.bits[field];
+		long steps = Math.round(value / this.resolution[field]);
+		if (field == ANGLE)
+			return (int) (steps & ((1L << bits) - 1));
+		long half = 1L << (bits - 1);
+		return (int) (Math.max(-half, Math.min(half - 1, steps)) + half);
+	}
+
+	/**
+	 * Restores a quantized value.
+	 *
+	 * @param field
+	 *            the field index.
+	 * @param value
+	 *            the quantized value.
+	 * @return the value. Orientations are in the range {@code [-PI, PI)}.
+	 */
+	public double dequantize(int field, int value) {
+		int bits = this.bits[field];
+		if (field == ANGLE) {
+			// interpret the upper half of the circle as negative angles
+			long signed = value >= (1L << (bits - 1)) ? value - (1L << bits) : value;
+			return signed * this.resolution[ANGLE];
+		}
+		return (value - (1L << (bits - 1))) * this.resolution[field];
+	}
+
+}
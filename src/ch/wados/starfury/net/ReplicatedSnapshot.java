@@ -0,0 +1,187 @@
+package ch.wados.starfury.net;
+
+import java.util.Arrays;
+
+/**
+ * Structure-of-arrays view of a decoded replication frame on the client. The
+ * entities are sorted by ascending network id. Only the first
+ * {@link #size()} entries of a column are valid. The column arrays may be
+ * replaced when the snapshot grows, so they should be fetched again after
+ * every decode.
+ * <p>
+ * The same layout is used for the interpolated state produced by a
+ * {@link SnapshotBuffer}.
+ * </p>
+ *
+ * @see ReplicationClient#getSnapshot()
+ * @see SnapshotBuffer
+ */
+public final class ReplicatedSnapshot {
+
+	private int sequence;
+	private int step;
+	private int size;
+	private int[] ids = new int[0];
+	private double[] x = new double[0];
+	private double[] y = new double[0];
+	private double[] angle = new double[0];
+	private double[] vx = new double[0];
+	private double[] vy = new double[0];
+	private double[] omega = new double[0];
+	private boolean[] asleep = new boolean[0];
+
+	/**
+	 * Replaces the contents with the dequantized values of a frame.
+	 */
+	void load(SnapshotFrame frame, Quantization quantization) {
+		int n = frame.size;
+		this.resize(n);
+		this.sequence = frame.sequence;
+		this.step = frame.step;
+		System.arraycopy(frame.ids, 0, this.ids, 0, n);
+		System.arraycopy(frame.asleep, 0, this.asleep, 0, n);
+		dequantize(frame.fields[Quantization.X], this.x, n, Quantization.X, quantization);
+		dequantize(frame.fields[Quantization.Y], this.y, n, Quantization.Y, quantization);
+		dequantize(frame.fields[Quantization.ANGLE], this.angle, n, Quantization.ANGLE, quantization);
+		dequantize(frame.fields[Quantization.VX], this.vx, n, Quantization.VX, quantization);
+		dequantize(frame.fields[Quantization.VY], this.vy, n, Quantization.VY, quantization);
+		dequantize(frame.fields[Quantization.OMEGA], this.omega, n, Quantization.OMEGA, quantization);
+	}
+
+	/**
+	 * Replaces the contents with a copy of another snapshot.
+	 */
+	void copyFrom(ReplicatedSnapshot source) {
+		int n = source.size;
+		this.resize(n);
+		this.sequence = source.sequence;
+		this.step = source.step;
+		System.arraycopy(source.ids, 0, this.ids, 0, n);
+		System.arraycopy(source.x, 0, this.x, 0, n);
+		System.arraycopy(source.y, 0, this.y, 0, n);
+		System.arraycopy(source.angle, 0, this.angle, 0, n);
+		System.arraycopy(source.vx, 0, this.vx, 0, n);
+		System.arraycopy(source.vy, 0, this.vy, 0, n);
+		System.arraycopy(source.omega, 0, this.omega, 0, n);
+		System.arraycopy(source.asleep, 0, this.asleep, 0, n);
+	}
+
+	/**
+	 * Sets the number of entities. The columns are only grown, their contents
+	 * are undefined afterwards.
+	 */
+	void resize(int size) {
+		if (this.ids.length < size) {
+			int length = Math.max(size, this.ids.length * 2);
+			this.ids = new int[length];
+			this.x = new double[length];
+			this.y = new double[length];
+			this.angle = new double[length];
+			this.vx = new double[length];
+			this.vy = new double[length];
+			this.omega = new double[length];
+			this.asleep = new boolean[length];
+		}
+		this.size = size;
+	}
+
+	void setHeader(int sequence, int step) {
+		this.sequence = sequence;
+		this.step = step;
+	}
+
+	private static void dequantize(int[] source, double[] target, int n, int field, Quantization quantization) {
+		for (int i = 0; i < n; i++)
+			target[i] = quantization.dequantize(field, source[i]);
+	}
+
+	/**
+	 * Finds an entity by its network id.
+	 *
+	 * @param id
+	 *            the network id.
+	 * @return the index of the entity or a negative value if it is not
+	 *         contained.
+	 */
+	public int indexOf(int id) {
+		return Arrays.binarySearch(this.ids, 0, this.size, id);
+	}
+
+	/**
+	 * @return the sequence number of the frame. 0 if no frame was decoded yet.
+	 */
+	public int getSequence() {
+		return this.sequence;
+	}
+
+	/**
+	 * @return the step of the server manager the frame was captured at.
+	 */
+	public int getStep() {
+		return this.step;
+	}
+
+	/**
+	 * @return the number of entities.
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * @return the column of the network ids.
+	 */
+	public int[] getIds() {
+		return this.ids;
+	}
+
+	/**
+	 * @return the column of the x coordinates of the entity positions.
+	 */
+	public double[] getX() {
+		return this.x;
+	}
+
+	/**
+	 * @return the column of the y coordinates of the entity positions.
+	 */
+	public double[] getY() {
+		return this.y;
+	}
+
+	/**
+	 * @return the column of the entity orientations in radians.
+	 */
+	public double[] getAngle() {
+		return this.angle;
+	}
+
+	/**
+	 * @return the column of the x components of the linear velocities.
+	 */
+	public double[] getVelocityX() {
+		return this.vx;
+	}
+
+	/**
+	 * @return the column of the y components of the linear velocities.
+	 */
+	public double[] getVelocityY() {
+		return this.vy;
+	}
+
+	/**
+	 * @return the column of the angular velocities in {@code rad/s}.
+	 */
+	public double[] getAngularVelocity() {
+		return this.omega;
+	}
+
+	/**
+	 * @return the column of the sleep flags.
+	 */
+	public boolean[] getAsleep() {
+		return this.asleep;
+	}
+
+}
@@ -0,0 +1,132 @@
+package ch.wados.starfury.net;
+
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Objects;
+
+/**
+ * Client side of the state replication. Decodes the packets written by a
+ * {@link ReplicationServer} and acknowledges them.
+ * <p>
+ * The client holds the most recently decoded frames as baselines for the
+ * delta decoding. Packets older than the newest decoded frame are ignored, so
+ * reordered packets never roll the state back. After decoding a packet the
+ * client should send an acknowledgement, so the server can encode the next
+ * packets against the new frame. Decoding does not allocate in a steady
+ * state. The client is not thread-safe.
+ * </p>
+ *
+ * @see ReplicationServer
+ */
+public final class ReplicationClient {
+
+	private final Quantization quantization;
+	private final SnapshotFrame[] frames;
+	private final ReplicatedSnapshot snapshot = new ReplicatedSnapshot();
+	private final BitReader reader = new BitReader();
+	private final BitWriter writer = new BitWriter();
+	private int sequence = 0;
+
+	/**
+	 * Creates a new client.
+	 *
+	 * @param quantization
+	 *            the quantization settings. Must be equal to the settings of
+	 *            the server. May not be {@code null}.
+	 * @param history
+	 *            the number of decoded frames held as baselines. Must be
+	 *            strictly positive and equal to the history of the server.
+	 * @throws NullPointerException
+	 *             if the {@code quantization} is {@code null}.
+	 * @throws IllegalArgumentException
+	 *             if the {@code history} is not positive.
+	 */
+	public ReplicationClient(Quantization quantization, int history) {
+		this.quantization = Objects.requireNonNull(quantization);
+		if (history <= 0)
+			throw new IllegalArgumentException("history must be positive. Was " + history);
+		this.frames = new SnapshotFrame[history];
+		for (int i = 0; i < history; i++)
+			this.frames[i] = new SnapshotFrame(0);
+	}
+
+	/**
+	 * Decodes a packet. The packet is read from the position of the buffer.
+	 *
+	 * @param in
+	 *            the buffer holding the packet. May not be {@code null}.
+	 * @return {@code true} if the packet was decoded into the
+	 *         {@link #getSnapshot() snapshot}, {@code false} if it is older
+	 *         than the current snapshot or its baseline is no longer held.
+	 * @throws NullPointerException
+	 *             if the {@code in} buffer is {@code null}.
+	 * @throws IllegalArgumentException
+	 *             if the packet is invalid. The snapshot remains unchanged.
+	 * @throws BufferUnderflowException
+	 *             if the packet is truncated. The snapshot remains unchanged.
+	 */
+	public boolean decode(ByteBuffer in) {
+		Objects.requireNonNull(in);
+		this.reader.reset(in);
+		int sequence = this.reader.read(32);
+		int base = this.reader.read(32);
+		int step = this.reader.read(32);
+		if (sequence <= this.sequence)
+			return false;
+		if (base >= sequence)
+			throw new IllegalArgumentException("invalid baseline " + base);
+		SnapshotFrame baseline = null;
+		if (base != 0) {
+			baseline = this.frames[base % this.frames.length];
+			if (baseline.sequence != base)
+				return false;
+		}
+		SnapshotFrame frame = this.frames[sequence % this.frames.length];
+		// invalidate the slot until the frame is complete
+		frame.sequence = 0;
+		frame.decode(this.reader, baseline, this.quantization);
+		frame.sequence = sequence;
+		frame.step = step;
+		this.sequence = sequence;
+		this.snapshot.load(frame, this.quantization);
+		return true;
+	}
+
+	/**
+	 * Writes the acknowledgement of the newest decoded frame at the position
+	 * of the buffer.
+	 *
+	 * @param out
+	 *            the buffer to write to. May not be {@code null}.
+	 * @throws NullPointerException
+	 *             if the {@code out} buffer is {@code null}.
+	 * @throws BufferOverflowException
+	 *             if the buffer has less than 4 bytes remaining.
+	 */
+	public void writeAck(ByteBuffer out) {
+		Objects.requireNonNull(out);
+		this.writer.reset(out).write(this.sequence, 32);
+		this.writer.flush();
+	}
+
+	/**
+	 * @return the sequence number of the newest decoded frame. 0 if none.
+	 */
+	public int getSequence() {
+		return this.sequence;
+	}
+
+	/**
+	 * @return the newest decoded state. The instance is reused for every
+	 *         decoded packet.
+	 */
+	public ReplicatedSnapshot getSnapshot() {
+		return this.snapshot;
+	}
+
+	public Quantization getQuantization() {
+		return this.quantization;
+	}
+
+}
@@ -0,0 +1,366 @@
+package ch.wados.starfury.net;
+
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import ch.wados.starfury.physics.api.EntityStateBuffer;
+import ch.wados.starfury.physics.api.PhysicsEntity;
+import ch.wados.starfury.physics.api.PhysicsManager;
+
+/**
+ * Server side of the state replication.
+ * <p>
+ * {@link #capture()} exports the state of all entities of a
+ * {@link PhysicsManager}, assigns every entity a network id and quantizes the
+ * state into a new frame with the next sequence number. Network ids are
+ * assigned on first sight and never reused. {@link #encode(Client, ByteBuffer)}
+ * then writes the latest frame for a client, delta encoded against the newest
+ * frame the client has acknowledged. Unchanged entities cost about two bits,
+ * changed values are sent as variable length differences. If the client has
+ * not acknowledged any frame still held in its history, the frame is sent in
+ * full.
+ * </p>
+ * <p>
+ * A client may be bound to an {@link InterestManager.Observer observer}. It
+ * then only receives the entities relevant to the observer, so the packet
+ * size depends on the density around the client rather than the size of the
+ * world. Entities leaving the relevant set are removed on the client, entities
+ * entering it are sent in full.
+ * </p>
+ * <p>
+ * Packet layout (bit-packed, see {@link BitWriter}): 32 bit sequence, 32 bit
+ * baseline sequence (0 for none), 32 bit step of the manager, followed by the
+ * entities. An acknowledgement is a single 32 bit sequence number.
+ * </p>
+ * <p>
+ * All buffers are reused, so capturing and encoding only allocate when new
+ * entities appear or the buffers grow. The server is not thread-safe.
+ * </p>
+ *
+ * @see ReplicationClient
+ */
+public final class ReplicationServer {
+
+	/**
+	 * The default number of frames held per client.
+	 */
+	public static final int DEFAULT_HISTORY = 32;
+
+	private final PhysicsManager manager;
+	private final Quantization quantization;
+	private final int history;
+	private final EntityStateBuffer state = new EntityStateBuffer();
+	private final double[][] columns = new double[Quantization.FIELD_COUNT][];
+	private final Map<PhysicsEntity, NetworkId> ids = new IdentityHashMap<>();
+	private final BitWriter writer = new BitWriter();
+	private final BitReader reader = new BitReader();
+	private SnapshotFrame frame = new SnapshotFrame(64);
+	private SnapshotFrame scratch = new SnapshotFrame(64);
+	private final SnapshotFrame filtered = new SnapshotFrame(64);
+	private final SnapshotFrame resent = new SnapshotFrame(64);
+	private NetworkId[] handles = new NetworkId[64];
+	private int[] picks = new int[64];
+	private long[] order = new long[64];
+	private int nextId = 0;
+	private int sequence = 0;
+
+	/**
+	 * Creates a new server.
+	 *
+	 * @param manager
+	 *            the manager to replicate. May not be {@code null}.
+	 * @param quantization
+	 *            the quantization settings. May not be {@code null}.
+	 * @param history
+	 *            the number of sent frames held per client as potential
+	 *            baselines. Must be strictly positive and equal to the history
+	 *            of the clients.
+	 * @throws NullPointerException
+	 *             if the {@code manager} or the {@code quantization} is
+	 *             {@code null}.
+	 * @throws IllegalArgumentException
+	 *             if the {@code history} is not positive.
+	 */
+	public ReplicationServer(PhysicsManager manager, Quantization quantization, int history) {
+		this.manager = Objects.requireNonNull(manager);
+		this.quantization = Objects.requireNonNull(quantization);
+		if (history <= 0)
+			throw new IllegalArgumentException("history must be positive. Was " + history);
+		this.history = history;
+	}
+
+	/**
+	 * Captures the current state of all spawned entities into a new frame.
+	 * Should be called at the replication rate, e.g. every few steps.
+	 *
+	 * @return the sequence number of the new frame.
+	 */
+	public int capture() {
+		this.manager.exportState(this.state);
+		int n = this.state.size();
+		PhysicsEntity[] entities = this.state.getEntities();
+		double[][] columns = this.columns;
+		columns[Quantization.X] = this.state.getX();
+		columns[Quantization.Y] = this.state.getY();
+		columns[Quantization.ANGLE] = this.state.getAngle();
+		columns[Quantization.VX] = this.state.getVelocityX();
+		columns[Quantization.VY] = this.state.getVelocityY();
+		columns[Quantization.OMEGA] = this.state.getAngularVelocity();
+		boolean[] asleep = this.state.getAsleep();
+		SnapshotFrame unsorted = this.scratch;
+		unsorted.ensureCapacity(n);
+		unsorted.size = n;
+		if (this.handles.length < n)
+			this.handles = new NetworkId[Math.max(n, this.handles.length * 2)];
+		boolean sorted = true;
+		int stamp = ++this.sequence;
+		for (int i = 0; i < n; i++) {
+			NetworkId id = this.ids.get(entities[i]);
+			if (id == null) {
+				id = new NetworkId(this.nextId++);
+				this.ids.put(entities[i], id);
+			}
+			id.seen = stamp;
+			id.index = i;
+			this.handles[i] = id;
+			unsorted.ids[i] = id.id;
+			sorted &= i == 0 || unsorted.ids[i - 1] < id.id;
+			for (int f = 0; f < Quantization.FIELD_COUNT; f++)
+				unsorted.fields[f][i] = this.quantization.quantize(f, columns[f][i]);
+			unsorted.asleep[i] = asleep[i];
+		}
+		// forget despawned entities
+		if (this.ids.size() > n)
+			this.ids.values().removeIf(id -> id.seen != stamp);
+		if (sorted) {
+			this.scratch = this.frame;
+			this.frame = unsorted;
+		} else {
+			this.sort(unsorted);
+		}
+		Arrays.fill(this.handles, 0, n, null);
+		this.frame.sequence = stamp;
+		this.frame.step = (int) this.manager.getStep();
+		return stamp;
+	}
+
+	private void sort(SnapshotFrame unsorted) {
+		int n = unsorted.size;
+		if (this.order.length < n)
+			this.order = new long[Math.max(n, this.order.length * 2)];
+		for (int i = 0; i < n; i++)
+			this.order[i] = ((long) unsorted.ids[i] << 32) | i;
+		Arrays.sort(this.order, 0, n);
+		this.frame.ensureCapacity(n);
+		this.frame.size = 0;
+		for (int i = 0; i < n; i++) {
+			int index = (int) this.order[i];
+			this.frame.add(unsorted, index);
+			this.handles[index].index = i;
+		}
+	}
+
+	/**
+	 * Registers a new client.
+	 *
+	 * @return the client state. It must be passed to all further calls for
+	 *         this client.
+	 */
+	public Client addClient() {
+		return new Client(this.history, null);
+	}
+
+	/**
+	 * Registers a new client receiving only the entities relevant to an
+	 * observer. The relevant set is used as of the last
+	 * {@link InterestManager#update()} before encoding.
+	 *
+	 * @param observer
+	 *            the observer. May not be {@code null}.
+	 * @return the client state. It must be passed to all further calls for
+	 *         this client.
+	 * @throws NullPointerException
+	 *             if the {@code observer} is {@code null}.
+	 */
+	public Client addClient(InterestManager.Observer observer) {
+		return new Client(this.history, Objects.requireNonNull(observer));
+	}
+
+	/**
+	 * Writes the latest captured frame for a client, delta encoded against
+	 * the newest frame acknowledged by the client. The packet is written at
+	 * the position of the buffer, which is advanced past it. A frame the
+	 * client has already acknowledged is sent in full.
+	 *
+	 * @param client
+	 *            the client. May not be {@code null}.
+	 * @param out
+	 *            the buffer to write to. May not be {@code null}.
+	 * @throws NullPointerException
+	 *             if any argument is {@code null}.
+	 * @throws IllegalStateException
+	 *             if no frame has been captured yet.
+	 * @throws BufferOverflowException
+	 *             if the packet does not fit into the buffer.
+	 */
+	public void encode(Client client, ByteBuffer out) {
+		Objects.requireNonNull(client);
+		Objects.requireNonNull(out);
+		if (this.sequence == 0)
+			throw new IllegalStateException("no frame captured");
+		SnapshotFrame baseline = client.baseline(this.sequence);
+		SnapshotFrame sent = client.slot(this.sequence);
+		if (sent == baseline) {
+			// the client has acknowledged this very frame. Its slot is the
+			// baseline of the next frames, so the frame is sent in full and
+			// not recorded
+			baseline = null;
+			sent = this.resent;
+		}
+		sent.copyFrom(this.filter(client.observer));
+		this.writer.reset(out);
+		this.writer.write(this.sequence, 32);
+		this.writer.write(baseline == null ? 0 : baseline.sequence, 32);
+		this.writer.write(this.frame.step, 32);
+		sent.encode(this.writer, baseline, this.quantization);
+		this.writer.flush();
+	}
+
+	/**
+	 * @return the latest frame reduced to the entities relevant to an
+	 *         observer.
+	 */
+	private SnapshotFrame filter(InterestManager.Observer observer) {
+		if (observer == null)
+			return this.frame;
+		// collect the frame indices of the relevant entities
+		List<PhysicsEntity> relevant = observer.getRelevant();
+		if (this.picks.length < relevant.size())
+			this.picks = new int[Math.max(relevant.size(), this.picks.length * 2)];
+		int count = 0;
+		for (int i = 0; i < relevant.size(); i++) {
+			NetworkId id = this.ids.get(relevant.get(i));
+			if (id != null && id.seen == this.frame.sequence)
+				this.picks[count++] = id.index;
+		}
+		// frame order is id order
+		Arrays.sort(this.picks, 0, count);
+		SnapshotFrame filtered = this.filtered;
+		filtered.ensureCapacity(count);
+		filtered.size = 0;
+		for (int i = 0; i < count; i++)
+			filtered.add(this.frame, this.picks[i]);
+		filtered.sequence = this.frame.sequence;
+		filtered.step = this.frame.step;
+		return filtered;
+	}
+
+	/**
+	 * Reads an acknowledgement written by
+	 * {@link ReplicationClient#writeAck(ByteBuffer)}.
+	 *
+	 * @param client
+	 *            the client that sent the acknowledgement. May not be
+	 *            {@code null}.
+	 * @param in
+	 *            the buffer to read from. May not be {@code null}.
+	 * @throws NullPointerException
+	 *             if any argument is {@code null}.
+	 * @throws BufferUnderflowException
+	 *             if the buffer holds no complete acknowledgement.
+	 */
+	public void receiveAck(Client client, ByteBuffer in) {
+		Objects.requireNonNull(client);
+		Objects.requireNonNull(in);
+		int acked = this.reader.reset(in).read(32);
+		// acknowledgements may arrive out of order
+		if (acked > client.acked && acked <= this.sequence)
+			client.acked = acked;
+	}
+
+	/**
+	 * @return the sequence number of the latest frame. 0 if no frame has been
+	 *         captured yet.
+	 */
+	public int getSequence() {
+		return this.sequence;
+	}
+
+	/**
+	 * @return the number of entities in the latest frame.
+	 */
+	public int getEntityCount() {
+		return this.frame.size;
+	}
+
+	public Quantization getQuantization() {
+		return this.quantization;
+	}
+
+	private static final class NetworkId {
+		final int id;
+		int seen;
+		// index in the latest frame
+		int index;
+
+		NetworkId(int id) {
+			this.id = id;
+		}
+	}
+
+	/**
+	 * Replication state of a single client: the frames sent to it and the
+	 * newest frame it has acknowledged.
+	 */
+	public static final class Client {
+
+		private final SnapshotFrame[] sent;
+		private final InterestManager.Observer observer;
+		private int acked = 0;
+
+		Client(int history, InterestManager.Observer observer) {
+			this.observer = observer;
+			this.sent = new SnapshotFrame[history];
+			for (int i = 0; i < history; i++)
+				this.sent[i] = new SnapshotFrame(0);
+		}
+
+		SnapshotFrame slot(int sequence) {
+			return this.sent[sequence % this.sent.length];
+		}
+
+		/**
+		 * @return the acknowledged frame to encode against or {@code null}.
+		 */
+		SnapshotFrame baseline(int sequence) {
+			if (this.acked == 0 || this.acked <= sequence - this.sent.length)
+				return null;
+			SnapshotFrame frame = this.slot(this.acked);
+			return frame.sequence == this.acked ? frame : null;
+		}
+
+		/**
+		 * @return the sequence number of the newest frame acknowledged by the
+		 *         client. 0 if none.
+		 */
+		public int getAcknowledged() {
+			return this.acked;
+		}
+
+		/**
+		 * @return the observer filtering the entities sent to the client or
+		 *         {@code null} if all entities are sent.
+		 */
+		public InterestManager.Observer getObserver() {
+			return this.observer;
+		}
+
+	}
+
+}
@@ -0,0 +1,284 @@
+package ch.wados.starfury.net;
+
+import java.util.Objects;
+
+import org.dyn4j.geometry.Vector2;
+
+import ch.wados.starfury.physics.api.PhysicsEntity;
+import ch.wados.starfury.physics.api.PhysicsManager;
+
+/**
+ * Client side prediction of the locally controlled ship.
+ * <p>
+ * The ship is simulated ahead of the server in a local {@link PhysicsManager}.
+ * Every input is tagged with the server step it is meant for and kept in a
+ * ring buffer. When a snapshot arrives, the ship is reset to the
+ * authoritative state of the snapshot and all inputs from the step of the
+ * snapshot onwards are re-simulated. An input tagged with step {@code s}
+ * must be applied by the server while stepping from {@code s} to
+ * {@code s + 1}, so a snapshot of step {@code s} contains its effect on all
+ * inputs before {@code s}.
+ * </p>
+ * <p>
+ * The inputs are the forces of a fixed set of thrust points, applied with
+ * {@link PhysicsEntity#setThrusts(int[], double[])}. Timed forces and impulses
+ * are not predicted. The local manager should only contain the ship and the
+ * static environment around it, since it is stepped completely during the
+ * re-simulation. Corrections are not applied to the rendered transform at
+ * once, but blended out over a configurable time.
+ * </p>
+ * <p>
+ * Sampling the rendered transform does not allocate. The predictor is not
+ * thread-safe.
+ * </p>
+ *
+ * @see SnapshotBuffer
+ */
+public final class ShipPredictor {
+
+	/**
+	 * The default time constant of the correction blending in seconds.
+	 */
+	public static final double DEFAULT_SMOOTHING = 0.1;
+
+	private final PhysicsManager manager;
+	private final PhysicsEntity ship;
+	private final int[] handles;
+	private final double stepTime;
+	private final double[][] inputs;
+	private final int[] tags;
+	private final Vector2 scratch = new Vector2();
+	private double smoothing = DEFAULT_SMOOTHING;
+	private int step = -1;
+	// transform before the last step, for render interpolation
+	private double previousX, previousY, previousAngle;
+	// remaining visual error of past corrections
+	private double errorX, errorY, errorAngle;
+	private double renderX, renderY, renderAngle;
+
+	/**
+	 * Creates a new predictor.
+	 *
+	 * @param manager
+	 *            the local manager. Must be initialised and contain the
+	 *            {@code ship}. May not be {@code null}.
+	 * @param ship
+	 *            the local copy of the ship. May not be {@code null}.
+	 * @param handles
+	 *            the handles of the predicted thrust points. May not be
+	 *            {@code null}. The array is copied.
+	 * @param stepTime
+	 *            the step time of the server in seconds. Must be strictly
+	 *            positive and finite.
+	 * @param capacity
+	 *            the number of inputs kept for re-simulation. Must be strictly
+	 *            positive and should cover the round trip time.
+	 * @throws NullPointerException
+	 *             if any object argument is {@code null}.
+	 * @throws IllegalArgumentException
+	 *             if the {@code stepTime} or {@code capacity} is invalid.
+	 */
+	public ShipPredictor(PhysicsManager manager, PhysicsEntity ship, int[] handles, double stepTime, int capacity) {
+		this.manager = Objects.requireNonNull(manager);
+		this.ship = Objects.requireNonNull(ship);
+		this.handles = Objects.requireNonNull(handles).clone();
+		if (!(stepTime > 0) || !Double.isFinite(stepTime))
+			throw new IllegalArgumentException("stepTime must be positive. Was " + stepTime);
+		if (capacity <= 0)
+			throw new IllegalArgumentException("capacity must be positive. Was " + capacity);
+		this.stepTime = stepTime;
+		this.inputs = new double[capacity][handles.length];
+		this.tags = new int[capacity];
+		this.saveTransform();
+		this.renderX = this.previousX;
+		this.renderY = this.previousY;
+		this.renderAngle = this.previousAngle;
+	}
+
+	/**
+	 * sets the time constant of the correction blending. After this time
+	 * about 63% of a correction are visible.
+	 *
+	 * @param smoothing
+	 *            the time constant in seconds. Zero applies corrections at
+	 *            once. May not be negative or non-finite.
+	 * @return the predictor itself
+	 * @throws IllegalArgumentException
+	 *             if the {@code smoothing} is invalid.
+	 */
+	public ShipPredictor setSmoothing(double smoothing) {
+		if (!(smoothing >= 0) || !Double.isFinite(smoothing))
+			throw new IllegalArgumentException("smoothing may not be negative. Was " + smoothing);
+		this.smoothing = smoothing;
+		return this;
+	}
+
+	/**
+	 * Applies an input and advances the local simulation by one step. The
+	 * input is tagged with the {@link #getStep() current step}, which is
+	 * incremented. The same input should be sent to the server with the same
+	 * tag.
+	 *
+	 * @param forces
+	 *            the forces of the thrust points, in the order of the handles.
+	 *            May not be {@code null}.
+	 * @return the tag of the input.
+	 * @throws NullPointerException
+	 *             if the {@code forces} are {@code null}.
+	 * @throws IllegalStateException
+	 *             if the predictor has not been synchronised by
+	 *             {@link #reconcile(ReplicatedSnapshot, int)} yet.
+	 * @throws IllegalArgumentException
+	 *             if the forces are invalid.
+	 */
+	public int step(double[] forces) {
+		Objects.requireNonNull(forces);
+		if (this.step < 0)
+			throw new IllegalStateException("predictor not synchronised");
+		if (forces.length != this.handles.length)
+			throw new IllegalArgumentException("expected " + this.handles.length + " forces. Was " + forces.length);
+		this.ship.setThrusts(this.handles, forces);
+		int slot = this.step % this.inputs.length;
+		System.arraycopy(forces, 0, this.inputs[slot], 0, forces.length);
+		this.tags[slot] = this.step;
+		this.saveTransform();
+		this.manager.stepWorld(this.stepTime);
+		return this.step++;
+	}
+
+	/**
+	 * Corrects the prediction with the authoritative state of a snapshot. The
+	 * ship is reset to the state in the snapshot and the inputs since its
+	 * step are re-simulated. On the first call, or if the inputs since the
+	 * snapshot are no longer held, the prediction restarts at the step of the
+	 * snapshot.
+	 *
+	 * @param snapshot
+	 *            the snapshot. May not be {@code null}.
+	 * @param id
+	 *            the network id of the ship.
+	 * @return {@code true} if the ship is contained in the snapshot and was
+	 *         corrected.
+	 * @throws NullPointerException
+	 *             if the {@code snapshot} is {@code null}.
+	 */
+	public boolean reconcile(ReplicatedSnapshot snapshot, int id) {
+		Objects.requireNonNull(snapshot);
+		int index = snapshot.indexOf(id);
+		if (index < 0)
+			return false;
+		int from = snapshot.getStep();
+		double predictedX = this.getX(), predictedY = this.getY(), predictedAngle = this.ship.getOrientation();
+		boolean synced = this.step >= 0;
+		this.setState(snapshot, index);
+		if (!synced || from >= this.step || this.step - from > this.inputs.length
+				|| this.tags[from % this.inputs.length] != from) {
+			this.step = from;
+			this.saveTransform();
+		} else {
+			for (int s = from; s < this.step; s++) {
+				this.ship.setThrusts(this.handles, this.inputs[s % this.inputs.length]);
+				this.saveTransform();
+				this.manager.stepWorld(this.stepTime);
+			}
+		}
+		if (synced) {
+			this.errorX += predictedX - this.getX();
+			this.errorY += predictedY - this.getY();
+			this.errorAngle = SnapshotBuffer.wrap(this.errorAngle + predictedAngle - this.ship.getOrientation());
+		}
+		return true;
+	}
+
+	private void setState(ReplicatedSnapshot snapshot, int index) {
+		double angle = snapshot.getAngle()[index];
+		this.ship.setOrientation(angle);
+		// the position is set at the centre of mass, the snapshot holds the
+		// origin of the ship
+		Vector2 c = this.ship.getCenterOfMass();
+		double cos = Math.cos(angle), sin = Math.sin(angle);
+		this.scratch.x = snapshot.getX()[index] + cos * c.x - sin * c.y;
+		this.scratch.y = snapshot.getY()[index] + sin * c.x + cos * c.y;
+		this.ship.setPosition(this.scratch);
+		this.scratch.x = snapshot.getVelocityX()[index];
+		this.scratch.y = snapshot.getVelocityY()[index];
+		this.ship.setLinearVelocity(this.scratch);
+		this.ship.setAngularVelocity(snapshot.getAngularVelocity()[index]);
+		if (!snapshot.getAsleep()[index])
+			this.ship.wakeUp();
+	}
+
+	private void saveTransform() {
+		this.previousX = this.getX();
+		this.previousY = this.getY();
+		this.previousAngle = this.ship.getOrientation();
+	}
+
+	private double getX() {
+		return this.ship.getTransform().getTranslationX();
+	}
+
+	private double getY() {
+		return this.ship.getTransform().getTranslationY();
+	}
+
+	/**
+	 * Computes the rendered transform of the ship. Should be called once per
+	 * rendered frame.
+	 *
+	 * @param alpha
+	 *            the fraction of a step elapsed since the last call of
+	 *            {@link #step(double[])}, in the range {@code [0, 1]}.
+	 * @param dt
+	 *            the time elapsed since the last frame in seconds, used to
+	 *            blend out corrections.
+	 */
+	public void sample(double alpha, double dt) {
+		double decay = this.smoothing == 0 ? 0 : Math.exp(-dt / this.smoothing);
+		this.errorX *= decay;
+		this.errorY *= decay;
+		this.errorAngle *= decay;
+		double angle = this.ship.getOrientation();
+		this.renderX = this.previousX + (this.getX() - this.previousX) * alpha + this.errorX;
+		this.renderY = this.previousY + (this.getY() - this.previousY) * alpha + this.errorY;
+		this.renderAngle = SnapshotBuffer
+				.wrap(this.previousAngle + SnapshotBuffer.wrap(angle - this.previousAngle) * alpha + this.errorAngle);
+	}
+
+	/**
+	 * @return the x coordinate of the rendered position, as computed by the
+	 *         last {@link #sample(double, double)}.
+	 */
+	public double getRenderX() {
+		return this.renderX;
+	}
+
+	/**
+	 * @return the y coordinate of the rendered position, as computed by the
+	 *         last {@link #sample(double, double)}.
+	 */
+	public double getRenderY() {
+		return this.renderY;
+	}
+
+	/**
+	 * @return the rendered orientation, as computed by the last
+	 *         {@link #sample(double, double)}.
+	 */
+	public double getRenderAngle() {
+		return this.renderAngle;
+	}
+
+	/**
+	 * @return the tag of the next input. Negative if the predictor has not
+	 *         been synchronised yet.
+	 */
+	public int getStep() {
+		return this.step;
+	}
+
+	public PhysicsEntity getShip() {
+		return this.ship;
+	}
+
+}
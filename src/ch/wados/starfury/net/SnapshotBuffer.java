@@ -0,0 +1,292 @@
+package ch.wados.starfury.net;
+
+import java.util.Objects;
+
+/**
+ * Client side buffer of received snapshots, sampled at the render rate.
+ * <p>
+ * Snapshots arrive at a lower rate than frames are rendered. The buffer
+ * therefore renders the world slightly in the past: a sample at time
+ * {@code t} interpolates between the two snapshots around {@code t - delay}.
+ * With a delay of about two snapshot intervals a single lost packet does not
+ * interrupt the interpolation. If no newer snapshot is available the entities
+ * are extrapolated along their velocities for a limited time, after which
+ * they stop.
+ * </p>
+ * <p>
+ * Times are in seconds of server time, derived from the step of a snapshot.
+ * The buffer keeps an estimate of the current server time, which is advanced
+ * by {@link #advance(double)} every frame and corrected whenever a snapshot
+ * arrives. Sampling does not allocate. The buffer is not thread-safe.
+ * </p>
+ *
+ * @see ReplicationClient
+ * @see ShipPredictor
+ */
+public final class SnapshotBuffer {
+
+	/**
+	 * The default interpolation delay in seconds.
+	 */
+	public static final double DEFAULT_DELAY = 0.1;
+
+	/**
+	 * The default maximal extrapolation time in seconds.
+	 */
+	public static final double DEFAULT_EXTRAPOLATION = 0.25;
+
+	// fraction of the clock lead removed with every snapshot
+	private static final double CLOCK_CORRECTION = 0.1;
+
+	private final double stepTime;
+	private final ReplicatedSnapshot[] frames;
+	private int newest = -1;
+	private int count = 0;
+	private double delay = DEFAULT_DELAY;
+	private double extrapolation = DEFAULT_EXTRAPOLATION;
+	private double clock = Double.NaN;
+
+	/**
+	 * Creates a new buffer.
+	 *
+	 * @param stepTime
+	 *            the step time of the server in seconds. Must be strictly
+	 *            positive and finite.
+	 * @param capacity
+	 *            the number of snapshots held. Must be at least 2 and should
+	 *            cover the delay.
+	 * @throws IllegalArgumentException
+	 *             if any argument is invalid.
+	 */
+	public SnapshotBuffer(double stepTime, int capacity) {
+		if (!(stepTime > 0) || !Double.isFinite(stepTime))
+			throw new IllegalArgumentException("stepTime must be positive. Was " + stepTime);
+		if (capacity < 2)
+			throw new IllegalArgumentException("capacity must be at least 2. Was " + capacity);
+		this.stepTime = stepTime;
+		this.frames = new ReplicatedSnapshot[capacity];
+		for (int i = 0; i < capacity; i++)
+			this.frames[i] = new ReplicatedSnapshot();
+	}
+
+	/**
+	 * sets the interpolation delay.
+	 *
+	 * @param delay
+	 *            the delay in seconds. May not be negative or non-finite.
+	 * @return the buffer itself
+	 * @throws IllegalArgumentException
+	 *             if the {@code delay} is invalid.
+	 */
+	public SnapshotBuffer setDelay(double delay) {
+		if (!(delay >= 0) || !Double.isFinite(delay))
+			throw new IllegalArgumentException("delay may not be negative. Was " + delay);
+		this.delay = delay;
+		return this;
+	}
+
+	/**
+	 * sets the time the entities are extrapolated past the newest snapshot.
+	 *
+	 * @param limit
+	 *            the limit in seconds. May not be negative or non-finite.
+	 * @return the buffer itself
+	 * @throws IllegalArgumentException
+	 *             if the {@code limit} is invalid.
+	 */
+	public SnapshotBuffer setExtrapolationLimit(double limit) {
+		if (!(limit >= 0) || !Double.isFinite(limit))
+			throw new IllegalArgumentException("limit may not be negative. Was " + limit);
+		this.extrapolation = limit;
+		return this;
+	}
+
+	/**
+	 * Adds a copy of a snapshot to the buffer. Snapshots that are not newer
+	 * than the newest buffered snapshot are ignored.
+	 *
+	 * @param snapshot
+	 *            the snapshot. May not be {@code null}.
+	 * @return {@code true} if the snapshot was added.
+	 * @throws NullPointerException
+	 *             if the {@code snapshot} is {@code null}.
+	 */
+	public boolean add(ReplicatedSnapshot snapshot) {
+		Objects.requireNonNull(snapshot);
+		if (this.count > 0 && snapshot.getStep() <= this.frames[this.newest].getStep())
+			return false;
+		this.newest = (this.newest + 1) % this.frames.length;
+		this.frames[this.newest].copyFrom(snapshot);
+		this.count = Math.min(this.count + 1, this.frames.length);
+		double time = this.timeOf(this.frames[this.newest]);
+		if (Double.isNaN(this.clock) || time > this.clock)
+			this.clock = time;
+		else
+			this.clock -= (this.clock - time) * CLOCK_CORRECTION;
+		return true;
+	}
+
+	/**
+	 * Advances the estimated server time. Should be called once per rendered
+	 * frame.
+	 *
+	 * @param dt
+	 *            the elapsed time in seconds.
+	 */
+	public void advance(double dt) {
+		if (!Double.isNaN(this.clock))
+			this.clock += dt;
+	}
+
+	/**
+	 * Samples the state at the estimated server time minus the delay.
+	 *
+	 * @param out
+	 *            the snapshot to write the state to. May not be {@code null}.
+	 * @return {@code true} if the state was written, {@code false} if no
+	 *         snapshot has been added yet.
+	 * @throws NullPointerException
+	 *             if the {@code out} snapshot is {@code null}.
+	 * @see #sample(double, ReplicatedSnapshot)
+	 */
+	public boolean sample(ReplicatedSnapshot out) {
+		return this.sample(this.clock - this.delay, out);
+	}
+
+	/**
+	 * Samples the state at a given server time. The entities of the newer of
+	 * the two interpolated snapshots are written. Entities missing in the
+	 * older snapshot are written unchanged. Before the oldest snapshot the
+	 * oldest snapshot is written unchanged, after the newest snapshot the
+	 * entities are extrapolated. The sequence and step of the written state
+	 * are those of the newer snapshot.
+	 *
+	 * @param time
+	 *            the server time in seconds.
+	 * @param out
+	 *            the snapshot to write the state to. May not be {@code null}.
+	 * @return {@code true} if the state was written, {@code false} if no
+	 *         snapshot has been added yet.
+	 * @throws NullPointerException
+	 *             if the {@code out} snapshot is {@code null}.
+	 */
+	public boolean sample(double time, ReplicatedSnapshot out) {
+		Objects.requireNonNull(out);
+		if (this.count == 0)
+			return false;
+		int length = this.frames.length;
+		// walk back to the newest snapshot not after the time
+		ReplicatedSnapshot newer = null;
+		for (int k = 0; k < this.count; k++) {
+			ReplicatedSnapshot frame = this.frames[(this.newest - k + length) % length];
+			if (this.timeOf(frame) <= time) {
+				if (newer == null)
+					this.extrapolate(frame, time - this.timeOf(frame), out);
+				else
+					this.interpolate(frame, newer, time, out);
+				return true;
+			}
+			newer = frame;
+		}
+		out.copyFrom(newer);
+		return true;
+	}
+
+	private void extrapolate(ReplicatedSnapshot frame, double dt, ReplicatedSnapshot out) {
+		out.copyFrom(frame);
+		dt = Math.min(dt, this.extrapolation);
+		if (dt == 0)
+			return;
+		double[] x = out.getX(), y = out.getY(), angle = out.getAngle();
+		double[] vx = out.getVelocityX(), vy = out.getVelocityY(), omega = out.getAngularVelocity();
+		for (int i = 0; i < out.size(); i++) {
+			x[i] += vx[i] * dt;
+			y[i] += vy[i] * dt;
+			angle[i] = wrap(angle[i] + omega[i] * dt);
+		}
+	}
+
+	private void interpolate(ReplicatedSnapshot a, ReplicatedSnapshot b, double time, ReplicatedSnapshot out) {
+		double ta = this.timeOf(a);
+		double alpha = (time - ta) / (this.timeOf(b) - ta);
+		int n = b.size();
+		out.resize(n);
+		out.setHeader(b.getSequence(), b.getStep());
+		int[] ids = out.getIds();
+		double[] x = out.getX(), y = out.getY(), angle = out.getAngle();
+		double[] vx = out.getVelocityX(), vy = out.getVelocityY(), omega = out.getAngularVelocity();
+		boolean[] asleep = out.getAsleep();
+		int[] aIds = a.getIds();
+		int i = 0;
+		for (int j = 0; j < n; j++) {
+			int id = b.getIds()[j];
+			while (i < a.size() && aIds[i] < id)
+				i++;
+			ids[j] = id;
+			asleep[j] = b.getAsleep()[j];
+			if (i < a.size() && aIds[i] == id) {
+				x[j] = lerp(a.getX()[i], b.getX()[j], alpha);
+				y[j] = lerp(a.getY()[i], b.getY()[j], alpha);
+				angle[j] = wrap(a.getAngle()[i] + wrap(b.getAngle()[j] - a.getAngle()[i]) * alpha);
+				vx[j] = lerp(a.getVelocityX()[i], b.getVelocityX()[j], alpha);
+				vy[j] = lerp(a.getVelocityY()[i], b.getVelocityY()[j], alpha);
+				omega[j] = lerp(a.getAngularVelocity()[i], b.getAngularVelocity()[j], alpha);
+			} else {
+				x[j] = b.getX()[j];
+				y[j] = b.getY()[j];
+				angle[j] = b.getAngle()[j];
+				vx[j] = b.getVelocityX()[j];
+				vy[j] = b.getVelocityY()[j];
+				omega[j] = b.getAngularVelocity()[j];
+			}
+		}
+	}
+
+	private double timeOf(ReplicatedSnapshot frame) {
+		return frame.getStep() * this.stepTime;
+	}
+
+	private static double lerp(double a, double b, double alpha) {
+		return a + (b - a) * alpha;
+	}
+
+	/**
+	 * @return the angle wrapped to the range {@code [-PI, PI)}.
+	 */
+	static double wrap(double angle) {
+		return angle - 2 * Math.PI * Math.floor((angle + Math.PI) / (2 * Math.PI));
+	}
+
+	/**
+	 * @return the estimated server time in seconds. {@code NaN} if no
+	 *         snapshot has been added yet.
+	 */
+	public double getTime() {
+		return this.clock;
+	}
+
+	/**
+	 * @return the number of buffered snapshots.
+	 */
+	public int size() {
+		return this.count;
+	}
+
+	/**
+	 * Removes all snapshots and resets the time estimate.
+	 */
+	public void clear() {
+		this.count = 0;
+		this.newest = -1;
+		this.clock = Double.NaN;
+	}
+
+	public double getDelay() {
+		return this.delay;
+	}
+
+	public double getExtrapolationLimit() {
+		return this.extrapolation;
+	}
+
+}
@@ -0,0 +1,201 @@
+package ch.wados.starfury.net;
+
+import java.util.Arrays;
+
+/**
+ * Quantized state of a set of entities, sorted by ascending entity id. The
+ * frames are the baselines of the delta encoding, so the server and the
+ * client hold identical copies of every acknowledged frame.
+ * <p>
+ * The codec encodes a frame against a baseline frame by walking both id lists
+ * in parallel. Entities contained in the baseline are written as the
+ * difference to their baseline values, all others in full. Entities of the
+ * baseline missing in the frame are implicitly removed.
+ * </p>
+ */
+final class SnapshotFrame {
+
+	// sequence 0 marks an empty slot
+	int sequence;
+	int step;
+	int size;
+	int[] ids;
+	final int[][] fields = new int[Quantization.FIELD_COUNT][];
+	boolean[] asleep;
+
+	SnapshotFrame(int capacity) {
+		this.ids = new int[capacity];
+		for (int f = 0; f < Quantization.FIELD_COUNT; f++)
+			this.fields[f] = new int[capacity];
+		this.asleep = new boolean[capacity];
+	}
+
+	void ensureCapacity(int capacity) {
+		if (capacity <= this.ids.length)
+			return;
+		int length = Math.max(capacity, this.ids.length * 2);
+		this.ids = Arrays.copyOf(this.ids, length);
+		for (int f = 0; f < Quantization.FIELD_COUNT; f++)
+			this.fields[f] = Arrays.copyOf(this.fields[f], length);
+		this.asleep = Arrays.copyOf(this.asleep, length);
+	}
+
+	/**
+	 * Appends the entity at an index of another frame.
+	 */
+	void add(SnapshotFrame source, int index) {
+		int i = this.size++;
+		this.ids[i] = source.ids[index];
+		for (int f = 0; f < Quantization.FIELD_COUNT; f++)
+			this.fields[f][i] = source.fields[f][index];
+		this.asleep[i] = source.asleep[index];
+	}
+
+	/**
+	 * Replaces the contents with a copy of another frame.
+	 */
+	void copyFrom(SnapshotFrame source) {
+		this.ensureCapacity(source.size);
+		this.sequence = source.sequence;
+		this.step = source.step;
+		this.size = source.size;
+		System.arraycopy(source.ids, 0, this.ids, 0, source.size);
+		for (int f = 0; f < Quantization.FIELD_COUNT; f++)
+			System.arraycopy(source.fields[f], 0, this.fields[f], 0, source.size);
+		System.arraycopy(source.asleep, 0, this.asleep, 0, source.size);
+	}
+
+	/**
+	 * Writes the entities of this frame relative to a baseline.
+	 *
+	 * @param baseline
+	 *            the baseline or {@code null} to write all entities in full.
+	 */
+	void encode(BitWriter out, SnapshotFrame baseline, Quantization quantization) {
+		out.writeVarInt(this.size);
+		int previous = -1;
+		int b = 0;
+		int baseSize = baseline == null ? 0 : baseline.size;
+		for (int i = 0; i < this.size; i++) {
+			int id = this.ids[i];
+			// consecutive ids cost a single bit
+			int gap = id - previous - 1;
+			out.writeBoolean(gap == 0);
+			if (gap != 0)
+				out.writeVarInt(gap);
+			previous = id;
+			while (b < baseSize && baseline.ids[b] < id)
+				b++;
+			if (b < baseSize && baseline.ids[b] == id)
+				this.encodeDelta(out, i, baseline, b, quantization);
+			else
+				this.encodeFull(out, i, quantization);
+		}
+	}
+
+	private void encodeFull(BitWriter out, int i, Quantization quantization) {
+		out.writeBoolean(this.asleep[i]);
+		for (int f = 0; f < Quantization.FIELD_COUNT; f++)
+			out.write(this.fields[f][i], quantization.getBits(f));
+	}
+
+	private void encodeDelta(BitWriter out, int i, SnapshotFrame baseline, int b, Quantization quantization) {
+		boolean changed = this.asleep[i] != baseline.asleep[b];
+		for (int f = 0; f < Quantization.FIELD_COUNT && !changed; f++)
+			changed = this.fields[f][i] != baseline.fields[f][b];
+		out.writeBoolean(changed);
+		if (!changed)
+			return;
+		out.writeBoolean(this.asleep[i]);
+		for (int f = 0; f < Quantization.FIELD_COUNT; f++) {
+			int bits = quantization.getBits(f);
+			int delta = this.fields[f][i] - baseline.fields[f][b];
+			if (delta == 0) {
+				out.writeBoolean(false);
+				continue;
+			}
+			out.writeBoolean(true);
+			// the difference modulo 2^bits as a signed value, zigzag encoded
+			int signed = (delta << (32 - bits)) >> (32 - bits);
+			int zigzag = (signed << 1) ^ (signed >> 31);
+			// the highest set bit is implied by the length
+			int length = 32 - Integer.numberOfLeadingZeros(zigzag);
+			out.write(length, lengthBits(bits));
+			out.write(zigzag, length - 1);
+		}
+	}
+
+	/**
+	 * Reads the entities of a frame written by
+	 * {@link #encode(BitWriter, SnapshotFrame, Quantization)} into this frame.
+	 *
+	 * @param baseline
+	 *            the same baseline the frame was encoded against.
+	 * @throws IllegalArgumentException
+	 *             if the data is invalid.
+	 */
+	void decode(BitReader in, SnapshotFrame baseline, Quantization quantization) {
+		int count = in.readVarInt();
+		// every entity takes at least two bits. check before allocating, so a
+		// forged count cannot exhaust the memory
+		if (count < 0 || count > in.remaining() / 2)
+			throw new IllegalArgumentException("invalid entity count " + count);
+		this.ensureCapacity(count);
+		this.size = count;
+		int previous = -1;
+		int b = 0;
+		int baseSize = baseline == null ? 0 : baseline.size;
+		for (int i = 0; i < count; i++) {
+			int id = previous + 1 + (in.readBoolean() ? 0 : in.readVarInt());
+			if (id <= previous)
+				throw new IllegalArgumentException("invalid entity id " + id);
+			previous = id;
+			this.ids[i] = id;
+			while (b < baseSize && baseline.ids[b] < id)
+				b++;
+			if (b < baseSize && baseline.ids[b] == id)
+				this.decodeDelta(in, i, baseline, b, quantization);
+			else
+				this.decodeFull(in, i, quantization);
+		}
+	}
+
+	private void decodeFull(BitReader in, int i, Quantization quantization) {
+		this.asleep[i] = in.readBoolean();
+		for (int f = 0; f < Quantization.FIELD_COUNT; f++)
+			this.fields[f][i] = in.read(quantization.getBits(f));
+	}
+
+	private void decodeDelta(BitReader in, int i, SnapshotFrame baseline, int b, Quantization quantization) {
+		if (!in.readBoolean()) {
+			this.asleep[i] = baseline.asleep[b];
+			for (int f = 0; f < Quantization.FIELD_COUNT; f++)
+				this.fields[f][i] = baseline.fields[f][b];
+			return;
+		}
+		this.asleep[i] = in.readBoolean();
+		for (int f = 0; f < Quantization.FIELD_COUNT; f++) {
+			int base = baseline.fields[f][b];
+			if (!in.readBoolean()) {
+				this.fields[f][i] = base;
+				continue;
+			}
+			int bits = quantization.getBits(f);
+			int length = in.read(lengthBits(bits));
+			if (length == 0 || length > bits)
+				throw new IllegalArgumentException("invalid delta length " + length);
+			int zigzag = (1 << (length - 1)) | in.read(length - 1);
+			int signed = (zigzag >>> 1) ^ -(zigzag & 1);
+			this.fields[f][i] = (int) ((base + signed) & ((1L << bits) - 1));
+		}
+	}
+
+	/**
+	 * @return the number of bits required to write a length up to the given
+	 *         bit width.
+	 */
+	private static int lengthBits(int bits) {
+		return 32 - Integer.numberOfLeadingZeros(bits);
+	}
+
+}
@@ -0,0 +1,38 @@
+package ch.wados.starfury.net;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Unreliable, unordered datagram channel between a server and a client.
+ * Packets may be lost, duplicated or reordered, but never corrupted or
+ * fragmented. The replication protocol is designed for such a channel.
+ *
+ * @see LoopbackTransport
+ */
+public interface Transport {
+
+	/**
+	 * Sends a packet. The packet is the content between the position and the
+	 * limit of the buffer. The buffer may be reused as soon as the method
+	 * returns.
+	 *
+	 * @param packet
+	 *            the packet. May not be {@code null}.
+	 */
+	void send(ByteBuffer packet);
+
+	/**
+	 * Receives the next pending packet, if any. The packet is written at the
+	 * position of the target buffer.
+	 *
+	 * @param target
+	 *            the buffer to write the packet to. May not be {@code null}.
+	 * @return {@code true} if a packet was received, {@code false} if no packet
+	 *         is pending.
+	 * @throws java.nio.BufferOverflowException
+	 *             if the packet does not fit into the target buffer. The packet
+	 *             is lost.
+	 */
+	boolean receive(ByteBuffer target);
+
+}
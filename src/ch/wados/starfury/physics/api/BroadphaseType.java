@@ -0,0 +1,39 @@
+package ch.wados.starfury.physics.api;
+
+/**
+ * Collection of supported broad-phase implementations.
+ * <p>
+ * The broad-phase finds all pairs of fixtures with overlapping bounding boxes.
+ * Its cost dominates the collision detection of worlds with many entities.
+ * Which implementation performs best depends on the number, size and
+ * distribution of the entities.
+ * </p>
+ * 
+ * @see PhysicsWorldConfig
+ */
+public enum BroadphaseType {
+
+	/**
+	 * A dynamic bounding volume hierarchy. Handles entities of very different
+	 * sizes and sparse worlds well. This is the default.
+	 */
+	DYNAMIC_AABB_TREE,
+
+	/**
+	 * Sweep and prune along a single axis. Efficient for dense groups of
+	 * entities with moderate velocities, but degrades if many entities share
+	 * the same range along the sweep axis.
+	 */
+	SAP,
+
+	/**
+	 * A uniform spatial hash. The plane is divided into square cells of
+	 * {@link PhysicsWorldConfig#getGridCellSize() fixed size}. Best suited for
+	 * large numbers of entities of similar size, where it avoids the tree
+	 * refits of {@link #DYNAMIC_AABB_TREE}. The cell size should be about the
+	 * size of a typical entity. Much larger entities are supported, but are
+	 * tested against all other entities.
+	 */
+	UNIFORM_GRID;
+
+}
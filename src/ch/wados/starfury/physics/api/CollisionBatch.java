@@ -0,0 +1,392 @@
+package ch.wados.starfury.physics.api;
+
+import java.util.Arrays;
+
+import org.dyn4j.geometry.Vector2;
+
+/**
+ * A reusable structure-of-arrays buffer holding all contact points solved
+ * during a single physics step. Every row of the batch holds the same data as
+ * a {@link CollisionPoint}, but no objects are created per contact.
+ * <p>
+ * A batch is owned by the {@link PhysicsManager} and is reused for every step.
+ * Its contents are therefore only valid for the duration of the
+ * {@link CollisionBatchListener#collisions(CollisionBatch)} call. Listeners
+ * that need the data for longer must copy it.
+ * </p>
+ *
+ * @see CollisionBatchListener
+ * @see CollisionPoint
+ */
+public final class CollisionBatch {
+
+	private static final int DEFAULT_CAPACITY = 64;
+
+	private int size;
+	private PhysicsEntity[] entity0;
+	private PhysicsEntity[] entity1;
+	private String[] fixture0;
+	private String[] fixture1;
+	private int[] handle0;
+	private int[] handle1;
+	private double[] pointX;
+	private double[] pointY;
+	private double[] normalX;
+	private double[] normalY;
+	private double[] normalImpulse;
+	private double[] tangentialImpulse;
+
+	/**
+	 * Creates a new empty batch with a default capacity.
+	 */
+	public CollisionBatch() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Creates a new empty batch with a given initial capacity. The batch grows
+	 * as needed.
+	 *
+	 * @param capacity
+	 *            the initial capacity. Must be positive or zero.
+	 * @throws IllegalArgumentException
+	 *             if the {@code capacity} is negative.
+	 */
+	public CollisionBatch(int capacity) {
+		if (capacity < 0)
+			throw new IllegalArgumentException("capacity may not be negative. Was " + capacity);
+		this.allocate(capacity);
+	}
+
+	private void allocate(int capacity) {
+		this.entity0 = new PhysicsEntity[capacity];
+		this.entity1 = new PhysicsEntity[capacity];
+		this.fixture0 = new String[capacity];
+		this.fixture1 = new String[capacity];
+		this.handle0 = new int[capacity];
+		this.handle1 = new int[capacity];
+		this.pointX = new double[capacity];
+		this.pointY = new double[capacity];
+		this.normalX = new double[capacity];
+		this.normalY = new double[capacity];
+		this.normalImpulse = new double[capacity];
+		this.tangentialImpulse = new double[capacity];
+	}
+
+	private void ensureCapacity(int capacity) {
+		if (capacity <= this.entity0.length)
+			return;
+		int length = Math.max(capacity, Math.max(DEFAULT_CAPACITY, this.entity0.length * 2));
+		this.entity0 = Arrays.copyOf(this.entity0, length);
+		this.entity1 = Arrays.copyOf(this.entity1, length);
+		this.fixture0 = Arrays.copyOf(this.fixture0, length);
+		this.fixture1 = Arrays.copyOf(this.fixture1, length);
+		this.handle0 = Arrays.copyOf(this.handle0, length);
+		this.handle1 = Arrays.copyOf(this.handle1, length);
+		this.pointX = Arrays.copyOf(this.pointX, length);
+		this.pointY = Arrays.copyOf(this.pointY, length);
+		this.normalX = Arrays.copyOf(this.normalX, length);
+		this.normalY = Arrays.copyOf(this.normalY, length);
+		this.normalImpulse = Arrays.copyOf(this.normalImpulse, length);
+		this.tangentialImpulse = Arrays.copyOf(this.tangentialImpulse, length);
+	}
+
+	/**
+	 * Appends a contact point to the batch. For internal use of the physics
+	 * engine only! Since it should only be used internally, null checks and
+	 * input validation is omitted for performance.
+	 *
+	 * @param entity0
+	 * @param fixture0
+	 * @param handle0
+	 * @param entity1
+	 * @param fixture1
+	 * @param handle1
+	 * @param pointX
+	 * @param pointY
+	 * @param normalX
+	 * @param normalY
+	 * @param normalImpulse
+	 * @param tangentialImpulse
+	 */
+	public void add(PhysicsEntity entity0, String fixture0, int handle0, PhysicsEntity entity1, String fixture1,
+			int handle1, double pointX, double pointY, double normalX, double normalY, double normalImpulse,
+			double tangentialImpulse) {
+		this.ensureCapacity(this.size + 1);
+		int i = this.size++;
+		this.entity0[i] = entity0;
+		this.entity1[i] = entity1;
+		this.fixture0[i] = fixture0;
+		this.fixture1[i] = fixture1;
+		this.handle0[i] = handle0;
+		this.handle1[i] = handle1;
+		this.pointX[i] = pointX;
+		this.pointY[i] = pointY;
+		// store the normal normalised
+		double length = Math.sqrt(normalX * normalX + normalY * normalY);
+		if (length > 0) {
+			normalX /= length;
+			normalY /= length;
+		}
+		this.normalX[i] = normalX;
+		this.normalY[i] = normalY;
+		this.normalImpulse[i] = normalImpulse;
+		this.tangentialImpulse[i] = tangentialImpulse;
+	}
+
+	/**
+	 * Appends all contact points of another batch to this one. For internal use
+	 * of the physics engine only!
+	 *
+	 * @param other
+	 *            the batch to copy the contact points from.
+	 */
+	public void addAll(CollisionBatch other) {
+		int n = other.size;
+		this.ensureCapacity(this.size + n);
+		System.arraycopy(other.entity0, 0, this.entity0, this.size, n);
+		System.arraycopy(other.entity1, 0, this.entity1, this.size, n);
+		System.arraycopy(other.fixture0, 0, this.fixture0, this.size, n);
+		System.arraycopy(other.fixture1, 0, this.fixture1, this.size, n);
+		System.arraycopy(other.handle0, 0, this.handle0, this.size, n);
+		System.arraycopy(other.handle1, 0, this.handle1, this.size, n);
+		System.arraycopy(other.pointX, 0, this.pointX, this.size, n);
+		System.arraycopy(other.pointY, 0, this.pointY, this.size, n);
+		System.arraycopy(other.normalX, 0, this.normalX, this.size, n);
+		System.arraycopy(other.normalY, 0, this.normalY, this.size, n);
+		System.arraycopy(other.normalImpulse, 0, this.normalImpulse, this.size, n);
+		System.arraycopy(other.tangentialImpulse, 0, this.tangentialImpulse, this.size, n);
+		this.size += n;
+	}
+
+	/**
+	 * Appends a single contact point of another batch to this one.
+	 *
+	 * @param other
+	 *            the batch to copy the contact point from. May not be
+	 *            {@code null}.
+	 * @param index
+	 *            the index of the contact point in the {@code other} batch.
+	 * @throws IndexOutOfBoundsException
+	 *             if the {@code index} is out of range.
+	 */
+	public void add(CollisionBatch other, int index) {
+		other.check(index);
+		this.ensureCapacity(this.size + 1);
+		int i = this.size++;
+		this.entity0[i] = other.entity0[index];
+		this.entity1[i] = other.entity1[index];
+		this.fixture0[i] = other.fixture0[index];
+		this.fixture1[i] = other.fixture1[index];
+		this.handle0[i] = other.handle0[index];
+		this.handle1[i] = other.handle1[index];
+		this.pointX[i] = other.pointX[index];
+		this.pointY[i] = other.pointY[index];
+		this.normalX[i] = other.normalX[index];
+		this.normalY[i] = other.normalY[index];
+		this.normalImpulse[i] = other.normalImpulse[index];
+		this.tangentialImpulse[i] = other.tangentialImpulse[index];
+	}
+
+	/**
+	 * Removes all contact points from the batch. The capacity is retained. For
+	 * internal use of the physics engine only!
+	 */
+	public void clear() {
+		// release the references so despawned entities can be collected
+		Arrays.fill(this.entity0, 0, this.size, null);
+		Arrays.fill(this.entity1, 0, this.size, null);
+		Arrays.fill(this.fixture0, 0, this.size, null);
+		Arrays.fill(this.fixture1, 0, this.size, null);
+		this.size = 0;
+	}
+
+	/**
+	 * @return the number of contact points in the batch.
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * @return {@code true} if the batch holds no contact points.
+	 */
+	public boolean isEmpty() {
+		return this.size == 0;
+	}
+
+	private void check(int index) {
+		if (index < 0 || index >= this.size)
+			throw new IndexOutOfBoundsException("index " + index + " out of range [0," + this.size + ")");
+	}
+
+	/**
+	 * @param index
+	 *            the contact index.
+	 * @return the first entity involved in the collision.
+	 * @throws IndexOutOfBoundsException
+	 *             if the {@code index} is out of range.
+	 */
+	public PhysicsEntity getEntity0(int index) {
+		this.check(index);
+		return this.entity0[index];
+	}
+
+	/**
+	 * @param index
+	 *            the contact index.
+	 * @return the second entity involved in the collision.
+	 * @throws IndexOutOfBoundsException
+	 *             if the {@code index} is out of range.
+	 */
+	public PhysicsEntity getEntity1(int index) {
+		this.check(index);
+		return this.entity1[index];
+	}
+
+	/**
+	 * @param index
+	 *            the contact index.
+	 * @return the identifier of the involved fixture of the first entity.
+	 * @throws IndexOutOfBoundsException
+	 *             if the {@code index} is out of range.
+	 */
+	public String getFixture0(int index) {
+		this.check(index);
+		return this.fixture0[index];
+	}
+
+	/**
+	 * @param index
+	 *            the contact index.
+	 * @return the identifier of the involved fixture of the second entity.
+	 * @throws IndexOutOfBoundsException
+	 *             if the {@code index} is out of range.
+	 */
+	public String getFixture1(int index) {
+		this.check(index);
+		return this.fixture1[index];
+	}
+
+	/**
+	 * @param index
+	 *            the contact index.
+	 * @return the handle of the involved fixture of the first entity.
+	 * @throws IndexOutOfBoundsException
+	 *             if the {@code index} is out of range.
+	 * 
+	 * @see PhysicsEntity#getFixtureHandle(String)
+	 */
+	public int getFixtureHandle0(int index) {
+		this.check(index);
+		return this.handle0[index];
+	}
+
+	/**
+	 * @param index
+	 *            the contact index.
+	 * @return the handle of the involved fixture of the second entity.
+	 * @throws IndexOutOfBoundsException
+	 *             if the {@code index} is out of range.
+	 * 
+	 * @see PhysicsEntity#getFixtureHandle(String)
+	 */
+	public int getFixtureHandle1(int index) {
+		this.check(index);
+		return this.handle1[index];
+	}
+
+	/**
+	 * @param index
+	 *            the contact index.
+	 * @return the x coordinate of the contact point in the world frame of
+	 *         reference.
+	 * @throws IndexOutOfBoundsException
+	 *             if the {@code index} is out of range.
+	 */
+	public double getPointX(int index) {
+		this.check(index);
+		return this.pointX[index];
+	}
+
+	/**
+	 * @param index
+	 *            the contact index.
+	 * @return the y coordinate of the contact point in the world frame of
+	 *         reference.
+	 * @throws IndexOutOfBoundsException
+	 *             if the {@code index} is out of range.
+	 */
+	public double getPointY(int index) {
+		this.check(index);
+		return this.pointY[index];
+	}
+
+	/**
+	 * @param index
+	 *            the contact index.
+	 * @return the x component of the normalised contact normal.
+	 * @throws IndexOutOfBoundsException
+	 *             if the {@code index} is out of range.
+	 */
+	public double getNormalX(int index) {
+		this.check(index);
+		return this.normalX[index];
+	}
+
+	/**
+	 * @param index
+	 *            the contact index.
+	 * @return the y component of the normalised contact normal.
+	 * @throws IndexOutOfBoundsException
+	 *             if the {@code index} is out of range.
+	 */
+	public double getNormalY(int index) {
+		this.check(index);
+		return this.normalY[index];
+	}
+
+	/**
+	 * @param index
+	 *            the contact index.
+	 * @return the impulse transferred along the normal vector.
+	 * @throws IndexOutOfBoundsException
+	 *             if the {@code index} is out of range.
+	 */
+	public double getNormalImpulse(int index) {
+		this.check(index);
+		return this.normalImpulse[index];
+	}
+
+	/**
+	 * @param index
+	 *            the contact index.
+	 * @return the impulse transferred tangentially to the contact (friction).
+	 * @throws IndexOutOfBoundsException
+	 *             if the {@code index} is out of range.
+	 */
+	public double getTangentialImpulse(int index) {
+		this.check(index);
+		return this.tangentialImpulse[index];
+	}
+
+	/**
+	 * Creates a {@link CollisionPoint} holding the data of a single contact.
+	 * This allocates new objects and should only be used for compatibility
+	 * with {@link CollisionListener CollisionListeners}.
+	 *
+	 * @param index
+	 *            the contact index.
+	 * @return a new collision point instance.
+	 * @throws IndexOutOfBoundsException
+	 *             if the {@code index} is out of range.
+	 */
+	public CollisionPoint toCollisionPoint(int index) {
+		this.check(index);
+		return new CollisionPoint(this.entity0[index], this.fixture0[index], this.handle0[index],
+				this.entity1[index], this.fixture1[index], this.handle1[index], new Vector2(this.pointX[index], this.pointY[index]),
+				new Vector2(this.normalX[index], this.normalY[index]), this.normalImpulse[index],
+				this.tangentialImpulse[index]);
+	}
+
+}
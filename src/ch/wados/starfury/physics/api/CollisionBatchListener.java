@@ -0,0 +1,29 @@
+package ch.wados.starfury.physics.api;
+
+/**
+ * A CollisionBatchListener receives all contact points solved during a physics
+ * step at once. The listener is invoked after the step has completed, but
+ * before any {@link UpdateListener}. The {@link CollisionBatch} is reused for
+ * every step and its contents are only valid during the invocation.
+ * <p>
+ * Compared to {@link CollisionListener CollisionListeners} no objects are
+ * created per contact point. This makes batch listeners the preferred way of
+ * processing large numbers of collisions.
+ * </p>
+ *
+ * @see CollisionBatch
+ * @see CollisionListener
+ */
+@FunctionalInterface
+public interface CollisionBatchListener {
+
+	/**
+	 * Called once per physics step with all contact points solved during that
+	 * step. The batch may be empty.
+	 *
+	 * @param batch
+	 *            the contact points of the step. Must not be modified.
+	 */
+	void collisions(CollisionBatch batch);
+
+}
@@ -3,16 +3,22 @@ package ch.wados.starfury.physics.api;
 /**
  * Whenever a collision is detected and resolved through dynamic collision
  * detection, a {@link CollisionPoint} is created. All registered
- * CollisionListeners will be invoked. Since the invocation takes place during
- * the physics calculations, the world must not be altered. It is recommended to
- * buffer any required changes and to perform them through an
+ * CollisionListeners will be invoked. The invocation takes place at the end of
+ * a physics step, before the {@link UpdateListener UpdateListeners}. It is
+ * recommended to buffer any required changes and to perform them through an
  * {@link UpdateListener}.
- * 
+ * <p>
+ * A {@link CollisionPoint} instance is created for every contact point. For
+ * large numbers of collisions a {@link CollisionBatchListener} should be
+ * preferred.
+ * </p>
+ *
  * @author Andreas Wälchli
  * @version 1.1 - 2016/06/14
  * @since StarFury 0.0.1
  * 
  * @see CollisionPoint
+ * @see CollisionBatchListener
  * @see UpdateListener
  */
 @FunctionalInterface
@@ -34,6 +34,20 @@ public final class CollisionPoint {
 	 * The identifier of the involved fixture of {@code entity1}.
 	 */
 	public final String fixture1;
+	/**
+	 * The handle of the involved fixture of {@code entity0}, or {@code -1} if
+	 * unknown.
+	 * 
+	 * @see PhysicsEntity#getFixtureHandle(String)
+	 */
+	public final int fixtureHandle0;
+	/**
+	 * The handle of the involved fixture of {@code entity1}, or {@code -1} if
+	 * unknown.
+	 * 
+	 * @see PhysicsEntity#getFixtureHandle(String)
+	 */
+	public final int fixtureHandle1;
 	/**
 	 * The contact point in the world frame of reference.
 	 */
@@ -70,11 +84,36 @@ public final class CollisionPoint {
 	 */
 	public CollisionPoint(PhysicsEntity entity0, String fixture0, PhysicsEntity entity1, String fixture1,
 			Vector2 contactPoint, Vector2 contactNormal, double normalImpulse, double tangentialImpulse) {
+		this(entity0, fixture0, -1, entity1, fixture1, -1, contactPoint, contactNormal, normalImpulse,
+				tangentialImpulse);
+	}
+
+	/**
+	 * creates a new CollisionPoint instance including fixture handles. For
+	 * internal use of the physics engine only! Since it should only be used
+	 * internally, null checks and input validation is omitted for performance.
+	 * 
+	 * @param entity0
+	 * @param fixture0
+	 * @param fixtureHandle0
+	 * @param entity1
+	 * @param fixture1
+	 * @param fixtureHandle1
+	 * @param contactPoint
+	 * @param contactNormal
+	 * @param normalImpulse
+	 * @param tangentialImpulse
+	 */
+	public CollisionPoint(PhysicsEntity entity0, String fixture0, int fixtureHandle0, PhysicsEntity entity1,
+			String fixture1, int fixtureHandle1, Vector2 contactPoint, Vector2 contactNormal, double normalImpulse,
+			double tangentialImpulse) {
 		super();
 		this.entity0 = entity0;
 		this.fixture0 = fixture0;
+		this.fixtureHandle0 = fixtureHandle0;
 		this.entity1 = entity1;
 		this.fixture1 = fixture1;
+		this.fixtureHandle1 = fixtureHandle1;
 		this.contactPoint = contactPoint;
 		this.contactNormal = contactNormal.getNormalized();
 		this.normalImpulse = normalImpulse;
@@ -0,0 +1,85 @@
+package ch.wados.starfury.physics.api;
+
+/**
+ * A contact pair holds the aggregated data of the contact between two
+ * fixtures during a single physics step. Unlike a {@link CollisionPoint} it
+ * represents the whole contact manifold of the two fixtures: the impulses are
+ * summed over all solved contact points of the step.
+ * <p>
+ * The order of the entities is fixed when the contact begins and is kept for
+ * all subsequent events of the same pair.
+ * </p>
+ * 
+ * @see ContactPairListener
+ */
+public final class ContactPair {
+
+	/**
+	 * The first entity of the pair.
+	 */
+	public final PhysicsEntity entity0;
+	/**
+	 * The second entity of the pair.
+	 */
+	public final PhysicsEntity entity1;
+	/**
+	 * The identifier of the involved fixture of {@code entity0}.
+	 */
+	public final String fixture0;
+	/**
+	 * The identifier of the involved fixture of {@code entity1}.
+	 */
+	public final String fixture1;
+	/**
+	 * The handle of the involved fixture of {@code entity0}.
+	 */
+	public final int fixtureHandle0;
+	/**
+	 * The handle of the involved fixture of {@code entity1}.
+	 */
+	public final int fixtureHandle1;
+	/**
+	 * The number of contact points solved during the step. Zero for ended
+	 * contacts.
+	 */
+	public final int pointCount;
+	/**
+	 * The sum of the normal impulses of all contact points of the step. Zero
+	 * for ended contacts.
+	 */
+	public final double normalImpulse;
+	/**
+	 * The sum of the tangential impulses (friction) of all contact points of
+	 * the step. Zero for ended contacts.
+	 */
+	public final double tangentialImpulse;
+
+	/**
+	 * creates a new ContactPair instance. For internal use of the physics
+	 * engine only! Since it should only be used internally, null checks and
+	 * input validation is omitted for performance.
+	 * 
+	 * @param entity0
+	 * @param fixture0
+	 * @param fixtureHandle0
+	 * @param entity1
+	 * @param fixture1
+	 * @param fixtureHandle1
+	 * @param pointCount
+	 * @param normalImpulse
+	 * @param tangentialImpulse
+	 */
+	public ContactPair(PhysicsEntity entity0, String fixture0, int fixtureHandle0, PhysicsEntity entity1,
+			String fixture1, int fixtureHandle1, int pointCount, double normalImpulse, double tangentialImpulse) {
+		this.entity0 = entity0;
+		this.fixture0 = fixture0;
+		this.fixtureHandle0 = fixtureHandle0;
+		this.entity1 = entity1;
+		this.fixture1 = fixture1;
+		this.fixtureHandle1 = fixtureHandle1;
+		this.pointCount = pointCount;
+		this.normalImpulse = normalImpulse;
+		this.tangentialImpulse = tangentialImpulse;
+	}
+
+}
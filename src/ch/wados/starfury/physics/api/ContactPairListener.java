@@ -0,0 +1,50 @@
+package ch.wados.starfury.physics.api;
+
+/**
+ * A ContactPairListener is notified about contacts between pairs of fixtures
+ * instead of individual contact points. Every pair produces exactly one
+ * {@link #contactBegin(ContactPair) begin} event in the step the fixtures
+ * first touch and one {@link #contactEnd(ContactPair) end} event in the first
+ * step they no longer touch. In between, a
+ * {@link #contactPersist(ContactPair) persist} event is produced every step,
+ * but only if the listener was registered for persist events.
+ * <p>
+ * Events are produced for solved contacts only, sensor contacts are not
+ * reported. All events of a step are delivered after the step has completed,
+ * after the {@link CollisionBatchListener CollisionBatchListeners} and before
+ * the {@link CollisionListener CollisionListeners}.
+ * </p>
+ * 
+ * @see PhysicsManager#addContactPairListener(ContactPairListener, boolean)
+ */
+public interface ContactPairListener {
+
+	/**
+	 * Called in the first step two fixtures are in contact.
+	 * 
+	 * @param pair
+	 *            the contact data of the step.
+	 */
+	void contactBegin(ContactPair pair);
+
+	/**
+	 * Called in every further step two fixtures remain in contact. Only called
+	 * if the listener was registered for persist events.
+	 * 
+	 * @param pair
+	 *            the contact data of the step.
+	 */
+	default void contactPersist(ContactPair pair) {
+	}
+
+	/**
+	 * Called in the first step two fixtures are no longer in contact. This is
+	 * also the case if one of the entities has been despawned or the fixture
+	 * has been removed.
+	 * 
+	 * @param pair
+	 *            the pair. All impulses are zero.
+	 */
+	void contactEnd(ContactPair pair);
+
+}
@@ -0,0 +1,65 @@
+package ch.wados.starfury.physics.api;
+
+import java.util.Arrays;
+
+/**
+ * {@link LodPolicy} with fixed distance tiers. Every tier applies from a
+ * minimal distance on, up to the distance of the next tier. Entities closer
+ * than the first tier are fully simulated.
+ */
+public final class DistanceLodPolicy implements LodPolicy {
+
+	private double[] distances = new double[0];
+	private int[] intervals = new int[0];
+
+	/**
+	 * adds a tier. Tiers may be added in any order.
+	 *
+	 * @param distance
+	 *            the minimal distance of the tier. Must be positive or zero
+	 *            and finite and may not be used by another tier.
+	 * @param interval
+	 *            the step interval of the tier. Must be strictly positive.
+	 * @return the policy itself
+	 * @throws IllegalArgumentException
+	 *             if any argument is invalid.
+	 */
+	public DistanceLodPolicy addTier(double distance, int interval) {
+		if (!(distance >= 0) || !Double.isFinite(distance))
+			throw new IllegalArgumentException("distance may not be negative. Was " + distance);
+		if (interval <= 0)
+			throw new IllegalArgumentException("interval must be positive. Was " + interval);
+		int index = Arrays.binarySearch(this.distances, distance);
+		if (index >= 0)
+			throw new IllegalArgumentException("duplicate tier at distance " + distance);
+		index = -index - 1;
+		int n = this.distances.length;
+		double[] distances = new double[n + 1];
+		int[] intervals = new int[n + 1];
+		System.arraycopy(this.distances, 0, distances, 0, index);
+		System.arraycopy(this.intervals, 0, intervals, 0, index);
+		distances[index] = distance;
+		intervals[index] = interval;
+		System.arraycopy(this.distances, index, distances, index + 1, n - index);
+		System.arraycopy(this.intervals, index, intervals, index + 1, n - index);
+		this.distances = distances;
+		this.intervals = intervals;
+		return this;
+	}
+
+	@Override
+	public int getInterval(double distance) {
+		int interval = 1;
+		for (int i = 0; i < this.distances.length && this.distances[i] <= distance; i++)
+			interval = this.intervals[i];
+		return interval;
+	}
+
+	/**
+	 * @return the number of tiers.
+	 */
+	public int getTierCount() {
+		return this.distances.length;
+	}
+
+}
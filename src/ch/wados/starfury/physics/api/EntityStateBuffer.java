@@ -0,0 +1,190 @@
+package ch.wados.starfury.physics.api;
+
+import java.util.Arrays;
+
+/**
+ * A reusable structure-of-arrays buffer holding the kinematic state of a set
+ * of {@link PhysicsEntity PhysicsEntities}. It is filled by
+ * {@link PhysicsManager#exportState(EntityStateBuffer)} without any
+ * per-entity allocation.
+ * <p>
+ * The state of an entity is stored at the same index in every column. Only
+ * the first {@link #size()} entries of a column are valid. The column arrays
+ * are exposed directly for fast iteration. They may be replaced when the
+ * buffer grows, so they should be fetched again after every export.
+ * </p>
+ *
+ * @see PhysicsManager#exportState(EntityStateBuffer)
+ */
+public final class EntityStateBuffer {
+
+	private static final int DEFAULT_CAPACITY = 64;
+
+	private int size;
+	private PhysicsEntity[] entities;
+	private double[] x;
+	private double[] y;
+	private double[] angle;
+	private double[] vx;
+	private double[] vy;
+	private double[] omega;
+	private boolean[] asleep;
+
+	/**
+	 * Creates a new empty buffer with a default capacity.
+	 */
+	public EntityStateBuffer() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Creates a new empty buffer with a given initial capacity. The buffer
+	 * grows as needed.
+	 *
+	 * @param capacity
+	 *            the initial capacity. Must be positive or zero.
+	 * @throws IllegalArgumentException
+	 *             if the {@code capacity} is negative.
+	 */
+	public EntityStateBuffer(int capacity) {
+		if (capacity < 0)
+			throw new IllegalArgumentException("capacity may not be negative. Was " + capacity);
+		this.entities = new PhysicsEntity[capacity];
+		this.x = new double[capacity];
+		this.y = new double[capacity];
+		this.angle = new double[capacity];
+		this.vx = new double[capacity];
+		this.vy = new double[capacity];
+		this.omega = new double[capacity];
+		this.asleep = new boolean[capacity];
+	}
+
+	/**
+	 * Ensures that the buffer can hold at least a given number of entities
+	 * without growing.
+	 *
+	 * @param capacity
+	 *            the required capacity.
+	 */
+	public void ensureCapacity(int capacity) {
+		if (capacity <= this.entities.length)
+			return;
+		int length = Math.max(capacity, Math.max(DEFAULT_CAPACITY, this.entities.length * 2));
+		this.entities = Arrays.copyOf(this.entities, length);
+		this.x = Arrays.copyOf(this.x, length);
+		this.y = Arrays.copyOf(this.y, length);
+		this.angle = Arrays.copyOf(this.angle, length);
+		this.vx = Arrays.copyOf(this.vx, length);
+		this.vy = Arrays.copyOf(this.vy, length);
+		this.omega = Arrays.copyOf(this.omega, length);
+		this.asleep = Arrays.copyOf(this.asleep, length);
+	}
+
+	/**
+	 * Appends the state of an entity. For internal use of the physics engine
+	 * only! Since it should only be used internally, null checks and input
+	 * validation is omitted for performance. The capacity must have been
+	 * ensured beforehand.
+	 *
+	 * @param entity
+	 * @param x
+	 * @param y
+	 * @param angle
+	 * @param vx
+	 * @param vy
+	 * @param omega
+	 * @param asleep
+	 */
+	public void add(PhysicsEntity entity, double x, double y, double angle, double vx, double vy, double omega,
+			boolean asleep) {
+		int i = this.size++;
+		this.entities[i] = entity;
+		this.x[i] = x;
+		this.y[i] = y;
+		this.angle[i] = angle;
+		this.vx[i] = vx;
+		this.vy[i] = vy;
+		this.omega[i] = omega;
+		this.asleep[i] = asleep;
+	}
+
+	/**
+	 * Removes all entries from the buffer. The capacity is retained.
+	 */
+	public void clear() {
+		// release the references so despawned entities can be collected
+		Arrays.fill(this.entities, 0, this.size, null);
+		this.size = 0;
+	}
+
+	/**
+	 * @return the number of entities in the buffer.
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * @return the entity column.
+	 */
+	public PhysicsEntity[] getEntities() {
+		return this.entities;
+	}
+
+	/**
+	 * @return the column of the x coordinates of the entity positions.
+	 * @see PhysicsEntity#getPosition()
+	 */
+	public double[] getX() {
+		return this.x;
+	}
+
+	/**
+	 * @return the column of the y coordinates of the entity positions.
+	 * @see PhysicsEntity#getPosition()
+	 */
+	public double[] getY() {
+		return this.y;
+	}
+
+	/**
+	 * @return the column of the entity orientations in radians.
+	 * @see PhysicsEntity#getOrientation()
+	 */
+	public double[] getAngle() {
+		return this.angle;
+	}
+
+	/**
+	 * @return the column of the x components of the linear velocities.
+	 * @see PhysicsEntity#getLinearVelocity()
+	 */
+	public double[] getVelocityX() {
+		return this.vx;
+	}
+
+	/**
+	 * @return the column of the y components of the linear velocities.
+	 * @see PhysicsEntity#getLinearVelocity()
+	 */
+	public double[] getVelocityY() {
+		return this.vy;
+	}
+
+	/**
+	 * @return the column of the angular velocities in {@code rad/s}.
+	 * @see PhysicsEntity#getAngularVelocity()
+	 */
+	public double[] getAngularVelocity() {
+		return this.omega;
+	}
+
+	/**
+	 * @return the column of the sleep flags. An asleep entity is at rest and
+	 *         not simulated until it is woken up.
+	 */
+	public boolean[] getAsleep() {
+		return this.asleep;
+	}
+
+}
@@ -0,0 +1,167 @@
+package ch.wados.starfury.physics.api;
+
+import java.util.Objects;
+
+/**
+ * Drives a {@link PhysicsManager} with steps of a constant size from a
+ * variable frame time.
+ * <p>
+ * The elapsed frame time is collected in an accumulator. On every
+ * {@link #advance(double)} call as many fixed steps are performed as fit into
+ * the accumulator. The remainder is carried over to the next frame. To avoid a
+ * spiral of death (where steps take longer than the time they simulate) at
+ * most {@code maxSteps} steps are performed per frame. Any time beyond that is
+ * dropped, i.e. the simulation slows down instead of falling further behind.
+ * </p>
+ * <p>
+ * The remainder is exposed as {@link #getAlpha() alpha}, the fraction of a
+ * step the rendered frame lies past the last simulated state. Renderers can
+ * use it to interpolate between the previous and the current state for smooth
+ * motion at any refresh rate.
+ * </p>
+ *
+ * @see PhysicsManager#stepWorld(double)
+ */
+public final class FixedStepDriver {
+
+	private final PhysicsManager manager;
+	private final double stepTime;
+	private final int maxSteps;
+	private double accumulator = 0;
+	private double droppedTime = 0;
+	private long stepCount = 0;
+
+	/**
+	 * Creates a new driver.
+	 *
+	 * @param manager
+	 *            the manager to step. May not be {@code null}.
+	 * @param stepTime
+	 *            the fixed step duration in seconds. Must be strictly positive
+	 *            and finite.
+	 * @param maxSteps
+	 *            the maximum number of steps performed per frame. Must be
+	 *            strictly positive.
+	 * @throws NullPointerException
+	 *             if the {@code manager} is {@code null}.
+	 * @throws IllegalArgumentException
+	 *             if the {@code stepTime} or the {@code maxSteps} is invalid.
+	 */
+	public FixedStepDriver(PhysicsManager manager, double stepTime, int maxSteps) {
+		Objects.requireNonNull(manager);
+		if (stepTime <= 0 || !Double.isFinite(stepTime))
+			throw new IllegalArgumentException("step time must be positive. Was " + stepTime);
+		if (maxSteps <= 0)
+			throw new IllegalArgumentException("max steps must be positive. Was " + maxSteps);
+		this.manager = manager;
+		this.stepTime = stepTime;
+		this.maxSteps = maxSteps;
+	}
+
+	/**
+	 * Advances the simulation by a frame time. Performs between 0 and
+	 * {@code maxSteps} fixed steps.
+	 *
+	 * @param frameTime
+	 *            the time elapsed since the last call in seconds. Must be
+	 *            positive or zero and finite.
+	 * @return the number of steps performed.
+	 * @throws IllegalArgumentException
+	 *             if the {@code frameTime} is negative or non-finite.
+	 */
+	public int advance(double frameTime) {
+		if (frameTime < 0 || !Double.isFinite(frameTime))
+			throw new IllegalArgumentException("frame time must be positive. Was " + frameTime);
+		this.accumulator += frameTime;
+		int steps = 0;
+		while (this.accumulator >= this.stepTime && steps < this.maxSteps) {
+			this.manager.stepWorld(this.stepTime);
+			this.accumulator -= this.stepTime;
+			steps++;
+		}
+		this.stepCount += steps;
+		if (this.accumulator >= this.stepTime) {
+			// catch-up cap reached: drop all full steps, keep the remainder
+			double remainder = this.accumulator % this.stepTime;
+			this.droppedTime += this.accumulator - remainder;
+			this.accumulator = remainder;
+		}
+		return steps;
+	}
+
+	/**
+	 * @return the interpolation factor in the range {@code [0, 1)}. This is
+	 *         the fraction of a step accumulated but not yet simulated.
+	 */
+	public double getAlpha() {
+		return this.accumulator / this.stepTime;
+	}
+
+	/**
+	 * Discards the accumulated time. Should be used after pauses.
+	 */
+	public void reset() {
+		this.accumulator = 0;
+	}
+
+	/**
+	 * @return the fixed step duration in seconds.
+	 */
+	public double getStepTime() {
+		return this.stepTime;
+	}
+
+	/**
+	 * @return the maximum number of steps performed per frame.
+	 */
+	public int getMaxSteps() {
+		return this.maxSteps;
+	}
+
+	/**
+	 * @return the total number of steps performed.
+	 */
+	public long getStepCount() {
+		return this.stepCount;
+	}
+
+	/**
+	 * @return the total time in seconds dropped due to the catch-up cap.
+	 */
+	public double getDroppedTime() {
+		return this.droppedTime;
+	}
+
+	/**
+	 * Interpolates linearly between two values.
+	 *
+	 * @param previous
+	 *            the value at the previous step.
+	 * @param current
+	 *            the value at the current step.
+	 * @param alpha
+	 *            the interpolation factor.
+	 * @return the interpolated value.
+	 */
+	public static double interpolate(double previous, double current, double alpha) {
+		return previous + (current - previous) * alpha;
+	}
+
+	/**
+	 * Interpolates between two angles along the shorter arc.
+	 *
+	 * @param previous
+	 *            the angle at the previous step in radians.
+	 * @param current
+	 *            the angle at the current step in radians.
+	 * @param alpha
+	 *            the interpolation factor.
+	 * @return the interpolated angle in radians.
+	 */
+	public static double interpolateAngle(double previous, double current, double alpha) {
+		double delta = current - previous;
+		delta -= 2 * Math.PI * Math.floor((delta + Math.PI) / (2 * Math.PI));
+		return previous + delta * alpha;
+	}
+
+}
@@ -22,6 +22,14 @@ import org.dyn4j.geometry.Convex;
  * can also be defined as a sensor. Collisions with sensors are not resolved,
  * but detected.
  * </p>
+ * <p>
+ * Collisions can be excluded cheaply through category and mask bits. Every
+ * fixture belongs to the categories set in its category bits and collides
+ * only with fixtures of the categories set in its mask bits. Two fixtures are
+ * considered for collision only if each one's category bits intersect the
+ * other one's mask bits. This test is performed in the broad-phase before any
+ * {@link CollisionFilter} is invoked.
+ * </p>
  * 
  * @see Convex
  * @see PhysicsEntity
@@ -30,12 +38,23 @@ import org.dyn4j.geometry.Convex;
  */
 public final class FixtureDefinition implements Lockable {
 
+	/**
+	 * The default category bits.
+	 */
+	public static final int DEFAULT_CATEGORY = 0x0001;
+	/**
+	 * The default mask bits. Collides with all categories.
+	 */
+	public static final int DEFAULT_MASK = 0xFFFFFFFF;
+
 	private Convex shape;
 	private double density;
 	private double friction;
 	private double restitution;
 	private String id;
 	private boolean isSensor;
+	private int categoryBits;
+	private int maskBits;
 	// locking flag
 	private boolean isLocked;
 
@@ -48,6 +67,9 @@ public final class FixtureDefinition implements Lockable {
 	 * <li>{@code friction} = 0.2</li>
 	 * <li>{@code id} = {@code null}</li>
 	 * <li>{@code isSensor} = {@code false}</li>
+	 * <li>{@code categoryBits} = {@code 0x0001}</li>
+	 * <li>{@code maskBits} = {@code 0xFFFFFFFF} (collides with all
+	 * categories)</li>
 	 * </ul>
 	 * 
 	 * @param shape
@@ -66,6 +88,8 @@ public final class FixtureDefinition implements Lockable {
 		this.restitution = 0.0;
 		this.id = null;
 		this.isSensor = false;
+		this.categoryBits = DEFAULT_CATEGORY;
+		this.maskBits = DEFAULT_MASK;
 		this.isLocked = false;
 	}
 
@@ -89,6 +113,8 @@ public final class FixtureDefinition implements Lockable {
 		this.restitution = def.restitution;
 		this.id = def.id;
 		this.isSensor = def.isSensor;
+		this.categoryBits = def.categoryBits;
+		this.maskBits = def.maskBits;
 		this.isLocked = false;
 	}
 
@@ -216,6 +242,37 @@ public final class FixtureDefinition implements Lockable {
 		return this;
 	}
 
+	/**
+	 * sets the category bits.
+	 * 
+	 * @param categoryBits
+	 *            the categories this fixture belongs to. Should usually have
+	 *            exactly one bit set.
+	 * @return itself
+	 * @throws IllegalStateException
+	 *             if the instance is locked.
+	 */
+	public FixtureDefinition setCategoryBits(int categoryBits) {
+		this.enforceLock();
+		this.categoryBits = categoryBits;
+		return this;
+	}
+
+	/**
+	 * sets the mask bits.
+	 * 
+	 * @param maskBits
+	 *            the categories this fixture collides with.
+	 * @return itself
+	 * @throws IllegalStateException
+	 *             if the instance is locked.
+	 */
+	public FixtureDefinition setMaskBits(int maskBits) {
+		this.enforceLock();
+		this.maskBits = maskBits;
+		return this;
+	}
+
 	/**
 	 * indicates the locking state of the instance.
 	 * 
@@ -249,6 +306,14 @@ public final class FixtureDefinition implements Lockable {
 		return this.restitution;
 	}
 
+	public int getCategoryBits() {
+		return this.categoryBits;
+	}
+
+	public int getMaskBits() {
+		return this.maskBits;
+	}
+
 	/**
 	 * Provides a hash value for this definition.
 	 * 
@@ -275,6 +340,8 @@ public final class FixtureDefinition implements Lockable {
 		temp = Double.doubleToLongBits(restitution);
 		result = prime * result + (int) (temp ^ (temp >>> 32));
 		result = prime * result + ((shape == null) ? 0 : shape.hashCode());
+		result = prime * result + categoryBits;
+		result = prime * result + maskBits;
 		return result;
 	}
 
@@ -316,6 +383,10 @@ public final class FixtureDefinition implements Lockable {
 				return false;
 		} else if (!shape.equals(other.shape))
 			return false;
+		if (categoryBits != other.categoryBits)
+			return false;
+		if (maskBits != other.maskBits)
+			return false;
 		return true;
 	}
 
@@ -0,0 +1,28 @@
+package ch.wados.starfury.physics.api;
+
+/**
+ * Decides the simulation level of detail of an entity from its distance to
+ * the nearest observer.
+ * <p>
+ * The level of detail is expressed as a step interval. Entities with an
+ * interval of 1 are fully simulated. Entities with a larger interval are
+ * removed from the solver and moved along their velocity only every
+ * {@code interval} steps, with the time accumulated in between.
+ * </p>
+ *
+ * @see DistanceLodPolicy
+ */
+@FunctionalInterface
+public interface LodPolicy {
+
+	/**
+	 * Provides the step interval for an entity.
+	 *
+	 * @param distance
+	 *            the distance of the entity to the nearest observer. Positive
+	 *            infinity if there are no observers.
+	 * @return the step interval. Values smaller than 1 are treated as 1.
+	 */
+	int getInterval(double distance);
+
+}
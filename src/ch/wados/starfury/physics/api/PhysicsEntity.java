@@ -34,6 +34,22 @@ import org.dyn4j.geometry.Vector2;
  */
 public interface PhysicsEntity extends ListenerRelay {
 
+	/**
+	 * Registers a {@link CollisionListener} for contacts involving a single
+	 * fixture of this entity. The listener is invoked after the listeners
+	 * registered for the whole entity. Subscriptions are kept by identifier,
+	 * so they may be made before the fixture is added and survive its
+	 * removal.
+	 * 
+	 * @param fixture
+	 *            the identifier of the fixture. May not be {@code null}.
+	 * @param listener
+	 *            the listener to add. May not be {@code null}.
+	 * @throws NullPointerException
+	 *             if any parameter is {@code null}.
+	 */
+	void addCollisionListener(String fixture, CollisionListener listener);
+
 	/**
 	 * Adds a new fixture to the entity. Adding fixtures to entities produces
 	 * quite some overhead since the mass distribution and all thrust points
@@ -43,13 +59,16 @@ public interface PhysicsEntity extends ListenerRelay {
 	 *            the definition object for the new fixture. May not be
 	 *            {@code null} or have an {@code id} that is already present in
 	 *            this entity.
+	 * @return the handle of the new fixture.
 	 * @throws NullPointerException
 	 *             if the {@code fixture} is {@code null}.
 	 * @throws IllegalArgumentException
 	 *             if the {@code fixture} contains invalid data like an already
 	 *             present {@code id}.
+	 * 
+	 * @see #getFixtureHandle(String)
 	 */
-	void addFixture(FixtureDefinition fixture);
+	int addFixture(FixtureDefinition fixture);
 
 	/**
 	 * adds a new thrust point to the entity.
@@ -60,11 +79,14 @@ public interface PhysicsEntity extends ListenerRelay {
 	 *            this entity.
 	 * @throws NullPointerException
 	 *             if the {@code thruster} is {@code null}
+	 * @return the handle of the new thrust point.
 	 * @throws IllegalArgumentException
 	 *             if the {@code thruster} has an {@code id} that is already
 	 *             present.
+	 * 
+	 * @see #getThrustPointHandle(String)
 	 */
-	void addThrustPoint(ThrustPointDefinition thruster);
+	int addThrustPoint(ThrustPointDefinition thruster);
 
 	/**
 	 * Applies a given force at a given position for given amount of time. Both
@@ -123,6 +145,39 @@ public interface PhysicsEntity extends ListenerRelay {
 	 */
 	int getFixtureCount();
 
+	/**
+	 * Provides the handle of a fixture. A handle is a non-negative integer
+	 * identifying a fixture within this entity. Every fixture has a handle,
+	 * including fixtures without an identifier. Handles are never reused
+	 * within an entity, so a handle of a removed fixture stays invalid.
+	 * Accessing fixtures by handle avoids any String comparisons.
+	 * 
+	 * @param id
+	 *            the identifier of the fixture. May not be {@code null} or an
+	 *            empty String.
+	 * @return the handle of the fixture.
+	 * @throws NullPointerException
+	 *             if the {@code id} is {@code null}.
+	 * @throws IllegalArgumentException
+	 *             if no fixture exists with id {@code id} or {@code id} is an
+	 *             empty String.
+	 * 
+	 * @see CollisionPoint#fixtureHandle0
+	 */
+	int getFixtureHandle(String id);
+
+	/**
+	 * Provides the identifier of a fixture.
+	 * 
+	 * @param handle
+	 *            the handle of the fixture.
+	 * @return the identifier of the fixture. May be {@code null} if the fixture
+	 *         has no identifier.
+	 * @throws IllegalArgumentException
+	 *             if no fixture exists with the given {@code handle}.
+	 */
+	String getFixtureIdentifier(int handle);
+
 	/**
 	 * @return the linear velocity in {@code m/s}.
 	 */
@@ -181,6 +236,22 @@ public interface PhysicsEntity extends ListenerRelay {
 	 */
 	int getThrustPointCount();
 
+	/**
+	 * Provides the handle of a thrust point. A handle is a non-negative
+	 * integer identifying a thrust point within this entity. Handles are never
+	 * reused within an entity. Accessing thrust points by handle avoids any
+	 * String comparisons.
+	 * 
+	 * @param id
+	 *            the identifier of the thrust point. May not be {@code null}.
+	 * @return the handle of the thrust point.
+	 * @throws NullPointerException
+	 *             if the {@code id} is {@code null}.
+	 * @throws IllegalArgumentException
+	 *             if no thrust point exists with id {@code id}.
+	 */
+	int getThrustPointHandle(String id);
+
 	/**
 	 * @return the local-space-to-world-space {@link Transform} of this entity.
 	 */
@@ -237,6 +308,30 @@ public interface PhysicsEntity extends ListenerRelay {
 	 */
 	boolean isSensor(String id);
 
+	/**
+	 * Indicates if a fixture is a sensor.
+	 * 
+	 * @param handle
+	 *            the handle of the fixture to check.
+	 * @return {@code true} if it is a sensor, {@code false} otherwise.
+	 * @throws IllegalArgumentException
+	 *             if no fixture exists with the given {@code handle}.
+	 */
+	boolean isSensor(int handle);
+
+	/**
+	 * Removes a {@link CollisionListener} registered for a single fixture. If
+	 * the listener is not registered for that fixture, the call is ignored.
+	 * 
+	 * @param fixture
+	 *            the identifier of the fixture. May not be {@code null}.
+	 * @param listener
+	 *            the listener to remove. May not be {@code null}.
+	 * @throws NullPointerException
+	 *             if any parameter is {@code null}.
+	 */
+	void removeCollisionListener(String fixture, CollisionListener listener);
+
 	/**
 	 * Removes a fixture from the entity. Removing fixtures from entities
 	 * produces quite some overhead since the mass distribution and all thrust
@@ -256,6 +351,17 @@ public interface PhysicsEntity extends ListenerRelay {
 	 */
 	void removeFixture(String id);
 
+	/**
+	 * Removes a fixture from the entity.
+	 * 
+	 * @param handle
+	 *            the handle of the fixture to remove. If no matching fixture
+	 *            is found, this is ignored.
+	 * 
+	 * @see #removeFixture(String)
+	 */
+	void removeFixture(int handle);
+
 	/**
 	 * Removes a thrust point from the entity.
 	 * 
@@ -270,6 +376,15 @@ public interface PhysicsEntity extends ListenerRelay {
 	 */
 	void removeThrustPoint(String id);
 
+	/**
+	 * Removes a thrust point from the entity.
+	 * 
+	 * @param handle
+	 *            the handle of the thrust point to remove. If no matching
+	 *            thrust point is found, this is ignored.
+	 */
+	void removeThrustPoint(int handle);
+
 	/**
 	 * Sets the angular velocity to a given value.
 	 * 
@@ -340,6 +455,19 @@ public interface PhysicsEntity extends ListenerRelay {
 	 */
 	void setSensor(String id, boolean isSensor);
 
+	/**
+	 * Updates the sensor flag of a given fixture.
+	 * 
+	 * @param handle
+	 *            the handle of the fixture to update.
+	 * @param isSensor
+	 *            {@code true} if the fixture should be a sensor, {@code false}
+	 *            otherwise.
+	 * @throws IllegalArgumentException
+	 *             if no fixture exists with the given {@code handle}.
+	 */
+	void setSensor(int handle, boolean isSensor);
+
 	/**
 	 * Sets the force applied at a thrust point. This force will continuously be
 	 * applied until a new force value is set.
@@ -358,6 +486,41 @@ public interface PhysicsEntity extends ListenerRelay {
 	 */
 	void setThrust(String id, double force);
 
+	/**
+	 * Sets the force applied at a thrust point.
+	 * 
+	 * @param handle
+	 *            the handle of the thrust point.
+	 * @param force
+	 *            the force (in Newtons) to apply. May not be non-finite.
+	 * @throws IllegalArgumentException
+	 *             if the {@code handle} is not known or the {@code force} is
+	 *             non-finite.
+	 * 
+	 * @see #setThrust(String, double)
+	 */
+	void setThrust(int handle, double force);
+
+	/**
+	 * Sets the forces applied at multiple thrust points at once. This is
+	 * considerably cheaper than individual {@link #setThrust(int, double)}
+	 * calls. The input is validated as a whole: if any value is invalid, no
+	 * thrust point is changed.
+	 * 
+	 * @param handles
+	 *            the handles of the thrust points. May not be {@code null}.
+	 * @param forces
+	 *            the forces (in Newtons) to apply. May not be {@code null},
+	 *            must have the same length as the {@code handles} and may not
+	 *            contain non-finite values.
+	 * @throws NullPointerException
+	 *             if any array is {@code null}.
+	 * @throws IllegalArgumentException
+	 *             if the array lengths differ, any handle is not known or any
+	 *             force is non-finite.
+	 */
+	void setThrusts(int[] handles, double[] forces);
+
 	/**
 	 * Sets the user data field.
 	 * 
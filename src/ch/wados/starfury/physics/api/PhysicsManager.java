@@ -1,7 +1,12 @@
 package ch.wados.starfury.physics.api;
 
+import java.io.IOException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Collection;
 import java.util.List;
 
+import org.dyn4j.geometry.AABB;
 import org.dyn4j.geometry.Vector2;
 
 /**
@@ -15,6 +20,216 @@ import org.dyn4j.geometry.Vector2;
  */
 public interface PhysicsManager extends Listenable {
 
+	/**
+	 * Registers a {@link CollisionBatchListener}. Batch listeners are invoked
+	 * once per step with all solved contact points, before any per-point
+	 * {@link CollisionListener}.
+	 *
+	 * @param listener
+	 *            the listener to add. May not be {@code null}.
+	 * @throws NullPointerException
+	 *             if the {@code listener} is {@code null}.
+	 */
+	void addCollisionBatchListener(CollisionBatchListener listener);
+
+	/**
+	 * Removes a {@link CollisionBatchListener}. If the listener is not
+	 * registered, the call is ignored.
+	 *
+	 * @param listener
+	 *            the listener to remove. May not be {@code null}.
+	 * @throws NullPointerException
+	 *             if the {@code listener} is {@code null}.
+	 */
+	void removeCollisionBatchListener(CollisionBatchListener listener);
+
+	/**
+	 * Finds all spawned entities with a fixture whose bounding box overlaps a
+	 * given box. Must not be called concurrently with
+	 * {@link #stepWorld(double)} or other queries.
+	 * 
+	 * @param aabb
+	 *            the box to search. May not be {@code null}.
+	 * @param results
+	 *            the collection to store the entities in. It is cleared first.
+	 *            Every entity is added at most once. May not be {@code null}.
+	 * @throws NullPointerException
+	 *             if any parameter is {@code null}.
+	 * @throws IllegalStateException
+	 *             if the world is not initialised.
+	 */
+	void queryAABB(AABB aabb, Collection<? super PhysicsEntity> results);
+
+	/**
+	 * Finds all spawned entities with a fixture whose bounding box lies within
+	 * a given distance of a point. Must not be called concurrently with
+	 * {@link #stepWorld(double)} or other queries.
+	 * 
+	 * @param center
+	 *            the point to search around. May not be {@code null}.
+	 * @param radius
+	 *            the search radius. Must be positive or zero and finite.
+	 * @param results
+	 *            the collection to store the entities in. It is cleared first.
+	 *            Every entity is added at most once. May not be {@code null}.
+	 * @throws NullPointerException
+	 *             if any reference parameter is {@code null}.
+	 * @throws IllegalArgumentException
+	 *             if the {@code radius} is invalid.
+	 * @throws IllegalStateException
+	 *             if the world is not initialised.
+	 */
+	void queryRadius(Vector2 center, double radius, Collection<? super PhysicsEntity> results);
+
+	/**
+	 * Finds the first fixture hit by a ray. Sensors are ignored. Must not be
+	 * called concurrently with {@link #stepWorld(double)} or other queries.
+	 * 
+	 * @param start
+	 *            the start point of the ray. May not be {@code null}.
+	 * @param direction
+	 *            the direction of the ray. Need not be normalised. May not be
+	 *            {@code null} or the zero vector.
+	 * @param length
+	 *            the maximum length of the ray. Must be strictly positive. May
+	 *            be {@link Double#POSITIVE_INFINITY} for an unbounded ray.
+	 * @param hit
+	 *            the holder to store the hit in. Cleared if nothing is hit. May
+	 *            not be {@code null}.
+	 * @return {@code true} if a fixture was hit, {@code false} otherwise.
+	 * @throws NullPointerException
+	 *             if any parameter is {@code null}.
+	 * @throws IllegalArgumentException
+	 *             if the {@code direction} or the {@code length} is invalid.
+	 * @throws IllegalStateException
+	 *             if the world is not initialised.
+	 */
+	boolean raycast(Vector2 start, Vector2 direction, double length, RaycastHit hit);
+
+	/**
+	 * Finds all fixtures hit by a ray. Sensors are ignored. Must not be called
+	 * concurrently with {@link #stepWorld(double)} or other queries.
+	 * 
+	 * @param start
+	 *            the start point of the ray. May not be {@code null}.
+	 * @param direction
+	 *            the direction of the ray. Need not be normalised. May not be
+	 *            {@code null} or the zero vector.
+	 * @param length
+	 *            the maximum length of the ray. Must be strictly positive. May
+	 *            be {@link Double#POSITIVE_INFINITY} for an unbounded ray.
+	 * @param hits
+	 *            the buffer to store the hits in. It is cleared first. The hits
+	 *            are ordered by distance. May not be {@code null}.
+	 * @return the number of hits.
+	 * @throws NullPointerException
+	 *             if any parameter is {@code null}.
+	 * @throws IllegalArgumentException
+	 *             if the {@code direction} or the {@code length} is invalid.
+	 * @throws IllegalStateException
+	 *             if the world is not initialised.
+	 */
+	int raycastAll(Vector2 start, Vector2 direction, double length, RaycastHitBuffer hits);
+
+	/**
+	 * Finds the closest fixture hit by every ray of a batch. Sensors are
+	 * ignored. The rays are processed in parallel on worker threads against
+	 * the broad-phase of the last step. The call blocks until all rays are
+	 * processed. Must not be called concurrently with
+	 * {@link #stepWorld(double)} or other queries.
+	 * 
+	 * @param batch
+	 *            the batch to process. The results are stored in its result
+	 *            columns. May not be {@code null}.
+	 * @throws NullPointerException
+	 *             if the {@code batch} is {@code null}.
+	 * @throws IllegalStateException
+	 *             if the world is not initialised.
+	 */
+	void raycastBatch(RayBatch batch);
+
+	/**
+	 * Finds the spawned entities closest to a point. The distance of an entity
+	 * is the distance to the closest bounding box of its fixtures, so it is
+	 * zero for all entities overlapping the point. Must not be called
+	 * concurrently with {@link #stepWorld(double)} or other queries.
+	 * 
+	 * @param point
+	 *            the point to search around. May not be {@code null}.
+	 * @param k
+	 *            the maximum number of entities to find. Must be strictly
+	 *            positive.
+	 * @param results
+	 *            the list to store the entities in. It is cleared first. The
+	 *            entities are ordered by distance. May not be {@code null}.
+	 * @throws NullPointerException
+	 *             if any reference parameter is {@code null}.
+	 * @throws IllegalArgumentException
+	 *             if {@code k} is not positive.
+	 * @throws IllegalStateException
+	 *             if the world is not initialised.
+	 */
+	void nearest(Vector2 point, int k, List<? super PhysicsEntity> results);
+
+	/**
+	 * Registers a {@link ContactPairListener}. If the listener is already
+	 * registered, the call is ignored.
+	 *
+	 * @param listener
+	 *            the listener to add. May not be {@code null}.
+	 * @param persist
+	 *            {@code true} if the listener should also receive persist
+	 *            events, {@code false} for begin and end events only.
+	 * @throws NullPointerException
+	 *             if the {@code listener} is {@code null}.
+	 */
+	void addContactPairListener(ContactPairListener listener, boolean persist);
+
+	/**
+	 * Removes a {@link ContactPairListener}. If the listener is not
+	 * registered, the call is ignored.
+	 *
+	 * @param listener
+	 *            the listener to remove. May not be {@code null}.
+	 * @throws NullPointerException
+	 *             if the {@code listener} is {@code null}.
+	 */
+	void removeContactPairListener(ContactPairListener listener);
+
+	/**
+	 * Registers a {@link CollisionListener} for all contacts between entities
+	 * of two given types. The type pair is unordered, i.e. a listener
+	 * registered for {@code (DEFAULT, BULLET)} also receives contacts where
+	 * the bullet is {@link CollisionPoint#entity0 entity0}. Contacts without
+	 * any interested listener are dropped without creating a
+	 * {@link CollisionPoint}.
+	 *
+	 * @param type0
+	 *            the type of the first entity. May not be {@code null}.
+	 * @param type1
+	 *            the type of the second entity. May not be {@code null}.
+	 * @param listener
+	 *            the listener to add. May not be {@code null}.
+	 * @throws NullPointerException
+	 *             if any parameter is {@code null}.
+	 */
+	void addCollisionListener(EntityType type0, EntityType type1, CollisionListener listener);
+
+	/**
+	 * Removes a {@link CollisionListener} registered for a type pair. If the
+	 * listener is not registered for that pair, the call is ignored.
+	 *
+	 * @param type0
+	 *            the type of the first entity. May not be {@code null}.
+	 * @param type1
+	 *            the type of the second entity. May not be {@code null}.
+	 * @param listener
+	 *            the listener to remove. May not be {@code null}.
+	 * @throws NullPointerException
+	 *             if any parameter is {@code null}.
+	 */
+	void removeCollisionListener(EntityType type0, EntityType type1, CollisionListener listener);
+
 	/**
 	 * Creates a new entity based off the provided
 	 * {@link PhysicsEntityDefinition} and returns the produced
@@ -38,6 +253,27 @@ public interface PhysicsManager extends Listenable {
 	 */
 	PhysicsEntity createEntity(PhysicsEntityDefinition definition);
 
+	/**
+	 * Compiles a {@link PhysicsEntityDefinition} into a prefab. Entities
+	 * created from a prefab skip all mass and thrust point computations.
+	 * Only locked definitions, whose fixture and thrust point definitions are
+	 * all locked as well, can be compiled. Compilation also happens implicitly
+	 * on the first {@link #createEntity(PhysicsEntityDefinition)} call for such
+	 * a definition. This method can be used to pre-warm the prefabs, also
+	 * concurrently from multiple threads.
+	 * 
+	 * @param definition
+	 *            the definition to compile. May not be {@code null}.
+	 * @return {@code true} if a prefab is available for the definition,
+	 *         {@code false} if the definition is not fully locked.
+	 * @throws NullPointerException
+	 *             if the {@code definition} is {@code null}.
+	 * @throws IllegalArgumentException
+	 *             if the compilation fails due to illegal contents of the
+	 *             definition.
+	 */
+	boolean precompile(PhysicsEntityDefinition definition);
+
 	/**
 	 * Despawns the given {@link PhysicsEntity} from the world. The entity
 	 * remains valid and can be respawned at any point.
@@ -48,12 +284,42 @@ public interface PhysicsManager extends Listenable {
 	 * @throws NullPointerException
 	 *             if the {@code entity} parameter is {@code null}.
 	 * @throws IllegalStateException
-	 *             if the {@code entity} is not present in the world.
+	 *             if the {@code entity} is not present in the world or
+	 *             already queued for despawning.
+	 * @throws IllegalArgumentException
+	 *             if the {@code entity} is illegal or unsupported in any other
+	 *             way.
 	 * @throws IllegalStateException
 	 *             if the world has not been initialised.
 	 */
 	void despawnEntity(PhysicsEntity entity);
 
+	/**
+	 * Queues a collection of {@link PhysicsEntity PhysicsEntities} for
+	 * despawning. The entities are removed from the world in a single batch at
+	 * the beginning of the next physics step. Until then they remain spawned.
+	 * The collection is validated as a whole: if any entity is rejected, none
+	 * is queued.
+	 * 
+	 * @param entities
+	 *            the entities to despawn. May not be {@code null} or contain
+	 *            {@code null}. All entities must be currently spawned and
+	 *            neither queued already nor contained more than once.
+	 * @throws NullPointerException
+	 *             if the {@code entities} or any contained entity is
+	 *             {@code null}.
+	 * @throws IllegalStateException
+	 *             if any entity is not present in the world or already queued
+	 *             for despawning.
+	 * @throws IllegalArgumentException
+	 *             if any entity is illegal or unsupported in any other way.
+	 * @throws IllegalStateException
+	 *             if the world has not been initialised.
+	 * 
+	 * @see #despawnEntity(PhysicsEntity)
+	 */
+	void despawnEntities(Collection<? extends PhysicsEntity> entities);
+
 	/**
 	 * @return the world gravity.
 	 * 
@@ -73,10 +339,23 @@ public interface PhysicsManager extends Listenable {
 	 * @throws IllegalStateException
 	 *             if the world has already been initialised.
 	 * 
-	 * @see #initialiseWorld(Vector2, int)
+	 * @see #initialiseWorld(PhysicsWorldConfig)
 	 */
 	void initialiseWorld(Vector2 gravity);
 
+	/**
+	 * Initialises the internal physics engine with a given configuration.
+	 * 
+	 * @param config
+	 *            the configuration. May not be {@code null}. The configuration
+	 *            is only read during this call.
+	 * @throws NullPointerException
+	 *             if the {@code config} is {@code null}.
+	 * @throws IllegalStateException
+	 *             if the world has already been initialised.
+	 */
+	void initialiseWorld(PhysicsWorldConfig config);
+
 	/**
 	 * Sets the world gravity.
 	 * 
@@ -108,6 +387,32 @@ public interface PhysicsManager extends Listenable {
 	 */
 	void spawnEntity(PhysicsEntity entity);
 
+	/**
+	 * Queues a collection of {@link PhysicsEntity PhysicsEntities} for
+	 * spawning. The entities are added to the world in a single batch at the
+	 * beginning of the next physics step, after all queued despawns have been
+	 * applied. The collection is validated as a whole: if any entity is
+	 * rejected, none is queued.
+	 * 
+	 * @param entities
+	 *            the entities to spawn. May not be {@code null} or contain
+	 *            {@code null}. No entity may be spawned already, queued
+	 *            already or contained more than once.
+	 * @throws NullPointerException
+	 *             if the {@code entities} or any contained entity is
+	 *             {@code null}.
+	 * @throws IllegalArgumentException
+	 *             if any entity is illegal or unsupported.
+	 * @throws IllegalStateException
+	 *             if any entity is already present in the world or already
+	 *             queued.
+	 * @throws IllegalStateException
+	 *             if the world has not been initialised.
+	 * 
+	 * @see #spawnEntity(PhysicsEntity)
+	 */
+	void spawnEntities(Collection<? extends PhysicsEntity> entities);
+
 	/**
 	 * Performs a single physics step of a given length. Best results are
 	 * achieved if steps of a small and constant size are used.
@@ -116,9 +421,11 @@ public interface PhysicsManager extends Listenable {
 	 *            the step duration in seconds. Must be strictly positive and
 	 *            finite.
 	 * @throws IllegalArgumentException
-	 *             if the stepTime is not positive or non-finite.
+	 *             if the stepTime is not positive or non-finite, or differs
+	 *             from the fixed step time of the deterministic mode.
 	 * @throws IllegalStateException
 	 *             if the world is not initialised.
+	 * @see PhysicsWorldConfig#setDeterministicStep(double)
 	 */
 	void stepWorld(double stepTime);
 
@@ -151,6 +458,138 @@ public interface PhysicsManager extends Listenable {
 			stepWorld(stepTime);
 	}
 
+	/**
+	 * Provides the rolling state hash of the deterministic lockstep mode.
+	 * After every step the exact transforms, velocities and sleep states of
+	 * all spawned entities are folded into the hash in spawn order. Since the
+	 * hash covers all steps so far, two managers that diverged at any step
+	 * have different hashes from that step on. Peers can exchange the hash
+	 * every step to detect desyncs immediately.
+	 * 
+	 * @return the hash after the last step. 0 if the deterministic mode is
+	 *         disabled or no step was performed yet.
+	 * @see PhysicsWorldConfig#setDeterministicStep(double)
+	 */
+	long getStateHash();
+
+	/**
+	 * Provides the number of the current step. Steps are numbered starting
+	 * with 1, every call of {@link #stepWorld(double)} advances the number by
+	 * one. A {@link #rewind(long) rewind} resets it to the step rewound to.
+	 * 
+	 * @return the number of the last step performed. 0 if no step was
+	 *         performed yet.
+	 */
+	long getStep();
+
+	/**
+	 * Checks whether the state after a given step is held by the rewind
+	 * history. The history holds the most recent steps up to the configured
+	 * length. Steps after the current step remain available after a rewind
+	 * until they are overwritten by stepping again.
+	 * 
+	 * @param step
+	 *            the step number.
+	 * @return {@code true} if the world can be rewound to the step.
+	 * @see PhysicsWorldConfig#setHistoryLength(int)
+	 */
+	boolean isRecorded(long step);
+
+	/**
+	 * Rewinds the world to the state it had right after a recorded step. The
+	 * set and order of the spawned entities, their transforms, velocities,
+	 * sleep states, thrust levels and timed forces as well as the state hash
+	 * are restored. Entities spawned after the step are despawned and entities
+	 * despawned since are spawned again. Queued bulk spawns and despawns are
+	 * discarded. Must not be called concurrently with
+	 * {@link #stepWorld(double)}.
+	 * <p>
+	 * For rollback the world is rewound to the last confirmed step and
+	 * stepped forward again with the corrected inputs. For lag compensation
+	 * the world is rewound to the step seen by a client, queried (e.g. with a
+	 * {@link #raycast(Vector2, Vector2, double, RaycastHit) raycast}) and then
+	 * rewound to the current step again.
+	 * </p>
+	 * <p>
+	 * The contact cache used for warm starting and the sleep timers of the
+	 * bodies are not recorded. A re-simulation of resting contacts or of
+	 * bodies about to fall asleep may therefore deviate slightly from the
+	 * original run.
+	 * </p>
+	 * 
+	 * @param step
+	 *            the step to rewind to.
+	 * @throws IllegalArgumentException
+	 *             if the step is not {@link #isRecorded(long) recorded}.
+	 * @throws IllegalStateException
+	 *             if the world is not initialised or the history is disabled.
+	 * @see PhysicsWorldConfig#setHistoryLength(int)
+	 */
+	void rewind(long step);
+
+	/**
+	 * Exports the kinematic state of all currently spawned entities into a
+	 * buffer. The buffer is cleared first. The entities are exported in the
+	 * order of {@link #getSpawnedEntities()}. No objects are allocated per
+	 * entity, so this is the preferred way of reading the state of many
+	 * entities, e.g. for rendering or networking.
+	 * 
+	 * @param buffer
+	 *            the buffer to fill. May not be {@code null}.
+	 * @throws NullPointerException
+	 *             if the {@code buffer} is {@code null}.
+	 */
+	void exportState(EntityStateBuffer buffer);
+
+	/**
+	 * Writes a binary snapshot of all currently spawned entities. The
+	 * structure of the entities (fixtures, thrust points, mass and damping) is
+	 * stored once per distinct structure, the dynamic state (transform,
+	 * velocities, sleep state, thrust levels and timed forces) once per
+	 * entity. Listeners, collision filters and user data are not saved. Queued
+	 * bulk spawns and despawns are ignored. Must not be called concurrently
+	 * with {@link #stepWorld(double)}.
+	 * 
+	 * @param channel
+	 *            the channel to write to. It is not closed. May not be
+	 *            {@code null}.
+	 * @throws IOException
+	 *             if writing to the channel fails.
+	 * @throws NullPointerException
+	 *             if the {@code channel} is {@code null}.
+	 * @throws IllegalArgumentException
+	 *             if an entity has a shape that cannot be saved. Supported are
+	 *             circles, polygons (including rectangles and triangles) and
+	 *             segments.
+	 * @throws IllegalStateException
+	 *             if the world is not initialised.
+	 * @see #restoreSnapshot(ReadableByteChannel)
+	 */
+	void saveSnapshot(WritableByteChannel channel) throws IOException;
+
+	/**
+	 * Replaces all spawned entities with the entities of a snapshot. The
+	 * snapshot is read completely before the world is changed, so the world
+	 * remains unchanged if reading fails. All spawned entities are despawned
+	 * and all queued bulk operations are discarded. The restored entities are
+	 * new instances, spawned in the order they were saved in. Fixture and
+	 * thrust point handles are preserved. The rewind history is discarded.
+	 * Must not be called concurrently with {@link #stepWorld(double)}.
+	 * 
+	 * @param channel
+	 *            the channel to read from. It is not closed. May not be
+	 *            {@code null}.
+	 * @throws IOException
+	 *             if reading from the channel fails or the data is not a
+	 *             valid snapshot.
+	 * @throws NullPointerException
+	 *             if the {@code channel} is {@code null}.
+	 * @throws IllegalStateException
+	 *             if the world is not initialised.
+	 * @see #saveSnapshot(WritableByteChannel)
+	 */
+	void restoreSnapshot(ReadableByteChannel channel) throws IOException;
+
 	/**
 	 * Provides a full list of all currently spawned entities. The contents of
 	 * this list may change over time, but it should be enough for some basic
@@ -0,0 +1,285 @@
+package ch.wados.starfury.physics.api;
+
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+
+import org.dyn4j.dynamics.Settings;
+import org.dyn4j.geometry.Vector2;
+
+/**
+ * Configuration object for the initialisation of a {@link PhysicsManager}.
+ * <p>
+ * Besides the gravity vector the configuration selects the broad-phase
+ * implementation, an estimate of the number of entities used to pre-size the
+ * internal structures and the dyn4j {@link Settings} (solver iterations, sleep
+ * thresholds, CCD mode, ...). The configuration is only read during
+ * initialisation. The {@link Settings} object however is handed to the engine
+ * and should not be modified afterwards.
+ * </p>
+ * <p>
+ * The configuration can also enable the deterministic lockstep mode, see
+ * {@link #setDeterministicStep(double)}, and solve independent groups of
+ * colliding entities concurrently, see {@link #setSolverPool(ForkJoinPool)}.
+ * </p>
+ * 
+ * @see PhysicsManager#initialiseWorld(PhysicsWorldConfig)
+ */
+public final class PhysicsWorldConfig {
+
+	/**
+	 * The default entity capacity.
+	 */
+	public static final int DEFAULT_CAPACITY = 32;
+	/**
+	 * The default cell size of the {@link BroadphaseType#UNIFORM_GRID uniform
+	 * grid} broad-phase.
+	 */
+	public static final double DEFAULT_GRID_CELL_SIZE = 8;
+
+	private Vector2 gravity;
+	private BroadphaseType broadphase;
+	private int capacity;
+	private double gridCellSize;
+	private Settings settings;
+	private double deterministicStep;
+	private int historyLength;
+	private ForkJoinPool solverPool;
+
+	/**
+	 * Creates a new configuration with the following default values:
+	 * <ul>
+	 * <li>{@code gravity} = (0, 0)</li>
+	 * <li>{@code broadphase} = {@link BroadphaseType#DYNAMIC_AABB_TREE}</li>
+	 * <li>{@code capacity} = {@value #DEFAULT_CAPACITY}</li>
+	 * <li>{@code gridCellSize} = {@value #DEFAULT_GRID_CELL_SIZE}</li>
+	 * <li>{@code settings} = the dyn4j default settings</li>
+	 * <li>{@code deterministicStep} = 0 (disabled)</li>
+	 * <li>{@code historyLength} = 0 (disabled)</li>
+	 * <li>{@code solverPool} = {@code null} (sequential)</li>
+	 * </ul>
+	 */
+	public PhysicsWorldConfig() {
+		this.gravity = new Vector2(0, 0);
+		this.broadphase = BroadphaseType.DYNAMIC_AABB_TREE;
+		this.capacity = DEFAULT_CAPACITY;
+		this.gridCellSize = DEFAULT_GRID_CELL_SIZE;
+		this.settings = new Settings();
+		this.deterministicStep = 0;
+		this.historyLength = 0;
+		this.solverPool = null;
+	}
+
+	public Vector2 getGravity() {
+		return new Vector2(this.gravity);
+	}
+
+	public BroadphaseType getBroadphase() {
+		return this.broadphase;
+	}
+
+	public int getCapacity() {
+		return this.capacity;
+	}
+
+	public double getGridCellSize() {
+		return this.gridCellSize;
+	}
+
+	public Settings getSettings() {
+		return this.settings;
+	}
+
+	/**
+	 * @return the fixed step time of the deterministic lockstep mode or 0 if
+	 *         the mode is disabled.
+	 */
+	public double getDeterministicStep() {
+		return this.deterministicStep;
+	}
+
+	public boolean isDeterministic() {
+		return this.deterministicStep != 0;
+	}
+
+	/**
+	 * @return the number of steps kept in the rewind history or 0 if the
+	 *         history is disabled.
+	 */
+	public int getHistoryLength() {
+		return this.historyLength;
+	}
+
+	/**
+	 * @return the pool the islands are solved on or {@code null} if they are
+	 *         solved sequentially.
+	 */
+	public ForkJoinPool getSolverPool() {
+		return this.solverPool;
+	}
+
+	/**
+	 * sets the gravity vector.
+	 * 
+	 * @param gravity
+	 *            the gravity vector. May not be {@code null}. Use the zero
+	 *            vector if no gravity is wanted.
+	 * @return the configuration itself
+	 * @throws NullPointerException
+	 *             if the {@code gravity} is {@code null}.
+	 */
+	public PhysicsWorldConfig setGravity(Vector2 gravity) {
+		Objects.requireNonNull(gravity);
+		this.gravity = new Vector2(gravity);
+		return this;
+	}
+
+	/**
+	 * sets the broad-phase implementation.
+	 * 
+	 * @param broadphase
+	 *            the broad-phase type. May not be {@code null}.
+	 * @return the configuration itself
+	 * @throws NullPointerException
+	 *             if the {@code broadphase} is {@code null}.
+	 * @throws IllegalArgumentException
+	 *             if the {@code broadphase} is {@link BroadphaseType#SAP} and
+	 *             the deterministic mode is enabled.
+	 */
+	public PhysicsWorldConfig setBroadphase(BroadphaseType broadphase) {
+		Objects.requireNonNull(broadphase);
+		if (broadphase == BroadphaseType.SAP && this.isDeterministic())
+			throw new IllegalArgumentException("SAP broad-phase is not deterministic");
+		this.broadphase = broadphase;
+		return this;
+	}
+
+	/**
+	 * sets the estimated number of entities. The internal structures are
+	 * pre-sized accordingly, so they do not have to grow while the world is
+	 * populated. This is no upper bound.
+	 * 
+	 * @param capacity
+	 *            the estimated number of entities. Must be strictly positive.
+	 * @return the configuration itself
+	 * @throws IllegalArgumentException
+	 *             if the {@code capacity} is not positive.
+	 */
+	public PhysicsWorldConfig setCapacity(int capacity) {
+		if (capacity <= 0)
+			throw new IllegalArgumentException("capacity must be positive. Was " + capacity);
+		this.capacity = capacity;
+		return this;
+	}
+
+	/**
+	 * sets the cell size of the {@link BroadphaseType#UNIFORM_GRID uniform
+	 * grid} broad-phase. Ignored by all other broad-phase types.
+	 * 
+	 * @param gridCellSize
+	 *            the edge length of a grid cell. Should be about the size of a
+	 *            typical entity. Must be strictly positive and finite.
+	 * @return the configuration itself
+	 * @throws IllegalArgumentException
+	 *             if the {@code gridCellSize} is invalid.
+	 */
+	public PhysicsWorldConfig setGridCellSize(double gridCellSize) {
+		if (gridCellSize <= 0 || !Double.isFinite(gridCellSize))
+			throw new IllegalArgumentException("grid cell size must be positive. Was " + gridCellSize);
+		this.gridCellSize = gridCellSize;
+		return this;
+	}
+
+	/**
+	 * sets the dyn4j settings. The step frequency is ignored, since the step
+	 * time is provided by {@link PhysicsManager#stepWorld(double)}.
+	 * 
+	 * @param settings
+	 *            the settings. May not be {@code null}.
+	 * @return the configuration itself
+	 * @throws NullPointerException
+	 *             if the {@code settings} are {@code null}.
+	 */
+	public PhysicsWorldConfig setSettings(Settings settings) {
+		Objects.requireNonNull(settings);
+		this.settings = settings;
+		return this;
+	}
+
+	/**
+	 * enables or disables the deterministic lockstep mode. In this mode
+	 * stepping is bit-reproducible: two managers initialised with the same
+	 * configuration, fed with the same operations in the same order and
+	 * stepped the same number of times end up in exactly the same state on the
+	 * same JVM.
+	 * <ul>
+	 * <li>Every step must use the configured step time.</li>
+	 * <li>Despawning preserves the spawn order of the remaining entities, so
+	 * {@link PhysicsManager#getSpawnedEntities()}, state exports and all
+	 * per-entity event dispatch follow the spawn order.</li>
+	 * <li>A rolling hash of the state of all entities is updated after every
+	 * step, see {@link PhysicsManager#getStateHash()}.</li>
+	 * </ul>
+	 * The {@link BroadphaseType#SAP SAP} broad-phase orders equal bounds by
+	 * random body ids and can therefore not be used in this mode. Despawning
+	 * costs linear time in this mode.
+	 * 
+	 * @param stepTime
+	 *            the fixed step time in seconds. Must be strictly positive and
+	 *            finite, or 0 to disable the mode.
+	 * @return the configuration itself
+	 * @throws IllegalArgumentException
+	 *             if the {@code stepTime} is invalid or the broad-phase is
+	 *             {@link BroadphaseType#SAP}.
+	 */
+	public PhysicsWorldConfig setDeterministicStep(double stepTime) {
+		if (stepTime < 0 || !Double.isFinite(stepTime))
+			throw new IllegalArgumentException("step time must be positive. Was " + stepTime);
+		if (stepTime != 0 && this.broadphase == BroadphaseType.SAP)
+			throw new IllegalArgumentException("SAP broad-phase is not deterministic");
+		this.deterministicStep = stepTime;
+		return this;
+	}
+
+	/**
+	 * sets the length of the rewind history. The manager records the state of
+	 * all entities after each step into a ring buffer holding the given
+	 * number of steps and can {@link PhysicsManager#rewind(long) rewind} to
+	 * any of them, e.g. for lag compensation or client-side rollback. The
+	 * buffer is allocated during initialisation for the configured
+	 * {@link #setCapacity(int) capacity}, recording only allocates if the
+	 * number of entities exceeds all previous counts.
+	 * 
+	 * @param steps
+	 *            the number of steps to keep. Must be positive, or 0 to
+	 *            disable the history.
+	 * @return the configuration itself
+	 * @throws IllegalArgumentException
+	 *             if the {@code steps} are negative.
+	 */
+	public PhysicsWorldConfig setHistoryLength(int steps) {
+		if (steps < 0)
+			throw new IllegalArgumentException("history length may not be negative. Was " + steps);
+		this.historyLength = steps;
+		return this;
+	}
+
+	/**
+	 * sets the pool the constraint solver runs on. Every step dyn4j groups the
+	 * touching entities into islands and solves them one after another. With a
+	 * pool, independent islands are solved concurrently. The results, including
+	 * the order of all listener callbacks, are identical to the sequential
+	 * solver, so the pool may also be used in the deterministic mode. Only
+	 * worlds with several islands of some size benefit, e.g. sectors with many
+	 * separate battles.
+	 * 
+	 * @param pool
+	 *            the pool, e.g. {@link ForkJoinPool#commonPool()}, or
+	 *            {@code null} to solve all islands on the stepping thread.
+	 * @return the configuration itself
+	 */
+	public PhysicsWorldConfig setSolverPool(ForkJoinPool pool) {
+		this.solverPool = pool;
+		return this;
+	}
+
+}
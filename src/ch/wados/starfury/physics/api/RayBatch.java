@@ -0,0 +1,251 @@
+package ch.wados.starfury.physics.api;
+
+import java.util.Arrays;
+
+/**
+ * A reusable structure-of-arrays batch of ray segments, processed by
+ * {@link PhysicsManager#raycastBatch(RayBatch)}.
+ * <p>
+ * Every ray is a segment from a start point to an end point. For every ray the
+ * closest hit is stored in the result columns at the index of the ray. The
+ * entity of a hit is identified by its index in
+ * {@link PhysicsManager#getSpawnedEntities()} (the same order as
+ * {@link PhysicsManager#exportState(EntityStateBuffer)}), so the results can
+ * be consumed without touching any entity objects. Rays that hit nothing have
+ * an entity index of {@code -1}.
+ * </p>
+ * <p>
+ * Only the first {@link #size()} entries of a column are valid. The column
+ * arrays are exposed directly for fast iteration. They may be replaced when
+ * the batch grows, so they should be fetched again after adding rays.
+ * </p>
+ *
+ * @see PhysicsManager#raycastBatch(RayBatch)
+ */
+public final class RayBatch {
+
+	private static final int DEFAULT_CAPACITY = 64;
+
+	private int size;
+	// inputs
+	private double[] startX;
+	private double[] startY;
+	private double[] endX;
+	private double[] endY;
+	// outputs
+	private int[] entity;
+	private int[] fixtureHandle;
+	private double[] fraction;
+	private double[] normalX;
+	private double[] normalY;
+
+	/**
+	 * Creates a new empty batch with a default capacity.
+	 */
+	public RayBatch() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Creates a new empty batch with a given initial capacity. The batch grows
+	 * as needed.
+	 *
+	 * @param capacity
+	 *            the initial capacity. Must be positive or zero.
+	 * @throws IllegalArgumentException
+	 *             if the {@code capacity} is negative.
+	 */
+	public RayBatch(int capacity) {
+		if (capacity < 0)
+			throw new IllegalArgumentException("capacity may not be negative. Was " + capacity);
+		this.startX = new double[capacity];
+		this.startY = new double[capacity];
+		this.endX = new double[capacity];
+		this.endY = new double[capacity];
+		this.entity = new int[capacity];
+		this.fixtureHandle = new int[capacity];
+		this.fraction = new double[capacity];
+		this.normalX = new double[capacity];
+		this.normalY = new double[capacity];
+	}
+
+	/**
+	 * Ensures that the batch can hold at least a given number of rays without
+	 * growing.
+	 *
+	 * @param capacity
+	 *            the required capacity.
+	 */
+	public void ensureCapacity(int capacity) {
+		if (capacity <= this.startX.length)
+			return;
+		int length = Math.max(capacity, Math.max(DEFAULT_CAPACITY, this.startX.length * 2));
+		this.startX = Arrays.copyOf(this.startX, length);
+		this.startY = Arrays.copyOf(this.startY, length);
+		this.endX = Arrays.copyOf(this.endX, length);
+		this.endY = Arrays.copyOf(this.endY, length);
+		this.entity = Arrays.copyOf(this.entity, length);
+		this.fixtureHandle = Arrays.copyOf(this.fixtureHandle, length);
+		this.fraction = Arrays.copyOf(this.fraction, length);
+		this.normalX = Arrays.copyOf(this.normalX, length);
+		this.normalY = Arrays.copyOf(this.normalY, length);
+	}
+
+	/**
+	 * Appends a ray segment. The result of the ray is reset to a miss.
+	 *
+	 * @param startX
+	 *            the x coordinate of the start point.
+	 * @param startY
+	 *            the y coordinate of the start point.
+	 * @param endX
+	 *            the x coordinate of the end point.
+	 * @param endY
+	 *            the y coordinate of the end point.
+	 * @return the index of the ray.
+	 * @throws IllegalArgumentException
+	 *             if any coordinate is non-finite or the segment has zero
+	 *             length.
+	 */
+	public int add(double startX, double startY, double endX, double endY) {
+		if (!Double.isFinite(startX) || !Double.isFinite(startY) || !Double.isFinite(endX) || !Double.isFinite(endY))
+			throw new IllegalArgumentException(
+					"coordinates must be finite. Was (" + startX + ", " + startY + ") -> (" + endX + ", " + endY + ")");
+		if (startX == endX && startY == endY)
+			throw new IllegalArgumentException("ray may not have zero length");
+		this.ensureCapacity(this.size + 1);
+		int i = this.size++;
+		this.startX[i] = startX;
+		this.startY[i] = startY;
+		this.endX[i] = endX;
+		this.endY[i] = endY;
+		this.setMiss(i);
+		return i;
+	}
+
+	/**
+	 * Stores a hit. For internal use of the physics engine only! Since it
+	 * should only be used internally, null checks and input validation is
+	 * omitted for performance.
+	 *
+	 * @param index
+	 * @param entity
+	 * @param fixtureHandle
+	 * @param fraction
+	 * @param normalX
+	 * @param normalY
+	 */
+	public void setHit(int index, int entity, int fixtureHandle, double fraction, double normalX, double normalY) {
+		this.entity[index] = entity;
+		this.fixtureHandle[index] = fixtureHandle;
+		this.fraction[index] = fraction;
+		this.normalX[index] = normalX;
+		this.normalY[index] = normalY;
+	}
+
+	/**
+	 * Resets the result of a ray to a miss. For internal use of the physics
+	 * engine only! Since it should only be used internally, input validation
+	 * is omitted for performance.
+	 *
+	 * @param index
+	 */
+	public void setMiss(int index) {
+		this.setHit(index, -1, -1, 1, 0, 0);
+	}
+
+	/**
+	 * Removes all rays from the batch. The capacity is retained.
+	 */
+	public void clear() {
+		this.size = 0;
+	}
+
+	/**
+	 * @return the number of rays in the batch.
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * @return the column of the x coordinates of the ray start points.
+	 */
+	public double[] getStartX() {
+		return this.startX;
+	}
+
+	/**
+	 * @return the column of the y coordinates of the ray start points.
+	 */
+	public double[] getStartY() {
+		return this.startY;
+	}
+
+	/**
+	 * @return the column of the x coordinates of the ray end points.
+	 */
+	public double[] getEndX() {
+		return this.endX;
+	}
+
+	/**
+	 * @return the column of the y coordinates of the ray end points.
+	 */
+	public double[] getEndY() {
+		return this.endY;
+	}
+
+	/**
+	 * @return the column of the indices of the hit entities in
+	 *         {@link PhysicsManager#getSpawnedEntities()}. {@code -1} for
+	 *         rays that hit nothing.
+	 */
+	public int[] getEntity() {
+		return this.entity;
+	}
+
+	/**
+	 * @return the column of the handles of the hit fixtures. {@code -1} for
+	 *         rays that hit nothing.
+	 * @see PhysicsEntity#getFixtureHandle(String)
+	 */
+	public int[] getFixtureHandle() {
+		return this.fixtureHandle;
+	}
+
+	/**
+	 * @return the column of the hit positions as a fraction of the segment
+	 *         length in the range {@code [0, 1]}. {@code 1} for rays that hit
+	 *         nothing.
+	 */
+	public double[] getFraction() {
+		return this.fraction;
+	}
+
+	/**
+	 * @return the column of the x components of the surface normals at the
+	 *         hit points. {@code 0} for rays that hit nothing.
+	 */
+	public double[] getNormalX() {
+		return this.normalX;
+	}
+
+	/**
+	 * @return the column of the y components of the surface normals at the
+	 *         hit points. {@code 0} for rays that hit nothing.
+	 */
+	public double[] getNormalY() {
+		return this.normalY;
+	}
+
+	/**
+	 * @param index
+	 *            the index of the ray.
+	 * @return {@code true} if the ray hit a fixture.
+	 */
+	public boolean isHit(int index) {
+		return this.entity[index] >= 0;
+	}
+
+}
@@ -0,0 +1,112 @@
+package ch.wados.starfury.physics.api;
+
+import org.dyn4j.geometry.Vector2;
+
+/**
+ * A reusable holder for a single raycast hit. It is filled by the raycast
+ * methods of the {@link PhysicsManager}, so a single instance can be used for
+ * any number of queries without allocation.
+ * 
+ * @see PhysicsManager#raycast(Vector2, Vector2, double, RaycastHit)
+ * @see RaycastHitBuffer
+ */
+public final class RaycastHit {
+
+	private PhysicsEntity entity;
+	private String fixture;
+	private int fixtureHandle = -1;
+	private final Vector2 point = new Vector2();
+	private final Vector2 normal = new Vector2();
+	private double distance;
+
+	/**
+	 * Stores a hit. For internal use of the physics engine only! Since it
+	 * should only be used internally, null checks and input validation is
+	 * omitted for performance.
+	 * 
+	 * @param entity
+	 * @param fixture
+	 * @param fixtureHandle
+	 * @param point
+	 * @param normal
+	 * @param distance
+	 */
+	public void set(PhysicsEntity entity, String fixture, int fixtureHandle, Vector2 point, Vector2 normal,
+			double distance) {
+		this.entity = entity;
+		this.fixture = fixture;
+		this.fixtureHandle = fixtureHandle;
+		this.point.set(point);
+		this.normal.set(normal);
+		this.distance = distance;
+	}
+
+	/**
+	 * Copies another hit into this one. For internal use of the physics engine
+	 * only!
+	 * 
+	 * @param hit
+	 */
+	public void set(RaycastHit hit) {
+		this.set(hit.entity, hit.fixture, hit.fixtureHandle, hit.point, hit.normal, hit.distance);
+	}
+
+	/**
+	 * Resets the hit. For internal use of the physics engine only!
+	 */
+	public void clear() {
+		this.entity = null;
+		this.fixture = null;
+		this.fixtureHandle = -1;
+		this.point.zero();
+		this.normal.zero();
+		this.distance = 0;
+	}
+
+	/**
+	 * @return the entity hit, or {@code null} if nothing was hit.
+	 */
+	public PhysicsEntity getEntity() {
+		return this.entity;
+	}
+
+	/**
+	 * @return the identifier of the fixture hit.
+	 */
+	public String getFixture() {
+		return this.fixture;
+	}
+
+	/**
+	 * @return the handle of the fixture hit.
+	 * 
+	 * @see PhysicsEntity#getFixtureHandle(String)
+	 */
+	public int getFixtureHandle() {
+		return this.fixtureHandle;
+	}
+
+	/**
+	 * @return the hit point in the world frame of reference. The vector is
+	 *         owned by the hit and reused, it must not be modified.
+	 */
+	public Vector2 getPoint() {
+		return this.point;
+	}
+
+	/**
+	 * @return the surface normal at the hit point. The vector is owned by the
+	 *         hit and reused, it must not be modified.
+	 */
+	public Vector2 getNormal() {
+		return this.normal;
+	}
+
+	/**
+	 * @return the distance from the ray start to the hit point.
+	 */
+	public double getDistance() {
+		return this.distance;
+	}
+
+}
@@ -0,0 +1,81 @@
+package ch.wados.starfury.physics.api;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+import org.dyn4j.geometry.Vector2;
+
+/**
+ * A reusable buffer of {@link RaycastHit RaycastHits}. The hit instances are
+ * pooled and reused when the buffer is refilled, so a buffer can be used for
+ * any number of queries without allocation once it has grown large enough.
+ * 
+ * @see PhysicsManager#raycastAll(Vector2, Vector2, double, RaycastHitBuffer)
+ */
+public final class RaycastHitBuffer {
+
+	private static final Comparator<RaycastHit> BY_DISTANCE = (a, b) -> Double.compare(a.getDistance(),
+			b.getDistance());
+
+	private RaycastHit[] hits = new RaycastHit[8];
+	private int size = 0;
+
+	/**
+	 * @return the number of hits.
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	public boolean isEmpty() {
+		return this.size == 0;
+	}
+
+	/**
+	 * Provides a hit. The instance is reused by later queries.
+	 * 
+	 * @param index
+	 *            the index of the hit. Hits are ordered by distance.
+	 * @return the hit
+	 * @throws IndexOutOfBoundsException
+	 *             if the {@code index} is invalid.
+	 */
+	public RaycastHit get(int index) {
+		if (index < 0 || index >= this.size)
+			throw new IndexOutOfBoundsException("index: " + index + ", size: " + this.size);
+		return this.hits[index];
+	}
+
+	/**
+	 * Removes all hits. The hit instances are retained for reuse.
+	 */
+	public void clear() {
+		for (int i = 0; i < this.size; i++)
+			this.hits[i].clear();
+		this.size = 0;
+	}
+
+	/**
+	 * Provides the next free hit instance and adds it to the buffer. For
+	 * internal use of the physics engine only!
+	 * 
+	 * @return the hit to fill
+	 */
+	public RaycastHit next() {
+		if (this.size == this.hits.length)
+			this.hits = Arrays.copyOf(this.hits, this.size * 2);
+		RaycastHit hit = this.hits[this.size];
+		if (hit == null)
+			hit = this.hits[this.size] = new RaycastHit();
+		this.size++;
+		return hit;
+	}
+
+	/**
+	 * Sorts the hits by distance. For internal use of the physics engine only!
+	 */
+	public void sort() {
+		Arrays.sort(this.hits, 0, this.size, BY_DISTANCE);
+	}
+
+}
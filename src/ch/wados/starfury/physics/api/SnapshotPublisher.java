@@ -0,0 +1,110 @@
+package ch.wados.starfury.physics.api;
+
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Lock-free triple buffer publishing the entity state of a
+ * {@link PhysicsManager} to a single consumer thread (e.g. a render thread).
+ * <p>
+ * The publisher is registered as an {@link UpdateListener} on the manager.
+ * After every physics step it exports the state of all entities into its
+ * private write buffer and atomically exchanges it with the shared buffer. The
+ * consumer obtains the latest complete frame through {@link #acquire()}, which
+ * atomically exchanges its private read buffer with the shared one if a newer
+ * frame is available. Neither side ever blocks and the consumer never sees a
+ * partially written frame.
+ * </p>
+ * <p>
+ * Only the primitive columns of a frame may be read by the consumer. The
+ * entities referenced in the entity column are still being simulated and must
+ * not be accessed from the consumer thread. There may be only a single
+ * consumer thread.
+ * </p>
+ *
+ * <pre>
+ * SnapshotPublisher publisher = new SnapshotPublisher(manager);
+ * manager.addUpdateListener(publisher);
+ * // on the render thread
+ * EntityStateBuffer frame = publisher.acquire();
+ * </pre>
+ *
+ * @see EntityStateBuffer
+ */
+public final class SnapshotPublisher implements UpdateListener {
+
+	// the shared state holds the index of the shared buffer and a flag
+	// indicating if it holds a frame the consumer has not seen yet
+	private static final int INDEX_MASK = 0x3;
+	private static final int FRESH = 0x4;
+
+	private final PhysicsManager manager;
+	private final EntityStateBuffer[] buffers = new EntityStateBuffer[3];
+	private final long[] frames = new long[3];
+	private final AtomicInteger shared = new AtomicInteger(1);
+	// owned by the producer
+	private int write = 0;
+	private long frame = 0;
+	// owned by the consumer
+	private int read = 2;
+
+	/**
+	 * Creates a new publisher. The publisher must still be registered as an
+	 * {@link UpdateListener} on the manager.
+	 *
+	 * @param manager
+	 *            the manager to publish the state of. May not be {@code null}.
+	 * @throws NullPointerException
+	 *             if the {@code manager} is {@code null}.
+	 */
+	public SnapshotPublisher(PhysicsManager manager) {
+		this.manager = Objects.requireNonNull(manager);
+		for (int i = 0; i < 3; i++)
+			this.buffers[i] = new EntityStateBuffer();
+	}
+
+	/**
+	 * Exports and publishes the current state. Invoked by the manager after
+	 * every step. Must only be called from the stepping thread.
+	 */
+	@Override
+	public void update() {
+		this.manager.exportState(this.buffers[this.write]);
+		this.frames[this.write] = ++this.frame;
+		this.write = this.shared.getAndSet(this.write | FRESH) & INDEX_MASK;
+	}
+
+	/**
+	 * Provides the latest complete frame. The returned buffer remains valid and
+	 * unchanged until the next call of this method. If no new frame has been
+	 * published since the last call, the same buffer is returned again. Before
+	 * the first step an empty buffer is returned. Must only be called from the
+	 * consumer thread.
+	 *
+	 * @return the latest frame.
+	 */
+	public EntityStateBuffer acquire() {
+		if ((this.shared.get() & FRESH) != 0)
+			this.read = this.shared.getAndSet(this.read) & INDEX_MASK;
+		return this.buffers[this.read];
+	}
+
+	/**
+	 * @return the sequence number of the frame last returned by
+	 *         {@link #acquire()}. Frames are numbered starting with 1, 0 means
+	 *         no frame has been acquired yet. Must only be called from the
+	 *         consumer thread.
+	 */
+	public long getFrame() {
+		return this.frames[this.read];
+	}
+
+	/**
+	 * @return {@code true} if a frame newer than the one last returned by
+	 *         {@link #acquire()} is available.
+	 */
+	public boolean hasNewFrame() {
+		return (this.shared.get() & FRESH) != 0;
+	}
+
+}
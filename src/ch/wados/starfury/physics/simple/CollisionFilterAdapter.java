@@ -0,0 +1,47 @@
+package ch.wados.starfury.physics.simple;
+
+import java.util.List;
+
+import org.dyn4j.dynamics.Body;
+import org.dyn4j.dynamics.BodyFixture;
+import org.dyn4j.dynamics.CollisionAdapter;
+
+import ch.wados.starfury.physics.api.CollisionFilter;
+
+/**
+ * Adapter invoking the {@link CollisionFilter CollisionFilters} of a manager
+ * and of the involved entities for every pair reported by the broad-phase.
+ * Rejected pairs skip the narrow-phase. Category and mask bits have already
+ * been tested by the broad-phase at this point, so the filters only see pairs
+ * that passed the bitmask test.
+ */
+class CollisionFilterAdapter extends CollisionAdapter {
+
+	private final List<CollisionFilter> filters;
+
+	/**
+	 * @param filters
+	 *            the global filters of the manager. The list is read on every
+	 *            invocation, so later changes are honoured.
+	 */
+	CollisionFilterAdapter(List<CollisionFilter> filters) {
+		this.filters = filters;
+	}
+
+	@Override
+	public boolean collision(Body body1, BodyFixture fixture1, Body body2, BodyFixture fixture2) {
+		SimpleEntity entity0 = (SimpleEntity) body1.getUserData();
+		SimpleEntity entity1 = (SimpleEntity) body2.getUserData();
+		if (this.filters.isEmpty() && !entity0.hasCollisionFilters() && !entity1.hasCollisionFilters())
+			return true;
+		String id0 = ((SimpleFixture) fixture1).id;
+		String id1 = ((SimpleFixture) fixture2).id;
+		boolean result = true;
+		for (CollisionFilter filter : this.filters)
+			result &= filter.filterCollision(entity0, id0, entity1, id1);
+		result &= entity0.filterCollision(entity0, id0, entity1, id1);
+		result &= entity1.filterCollision(entity0, id0, entity1, id1);
+		return result;
+	}
+
+}
@@ -0,0 +1,102 @@
+package ch.wados.starfury.physics.simple;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+import ch.wados.starfury.physics.api.CollisionBatch;
+import ch.wados.starfury.physics.api.CollisionBatchListener;
+import ch.wados.starfury.physics.api.CollisionListener;
+import ch.wados.starfury.physics.api.CollisionPoint;
+import ch.wados.starfury.physics.api.EntityType;
+
+/**
+ * Adapter routing a {@link CollisionBatch} to the per-point
+ * {@link CollisionListener CollisionListeners} subscribed to a contact.
+ * <p>
+ * A contact is delivered to the global listeners of the manager, the
+ * listeners of its entity type pair, and the entity and fixture listeners of
+ * both involved entities, in that order. A {@link CollisionPoint} is only
+ * created for contacts with at least one subscriber, all other contacts are
+ * dropped after a few reference checks.
+ * </p>
+ */
+class CollisionPointAdapter implements CollisionBatchListener {
+
+	private static final int TYPES = EntityType.values().length;
+
+	private final List<CollisionListener> listeners;
+	// type pair routing table, indexed by type0 * TYPES + type1. Symmetric:
+	// every subscription is stored in both cells of the pair.
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private final List<CollisionListener>[] typeListeners = new List[TYPES * TYPES];
+
+	/**
+	 * @param listeners
+	 *            the global listeners of the manager. The list is read on every
+	 *            invocation, so later changes are honoured.
+	 */
+	CollisionPointAdapter(List<CollisionListener> listeners) {
+		this.listeners = listeners;
+	}
+
+	void addListener(EntityType type0, EntityType type1, CollisionListener listener) {
+		Objects.requireNonNull(type0);
+		Objects.requireNonNull(type1);
+		Objects.requireNonNull(listener);
+		int i0 = type0.ordinal() * TYPES + type1.ordinal();
+		int i1 = type1.ordinal() * TYPES + type0.ordinal();
+		if (this.typeListeners[i0] == null)
+			this.typeListeners[i0] = new ArrayList<>(2);
+		if (this.typeListeners[i0].contains(listener))
+			return;
+		this.typeListeners[i0].add(listener);
+		if (i1 == i0)
+			return;
+		if (this.typeListeners[i1] == null)
+			this.typeListeners[i1] = new ArrayList<>(2);
+		this.typeListeners[i1].add(listener);
+	}
+
+	void removeListener(EntityType type0, EntityType type1, CollisionListener listener) {
+		Objects.requireNonNull(type0);
+		Objects.requireNonNull(type1);
+		Objects.requireNonNull(listener);
+		this.remove(type0.ordinal() * TYPES + type1.ordinal(), listener);
+		this.remove(type1.ordinal() * TYPES + type0.ordinal(), listener);
+	}
+
+	private void remove(int index, CollisionListener listener) {
+		List<CollisionListener> list = this.typeListeners[index];
+		if (list != null && list.remove(listener) && list.isEmpty())
+			this.typeListeners[index] = null;
+	}
+
+	@Override
+	public void collisions(CollisionBatch batch) {
+		boolean global = !this.listeners.isEmpty();
+		for (int i = 0; i < batch.size(); i++) {
+			SimpleEntity entity0 = (SimpleEntity) batch.getEntity0(i);
+			SimpleEntity entity1 = (SimpleEntity) batch.getEntity1(i);
+			String fixture0 = batch.getFixture0(i);
+			String fixture1 = batch.getFixture1(i);
+			List<CollisionListener> typed = this.typeListeners[entity0.getEntityType().ordinal() * TYPES
+					+ entity1.getEntityType().ordinal()];
+			boolean routed0 = entity0.isRouted(fixture0);
+			boolean routed1 = entity1.isRouted(fixture1);
+			if (!global && typed == null && !routed0 && !routed1)
+				continue;
+			CollisionPoint cp = batch.toCollisionPoint(i);
+			for (int j = 0; j < this.listeners.size(); j++)
+				this.listeners.get(j).collision(cp);
+			if (typed != null)
+				for (int j = 0; j < typed.size(); j++)
+					typed.get(j).collision(cp);
+			if (routed0)
+				entity0.route(cp, fixture0);
+			if (routed1)
+				entity1.route(cp, fixture1);
+		}
+	}
+
+}
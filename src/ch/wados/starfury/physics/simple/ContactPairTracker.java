@@ -0,0 +1,168 @@
+package ch.wados.starfury.physics.simple;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import ch.wados.starfury.physics.api.CollisionBatch;
+import ch.wados.starfury.physics.api.ContactPair;
+import ch.wados.starfury.physics.api.ContactPairListener;
+import ch.wados.starfury.physics.api.PhysicsEntity;
+
+/**
+ * Aggregates the contact points of a step into fixture pairs and produces the
+ * begin, persist and end events of the {@link ContactPairListener
+ * ContactPairListeners}.
+ * <p>
+ * Active pairs are kept in a hash map keyed by both entities and fixture
+ * handles, independent of their order. Only new pairs allocate a key. As long
+ * as no listener is registered, no pairs are tracked at all.
+ * </p>
+ */
+final class ContactPairTracker {
+
+	private final List<ContactPairListener> listeners = new ArrayList<>();
+	private final List<ContactPairListener> persistListeners = new ArrayList<>();
+	private final Map<Pair, Pair> pairs = new HashMap<>();
+	private final List<Pair> active = new ArrayList<>();
+	private final Pair probe = new Pair();
+	private int step = 0;
+
+	void addListener(ContactPairListener listener, boolean persist) {
+		Objects.requireNonNull(listener);
+		if (this.listeners.contains(listener))
+			return;
+		this.listeners.add(listener);
+		if (persist)
+			this.persistListeners.add(listener);
+	}
+
+	void removeListener(ContactPairListener listener) {
+		Objects.requireNonNull(listener);
+		this.listeners.remove(listener);
+		this.persistListeners.remove(listener);
+	}
+
+	/**
+	 * Processes the contact points of a step and notifies all listeners.
+	 */
+	void update(CollisionBatch batch) {
+		if (this.listeners.isEmpty()) {
+			// forget all pairs, they would be stale when listeners return
+			if (!this.active.isEmpty()) {
+				this.pairs.clear();
+				this.active.clear();
+			}
+			return;
+		}
+		int step = ++this.step;
+		for (int i = 0; i < batch.size(); i++) {
+			this.probe.set(batch.getEntity0(i), batch.getFixtureHandle0(i), batch.getEntity1(i),
+					batch.getFixtureHandle1(i));
+			Pair pair = this.pairs.get(this.probe);
+			if (pair == null) {
+				pair = new Pair();
+				pair.set(batch.getEntity0(i), batch.getFixtureHandle0(i), batch.getEntity1(i),
+						batch.getFixtureHandle1(i));
+				pair.fixture0 = batch.getFixture0(i);
+				pair.fixture1 = batch.getFixture1(i);
+				pair.begin = step;
+				this.pairs.put(pair, pair);
+				this.active.add(pair);
+			}
+			if (pair.stamp != step) {
+				pair.stamp = step;
+				pair.points = 0;
+				pair.normalImpulse = 0;
+				pair.tangentialImpulse = 0;
+			}
+			pair.points++;
+			pair.normalImpulse += batch.getNormalImpulse(i);
+			pair.tangentialImpulse += batch.getTangentialImpulse(i);
+		}
+		boolean persist = !this.persistListeners.isEmpty();
+		for (int i = this.active.size() - 1; i >= 0; i--) {
+			Pair pair = this.active.get(i);
+			if (pair.stamp != step) {
+				// swap-remove the ended pair
+				int last = this.active.size() - 1;
+				this.active.set(i, this.active.get(last));
+				this.active.remove(last);
+				this.pairs.remove(pair);
+				ContactPair event = pair.toEvent(0, 0, 0);
+				for (int j = 0; j < this.listeners.size(); j++)
+					this.listeners.get(j).contactEnd(event);
+			} else if (pair.begin == step) {
+				ContactPair event = pair.toEvent(pair.points, pair.normalImpulse, pair.tangentialImpulse);
+				for (int j = 0; j < this.listeners.size(); j++)
+					this.listeners.get(j).contactBegin(event);
+			} else if (persist) {
+				ContactPair event = pair.toEvent(pair.points, pair.normalImpulse, pair.tangentialImpulse);
+				for (int j = 0; j < this.persistListeners.size(); j++)
+					this.persistListeners.get(j).contactPersist(event);
+			}
+		}
+	}
+
+	/**
+	 * @return the number of pairs currently in contact.
+	 */
+	int size() {
+		return this.active.size();
+	}
+
+	/**
+	 * Unordered fixture pair. Doubles as hash key and as accumulator.
+	 */
+	private static final class Pair {
+
+		PhysicsEntity entity0;
+		PhysicsEntity entity1;
+		int handle0;
+		int handle1;
+		String fixture0;
+		String fixture1;
+		int hash;
+		// step of the first contact and step of the last contact
+		int begin;
+		int stamp;
+		int points;
+		double normalImpulse;
+		double tangentialImpulse;
+
+		void set(PhysicsEntity entity0, int handle0, PhysicsEntity entity1, int handle1) {
+			this.entity0 = entity0;
+			this.handle0 = handle0;
+			this.entity1 = entity1;
+			this.handle1 = handle1;
+			// symmetric so both orders produce the same hash
+			this.hash = (System.identityHashCode(entity0) * 31 + handle0)
+					+ (System.identityHashCode(entity1) * 31 + handle1);
+		}
+
+		ContactPair toEvent(int points, double normalImpulse, double tangentialImpulse) {
+			return new ContactPair(this.entity0, this.fixture0, this.handle0, this.entity1, this.fixture1,
+					this.handle1, points, normalImpulse, tangentialImpulse);
+		}
+
+		@Override
+		public int hashCode() {
+			return this.hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Pair))
+				return false;
+			Pair other = (Pair) obj;
+			if (this.entity0 == other.entity0 && this.handle0 == other.handle0)
+				return this.entity1 == other.entity1 && this.handle1 == other.handle1;
+			return this.entity0 == other.entity1 && this.handle0 == other.handle1 && this.entity1 == other.entity0
+					&& this.handle1 == other.handle0;
+		}
+
+	}
+
+}
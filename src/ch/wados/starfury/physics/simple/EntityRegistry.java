@@ -0,0 +1,218 @@
+package ch.wados.starfury.physics.simple;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+
+import org.dyn4j.dynamics.Body;
+import org.dyn4j.geometry.Transform;
+import org.dyn4j.geometry.Vector2;
+
+import ch.wados.starfury.physics.api.EntityStateBuffer;
+import ch.wados.starfury.physics.api.PhysicsEntity;
+
+/**
+ * Indexed registry of the entities spawned in a manager.
+ * <p>
+ * Every registered entity stores its slot (its index in the registry), so
+ * membership tests and removals are performed in constant time. Removal swaps
+ * the last entity into the freed slot, therefore the iteration order is not
+ * stable over removals. An ordered registry instead shifts all following
+ * entities, so the iteration order always is the registration order at the
+ * cost of linear time removals.
+ * </p>
+ * <p>
+ * The registry also holds the queues of the bulk spawn and despawn operations.
+ * These are applied by {@link #commit(Consumer, Consumer)} at the step
+ * boundary.
+ * </p>
+ */
+final class EntityRegistry {
+
+	private final List<PhysicsEntity> entities = new ArrayList<>();
+	private final List<PhysicsEntity> view = Collections.unmodifiableList(this.entities);
+	private final List<SimpleEntity> pendingSpawns = new ArrayList<>();
+	private final List<SimpleEntity> pendingDespawns = new ArrayList<>();
+	private boolean ordered = false;
+
+	/**
+	 * Enables the ordered mode. Must be set while the registry is empty.
+	 */
+	void setOrdered(boolean ordered) {
+		this.ordered = ordered;
+	}
+
+	boolean isOrdered() {
+		return this.ordered;
+	}
+
+	/**
+	 * @return an unmodifiable live view of all registered entities.
+	 */
+	List<PhysicsEntity> view() {
+		return this.view;
+	}
+
+	int size() {
+		return this.entities.size();
+	}
+
+	SimpleEntity get(int slot) {
+		return (SimpleEntity) this.entities.get(slot);
+	}
+
+	boolean contains(SimpleEntity entity) {
+		int slot = entity.slot;
+		return slot >= 0 && slot < this.entities.size() && this.entities.get(slot) == entity;
+	}
+
+	/**
+	 * Registers an entity. The caller must ensure the entity is not already
+	 * registered.
+	 *
+	 * @return the slot of the entity
+	 */
+	int add(SimpleEntity entity) {
+		entity.slot = this.entities.size();
+		this.entities.add(entity);
+		return entity.slot;
+	}
+
+	/**
+	 * Unregisters an entity. The caller must ensure the entity is registered.
+	 * The last entity is moved into the freed slot, or all following entities
+	 * are shifted down if the registry is ordered.
+	 *
+	 * @return the slot the entity occupied
+	 */
+	int remove(SimpleEntity entity) {
+		int slot = entity.slot;
+		if (this.ordered) {
+			this.entities.remove(slot);
+			for (int i = slot; i < this.entities.size(); i++)
+				((SimpleEntity) this.entities.get(i)).slot = i;
+			entity.slot = -1;
+			return slot;
+		}
+		int last = this.entities.size() - 1;
+		PhysicsEntity moved = this.entities.remove(last);
+		if (slot != last) {
+			this.entities.set(slot, moved);
+			((SimpleEntity) moved).slot = slot;
+		}
+		entity.slot = -1;
+		return slot;
+	}
+
+	/**
+	 * Exports the state of all registered entities in slot order.
+	 */
+	void export(EntityStateBuffer buffer) {
+		buffer.clear();
+		buffer.ensureCapacity(this.entities.size());
+		for (int i = 0; i < this.entities.size(); i++) {
+			SimpleEntity entity = (SimpleEntity) this.entities.get(i);
+			Body body = entity.body;
+			Transform t = body.getTransform();
+			Vector2 v = body.getLinearVelocity();
+			buffer.add(entity, t.getTranslationX(), t.getTranslationY(), t.getRotation(), v.x, v.y,
+					body.getAngularVelocity(), body.isAsleep());
+		}
+	}
+
+	/**
+	 * Validates and queues a collection of entities for spawning.
+	 *
+	 * @throws NullPointerException
+	 *             if any entity is {@code null}.
+	 * @throws IllegalArgumentException
+	 *             if any entity is incompatible.
+	 * @throws IllegalStateException
+	 *             if any entity is already spawned, already queued or contained
+	 *             twice in the collection. No entity is queued in that case.
+	 */
+	void queueSpawns(Collection<? extends PhysicsEntity> entities) {
+		this.queue(entities, this.pendingSpawns, false);
+	}
+
+	/**
+	 * Validates and queues a collection of entities for despawning.
+	 *
+	 * @throws NullPointerException
+	 *             if any entity is {@code null}.
+	 * @throws IllegalArgumentException
+	 *             if any entity is incompatible.
+	 * @throws IllegalStateException
+	 *             if any entity is not spawned, already queued or contained
+	 *             twice in the collection. No entity is queued in that case.
+	 */
+	void queueDespawns(Collection<? extends PhysicsEntity> entities) {
+		this.queue(entities, this.pendingDespawns, true);
+	}
+
+	private void queue(Collection<? extends PhysicsEntity> entities, List<SimpleEntity> queue,
+			boolean spawned) {
+		for (PhysicsEntity entity : entities) {
+			if (entity == null)
+				throw new NullPointerException("entity may not be null");
+			if (!(entity instanceof SimpleEntity))
+				throw new IllegalArgumentException("incompatible entity");
+			if (this.contains((SimpleEntity) entity) != spawned)
+				throw new IllegalStateException(spawned ? "entity not spawned" : "entity already spawned");
+		}
+		int start = queue.size();
+		for (PhysicsEntity entity : entities) {
+			SimpleEntity simple = (SimpleEntity) entity;
+			if (simple.pending) {
+				// roll back everything queued by this call
+				for (int i = queue.size() - 1; i >= start; i--)
+					queue.remove(i).pending = false;
+				throw new IllegalStateException("entity already queued");
+			}
+			simple.pending = true;
+			queue.add(simple);
+		}
+	}
+
+	/**
+	 * Applies all queued operations. Despawns are applied before spawns.
+	 *
+	 * @param despawn
+	 *            the action despawning a single entity
+	 * @param spawn
+	 *            the action spawning a single entity
+	 */
+	void commit(Consumer<SimpleEntity> despawn, Consumer<SimpleEntity> spawn) {
+		for (int i = 0; i < this.pendingDespawns.size(); i++) {
+			SimpleEntity entity = this.pendingDespawns.get(i);
+			entity.pending = false;
+			despawn.accept(entity);
+		}
+		this.pendingDespawns.clear();
+		for (int i = 0; i < this.pendingSpawns.size(); i++) {
+			SimpleEntity entity = this.pendingSpawns.get(i);
+			entity.pending = false;
+			spawn.accept(entity);
+		}
+		this.pendingSpawns.clear();
+	}
+
+	/**
+	 * Discards all queued operations.
+	 */
+	void clearPending() {
+		for (int i = 0; i < this.pendingDespawns.size(); i++)
+			this.pendingDespawns.get(i).pending = false;
+		this.pendingDespawns.clear();
+		for (int i = 0; i < this.pendingSpawns.size(); i++)
+			this.pendingSpawns.get(i).pending = false;
+		this.pendingSpawns.clear();
+	}
+
+	boolean hasPending() {
+		return !this.pendingSpawns.isEmpty() || !this.pendingDespawns.isEmpty();
+	}
+
+}
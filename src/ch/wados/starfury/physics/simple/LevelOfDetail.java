@@ -0,0 +1,306 @@
+package ch.wados.starfury.physics.simple;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+import org.dyn4j.collision.broadphase.BroadphaseItem;
+import org.dyn4j.dynamics.Body;
+import org.dyn4j.dynamics.BodyFixture;
+import org.dyn4j.dynamics.World;
+import org.dyn4j.geometry.AABB;
+import org.dyn4j.geometry.Interval;
+import org.dyn4j.geometry.Mass;
+import org.dyn4j.geometry.Vector2;
+
+import ch.wados.starfury.physics.api.EntityType;
+import ch.wados.starfury.physics.api.LodPolicy;
+import ch.wados.starfury.physics.api.PhysicsEntity;
+
+/**
+ * Simulation level of detail of the entities of a {@link SimplePhysicsManager}.
+ * <p>
+ * Entities the {@link LodPolicy} assigns a step interval above 1 are reduced:
+ * their bodies are deactivated, so dyn4j neither integrates, solves nor
+ * detects collisions for them. Every {@code interval} steps a reduced entity
+ * is moved along its velocity over the accumulated time, including the
+ * acceleration of its thrusters and the gravity. Its bounding box serves as a
+ * coarse proxy, checked in every step: as soon as it overlaps any other entity
+ * the entity is promoted back to full simulation. The proxy is expanded by the
+ * margin, the distance the entity covers within its interval and the distance
+ * the fastest fully simulated entity covers within one step, so neither side
+ * can pass through it unnoticed. Entities are only reduced while their proxy
+ * is clear, and the demotion checks are spread over {@value #DEMOTION_STRIDE}
+ * steps.
+ * </p>
+ * <p>
+ * Static entities and observers are never reduced. Timed forces are paused
+ * while an entity is reduced. The history and snapshots hold reduced entities
+ * at their last position together with the time accumulated since, so
+ * rewinding and restoring continue exactly where the recording left off.
+ * </p>
+ */
+final class LevelOfDetail {
+
+	static final int DEMOTION_STRIDE = 8;
+
+	private final World world;
+	private final EntityRegistry registry;
+	private final List<PhysicsEntity> observers = new ArrayList<>();
+	private LodPolicy policy = null;
+	private double margin = 5;
+	private int reduced = 0;
+
+	LevelOfDetail(World world, EntityRegistry registry) {
+		this.world = world;
+		this.registry = registry;
+	}
+
+	/**
+	 * sets the policy. {@code null} promotes all entities and disables the
+	 * level of detail.
+	 */
+	void setPolicy(LodPolicy policy) {
+		this.policy = policy;
+		if (policy == null)
+			this.promoteAll();
+	}
+
+	LodPolicy getPolicy() {
+		return this.policy;
+	}
+
+	void setMargin(double margin) {
+		this.margin = margin;
+	}
+
+	double getMargin() {
+		return this.margin;
+	}
+
+	void addObserver(PhysicsEntity observer) {
+		Objects.requireNonNull(observer);
+		if (!this.observers.contains(observer))
+			this.observers.add(observer);
+	}
+
+	void removeObserver(PhysicsEntity observer) {
+		this.observers.remove(observer);
+	}
+
+	/**
+	 * @return the number of reduced entities.
+	 */
+	int getReducedCount() {
+		return this.reduced;
+	}
+
+	/**
+	 * Updates the tiers and moves the reduced entities due in this step. Must
+	 * be called before the world is stepped.
+	 */
+	void update(long step, double stepTime) {
+		if (this.policy == null)
+			return;
+		double reach = this.getMaxSpeed() * stepTime;
+		for (int i = 0; i < this.registry.size(); i++) {
+			SimpleEntity entity = this.registry.get(i);
+			if (entity.getEntityType() == EntityType.STATIC)
+				continue;
+			int interval = Math.max(1, this.policy.getInterval(this.distance(entity)));
+			if (entity.lodInterval > 1) {
+				// the accumulated time covers the skipped steps before this one
+				if (interval == 1) {
+					this.promote(entity);
+					continue;
+				}
+				entity.lodInterval = interval;
+				if (entity.lodTicks >= interval)
+					this.advance(entity);
+				if (this.isCrowded(entity, interval * stepTime, reach)) {
+					this.promote(entity);
+					continue;
+				}
+				entity.lodTicks++;
+				entity.lodTime += stepTime;
+			} else if (interval > 1 && (step + i) % DEMOTION_STRIDE == 0
+					&& !this.isCrowded(entity, interval * stepTime, reach)) {
+				this.demote(entity, interval, stepTime);
+			}
+		}
+	}
+
+	/**
+	 * @return the distance to the nearest observer.
+	 */
+	private double distance(SimpleEntity entity) {
+		double x = entity.body.getTransform().getTranslationX();
+		double y = entity.body.getTransform().getTranslationY();
+		double best = Double.POSITIVE_INFINITY;
+		for (int o = 0; o < this.observers.size(); o++) {
+			PhysicsEntity observer = this.observers.get(o);
+			if (observer == entity)
+				return 0;
+			double dx = observer.getTransform().getTranslationX() - x;
+			double dy = observer.getTransform().getTranslationY() - y;
+			best = Math.min(best, dx * dx + dy * dy);
+		}
+		return Math.sqrt(best);
+	}
+
+	/**
+	 * @return the highest linear speed of all fully simulated entities.
+	 */
+	private double getMaxSpeed() {
+		double max = 0;
+		for (int i = 0; i < this.registry.size(); i++) {
+			Body body = this.registry.get(i).body;
+			if (body.isActive() && !body.isAsleep() && !body.isStatic())
+				max = Math.max(max, body.getLinearVelocity().getMagnitudeSquared());
+		}
+		return Math.sqrt(max);
+	}
+
+	/**
+	 * @param time
+	 *            the time until the entity is moved next.
+	 * @param reach
+	 *            the distance any other entity covers within one step.
+	 * @return {@code true} if the coarse proxy of the entity overlaps any
+	 *         other entity.
+	 */
+	private boolean isCrowded(SimpleEntity entity, double time, double reach) {
+		AABB proxy = entity.body.createAABB();
+		double travel = entity.body.getLinearVelocity().getMagnitude() * time;
+		proxy.expand(2 * (this.margin + travel + reach));
+		List<BroadphaseItem<Body, BodyFixture>> items = this.world.getBroadphaseDetector().detect(proxy);
+		for (int i = 0; i < items.size(); i++)
+			if (items.get(i).getCollidable() != entity.body)
+				return true;
+		return false;
+	}
+
+	private void demote(SimpleEntity entity, int interval, double stepTime) {
+		entity.body.setActive(false);
+		entity.lodInterval = interval;
+		// the world skips the entity from this step on
+		entity.lodTicks = 1;
+		entity.lodTime = stepTime;
+		this.reduced++;
+	}
+
+	/**
+	 * Returns an entity to full simulation after catching up on the
+	 * accumulated time.
+	 */
+	private void promote(SimpleEntity entity) {
+		this.advance(entity);
+		this.restore(entity);
+	}
+
+	private void restore(SimpleEntity entity) {
+		entity.body.setActive(true);
+		entity.lodInterval = 1;
+		entity.lodTicks = 0;
+		entity.lodTime = 0;
+		this.reduced--;
+	}
+
+	/**
+	 * Moves a reduced entity over the accumulated time.
+	 */
+	private void advance(SimpleEntity entity) {
+		if (integrate(entity, this.world.getGravity()))
+			this.world.getBroadphaseDetector().update(entity.body);
+	}
+
+	/**
+	 * Moves a reduced entity over the accumulated time without updating the
+	 * broad-phase.
+	 *
+	 * @return {@code true} if the entity has been moved.
+	 */
+	private static boolean integrate(SimpleEntity entity, Vector2 gravity) {
+		double t = entity.lodTime;
+		int ticks = entity.lodTicks;
+		entity.lodTicks = 0;
+		entity.lodTime = 0;
+		Body body = entity.body;
+		if (t == 0 || body.isAsleep())
+			return false;
+		double dt = t / ticks;
+		Mass mass = body.getMass();
+		Vector2 force = entity.getThrusters().getForce(body.getTransform()).getForce();
+		double torque = entity.getThrusters().getTorque().getTorque();
+		double scale = body.getGravityScale();
+		double ax = (force.x * mass.getInverseMass() + gravity.x * scale) * dt;
+		double ay = (force.y * mass.getInverseMass() + gravity.y * scale) * dt;
+		double alpha = dt * mass.getInverseInertia() * torque;
+		double linear = Interval.clamp(1 - dt * body.getLinearDamping(), 0, 1);
+		double angular = Interval.clamp(1 - dt * body.getAngularDamping(), 0, 1);
+		Vector2 v = body.getLinearVelocity();
+		double vx = v.x, vy = v.y, omega = body.getAngularVelocity();
+		double dx = 0, dy = 0, rotation = 0;
+		// step by step in the order of the island solver. the thrust keeps
+		// the direction it had at the start of the interval
+		for (int i = 0; i < ticks; i++) {
+			vx = (vx + ax) * linear;
+			vy = (vy + ay) * linear;
+			omega = (omega + alpha) * angular;
+			dx += vx * dt;
+			dy += vy * dt;
+			rotation += omega * dt;
+		}
+		body.setLinearVelocity(vx, vy);
+		body.setAngularVelocity(omega);
+		body.translate(dx, dy);
+		body.rotateAboutCenter(rotation);
+		return true;
+	}
+
+	/**
+	 * Promotes a reduced entity before it is removed from the world.
+	 */
+	void remove(SimpleEntity entity) {
+		if (entity.lodInterval > 1)
+			this.restore(entity);
+	}
+
+	/**
+	 * Promotes all reduced entities after catching up on the accumulated
+	 * time.
+	 */
+	private void promoteAll() {
+		for (int i = 0; i < this.registry.size() && this.reduced > 0; i++) {
+			SimpleEntity entity = this.registry.get(i);
+			if (entity.lodInterval > 1)
+				this.promote(entity);
+		}
+	}
+
+	/**
+	 * Recounts the reduced entities after the state of the registry has been
+	 * replaced by a rewind or a snapshot. Promotes them if the level of
+	 * detail is disabled.
+	 */
+	void restored() {
+		this.reduced = 0;
+		for (int i = 0; i < this.registry.size(); i++)
+			if (this.registry.get(i).lodInterval > 1)
+				this.reduced++;
+		if (this.policy == null)
+			this.promoteAll();
+	}
+
+	/**
+	 * Returns a reduced entity to full simulation after catching up on the
+	 * accumulated time. For entities not yet added to a world, e.g. restored
+	 * from a snapshot by a manager without level of detail.
+	 */
+	static void promote(SimpleEntity entity, Vector2 gravity) {
+		integrate(entity, gravity);
+		entity.body.setActive(true);
+		entity.lodInterval = 1;
+	}
+
+}
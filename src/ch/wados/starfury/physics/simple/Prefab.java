@@ -0,0 +1,120 @@
+package ch.wados.starfury.physics.simple;
+
+import java.util.List;
+
+import org.dyn4j.geometry.Mass;
+import org.dyn4j.geometry.Vector2;
+
+import ch.wados.starfury.physics.api.EntityType;
+import ch.wados.starfury.physics.api.FixtureDefinition;
+import ch.wados.starfury.physics.api.PhysicsEntityDefinition;
+import ch.wados.starfury.physics.api.ThrustPointDefinition;
+
+/**
+ * Compiled form of a locked {@link PhysicsEntityDefinition}. Holds everything
+ * that is identical for all entities built from the definition, so that
+ * building an entity no longer requires any mass computation.
+ * <p>
+ * Instances are immutable and may be shared between threads.
+ * </p>
+ *
+ * @see PrefabCache
+ */
+final class Prefab {
+
+	final EntityType type;
+	final FixtureDefinition[] fixtures;
+	// the handles of the fixtures and the first unused fixture handle
+	final int[] fixtureHandles;
+	final int nextFixtureHandle;
+	// the final mass of the entity in local coordinates
+	final Mass mass;
+	final String[] thrusterIds;
+	final Vector2[] thrusterPositions;
+	// normalised thrust directions
+	final Vector2[] thrusterDirections;
+	final double[] torqueFactors;
+	// the handles of the thrusters and the first unused thruster handle
+	final int[] thrusterHandles;
+	final int nextThrusterHandle;
+	final double linearDamping;
+	final double angularDamping;
+
+	/**
+	 * Compiles a definition. The definition is not checked for being locked.
+	 */
+	Prefab(PhysicsEntityDefinition def) {
+		// build a reference entity. This guarantees that prefab entities are
+		// identical to entities built directly from the definition.
+		SimpleEntity reference = new SimpleEntity(def);
+		List<FixtureDefinition> fixtures = def.getFixtures();
+		List<ThrustPointDefinition> thrusts = def.getThrustPoints();
+		this.type = def.getType();
+		this.fixtures = fixtures.toArray(new FixtureDefinition[fixtures.size()]);
+		this.fixtureHandles = sequence(this.fixtures.length);
+		this.nextFixtureHandle = this.fixtures.length;
+		this.mass = new Mass(reference.body.getMass());
+		this.thrusterIds = new String[thrusts.size()];
+		this.thrusterPositions = new Vector2[thrusts.size()];
+		this.thrusterDirections = new Vector2[thrusts.size()];
+		this.torqueFactors = new double[thrusts.size()];
+		this.thrusterHandles = sequence(thrusts.size());
+		this.nextThrusterHandle = thrusts.size();
+		for (int i = 0; i < thrusts.size(); i++) {
+			ThrustPointDefinition t = thrusts.get(i);
+			this.thrusterIds[i] = t.getIdentifier();
+			this.thrusterPositions[i] = t.getPosition().copy();
+			this.thrusterDirections[i] = t.getDirection().getNormalized();
+			this.torqueFactors[i] = reference.getThrusters().getTorqueFactor(i);
+		}
+		this.linearDamping = def.getLinearDampening();
+		this.angularDamping = def.getAngularDampening();
+	}
+
+	/**
+	 * Creates a prefab from already compiled data, e.g. when restoring a
+	 * snapshot. All arrays are used directly and must not be modified.
+	 */
+	Prefab(EntityType type, FixtureDefinition[] fixtures, int[] fixtureHandles, int nextFixtureHandle, Mass mass,
+			String[] thrusterIds, Vector2[] thrusterPositions, Vector2[] thrusterDirections, double[] torqueFactors,
+			int[] thrusterHandles, int nextThrusterHandle, double linearDamping, double angularDamping) {
+		this.type = type;
+		this.fixtures = fixtures;
+		this.fixtureHandles = fixtureHandles;
+		this.nextFixtureHandle = nextFixtureHandle;
+		this.mass = mass;
+		this.thrusterIds = thrusterIds;
+		this.thrusterPositions = thrusterPositions;
+		this.thrusterDirections = thrusterDirections;
+		this.torqueFactors = torqueFactors;
+		this.thrusterHandles = thrusterHandles;
+		this.nextThrusterHandle = nextThrusterHandle;
+		this.linearDamping = linearDamping;
+		this.angularDamping = angularDamping;
+	}
+
+	private static int[] sequence(int length) {
+		int[] handles = new int[length];
+		for (int i = 0; i < length; i++)
+			handles[i] = i;
+		return handles;
+	}
+
+	/**
+	 * Checks if a definition can be compiled. This is the case if the
+	 * definition and all fixture and thrust point definitions it contains are
+	 * locked.
+	 */
+	static boolean isCompilable(PhysicsEntityDefinition def) {
+		if (!def.isLocked())
+			return false;
+		for (FixtureDefinition f : def.getFixtures())
+			if (!f.isLocked())
+				return false;
+		for (ThrustPointDefinition t : def.getThrustPoints())
+			if (!t.isLocked())
+				return false;
+		return true;
+	}
+
+}
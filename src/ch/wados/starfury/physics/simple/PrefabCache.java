@@ -0,0 +1,49 @@
+package ch.wados.starfury.physics.simple;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import ch.wados.starfury.physics.api.PhysicsEntityDefinition;
+
+/**
+ * Thread-safe cache of {@link Prefab Prefabs}. Definitions are identified by
+ * reference. Only {@link Prefab#isCompilable(PhysicsEntityDefinition)
+ * compilable} definitions are cached, since any other definition may still
+ * change.
+ * <p>
+ * Cached definitions are held for the lifetime of the cache.
+ * </p>
+ */
+final class PrefabCache {
+
+	private final ConcurrentMap<PhysicsEntityDefinition, Prefab> prefabs = new ConcurrentHashMap<>();
+
+	/**
+	 * Gets the prefab of a definition, compiling it if required.
+	 *
+	 * @return the prefab or {@code null} if the definition is not compilable.
+	 */
+	Prefab get(PhysicsEntityDefinition def) {
+		Prefab prefab = this.prefabs.get(def);
+		if (prefab != null)
+			return prefab;
+		if (!Prefab.isCompilable(def))
+			return null;
+		return this.prefabs.computeIfAbsent(def, Prefab::new);
+	}
+
+	/**
+	 * Creates a new entity, using the prefab of the definition if possible.
+	 */
+	SimpleEntity create(PhysicsEntityDefinition def) {
+		if (def == null)
+			throw new NullPointerException("definition may not be null");
+		Prefab prefab = this.get(def);
+		return prefab == null ? new SimpleEntity(def) : new SimpleEntity(def, prefab);
+	}
+
+	int size() {
+		return this.prefabs.size();
+	}
+
+}
@@ -0,0 +1,858 @@
+package ch.wados.starfury.physics.simple;
+
+import java.io.IOException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import org.dyn4j.collision.broadphase.BroadphaseDetector;
+import org.dyn4j.collision.continuous.TimeOfImpact;
+import org.dyn4j.dynamics.Body;
+import org.dyn4j.dynamics.BodyFixture;
+import org.dyn4j.dynamics.TimeOfImpactAdapter;
+import org.dyn4j.dynamics.World;
+import org.dyn4j.dynamics.contact.ContactAdapter;
+import org.dyn4j.dynamics.contact.SolvedContactPoint;
+import org.dyn4j.geometry.AABB;
+import org.dyn4j.geometry.Vector2;
+
+import ch.wados.starfury.physics.api.CollisionBatch;
+import ch.wados.starfury.physics.api.CollisionBatchListener;
+import ch.wados.starfury.physics.api.CollisionFilter;
+import ch.wados.starfury.physics.api.CollisionListener;
+import ch.wados.starfury.physics.api.ContactPairListener;
+import ch.wados.starfury.physics.api.EntityStateBuffer;
+import ch.wados.starfury.physics.api.EntityType;
+import ch.wados.starfury.physics.api.PhysicsEntity;
+import ch.wados.starfury.physics.api.PhysicsEntityDefinition;
+import ch.wados.starfury.physics.api.PhysicsManager;
+import ch.wados.starfury.physics.api.PhysicsWorldConfig;
+import ch.wados.starfury.physics.api.RayBatch;
+import ch.wados.starfury.physics.api.RaycastHit;
+import ch.wados.starfury.physics.api.RaycastHitBuffer;
+import ch.wados.starfury.physics.api.TimeOfImpactListener;
+import ch.wados.starfury.physics.api.UpdateListener;
+
+/**
+ * Spatially sharded {@link PhysicsManager}.
+ * <p>
+ * Space is divided into square regions of a fixed size. Every region that
+ * holds at least one body owns its own dyn4j {@link World}. All regions are
+ * stepped concurrently on a {@link ForkJoinPool}. After each step the entities
+ * are migrated to the region containing their centre of mass.
+ * </p>
+ * <p>
+ * Bodies within the seam width of a region border are mirrored into the
+ * neighbouring regions. A mirror is a copy of the body that is synchronised
+ * with the original before every step. Contacts across a seam are therefore
+ * resolved in both regions: every original body collides with the mirror of
+ * the other one. For this to work the seam width should be at least the
+ * radius of the largest entity.
+ * </p>
+ * <p>
+ * Collision events are buffered per region and merged into a single
+ * {@link CollisionBatch} that is dispatched on the stepping thread after all
+ * regions have completed the step. Collision filters however are invoked
+ * from the worker threads and must therefore be thread-safe. TimeOfImpact
+ * listeners are invoked from the worker threads as well, but never
+ * concurrently: the manager serialises them.
+ * </p>
+ *
+ * @see SimplePhysicsManager
+ */
+public final class ShardedPhysicsManager implements PhysicsManager {
+
+	private final double regionSize;
+	private final double seamWidth;
+	private final ForkJoinPool pool;
+
+	private boolean initialised = false;
+	private Vector2 gravity;
+	private PhysicsWorldConfig config;
+	private final Map<Long, Region> regions = new HashMap<>();
+	private final List<Region> regionList = new ArrayList<>();
+	private final EntityRegistry registry = new EntityRegistry();
+	private final PrefabCache prefabs = new PrefabCache();
+	// indexed by the registry slot of the entity
+	private final List<Shard> shardList = new ArrayList<>();
+	private long nextSerial = 0;
+	private double deterministicStep = 0;
+	private long stateHash = 0;
+	private long step = 0;
+	private StateHistory history;
+	private final TransformAccess transform = new TransformAccess();
+
+	/**
+	 * Creates a new sharded manager stepping on the common
+	 * {@link ForkJoinPool}.
+	 *
+	 * @param regionSize
+	 *            the edge length of a region. Must be strictly positive and
+	 *            finite.
+	 * @param seamWidth
+	 *            the distance from a region border within which bodies are
+	 *            mirrored into the neighbouring region. Must be positive or
+	 *            zero and finite.
+	 * @throws IllegalArgumentException
+	 *             if the {@code regionSize} or the {@code seamWidth} is
+	 *             invalid.
+	 */
+	public ShardedPhysicsManager(double regionSize, double seamWidth) {
+		this(regionSize, seamWidth, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Creates a new sharded manager stepping on a given {@link ForkJoinPool}.
+	 *
+	 * @param regionSize
+	 *            the edge length of a region. Must be strictly positive and
+	 *            finite.
+	 * @param seamWidth
+	 *            the distance from a region border within which bodies are
+	 *            mirrored into the neighbouring region. Must be positive or
+	 *            zero, finite and smaller than half the {@code regionSize}.
+	 * @param pool
+	 *            the pool the regions are stepped on. May not be {@code null}.
+	 * @throws NullPointerException
+	 *             if the {@code pool} is {@code null}.
+	 * @throws IllegalArgumentException
+	 *             if the {@code regionSize} or the {@code seamWidth} is
+	 *             invalid.
+	 */
+	public ShardedPhysicsManager(double regionSize, double seamWidth,
+			ForkJoinPool pool) {
+		Objects.requireNonNull(pool);
+		if (regionSize <= 0 || !Double.isFinite(regionSize))
+			throw new IllegalArgumentException(
+					"region size must be positive. Was " + regionSize);
+		if (seamWidth < 0 || !Double.isFinite(seamWidth)
+				|| 2 * seamWidth >= regionSize)
+			throw new IllegalArgumentException(
+					"seam width must be in range [0, regionSize/2). Was "
+							+ seamWidth);
+		this.regionSize = regionSize;
+		this.seamWidth = seamWidth;
+		this.pool = pool;
+	}
+
+	private void assertInit() {
+		if (!initialised)
+			throw new IllegalStateException("world must be initialised");
+	}
+
+	private final List<CollisionFilter> collisionFilters = new ArrayList<>();
+	private final List<CollisionListener> collisionListeners = new ArrayList<>();
+	private final List<TimeOfImpactListener> toiListeners = new ArrayList<>();
+	private final List<UpdateListener> updateListeners = new ArrayList<>();
+	private final List<CollisionBatchListener> batchListeners = new ArrayList<>();
+	private final CollisionBatch batch = new CollisionBatch();
+	private final SpatialQuery query = new SpatialQuery(
+			new SpatialQuery.Worlds() {
+				@Override
+				public int count() {
+					return regionList.size();
+				}
+
+				@Override
+				public World get(int index) {
+					return regionList.get(index).world;
+				}
+			});
+	private final ContactPairTracker pairTracker = new ContactPairTracker();
+	private final CollisionPointAdapter pointAdapter = new CollisionPointAdapter(
+			this.collisionListeners);
+
+	@Override
+	public void addCollisionBatchListener(CollisionBatchListener listener) {
+		Objects.requireNonNull(listener);
+		if (!this.batchListeners.contains(listener))
+			this.batchListeners.add(listener);
+	}
+
+	@Override
+	public void removeCollisionBatchListener(CollisionBatchListener listener) {
+		Objects.requireNonNull(listener);
+		this.batchListeners.remove(listener);
+	}
+
+	@Override
+	public void addCollisionFilter(CollisionFilter filter) {
+		Objects.requireNonNull(filter);
+		if (!this.collisionFilters.contains(filter))
+			this.collisionFilters.add(filter);
+	}
+
+	@Override
+	public void addCollisionListener(CollisionListener listener) {
+		Objects.requireNonNull(listener);
+		if (!this.collisionListeners.contains(listener))
+			this.collisionListeners.add(listener);
+	}
+
+	@Override
+	public void addCollisionListener(EntityType type0, EntityType type1,
+			CollisionListener listener) {
+		this.pointAdapter.addListener(type0, type1, listener);
+	}
+
+	@Override
+	public void addContactPairListener(ContactPairListener listener,
+			boolean persist) {
+		this.pairTracker.addListener(listener, persist);
+	}
+
+	@Override
+	public void addTimeOfImpactListener(TimeOfImpactListener listener) {
+		Objects.requireNonNull(listener);
+		if (!this.toiListeners.contains(listener))
+			this.toiListeners.add(listener);
+	}
+
+	@Override
+	public void addUpdateListener(UpdateListener listener) {
+		Objects.requireNonNull(listener);
+		if (!this.updateListeners.contains(listener))
+			this.updateListeners.add(listener);
+	}
+
+	@Override
+	public void removeCollisionFilter(CollisionFilter filter) {
+		Objects.requireNonNull(filter);
+		this.collisionFilters.remove(filter);
+	}
+
+	@Override
+	public void removeCollisionListener(CollisionListener listener) {
+		Objects.requireNonNull(listener);
+		this.collisionListeners.remove(listener);
+	}
+
+	@Override
+	public void removeCollisionListener(EntityType type0, EntityType type1,
+			CollisionListener listener) {
+		this.pointAdapter.removeListener(type0, type1, listener);
+	}
+
+	@Override
+	public void removeContactPairListener(ContactPairListener listener) {
+		this.pairTracker.removeListener(listener);
+	}
+
+	@Override
+	public void removeTimeOfImpactListener(TimeOfImpactListener listener) {
+		Objects.requireNonNull(listener);
+		this.toiListeners.remove(listener);
+	}
+
+	@Override
+	public void removeUpdateListener(UpdateListener listener) {
+		Objects.requireNonNull(listener);
+		this.updateListeners.remove(listener);
+	}
+
+	@Override
+	public PhysicsEntity createEntity(PhysicsEntityDefinition definition) {
+		return this.prefabs.create(definition);
+	}
+
+	@Override
+	public boolean precompile(PhysicsEntityDefinition definition) {
+		Objects.requireNonNull(definition);
+		return this.prefabs.get(definition) != null;
+	}
+
+	@Override
+	public synchronized void despawnEntity(PhysicsEntity entity) {
+		this.assertInit();
+		Objects.requireNonNull(entity);
+		if (!(entity instanceof SimpleEntity))
+			throw new IllegalArgumentException("incompatible entity");
+		SimpleEntity simple = (SimpleEntity) entity;
+		if (!this.registry.contains(simple))
+			throw new IllegalStateException("entity not spawned");
+		if (simple.pending)
+			throw new IllegalStateException("entity already queued");
+		this.despawn(simple);
+	}
+
+	@Override
+	public synchronized void despawnEntities(
+			Collection<? extends PhysicsEntity> entities) {
+		this.assertInit();
+		Objects.requireNonNull(entities);
+		this.registry.queueDespawns(entities);
+	}
+
+	private void despawn(SimpleEntity entity) {
+		Shard shard = this.shardList.get(entity.slot);
+		shard.home.world.removeBody(entity.body);
+		for (int i = shard.mirrorRegions.size() - 1; i >= 0; i--)
+			shard.removeMirror(i);
+		// mirror the removal of the registry
+		int slot = this.registry.remove(entity);
+		if (this.registry.isOrdered()) {
+			this.shardList.remove(slot);
+		} else {
+			Shard last = this.shardList.remove(this.shardList.size() - 1);
+			if (last != shard)
+				this.shardList.set(slot, last);
+		}
+	}
+
+	@Override
+	public Vector2 getGravity() {
+		this.assertInit();
+		return this.gravity.copy();
+	}
+
+	@Override
+	public void setGravity(Vector2 gravity) {
+		this.assertInit();
+		this.gravity = gravity.copy();
+		for (Region region : this.regionList)
+			region.world.setGravity(this.gravity);
+	}
+
+	@Override
+	public synchronized void spawnEntity(PhysicsEntity entity) {
+		this.assertInit();
+		Objects.requireNonNull(entity);
+		if (!(entity instanceof SimpleEntity))
+			throw new IllegalArgumentException("incompatible entity");
+		SimpleEntity simple = (SimpleEntity) entity;
+		if (this.registry.contains(simple))
+			throw new IllegalStateException("entity already spawned");
+		if (simple.pending)
+			throw new IllegalStateException("entity already queued");
+		this.spawn(simple);
+	}
+
+	@Override
+	public synchronized void spawnEntities(
+			Collection<? extends PhysicsEntity> entities) {
+		this.assertInit();
+		Objects.requireNonNull(entities);
+		this.registry.queueSpawns(entities);
+	}
+
+	private void spawn(SimpleEntity entity) {
+		Vector2 center = entity.body.getWorldCenter();
+		Shard shard = new Shard(entity, this.nextSerial++,
+				this.region(center.x, center.y));
+		shard.home.world.addBody(entity.body);
+		this.registry.add(entity);
+		this.shardList.add(shard);
+		this.updateMirrors(shard);
+	}
+
+	@Override
+	public void initialiseWorld(Vector2 gravity) {
+		Objects.requireNonNull(gravity);
+		this.initialiseWorld(new PhysicsWorldConfig().setGravity(gravity));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * Every region uses its own world created from this configuration. The
+	 * capacity therefore applies per region.
+	 * </p>
+	 */
+	@Override
+	public synchronized void initialiseWorld(PhysicsWorldConfig config) {
+		Objects.requireNonNull(config);
+		if (this.initialised)
+			throw new IllegalStateException("already initialised");
+		this.initialised = true;
+		this.config = config;
+		this.gravity = config.getGravity();
+		this.deterministicStep = config.getDeterministicStep();
+		this.registry.setOrdered(config.isDeterministic());
+		if (config.getHistoryLength() > 0)
+			this.history = new StateHistory(config.getHistoryLength(),
+					config.getCapacity());
+	}
+
+	@Override
+	public void stepWorld(double stepTime) {
+		this.assertInit();
+		if (stepTime <= 0 || !Double.isFinite(stepTime))
+			throw new IllegalArgumentException(
+					"step time must be positive. Was " + stepTime);
+		if (this.deterministicStep != 0 && stepTime != this.deterministicStep)
+			throw new IllegalArgumentException("step time must be "
+					+ this.deterministicStep + " in deterministic mode. Was "
+					+ stepTime);
+		synchronized (this) {
+			if (this.registry.hasPending())
+				this.registry.commit(this::despawn, this::spawn);
+		}
+		this.syncShards();
+		// the thrust forces only act for one step
+		for (int i = 0; i < this.registry.size(); i++)
+			this.registry.get(i).applyThrust();
+		// step all regions concurrently
+		if (this.regionList.size() == 1) {
+			this.regionList.get(0).step(stepTime);
+		} else if (!this.regionList.isEmpty()) {
+			List<ForkJoinTask<?>> tasks = new ArrayList<>(
+					this.regionList.size());
+			for (Region region : this.regionList)
+				tasks.add(ForkJoinTask.adapt(() -> region.step(stepTime)));
+			this.pool.invoke(
+					ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(tasks)));
+		}
+		// merge the buffered events in region order
+		for (Region region : this.regionList) {
+			this.batch.addAll(region.batch);
+			region.batch.clear();
+		}
+		if (this.deterministicStep != 0)
+			this.stateHash = StateHash.update(this.stateHash, this.registry,
+					this.transform);
+		this.collisionEvent();
+		this.updateEvent();
+		this.step++;
+		if (this.history != null)
+			this.history.record(this.step, this.stateHash, this.registry,
+					this.transform);
+	}
+
+	/**
+	 * brings the shards up to date with any changes since the last step.
+	 */
+	private void syncShards() {
+		for (Shard shard : this.shardList) {
+			this.migrate(shard);
+			this.updateMirrors(shard);
+			shard.syncMirrors();
+		}
+		this.pruneRegions();
+	}
+
+	@Override
+	public void queryAABB(AABB aabb,
+			Collection<? super PhysicsEntity> results) {
+		this.assertInit();
+		Objects.requireNonNull(results);
+		this.query.queryAABB(aabb, results);
+	}
+
+	@Override
+	public void queryRadius(Vector2 center, double radius,
+			Collection<? super PhysicsEntity> results) {
+		this.assertInit();
+		Objects.requireNonNull(results);
+		this.query.queryRadius(center, radius, results);
+	}
+
+	@Override
+	public boolean raycast(Vector2 start, Vector2 direction, double length,
+			RaycastHit hit) {
+		this.assertInit();
+		Objects.requireNonNull(hit);
+		return this.query.raycast(start, direction, length, hit);
+	}
+
+	@Override
+	public int raycastAll(Vector2 start, Vector2 direction, double length,
+			RaycastHitBuffer hits) {
+		this.assertInit();
+		Objects.requireNonNull(hits);
+		this.query.raycastAll(start, direction, length, hits);
+		return hits.size();
+	}
+
+	@Override
+	public void raycastBatch(RayBatch batch) {
+		this.assertInit();
+		this.query.raycastBatch(batch, this.pool);
+	}
+
+	@Override
+	public void nearest(Vector2 point, int k,
+			List<? super PhysicsEntity> results) {
+		this.assertInit();
+		Objects.requireNonNull(results);
+		this.query.nearest(point, k, this.registry.size(), results);
+	}
+
+	@Override
+	public long getStateHash() {
+		return this.stateHash;
+	}
+
+	@Override
+	public long getStep() {
+		return this.step;
+	}
+
+	@Override
+	public boolean isRecorded(long step) {
+		return this.history != null && this.history.contains(step);
+	}
+
+	@Override
+	public synchronized void rewind(long step) {
+		this.assertInit();
+		if (this.history == null)
+			throw new IllegalStateException("history is disabled");
+		if (!this.history.contains(step))
+			throw new IllegalArgumentException(
+					"step " + step + " is not recorded");
+		this.registry.clearPending();
+		this.stateHash = this.history.restore(step, this.registry,
+				this::despawn, this::spawn, this.transform);
+		this.step = step;
+		this.syncShards();
+		// queries before the next step must see the restored positions
+		for (Region region : this.regionList) {
+			BroadphaseDetector<Body, BodyFixture> broadphase = region.world
+					.getBroadphaseDetector();
+			for (int i = 0; i < region.world.getBodyCount(); i++)
+				broadphase.update(region.world.getBody(i));
+			region.world.setUpdateRequired(true);
+		}
+	}
+
+	@Override
+	public void exportState(EntityStateBuffer buffer) {
+		Objects.requireNonNull(buffer);
+		this.registry.export(buffer);
+	}
+
+	@Override
+	public synchronized void saveSnapshot(WritableByteChannel channel)
+			throws IOException {
+		this.assertInit();
+		Objects.requireNonNull(channel);
+		WorldSnapshot.save(this.registry, channel);
+	}
+
+	@Override
+	public synchronized void restoreSnapshot(ReadableByteChannel channel)
+			throws IOException {
+		this.assertInit();
+		Objects.requireNonNull(channel);
+		List<SimpleEntity> entities = WorldSnapshot.restore(channel);
+		this.registry.clearPending();
+		if (this.history != null)
+			this.history.clear();
+		while (this.registry.size() > 0)
+			this.despawn(this.registry.get(this.registry.size() - 1));
+		for (int i = 0; i < entities.size(); i++) {
+			SimpleEntity entity = entities.get(i);
+			// entities reduced by the saving manager are fully simulated here
+			if (entity.lodInterval > 1)
+				LevelOfDetail.promote(entity, this.gravity);
+			this.spawn(entity);
+		}
+	}
+
+	@Override
+	public List<PhysicsEntity> getSpawnedEntities() {
+		return this.registry.view();
+	}
+
+	/**
+	 * @return the number of regions currently holding at least one body.
+	 */
+	int getRegionCount() {
+		return this.regionList.size();
+	}
+
+	/**
+	 * @return the number of mirror bodies currently held for a given entity.
+	 */
+	int getMirrorCount(PhysicsEntity entity) {
+		SimpleEntity simple = (SimpleEntity) entity;
+		return this.registry.contains(simple)
+				? this.shardList.get(simple.slot).mirrorRegions.size() : 0;
+	}
+
+	private void updateEvent() {
+		updateListeners.forEach(UpdateListener::update);
+		for (int i = 0; i < registry.size(); i++)
+			registry.get(i).update();
+	}
+
+	private void collisionEvent() {
+		batchListeners.forEach(bl -> bl.collisions(batch));
+		pairTracker.update(batch);
+		pointAdapter.collisions(batch);
+		batch.clear();
+	}
+
+	/**
+	 * Notifies the TimeOfImpact listeners. Called from the worker threads, so
+	 * the listeners are serialised.
+	 */
+	private synchronized boolean toiEvent(SimpleEntity entity0,
+			String fixture0, SimpleEntity entity1, String fixture1,
+			double toi) {
+		boolean result = true;
+		for (TimeOfImpactListener listener : toiListeners)
+			result &= listener.collision(entity0, fixture0, entity1, fixture1,
+					toi);
+		result &= entity0.collision(entity0, fixture0, entity1, fixture1, toi);
+		result &= entity1.collision(entity0, fixture0, entity1, fixture1, toi);
+		return result;
+	}
+
+	// REGION MANAGEMENT
+
+	private int cell(double coordinate) {
+		return (int) Math.floor(coordinate / this.regionSize);
+	}
+
+	private static long key(int rx, int ry) {
+		return ((long) rx << 32) | (ry & 0xffffffffL);
+	}
+
+	private Region region(double x, double y) {
+		return this.region(this.cell(x), this.cell(y));
+	}
+
+	private Region region(int rx, int ry) {
+		Long key = key(rx, ry);
+		Region region = this.regions.get(key);
+		if (region == null) {
+			region = new Region(rx, ry);
+			this.regions.put(key, region);
+			this.regionList.add(region);
+		}
+		return region;
+	}
+
+	private void pruneRegions() {
+		for (int i = this.regionList.size() - 1; i >= 0; i--) {
+			Region region = this.regionList.get(i);
+			if (region.world.getBodyCount() == 0) {
+				this.regionList.remove(i);
+				this.regions.remove(key(region.rx, region.ry));
+			}
+		}
+	}
+
+	/**
+	 * moves the body of a shard into the region containing its centre of mass.
+	 */
+	private void migrate(Shard shard) {
+		Body body = shard.entity.body;
+		Vector2 center = body.getWorldCenter();
+		int rx = this.cell(center.x);
+		int ry = this.cell(center.y);
+		if (rx == shard.home.rx && ry == shard.home.ry)
+			return;
+		Region target = this.region(rx, ry);
+		// a mirror in the target region is replaced by the body itself
+		int mirror = shard.mirrorRegions.indexOf(target);
+		if (mirror >= 0)
+			shard.removeMirror(mirror);
+		shard.home.world.removeBody(body);
+		target.world.addBody(body);
+		shard.home = target;
+	}
+
+	/**
+	 * creates and removes mirrors such that the shard is mirrored into exactly
+	 * those regions its bounding disc (expanded by the seam width) overlaps.
+	 */
+	private void updateMirrors(Shard shard) {
+		Body body = shard.entity.body;
+		Vector2 center = body.getWorldCenter();
+		double reach = body.getRotationDiscRadius() + this.seamWidth;
+		int minX = this.cell(center.x - reach);
+		int maxX = this.cell(center.x + reach);
+		int minY = this.cell(center.y - reach);
+		int maxY = this.cell(center.y + reach);
+		// drop mirrors out of reach
+		for (int i = shard.mirrorRegions.size() - 1; i >= 0; i--) {
+			Region r = shard.mirrorRegions.get(i);
+			if (r.rx < minX || r.rx > maxX || r.ry < minY || r.ry > maxY)
+				shard.removeMirror(i);
+		}
+		// add missing mirrors
+		for (int rx = minX; rx <= maxX; rx++)
+			for (int ry = minY; ry <= maxY; ry++) {
+				if (rx == shard.home.rx && ry == shard.home.ry)
+					continue;
+				Region r = this.region(rx, ry);
+				if (!shard.mirrorRegions.contains(r))
+					shard.addMirror(r);
+			}
+	}
+
+	/**
+	 * A single shard of the world. Holds its own {@link World} and buffers all
+	 * collision events produced while stepping.
+	 */
+	private final class Region {
+
+		final int rx;
+		final int ry;
+		final World world;
+		final CollisionBatch batch = new CollisionBatch();
+
+		Region(int rx, int ry) {
+			this.rx = rx;
+			this.ry = ry;
+			this.world = WorldFactory.create(config);
+			this.world.setGravity(gravity);
+			// filters are only read while stepping, never modified
+			this.world.addListener(
+					new CollisionFilterAdapter(collisionFilters));
+			this.world.addListener(new RegionContactListener(this));
+			this.world.addListener(new RegionTOIListener());
+		}
+
+		void step(double stepTime) {
+			this.world.updatev(stepTime);
+		}
+
+	}
+
+	/**
+	 * Bookkeeping for a single spawned entity: its home region and all its
+	 * mirrors.
+	 */
+	private static final class Shard {
+
+		final SimpleEntity entity;
+		final long serial;
+		Region home;
+		final List<Region> mirrorRegions = new ArrayList<>(3);
+		final List<Body> mirrorBodies = new ArrayList<>(3);
+		// fixture revision of the entity at the last synchronisation
+		int fixtureRevision;
+
+		Shard(SimpleEntity entity, long serial, Region home) {
+			this.entity = entity;
+			this.serial = serial;
+			this.home = home;
+			this.fixtureRevision = entity.fixtureRevision;
+			entity.shardSerial = serial;
+		}
+
+		void addMirror(Region region) {
+			Body mirror = buildMirror(this.entity);
+			region.world.addBody(mirror);
+			this.mirrorRegions.add(region);
+			this.mirrorBodies.add(mirror);
+		}
+
+		void removeMirror(int index) {
+			this.mirrorRegions.remove(index).world
+					.removeBody(this.mirrorBodies.remove(index));
+		}
+
+		/**
+		 * copies the current state of the original body onto all mirrors.
+		 * Mirrors whose fixtures are outdated are rebuilt.
+		 */
+		void syncMirrors() {
+			Body body = this.entity.body;
+			boolean outdated = this.fixtureRevision
+					!= this.entity.fixtureRevision;
+			this.fixtureRevision = this.entity.fixtureRevision;
+			for (int i = 0; i < this.mirrorBodies.size(); i++) {
+				Body mirror = this.mirrorBodies.get(i);
+				if (outdated) {
+					Region region = this.mirrorRegions.get(i);
+					region.world.removeBody(mirror);
+					mirror = buildMirror(this.entity);
+					region.world.addBody(mirror);
+					this.mirrorBodies.set(i, mirror);
+				}
+				if (mirror.getMass() != body.getMass())
+					mirror.setMass(body.getMass());
+				mirror.getTransform().set(body.getTransform());
+				mirror.setLinearVelocity(body.getLinearVelocity());
+				mirror.setAngularVelocity(body.getAngularVelocity());
+				mirror.setAsleep(body.isAsleep());
+			}
+		}
+
+	}
+
+	private static Body buildMirror(SimpleEntity entity) {
+		Body body = entity.body;
+		Body mirror = new Body(body.getFixtureCount());
+		for (BodyFixture f : body.getFixtures())
+			mirror.addFixture(new SimpleFixture((SimpleFixture) f));
+		mirror.setMass(body.getMass());
+		mirror.setBullet(body.isBullet());
+		mirror.setLinearDamping(body.getLinearDamping());
+		mirror.setAngularDamping(body.getAngularDamping());
+		mirror.getTransform().set(body.getTransform());
+		mirror.setUserData(entity);
+		return mirror;
+	}
+
+	/**
+	 * Decides which region reports a contact. Contacts between two original
+	 * bodies are reported by their region. A contact between an original and a
+	 * mirror is seen in two regions (each original meets the mirror of the
+	 * other), therefore it is only reported by the region holding the original
+	 * with the lower serial. Mirror-mirror contacts are never reported.
+	 */
+	private static boolean isReported(Body body1, SimpleEntity entity1,
+			Body body2, SimpleEntity entity2) {
+		boolean mirror1 = body1 != entity1.body;
+		boolean mirror2 = body2 != entity2.body;
+		if (mirror1 == mirror2)
+			return !mirror1;
+		return mirror1 ? entity2.shardSerial < entity1.shardSerial
+				: entity1.shardSerial < entity2.shardSerial;
+	}
+
+	private final class RegionContactListener extends ContactAdapter {
+
+		private final Region region;
+
+		RegionContactListener(Region region) {
+			this.region = region;
+		}
+
+		@Override
+		public void postSolve(SolvedContactPoint point) {
+			SimpleEntity entity_0 = (SimpleEntity) point.getBody1()
+					.getUserData();
+			SimpleEntity entity_1 = (SimpleEntity) point.getBody2()
+					.getUserData();
+			if (!isReported(point.getBody1(), entity_0, point.getBody2(),
+					entity_1))
+				return;
+			Vector2 p = point.getPoint();
+			Vector2 n = point.getNormal();
+			SimpleFixture f1 = (SimpleFixture) point.getFixture1();
+			SimpleFixture f2 = (SimpleFixture) point.getFixture2();
+			this.region.batch.add(entity_0, f1.id, f1.handle, entity_1, f2.id,
+					f2.handle, p.x, p.y, n.x, n.y, point.getNormalImpulse(),
+					point.getTangentialImpulse());
+		}
+	}
+
+	private final class RegionTOIListener extends TimeOfImpactAdapter {
+
+		@Override
+		public boolean collision(Body body1, BodyFixture fixture1, Body body2,
+				BodyFixture fixture2, TimeOfImpact toi) {
+			SimpleEntity entity_0 = ((SimpleEntity) body1.getUserData());
+			SimpleEntity entity_1 = ((SimpleEntity) body2.getUserData());
+			String fixture_0 = ((String) fixture1.getUserData());
+			String fixture_1 = ((String) fixture2.getUserData());
+			return toiEvent(entity_0, fixture_0, entity_1, fixture_1,
+					toi.getTime());
+		}
+
+	}
+
+}
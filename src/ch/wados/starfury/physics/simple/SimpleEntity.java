@@ -1,11 +1,15 @@
 package ch.wados.starfury.physics.simple;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.stream.Collectors;
 
 import org.dyn4j.Epsilon;
+import org.dyn4j.collision.CategoryFilter;
 import org.dyn4j.dynamics.Body;
 import org.dyn4j.dynamics.BodyFixture;
 import org.dyn4j.dynamics.Force;
@@ -36,6 +40,7 @@ class SimpleEntity implements PhysicsEntity {
 
 	private final List<CollisionFilter> collisionFilters = new ArrayList<>();
 	private final List<CollisionListener> collisionListeners = new ArrayList<>();
+	private final Map<String, List<CollisionListener>> fixtureListeners = new HashMap<>();
 	private final List<TimeOfImpactListener> toiListeners = new ArrayList<>();
 	private final List<UpdateListener> updateListeners = new ArrayList<>();
 
@@ -53,6 +58,15 @@ class SimpleEntity implements PhysicsEntity {
 			this.collisionListeners.add(listener);
 	}
 
+	@Override
+	public void addCollisionListener(String fixture, CollisionListener listener) {
+		Objects.requireNonNull(fixture);
+		Objects.requireNonNull(listener);
+		List<CollisionListener> list = this.fixtureListeners.computeIfAbsent(fixture, k -> new ArrayList<>(2));
+		if (!list.contains(listener))
+			list.add(listener);
+	}
+
 	@Override
 	public void addTimeOfImpactListener(TimeOfImpactListener listener) {
 		Objects.requireNonNull(listener);
@@ -79,6 +93,15 @@ class SimpleEntity implements PhysicsEntity {
 		this.collisionListeners.remove(listener);
 	}
 
+	@Override
+	public void removeCollisionListener(String fixture, CollisionListener listener) {
+		Objects.requireNonNull(fixture);
+		Objects.requireNonNull(listener);
+		List<CollisionListener> list = this.fixtureListeners.get(fixture);
+		if (list != null && list.remove(listener) && list.isEmpty())
+			this.fixtureListeners.remove(fixture);
+	}
+
 	@Override
 	public void removeTimeOfImpactListener(TimeOfImpactListener listener) {
 		Objects.requireNonNull(listener);
@@ -105,10 +128,39 @@ class SimpleEntity implements PhysicsEntity {
 
 	@Override
 	public void collision(CollisionPoint collision) {
-		if (collision.entity0 != this && collision.entity1 != this)
+		if (collision.entity0 == this)
+			this.route(collision, collision.fixture0);
+		else if (collision.entity1 == this)
+			this.route(collision, collision.fixture1);
+	}
+
+	/**
+	 * Checks if any listener of this entity is interested in contacts of the
+	 * given fixture.
+	 */
+	boolean isRouted(String fixture) {
+		return !this.collisionListeners.isEmpty()
+				|| (!this.fixtureListeners.isEmpty() && this.fixtureListeners.containsKey(fixture));
+	}
+
+	/**
+	 * Delivers a contact of the given fixture of this entity to the entity
+	 * listeners and the listeners of that fixture. The caller guarantees the
+	 * entity is involved in the contact.
+	 */
+	void route(CollisionPoint collision, String fixture) {
+		for (int i = 0; i < this.collisionListeners.size(); i++)
+			this.collisionListeners.get(i).collision(collision);
+		if (this.fixtureListeners.isEmpty())
 			return;
-		for (CollisionListener l : this.collisionListeners)
-			l.collision(collision);
+		List<CollisionListener> list = this.fixtureListeners.get(fixture);
+		if (list != null)
+			for (int i = 0; i < list.size(); i++)
+				list.get(i).collision(collision);
+	}
+
+	boolean hasCollisionFilters() {
+		return !this.collisionFilters.isEmpty();
 	}
 
 	@Override
@@ -125,28 +177,31 @@ class SimpleEntity implements PhysicsEntity {
 
 	@Override
 	public void update() {
+		// dyn4j discards the torques of a body falling asleep. they must not
+		// be tracked any longer, or they would be saved and re-applied after
+		// the body is woken up
+		if (this.body.isAsleep())
+			this.timedTorques.clear();
 		for (UpdateListener l : this.updateListeners)
 			l.update();
 	}
 
 	@Override
-	public void addFixture(FixtureDefinition fixture) {
+	public int addFixture(FixtureDefinition fixture) {
 		String id = fixture.getIdentifier();
-		if (fixture.getIdentifier() != null) {
-			for (BodyFixture f : this.body.getFixtures())
-				if (id.equals(f.getUserData()))
-					throw new IllegalArgumentException(
-							"fixture id [" + id + "] already in use");
-		}
-		this.buildFixture(fixture);
+		if (id != null && this.fixtureIndex.containsKey(id))
+			throw new IllegalArgumentException(
+					"fixture id [" + id + "] already in use");
+		int handle = this.buildFixture(fixture);
 		this.recalculateCoM();
 		this.callback.run();
+		return handle;
 	}
 
 	@Override
-	public void addThrustPoint(ThrustPointDefinition thruster) {
+	public int addThrustPoint(ThrustPointDefinition thruster) {
 		// duplicate keys handled by thruster system
-		this.thrusters.addThruster(thruster);
+		return this.thrusters.addThruster(thruster);
 	}
 
 	@Override
@@ -158,9 +213,44 @@ class SimpleEntity implements PhysicsEntity {
 					"force may not be the zero vector");
 		if (duration < 0 || !Double.isFinite(duration))
 			throw new IllegalArgumentException("duration must be positive");
-		this.body.applyTorque(new TimedTorque(
+		this.applyTimedTorque(
 				this.body.getWorldCenter().to(position).cross(force),
-				duration));
+				duration);
+	}
+
+	private void applyTimedTorque(double torque, double duration) {
+		TimedTorque timed = new TimedTorque(torque, duration);
+		this.getTimedTorques().add(timed);
+		this.body.applyTorque(timed);
+	}
+
+	/**
+	 * Provides the timed torques still acting on the body. Completed torques
+	 * and torques discarded by the body falling asleep are dropped first.
+	 */
+	List<TimedTorque> getTimedTorques() {
+		if (this.body.isAsleep())
+			this.timedTorques.clear();
+		else
+			this.timedTorques.removeIf(TimedTorque::isDone);
+		return this.timedTorques;
+	}
+
+	/**
+	 * Re-applies a timed torque from a snapshot.
+	 */
+	void restoreTimedTorque(double torque, double remaining) {
+		this.applyTimedTorque(torque, remaining);
+	}
+
+	/**
+	 * Removes all timed torques from the body.
+	 */
+	void clearTimedTorques() {
+		if (this.timedTorques.isEmpty())
+			return;
+		this.timedTorques.clear();
+		this.body.clearAccumulatedTorque();
 	}
 
 	@Override
@@ -205,12 +295,12 @@ class SimpleEntity implements PhysicsEntity {
 
 	@Override
 	public double getOrientation() {
-		return this.getWorldVector(new Vector2(1, 0)).getDirection();
+		return this.body.getTransform().getRotation();
 	}
 
 	@Override
 	public Vector2 getPosition() {
-		return this.getWorldPoint(new Vector2(0, 0));
+		return this.body.getTransform().getTranslation();
 	}
 
 	@Override
@@ -236,39 +326,63 @@ class SimpleEntity implements PhysicsEntity {
 		return this.user_data;
 	}
 
+	@Override
+	public int getFixtureHandle(String id) {
+		return this.getFixture(id).handle;
+	}
+
+	@Override
+	public String getFixtureIdentifier(int handle) {
+		return this.getFixture(handle).id;
+	}
+
 	@Override
 	public boolean isSensor(String id) {
-		Objects.requireNonNull(id);
-		if (id.isEmpty())
-			throw new IllegalArgumentException("id may not be empty");
-		for (BodyFixture f : this.body.getFixtures())
-			if (id.equals(f.getUserData()))
-				return f.isSensor();
-		throw new IllegalArgumentException(
-				"fixture not found for id [" + id + "]");
+		return this.getFixture(id).isSensor();
+	}
+
+	@Override
+	public boolean isSensor(int handle) {
+		return this.getFixture(handle).isSensor();
 	}
 
 	@Override
 	public void removeFixture(String id) {
-		Objects.requireNonNull(id);
-		if (id.isEmpty())
-			throw new IllegalArgumentException("id may not be empty");
-		BodyFixture fx = null;
-		for (BodyFixture f : this.body.getFixtures())
-			if (id.equals(f.getUserData()))
-				fx = f;
-		if (fx == null)
-			throw new IllegalArgumentException(
-					"fixture not found for id [" + id + "]");
-		this.body.removeFixture(fx);
+		this.removeFixture(this.getFixture(id));
+	}
+
+	@Override
+	public void removeFixture(int handle) {
+		if (handle < 0 || handle >= this.nextHandle
+				|| this.fixtureHandles[handle] == null)
+			return;
+		this.removeFixture(this.fixtureHandles[handle]);
+	}
+
+	private void removeFixture(SimpleFixture fixture) {
+		this.body.removeFixture(fixture);
+		this.fixtureHandles[fixture.handle] = null;
+		if (fixture.id != null)
+			this.fixtureIndex.remove(fixture.id);
+		this.fixtureRevision++;
 		this.callback.run();
 	}
 
+	@Override
+	public int getThrustPointHandle(String id) {
+		return this.thrusters.getHandle(id);
+	}
+
 	@Override
 	public void removeThrustPoint(String id) {
 		this.thrusters.removeThruster(id);
 	}
 
+	@Override
+	public void removeThrustPoint(int handle) {
+		this.thrusters.removeThruster(handle);
+	}
+
 	@Override
 	public void setAngularVelocity(double velocity) {
 		this.body.setAngularVelocity(velocity);
@@ -304,17 +418,36 @@ class SimpleEntity implements PhysicsEntity {
 
 	@Override
 	public void setSensor(String id, boolean isSensor) {
+		this.getFixture(id).setSensor(isSensor);
+		this.fixtureRevision++;
+		this.callback.run();
+	}
+
+	@Override
+	public void setSensor(int handle, boolean isSensor) {
+		this.getFixture(handle).setSensor(isSensor);
+		this.fixtureRevision++;
+		this.callback.run();
+	}
+
+	private SimpleFixture getFixture(String id) {
 		Objects.requireNonNull(id);
 		if (id.isEmpty())
 			throw new IllegalArgumentException("id may not be empty");
-		for (BodyFixture f : this.body.getFixtures())
-			if (id.equals(f.getUserData())) {
-				f.setSensor(isSensor);
-				this.callback.run();
-				return;
-			}
-		throw new IllegalArgumentException(
-				"fixture not found for id [" + id + "]");
+		SimpleFixture fixture = this.fixtureIndex.get(id);
+		if (fixture == null)
+			throw new IllegalArgumentException(
+					"fixture not found for id [" + id + "]");
+		return fixture;
+	}
+
+	private SimpleFixture getFixture(int handle) {
+		SimpleFixture fixture = (handle < 0 || handle >= this.nextHandle)
+				? null : this.fixtureHandles[handle];
+		if (fixture == null)
+			throw new IllegalArgumentException(
+					"fixture not found for handle [" + handle + "]");
+		return fixture;
 	}
 
 	@Override
@@ -322,6 +455,16 @@ class SimpleEntity implements PhysicsEntity {
 		this.thrusters.setThrust(id, force);
 	}
 
+	@Override
+	public void setThrust(int handle, double force) {
+		this.thrusters.setThrust(handle, force);
+	}
+
+	@Override
+	public void setThrusts(int[] handles, double[] forces) {
+		this.thrusters.setThrusts(handles, forces);
+	}
+
 	private void recalculateCoM() {
 		double mass = this.body.getMass().getMass();
 		switch (this.type) {
@@ -351,23 +494,71 @@ class SimpleEntity implements PhysicsEntity {
 		this.user_data = data;
 	}
 
-	private void buildFixture(FixtureDefinition f) {
-		BodyFixture fixture = new BodyFixture(f.getShape());
+	private int buildFixture(FixtureDefinition f) {
+		return this.buildFixture(f, this.nextHandle);
+	}
+
+	private int buildFixture(FixtureDefinition f, int handle) {
+		this.nextHandle = Math.max(this.nextHandle, handle + 1);
+		SimpleFixture fixture = new SimpleFixture(f.getShape(),
+				f.getIdentifier(), handle);
 		fixture.setDensity(f.getDensityCoefficient());
 		fixture.setFriction(f.getFrictionCoefficient());
 		fixture.setRestitution(f.getRestitutionCoefficient());
 		fixture.setSensor(f.isSensor());
-		fixture.setUserData(f.getIdentifier());
+		// dyn4j only evaluates the filter of one fixture of a pair and lets
+		// any filter pass that is not a CategoryFilter, so every fixture needs
+		// one
+		if (f.getCategoryBits() == FixtureDefinition.DEFAULT_CATEGORY
+				&& f.getMaskBits() == FixtureDefinition.DEFAULT_MASK)
+			fixture.setFilter(DEFAULT_FILTER);
+		else
+			fixture.setFilter(new CategoryFilter(
+					f.getCategoryBits() & 0xFFFFFFFFL,
+					f.getMaskBits() & 0xFFFFFFFFL));
 		this.body.addFixture(fixture);
+		if (handle >= this.fixtureHandles.length)
+			this.fixtureHandles = Arrays.copyOf(this.fixtureHandles,
+					Math.max(Math.max(4, handle + 1),
+							2 * this.fixtureHandles.length));
+		this.fixtureHandles[handle] = fixture;
+		if (fixture.id != null)
+			this.fixtureIndex.put(fixture.id, fixture);
+		this.fixtureRevision++;
+		return handle;
 	}
 
 	private final static Runnable NULL_RUNNABLE = () -> {
 	};
+	private final static CategoryFilter DEFAULT_FILTER = new CategoryFilter(
+			FixtureDefinition.DEFAULT_CATEGORY & 0xFFFFFFFFL,
+			FixtureDefinition.DEFAULT_MASK & 0xFFFFFFFFL);
 
 	final Body body;
 	private final ThrusterSystem thrusters;
 	private final EntityType type;
 	private Runnable callback = NULL_RUNNABLE;
+	// spawn order within a ShardedPhysicsManager
+	long shardSerial = -1;
+	// index within the EntityRegistry of the owning manager
+	int slot = -1;
+	// queued for a bulk spawn or despawn
+	boolean pending = false;
+	// stamp of the last spatial query that reported this entity
+	int queryStamp = 0;
+	// fixture lookup by identifier and by handle. Handles are never reused.
+	private final Map<String, SimpleFixture> fixtureIndex = new HashMap<>();
+	private SimpleFixture[] fixtureHandles;
+	private int nextHandle = 0;
+	// incremented on every fixture change
+	int fixtureRevision = 0;
+	// level of detail: step interval and the steps and time since the last
+	// reduced update
+	int lodInterval = 1;
+	int lodTicks = 0;
+	double lodTime = 0;
+	// timed torques applied by applyForce, kept for snapshots
+	private final List<TimedTorque> timedTorques = new ArrayList<>(0);
 
 	void setCallback(Runnable r) {
 		this.callback = (r == null) ? NULL_RUNNABLE : r;
@@ -381,6 +572,7 @@ class SimpleEntity implements PhysicsEntity {
 
 		this.body = new Body(fixtures.size());
 		this.body.setUserData(this);
+		this.fixtureHandles = new SimpleFixture[fixtures.size()];
 		this.body.rotate(def.getOrientation());
 		this.body.translate(def.getPosition());
 
@@ -402,10 +594,54 @@ class SimpleEntity implements PhysicsEntity {
 			this.thrusters.addThruster(t);
 	}
 
+	/**
+	 * Creates an entity from a {@link Prefab}. The definition is only used for
+	 * the initial position and orientation.
+	 */
+	SimpleEntity(PhysicsEntityDefinition def, Prefab prefab) {
+		this.body = new Body(prefab.fixtures.length);
+		this.body.setUserData(this);
+		this.fixtureHandles = new SimpleFixture[prefab.fixtures.length];
+		this.body.rotate(def.getOrientation());
+		this.body.translate(def.getPosition());
+
+		this.thrusters = new ThrusterSystem(prefab.thrusterIds.length);
+		this.type = prefab.type;
+
+		for (int i = 0; i < prefab.fixtures.length; i++)
+			this.buildFixture(prefab.fixtures[i], prefab.fixtureHandles[i]);
+		this.nextHandle = prefab.nextFixtureHandle;
+
+		if (this.type == EntityType.BULLET)
+			this.body.setBullet(true);
+		this.body.setMass(new Mass(prefab.mass));
+
+		this.body.setLinearDamping(prefab.linearDamping);
+		this.body.setAngularDamping(prefab.angularDamping);
+
+		this.thrusters.addThrusters(prefab);
+	}
+
 	Body getBody() {
 		return this.body;
 	}
 
+	ThrusterSystem getThrusters() {
+		return this.thrusters;
+	}
+
+	/**
+	 * @param index
+	 *            the index of the fixture in insertion order.
+	 */
+	SimpleFixture getFixtureAt(int index) {
+		return (SimpleFixture) this.body.getFixture(index);
+	}
+
+	int getNextFixtureHandle() {
+		return this.nextHandle;
+	}
+
 	static class TimedForce extends Force {
 
 		private double duration;
@@ -431,6 +667,17 @@ class SimpleEntity implements PhysicsEntity {
 			this.duration = duration;
 		}
 
+		/**
+		 * @return the remaining duration in seconds.
+		 */
+		double getRemaining() {
+			return duration;
+		}
+
+		boolean isDone() {
+			return duration < Epsilon.E;
+		}
+
 		@Override
 		public boolean isComplete(double elapsedTime) {
 			duration -= elapsedTime;
@@ -440,8 +687,9 @@ class SimpleEntity implements PhysicsEntity {
 
 	@Override
 	public void wakeUp() {
+		if (this.body.isAsleep())
+			this.timedTorques.clear();
 		this.body.setAsleep(false);
-
 	}
 
 	@Override
@@ -0,0 +1,36 @@
+package ch.wados.starfury.physics.simple;
+
+import org.dyn4j.dynamics.BodyFixture;
+import org.dyn4j.geometry.Convex;
+
+/**
+ * {@link BodyFixture} carrying the identifier and the handle of the fixture
+ * within its {@link SimpleEntity}. The user data is set to the identifier as
+ * well.
+ */
+final class SimpleFixture extends BodyFixture {
+
+	final String id;
+	final int handle;
+
+	SimpleFixture(Convex shape, String id, int handle) {
+		super(shape);
+		this.id = id;
+		this.handle = handle;
+		this.setUserData(id);
+	}
+
+	/**
+	 * Creates a copy of a fixture sharing the shape, the filter and all
+	 * coefficients.
+	 */
+	SimpleFixture(SimpleFixture original) {
+		this(original.getShape(), original.id, original.handle);
+		this.setDensity(original.getDensity());
+		this.setFriction(original.getFriction());
+		this.setRestitution(original.getRestitution());
+		this.setSensor(original.isSensor());
+		this.setFilter(original.getFilter());
+	}
+
+}
@@ -1,10 +1,15 @@
 package ch.wados.starfury.physics.simple;
 
+import java.io.IOException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Collection;
 import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
 
+import org.dyn4j.collision.broadphase.BroadphaseDetector;
 import org.dyn4j.collision.continuous.TimeOfImpact;
 import org.dyn4j.dynamics.Body;
 import org.dyn4j.dynamics.BodyFixture;
@@ -12,14 +17,24 @@ import org.dyn4j.dynamics.TimeOfImpactAdapter;
 import org.dyn4j.dynamics.World;
 import org.dyn4j.dynamics.contact.ContactAdapter;
 import org.dyn4j.dynamics.contact.SolvedContactPoint;
+import org.dyn4j.geometry.AABB;
 import org.dyn4j.geometry.Vector2;
 
+import ch.wados.starfury.physics.api.CollisionBatch;
+import ch.wados.starfury.physics.api.CollisionBatchListener;
 import ch.wados.starfury.physics.api.CollisionFilter;
 import ch.wados.starfury.physics.api.CollisionListener;
-import ch.wados.starfury.physics.api.CollisionPoint;
+import ch.wados.starfury.physics.api.ContactPairListener;
+import ch.wados.starfury.physics.api.EntityStateBuffer;
+import ch.wados.starfury.physics.api.EntityType;
+import ch.wados.starfury.physics.api.LodPolicy;
 import ch.wados.starfury.physics.api.PhysicsEntity;
 import ch.wados.starfury.physics.api.PhysicsEntityDefinition;
 import ch.wados.starfury.physics.api.PhysicsManager;
+import ch.wados.starfury.physics.api.PhysicsWorldConfig;
+import ch.wados.starfury.physics.api.RayBatch;
+import ch.wados.starfury.physics.api.RaycastHit;
+import ch.wados.starfury.physics.api.RaycastHitBuffer;
 import ch.wados.starfury.physics.api.TimeOfImpactListener;
 import ch.wados.starfury.physics.api.UpdateListener;
 
@@ -30,13 +45,14 @@ public final class SimplePhysicsManager implements PhysicsManager {
 
 	private boolean initialised = false;
 	private World world;
-	private List<PhysicsEntity> spawnedEntities;
-	private final List<PhysicsEntity> entityView;
-
-	public SimplePhysicsManager() {
-		this.spawnedEntities = new ArrayList<>();
-		this.entityView = Collections.unmodifiableList(this.spawnedEntities);
-	}
+	private double deterministicStep = 0;
+	private long stateHash = 0;
+	private long step = 0;
+	private StateHistory history;
+	private LevelOfDetail lod;
+	private final TransformAccess transform = new TransformAccess();
+	private final EntityRegistry registry = new EntityRegistry();
+	private final PrefabCache prefabs = new PrefabCache();
 
 	private void assertInit() {
 		if (!initialised)
@@ -47,6 +63,36 @@ public final class SimplePhysicsManager implements PhysicsManager {
 	private final List<CollisionListener> collisionListeners = new ArrayList<>();
 	private final List<TimeOfImpactListener> toiListeners = new ArrayList<>();
 	private final List<UpdateListener> updateListeners = new ArrayList<>();
+	private final List<CollisionBatchListener> batchListeners = new ArrayList<>();
+	private final CollisionBatch batch = new CollisionBatch();
+	private final SpatialQuery query = new SpatialQuery(
+			new SpatialQuery.Worlds() {
+				@Override
+				public int count() {
+					return 1;
+				}
+
+				@Override
+				public World get(int index) {
+					return world;
+				}
+			});
+	private final ContactPairTracker pairTracker = new ContactPairTracker();
+	private final CollisionPointAdapter pointAdapter = new CollisionPointAdapter(
+			this.collisionListeners);
+
+	@Override
+	public void addCollisionBatchListener(CollisionBatchListener listener) {
+		Objects.requireNonNull(listener);
+		if (!this.batchListeners.contains(listener))
+			this.batchListeners.add(listener);
+	}
+
+	@Override
+	public void removeCollisionBatchListener(CollisionBatchListener listener) {
+		Objects.requireNonNull(listener);
+		this.batchListeners.remove(listener);
+	}
 
 	@Override
 	public void addCollisionFilter(CollisionFilter filter) {
@@ -62,6 +108,18 @@ public final class SimplePhysicsManager implements PhysicsManager {
 			this.collisionListeners.add(listener);
 	}
 
+	@Override
+	public void addCollisionListener(EntityType type0, EntityType type1,
+			CollisionListener listener) {
+		this.pointAdapter.addListener(type0, type1, listener);
+	}
+
+	@Override
+	public void addContactPairListener(ContactPairListener listener,
+			boolean persist) {
+		this.pairTracker.addListener(listener, persist);
+	}
+
 	@Override
 	public void addTimeOfImpactListener(TimeOfImpactListener listener) {
 		Objects.requireNonNull(listener);
@@ -88,6 +146,17 @@ public final class SimplePhysicsManager implements PhysicsManager {
 		this.collisionListeners.remove(listener);
 	}
 
+	@Override
+	public void removeCollisionListener(EntityType type0, EntityType type1,
+			CollisionListener listener) {
+		this.pointAdapter.removeListener(type0, type1, listener);
+	}
+
+	@Override
+	public void removeContactPairListener(ContactPairListener listener) {
+		this.pairTracker.removeListener(listener);
+	}
+
 	@Override
 	public void removeTimeOfImpactListener(TimeOfImpactListener listener) {
 		Objects.requireNonNull(listener);
@@ -102,7 +171,13 @@ public final class SimplePhysicsManager implements PhysicsManager {
 
 	@Override
 	public PhysicsEntity createEntity(PhysicsEntityDefinition definition) {
-		return new SimpleEntity(definition);
+		return this.prefabs.create(definition);
+	}
+
+	@Override
+	public boolean precompile(PhysicsEntityDefinition definition) {
+		Objects.requireNonNull(definition);
+		return this.prefabs.get(definition) != null;
 	}
 
 	@Override
@@ -111,12 +186,26 @@ public final class SimplePhysicsManager implements PhysicsManager {
 		Objects.requireNonNull(entity);
 		if (!(entity instanceof SimpleEntity))
 			throw new IllegalArgumentException("incompatible entity");
-		if (this.world.getBodies()
-				.contains(((SimpleEntity) entity).getBody())) {
-			this.world.removeBody(((SimpleEntity) entity).getBody());
-			this.spawnedEntities.remove(entity);
-		} else
-			throw new IllegalArgumentException("entity does not exist");
+		SimpleEntity simple = (SimpleEntity) entity;
+		if (!this.registry.contains(simple))
+			throw new IllegalStateException("entity not spawned");
+		if (simple.pending)
+			throw new IllegalStateException("entity already queued");
+		this.despawn(simple);
+	}
+
+	@Override
+	public synchronized void despawnEntities(
+			Collection<? extends PhysicsEntity> entities) {
+		this.assertInit();
+		Objects.requireNonNull(entities);
+		this.registry.queueDespawns(entities);
+	}
+
+	private void despawn(SimpleEntity entity) {
+		this.lod.remove(entity);
+		this.world.removeBody(entity.getBody());
+		this.registry.remove(entity);
 	}
 
 	@Override
@@ -132,24 +221,54 @@ public final class SimplePhysicsManager implements PhysicsManager {
 	}
 
 	@Override
-	public void spawnEntity(PhysicsEntity entity) {
+	public synchronized void spawnEntity(PhysicsEntity entity) {
 		this.assertInit();
 		Objects.requireNonNull(entity);
 		if (!(entity instanceof SimpleEntity))
 			throw new IllegalArgumentException("incompatible entity");
-		this.world.addBody(((SimpleEntity) entity).getBody());
-		this.spawnedEntities.add(entity);
+		SimpleEntity simple = (SimpleEntity) entity;
+		if (this.registry.contains(simple))
+			throw new IllegalStateException("entity already spawned");
+		if (simple.pending)
+			throw new IllegalStateException("entity already queued");
+		this.spawn(simple);
+	}
+
+	@Override
+	public synchronized void spawnEntities(
+			Collection<? extends PhysicsEntity> entities) {
+		this.assertInit();
+		Objects.requireNonNull(entities);
+		this.registry.queueSpawns(entities);
+	}
+
+	private void spawn(SimpleEntity entity) {
+		this.world.addBody(entity.getBody());
+		this.registry.add(entity);
 	}
 
 	@Override
-	public synchronized void initialiseWorld(Vector2 gravity) {
+	public void initialiseWorld(Vector2 gravity) {
+		Objects.requireNonNull(gravity);
+		this.initialiseWorld(new PhysicsWorldConfig().setGravity(gravity));
+	}
+
+	@Override
+	public synchronized void initialiseWorld(PhysicsWorldConfig config) {
+		Objects.requireNonNull(config);
 		if (this.initialised)
 			throw new IllegalStateException("already initialised");
-		Objects.requireNonNull(gravity);
 		this.initialised = true;
-		this.world = new World();
-		this.world.setGravity(new Vector2(gravity));
+		this.world = WorldFactory.create(config);
+		this.deterministicStep = config.getDeterministicStep();
+		this.registry.setOrdered(config.isDeterministic());
+		if (config.getHistoryLength() > 0)
+			this.history = new StateHistory(config.getHistoryLength(),
+					config.getCapacity());
+		this.lod = new LevelOfDetail(this.world, this.registry);
 		// register listeners
+		this.world.addListener(
+				new CollisionFilterAdapter(this.collisionFilters));
 		this.world.addListener(new ContactListener());
 		this.world.addListener(new TOIListener());
 	}
@@ -157,19 +276,52 @@ public final class SimplePhysicsManager implements PhysicsManager {
 	@Override
 	public void stepWorld(double stepTime) {
 		this.assertInit();
+		if (stepTime <= 0 || !Double.isFinite(stepTime))
+			throw new IllegalArgumentException(
+					"step time must be positive. Was " + stepTime);
+		if (this.deterministicStep != 0 && stepTime != this.deterministicStep)
+			throw new IllegalArgumentException("step time must be "
+					+ this.deterministicStep + " in deterministic mode. Was "
+					+ stepTime);
+		synchronized (this) {
+			if (this.registry.hasPending())
+				this.registry.commit(this::despawn, this::spawn);
+		}
+		this.lod.update(this.step, stepTime);
+		this.applyThrust();
 		this.world.updatev(stepTime);
+		if (this.deterministicStep != 0)
+			this.stateHash = StateHash.update(this.stateHash, this.registry,
+					this.transform);
+		this.collisionEvent();
 		this.updateEvent();
+		this.step++;
+		if (this.history != null)
+			this.history.record(this.step, this.stateHash, this.registry,
+					this.transform);
+	}
+
+	/**
+	 * applies the thrust of all entities. The forces only act for one step.
+	 * Reduced entities apply their thrust when they are moved.
+	 */
+	private void applyThrust() {
+		for (int i = 0; i < registry.size(); i++)
+			if (registry.get(i).body.isActive())
+				registry.get(i).applyThrust();
 	}
 
 	private void updateEvent() {
 		updateListeners.forEach(UpdateListener::update);
-		spawnedEntities.forEach(UpdateListener::update);
+		for (int i = 0; i < registry.size(); i++)
+			registry.get(i).update();
 	}
 
-	private void contactEvent(CollisionPoint cp) {
-		collisionListeners.forEach(cl -> cl.collision(cp));
-		cp.entity0.collision(cp);
-		cp.entity1.collision(cp);
+	private void collisionEvent() {
+		batchListeners.forEach(bl -> bl.collisions(batch));
+		pairTracker.update(batch);
+		pointAdapter.collisions(batch);
+		batch.clear();
 	}
 
 	private boolean toiEvent(SimpleEntity entity0, String fixture0,
@@ -186,13 +338,14 @@ public final class SimplePhysicsManager implements PhysicsManager {
 	class ContactListener extends ContactAdapter {
 		@Override
 		public void postSolve(SolvedContactPoint point) {
-			contactEvent(new CollisionPoint(
-					(SimpleEntity) point.getBody1().getUserData(),
-					(String) point.getFixture1().getUserData(),
-					(SimpleEntity) point.getBody2().getUserData(),
-					(String) point.getFixture2().getUserData(),
-					point.getPoint().copy(), point.getNormal().copy(),
-					point.getNormalImpulse(), point.getTangentialImpulse()));
+			Vector2 p = point.getPoint();
+			Vector2 n = point.getNormal();
+			SimpleFixture f1 = (SimpleFixture) point.getFixture1();
+			SimpleFixture f2 = (SimpleFixture) point.getFixture2();
+			batch.add((SimpleEntity) point.getBody1().getUserData(), f1.id,
+					f1.handle, (SimpleEntity) point.getBody2().getUserData(),
+					f2.id, f2.handle, p.x, p.y, n.x, n.y,
+					point.getNormalImpulse(), point.getTangentialImpulse());
 		}
 	}
 
@@ -212,9 +365,230 @@ public final class SimplePhysicsManager implements PhysicsManager {
 
 	}
 
+	@Override
+	public void queryAABB(AABB aabb,
+			Collection<? super PhysicsEntity> results) {
+		this.assertInit();
+		Objects.requireNonNull(results);
+		this.query.queryAABB(aabb, results);
+	}
+
+	@Override
+	public void queryRadius(Vector2 center, double radius,
+			Collection<? super PhysicsEntity> results) {
+		this.assertInit();
+		Objects.requireNonNull(results);
+		this.query.queryRadius(center, radius, results);
+	}
+
+	@Override
+	public boolean raycast(Vector2 start, Vector2 direction, double length,
+			RaycastHit hit) {
+		this.assertInit();
+		Objects.requireNonNull(hit);
+		return this.query.raycast(start, direction, length, hit);
+	}
+
+	@Override
+	public int raycastAll(Vector2 start, Vector2 direction, double length,
+			RaycastHitBuffer hits) {
+		this.assertInit();
+		Objects.requireNonNull(hits);
+		this.query.raycastAll(start, direction, length, hits);
+		return hits.size();
+	}
+
+	@Override
+	public void raycastBatch(RayBatch batch) {
+		this.assertInit();
+		this.query.raycastBatch(batch, ForkJoinPool.commonPool());
+	}
+
+	@Override
+	public void nearest(Vector2 point, int k,
+			List<? super PhysicsEntity> results) {
+		this.assertInit();
+		Objects.requireNonNull(results);
+		this.query.nearest(point, k, this.registry.size(), results);
+	}
+
+	@Override
+	public long getStateHash() {
+		return this.stateHash;
+	}
+
+	@Override
+	public long getStep() {
+		return this.step;
+	}
+
+	@Override
+	public boolean isRecorded(long step) {
+		return this.history != null && this.history.contains(step);
+	}
+
+	@Override
+	public synchronized void rewind(long step) {
+		this.assertInit();
+		if (this.history == null)
+			throw new IllegalStateException("history is disabled");
+		if (!this.history.contains(step))
+			throw new IllegalArgumentException(
+					"step " + step + " is not recorded");
+		this.registry.clearPending();
+		this.stateHash = this.history.restore(step, this.registry,
+				this::despawn, this::spawn, this.transform);
+		this.lod.restored();
+		this.step = step;
+		// queries before the next step must see the restored positions
+		BroadphaseDetector<Body, BodyFixture> broadphase = this.world
+				.getBroadphaseDetector();
+		for (int i = 0; i < this.registry.size(); i++)
+			broadphase.update(this.registry.get(i).body);
+		this.world.setUpdateRequired(true);
+	}
+
+	@Override
+	public void exportState(EntityStateBuffer buffer) {
+		Objects.requireNonNull(buffer);
+		this.registry.export(buffer);
+	}
+
+	@Override
+	public synchronized void saveSnapshot(WritableByteChannel channel)
+			throws IOException {
+		this.assertInit();
+		Objects.requireNonNull(channel);
+		WorldSnapshot.save(this.registry, channel);
+	}
+
+	@Override
+	public synchronized void restoreSnapshot(ReadableByteChannel channel)
+			throws IOException {
+		this.assertInit();
+		Objects.requireNonNull(channel);
+		List<SimpleEntity> entities = WorldSnapshot.restore(channel);
+		this.registry.clearPending();
+		if (this.history != null)
+			this.history.clear();
+		while (this.registry.size() > 0)
+			this.despawn(this.registry.get(this.registry.size() - 1));
+		for (int i = 0; i < entities.size(); i++)
+			this.spawn(entities.get(i));
+		this.lod.restored();
+	}
+
 	@Override
 	public List<PhysicsEntity> getSpawnedEntities() {
-		return this.entityView;
+		return this.registry.view();
+	}
+
+	/**
+	 * Enables the simulation level of detail. Entities the policy assigns a
+	 * step interval above 1 are reduced: they no longer take part in the
+	 * solver and are only moved along their velocity every {@code interval}
+	 * steps, over the time accumulated in between. The distance passed to the
+	 * policy is the distance to the nearest observer.
+	 * <p>
+	 * A reduced entity is promoted back to full simulation as soon as the
+	 * policy assigns it an interval of 1, or its bounding box expanded by the
+	 * {@link #setLodMargin(double) margin} overlaps any other entity. The
+	 * overlap is checked in every step. The bounding box is further expanded
+	 * by the distance the entity covers within its interval and the distance
+	 * the fastest fully simulated entity covers within one step, so fast ships
+	 * cannot pass through reduced entities. Reduced entities are still found
+	 * by all queries. Static entities and
+	 * observers are never reduced. Timed forces pause while an entity is
+	 * reduced. The history and snapshots record the level of detail of every
+	 * entity, so rewinding and restoring reproduce the original run.
+	 * </p>
+	 *
+	 * @param policy
+	 *            the policy. {@code null} disables the level of detail and
+	 *            promotes all reduced entities.
+	 * @throws IllegalStateException
+	 *             if the world has not been initialised.
+	 */
+	public synchronized void setLodPolicy(LodPolicy policy) {
+		this.assertInit();
+		this.lod.setPolicy(policy);
+	}
+
+	/**
+	 * @return the level of detail policy or {@code null} if disabled.
+	 * @throws IllegalStateException
+	 *             if the world has not been initialised.
+	 */
+	public LodPolicy getLodPolicy() {
+		this.assertInit();
+		return this.lod.getPolicy();
+	}
+
+	/**
+	 * sets the minimal distance by which the bounding box of a reduced entity
+	 * is expanded to detect approaching entities. The distances covered by
+	 * the entity and by the fastest fully simulated entity are added on top.
+	 * The default is 5.
+	 *
+	 * @param margin
+	 *            the margin. Must be positive or zero and finite.
+	 * @throws IllegalArgumentException
+	 *             if the {@code margin} is invalid.
+	 * @throws IllegalStateException
+	 *             if the world has not been initialised.
+	 */
+	public synchronized void setLodMargin(double margin) {
+		this.assertInit();
+		if (!(margin >= 0) || !Double.isFinite(margin))
+			throw new IllegalArgumentException(
+					"margin may not be negative. Was " + margin);
+		this.lod.setMargin(margin);
+	}
+
+	/**
+	 * Adds an observer, e.g. a player controlled ship. The level of detail of
+	 * all entities is determined by their distance to the nearest observer.
+	 *
+	 * @param observer
+	 *            the observer. May not be {@code null}.
+	 * @throws NullPointerException
+	 *             if the {@code observer} is {@code null}.
+	 * @throws IllegalStateException
+	 *             if the world has not been initialised.
+	 */
+	public synchronized void addLodObserver(PhysicsEntity observer) {
+		this.assertInit();
+		this.lod.addObserver(observer);
+	}
+
+	/**
+	 * Removes an observer.
+	 *
+	 * @param observer
+	 *            the observer.
+	 * @throws IllegalStateException
+	 *             if the world has not been initialised.
+	 */
+	public synchronized void removeLodObserver(PhysicsEntity observer) {
+		this.assertInit();
+		this.lod.removeObserver(observer);
+	}
+
+	/**
+	 * @param entity
+	 *            a spawned entity.
+	 * @return the current step interval of the entity. 1 if it is fully
+	 *         simulated.
+	 */
+	public int getLodInterval(PhysicsEntity entity) {
+		return ((SimpleEntity) entity).lodInterval;
+	}
+
+	/**
+	 * @return the number of currently reduced entities.
+	 */
+	public int getReducedCount() {
+		return this.lod == null ? 0 : this.lod.getReducedCount();
 	}
 
 }
@@ -0,0 +1,358 @@
+package ch.wados.starfury.physics.simple;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import org.dyn4j.collision.broadphase.BroadphaseItem;
+import org.dyn4j.collision.narrowphase.Raycast;
+import org.dyn4j.dynamics.Body;
+import org.dyn4j.dynamics.BodyFixture;
+import org.dyn4j.dynamics.World;
+import org.dyn4j.geometry.AABB;
+import org.dyn4j.geometry.Ray;
+import org.dyn4j.geometry.Transform;
+import org.dyn4j.geometry.Vector2;
+
+import ch.wados.starfury.physics.api.PhysicsEntity;
+import ch.wados.starfury.physics.api.RayBatch;
+import ch.wados.starfury.physics.api.RaycastHit;
+import ch.wados.starfury.physics.api.RaycastHitBuffer;
+
+/**
+ * Spatial queries over the worlds of a manager, backed by their broad-phases.
+ * <p>
+ * Candidates are taken from the broad-phase and then tested against the
+ * bounding boxes (or shapes for raycasts) of the individual fixtures. Entities
+ * present in multiple worlds (mirrors) or with multiple matching fixtures are
+ * reported only once, using a query stamp stored in the entity. Queries are
+ * therefore not thread-safe.
+ * </p>
+ * <p>
+ * The exception are ray batches: they only read the broad-phases and the
+ * bodies, so their rays are processed in parallel.
+ * </p>
+ */
+final class SpatialQuery {
+
+	/**
+	 * Provides the worlds to query.
+	 */
+	interface Worlds {
+
+		int count();
+
+		World get(int index);
+
+	}
+
+	// the search radius of nearest neighbour queries starts at the initial
+	// radius and doubles up to the maximum, then the whole plane is searched
+	private static final double INITIAL_RADIUS = 16;
+	private static final double MAX_RADIUS = 1e6;
+	// the number of rays of a batch processed by a single task
+	private static final int BATCH_CHUNK = 64;
+
+	private final Worlds worlds;
+	private final Raycast raycast = new Raycast();
+	private int stamp = 0;
+	// k nearest scratch, ordered by distance
+	private PhysicsEntity[] nearest = new PhysicsEntity[8];
+	private double[] distances = new double[8];
+	private int nearestCount;
+	private int seen;
+
+	SpatialQuery(Worlds worlds) {
+		this.worlds = worlds;
+	}
+
+	void queryAABB(AABB aabb, Collection<? super PhysicsEntity> results) {
+		Objects.requireNonNull(aabb);
+		results.clear();
+		int stamp = ++this.stamp;
+		for (int w = 0; w < this.worlds.count(); w++) {
+			List<BroadphaseItem<Body, BodyFixture>> items = this.worlds.get(w).getBroadphaseDetector().detect(aabb);
+			for (int i = 0; i < items.size(); i++) {
+				BroadphaseItem<Body, BodyFixture> item = items.get(i);
+				SimpleEntity entity = (SimpleEntity) item.getCollidable().getUserData();
+				if (entity.queryStamp == stamp)
+					continue;
+				AABB bounds = item.getFixture().getShape().createAABB(item.getCollidable().getTransform());
+				if (bounds.overlaps(aabb)) {
+					entity.queryStamp = stamp;
+					results.add(entity);
+				}
+			}
+		}
+	}
+
+	void queryRadius(Vector2 center, double radius, Collection<? super PhysicsEntity> results) {
+		Objects.requireNonNull(center);
+		if (radius < 0 || !Double.isFinite(radius))
+			throw new IllegalArgumentException("radius must be positive. Was " + radius);
+		results.clear();
+		int stamp = ++this.stamp;
+		AABB box = new AABB(center.x - radius, center.y - radius, center.x + radius, center.y + radius);
+		double r2 = radius * radius;
+		for (int w = 0; w < this.worlds.count(); w++) {
+			List<BroadphaseItem<Body, BodyFixture>> items = this.worlds.get(w).getBroadphaseDetector().detect(box);
+			for (int i = 0; i < items.size(); i++) {
+				BroadphaseItem<Body, BodyFixture> item = items.get(i);
+				SimpleEntity entity = (SimpleEntity) item.getCollidable().getUserData();
+				if (entity.queryStamp == stamp)
+					continue;
+				AABB bounds = item.getFixture().getShape().createAABB(item.getCollidable().getTransform());
+				if (distanceSquared(bounds, center.x, center.y) <= r2) {
+					entity.queryStamp = stamp;
+					results.add(entity);
+				}
+			}
+		}
+	}
+
+	boolean raycast(Vector2 start, Vector2 direction, double length, RaycastHit hit) {
+		Ray ray = ray(start, direction, length);
+		hit.clear();
+		double max = Double.isInfinite(length) ? 0 : length;
+		boolean found = false;
+		for (int w = 0; w < this.worlds.count(); w++) {
+			World world = this.worlds.get(w);
+			List<BroadphaseItem<Body, BodyFixture>> items = world.getBroadphaseDetector().raycast(ray, max);
+			for (int i = 0; i < items.size(); i++) {
+				BroadphaseItem<Body, BodyFixture> item = items.get(i);
+				if (!this.test(world, ray, max, item))
+					continue;
+				if (found && this.raycast.getDistance() >= hit.getDistance())
+					continue;
+				found = true;
+				this.store(item, hit);
+			}
+		}
+		return found;
+	}
+
+	void raycastAll(Vector2 start, Vector2 direction, double length, RaycastHitBuffer hits) {
+		Ray ray = ray(start, direction, length);
+		hits.clear();
+		double max = Double.isInfinite(length) ? 0 : length;
+		for (int w = 0; w < this.worlds.count(); w++) {
+			World world = this.worlds.get(w);
+			List<BroadphaseItem<Body, BodyFixture>> items = world.getBroadphaseDetector().raycast(ray, max);
+			items: for (int i = 0; i < items.size(); i++) {
+				BroadphaseItem<Body, BodyFixture> item = items.get(i);
+				if (!this.test(world, ray, max, item))
+					continue;
+				// a mirrored fixture may be hit in multiple worlds: keep the
+				// closer hit
+				SimpleEntity entity = (SimpleEntity) item.getCollidable().getUserData();
+				int handle = ((SimpleFixture) item.getFixture()).handle;
+				for (int j = 0; j < hits.size(); j++) {
+					RaycastHit other = hits.get(j);
+					if (other.getEntity() == entity && other.getFixtureHandle() == handle) {
+						if (this.raycast.getDistance() < other.getDistance())
+							this.store(item, other);
+						continue items;
+					}
+				}
+				this.store(item, hits.next());
+			}
+		}
+		hits.sort();
+	}
+
+	void raycastBatch(RayBatch batch, ForkJoinPool pool) {
+		Objects.requireNonNull(batch);
+		int size = batch.size();
+		if (size <= BATCH_CHUNK) {
+			this.raycastRange(batch, 0, size);
+			return;
+		}
+		List<ForkJoinTask<?>> tasks = new ArrayList<>(size / BATCH_CHUNK + 1);
+		for (int from = 0; from < size; from += BATCH_CHUNK) {
+			int start = from;
+			int end = Math.min(size, from + BATCH_CHUNK);
+			tasks.add(ForkJoinTask.adapt(() -> this.raycastRange(batch, start, end)));
+		}
+		pool.invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(tasks)));
+	}
+
+	/**
+	 * Processes a range of the rays of a batch. Uses only local scratch, so
+	 * multiple ranges may be processed concurrently.
+	 */
+	private void raycastRange(RayBatch batch, int from, int to) {
+		double[] startX = batch.getStartX();
+		double[] startY = batch.getStartY();
+		double[] endX = batch.getEndX();
+		double[] endY = batch.getEndY();
+		Raycast raycast = new Raycast();
+		for (int r = from; r < to; r++) {
+			double dx = endX[r] - startX[r];
+			double dy = endY[r] - startY[r];
+			double length = Math.sqrt(dx * dx + dy * dy);
+			Ray ray = new Ray(new Vector2(startX[r], startY[r]), new Vector2(dx / length, dy / length));
+			double best = length;
+			SimpleEntity entity = null;
+			int handle = -1;
+			double nx = 0;
+			double ny = 0;
+			for (int w = 0; w < this.worlds.count(); w++) {
+				World world = this.worlds.get(w);
+				List<BroadphaseItem<Body, BodyFixture>> items = world.getBroadphaseDetector().raycast(ray, length);
+				for (int i = 0; i < items.size(); i++) {
+					BroadphaseItem<Body, BodyFixture> item = items.get(i);
+					Body body = item.getCollidable();
+					BodyFixture fixture = item.getFixture();
+					if (fixture.isSensor() || isInactive(body))
+						continue;
+					raycast.clear();
+					if (!world.getRaycastDetector().raycast(ray, length, fixture.getShape(), body.getTransform(),
+							raycast))
+						continue;
+					if (entity != null && raycast.getDistance() >= best)
+						continue;
+					best = raycast.getDistance();
+					entity = (SimpleEntity) body.getUserData();
+					handle = ((SimpleFixture) fixture).handle;
+					nx = raycast.getNormal().x;
+					ny = raycast.getNormal().y;
+				}
+			}
+			if (entity == null)
+				batch.setMiss(r);
+			else
+				batch.setHit(r, entity.slot, handle, best / length, nx, ny);
+		}
+	}
+
+	/**
+	 * @return {@code true} if the body has been deactivated. Bodies of
+	 *         entities reduced by the level of detail count as active.
+	 */
+	private static boolean isInactive(Body body) {
+		return !body.isActive() && ((SimpleEntity) body.getUserData()).lodInterval == 1;
+	}
+
+	private static Ray ray(Vector2 start, Vector2 direction, double length) {
+		Objects.requireNonNull(start);
+		Objects.requireNonNull(direction);
+		if (direction.isZero())
+			throw new IllegalArgumentException("direction may not be the zero vector");
+		if (!(length > 0))
+			throw new IllegalArgumentException("length must be positive. Was " + length);
+		// the narrow-phase expects a unit direction
+		return new Ray(start, direction.getNormalized());
+	}
+
+	/**
+	 * Performs the narrow-phase raycast against a candidate. The result is
+	 * stored in {@link #raycast}. Sensors and inactive bodies are ignored.
+	 */
+	private boolean test(World world, Ray ray, double max, BroadphaseItem<Body, BodyFixture> item) {
+		Body body = item.getCollidable();
+		BodyFixture fixture = item.getFixture();
+		if (fixture.isSensor() || isInactive(body))
+			return false;
+		this.raycast.clear();
+		return world.getRaycastDetector().raycast(ray, max, fixture.getShape(), body.getTransform(), this.raycast);
+	}
+
+	private void store(BroadphaseItem<Body, BodyFixture> item, RaycastHit hit) {
+		SimpleFixture fixture = (SimpleFixture) item.getFixture();
+		hit.set((SimpleEntity) item.getCollidable().getUserData(), fixture.id, fixture.handle,
+				this.raycast.getPoint(), this.raycast.getNormal(), this.raycast.getDistance());
+	}
+
+	/**
+	 * Finds the k entities closest to a point. The search radius is doubled
+	 * until the k-th closest entity found lies within it, or all entities have
+	 * been seen.
+	 * 
+	 * @param entityCount
+	 *            the total number of entities
+	 */
+	void nearest(Vector2 point, int k, int entityCount, List<? super PhysicsEntity> results) {
+		Objects.requireNonNull(point);
+		if (k <= 0)
+			throw new IllegalArgumentException("k must be positive. Was " + k);
+		results.clear();
+		if (entityCount == 0)
+			return;
+		if (this.nearest.length < k) {
+			this.nearest = new PhysicsEntity[k];
+			this.distances = new double[k];
+		}
+		for (double radius = INITIAL_RADIUS;; radius = radius < MAX_RADIUS ? radius * 2
+				: Double.POSITIVE_INFINITY) {
+			this.nearestCount = 0;
+			this.seen = 0;
+			int stamp = ++this.stamp;
+			AABB box = new AABB(point.x - radius, point.y - radius, point.x + radius, point.y + radius);
+			for (int w = 0; w < this.worlds.count(); w++) {
+				List<BroadphaseItem<Body, BodyFixture>> items = this.worlds.get(w).getBroadphaseDetector()
+						.detect(box);
+				for (int i = 0; i < items.size(); i++) {
+					SimpleEntity entity = (SimpleEntity) items.get(i).getCollidable().getUserData();
+					if (entity.queryStamp == stamp)
+						continue;
+					entity.queryStamp = stamp;
+					this.seen++;
+					this.offer(entity, distance(entity.body, point), k);
+				}
+			}
+			// nothing outside the box can be closer than the radius
+			boolean complete = this.nearestCount == k && this.distances[k - 1] <= radius;
+			if (complete || this.seen >= entityCount || Double.isInfinite(radius))
+				break;
+		}
+		for (int i = 0; i < this.nearestCount; i++)
+			results.add(this.nearest[i]);
+		Arrays.fill(this.nearest, 0, this.nearestCount, null);
+	}
+
+	/**
+	 * Inserts an entity into the ordered k nearest scratch if it is closer
+	 * than the current k-th entity.
+	 */
+	private void offer(PhysicsEntity entity, double distance, int k) {
+		int i = this.nearestCount;
+		if (i == k) {
+			if (distance >= this.distances[k - 1])
+				return;
+			i--;
+		} else {
+			this.nearestCount++;
+		}
+		for (; i > 0 && this.distances[i - 1] > distance; i--) {
+			this.nearest[i] = this.nearest[i - 1];
+			this.distances[i] = this.distances[i - 1];
+		}
+		this.nearest[i] = entity;
+		this.distances[i] = distance;
+	}
+
+	/**
+	 * @return the distance between a point and the closest fixture bounding
+	 *         box of a body.
+	 */
+	private static double distance(Body body, Vector2 point) {
+		Transform transform = body.getTransform();
+		double min = Double.POSITIVE_INFINITY;
+		for (int i = 0; i < body.getFixtureCount(); i++) {
+			AABB bounds = body.getFixture(i).getShape().createAABB(transform);
+			min = Math.min(min, distanceSquared(bounds, point.x, point.y));
+		}
+		return Math.sqrt(min);
+	}
+
+	private static double distanceSquared(AABB box, double x, double y) {
+		double dx = Math.max(0, Math.max(box.getMinX() - x, x - box.getMaxX()));
+		double dy = Math.max(0, Math.max(box.getMinY() - y, y - box.getMaxY()));
+		return dx * dx + dy * dy;
+	}
+
+}
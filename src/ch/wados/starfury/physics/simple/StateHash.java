@@ -0,0 +1,57 @@
+package ch.wados.starfury.physics.simple;
+
+import org.dyn4j.dynamics.Body;
+import org.dyn4j.geometry.Vector2;
+
+/**
+ * Rolling hash over the state of all entities of a registry, used by the
+ * deterministic lockstep mode to detect desyncs.
+ * <p>
+ * Every value is folded in by its exact bit pattern, so any difference in any
+ * bit of any entity changes the hash. The mixing step is a multiply and rotate
+ * round, which is cheap enough to run on every step.
+ * </p>
+ */
+final class StateHash {
+
+	private static final long M1 = 0x9E3779B97F4A7C15L;
+	private static final long M2 = 0xC2B2AE3D27D4EB4FL;
+	private static final long STEP = 0x165667B19E3779F9L;
+
+	private StateHash() {
+	}
+
+	/**
+	 * Folds the current state of all entities into a hash.
+	 *
+	 * @param hash
+	 *            the hash after the previous step
+	 * @param scratch
+	 *            scratch used to read the exact transforms
+	 * @return the new hash
+	 */
+	static long update(long hash, EntityRegistry registry, TransformAccess scratch) {
+		int count = registry.size();
+		// the step marker changes the hash even if there are no entities
+		long h = mix(hash, STEP + count);
+		for (int i = 0; i < count; i++) {
+			Body body = registry.get(i).body;
+			scratch.load(body.getTransform());
+			Vector2 v = body.getLinearVelocity();
+			h = mix(h, Double.doubleToLongBits(scratch.getCos()));
+			h = mix(h, Double.doubleToLongBits(scratch.getSin()));
+			h = mix(h, Double.doubleToLongBits(scratch.getTranslationX()));
+			h = mix(h, Double.doubleToLongBits(scratch.getTranslationY()));
+			h = mix(h, Double.doubleToLongBits(v.x));
+			h = mix(h, Double.doubleToLongBits(v.y));
+			h = mix(h, Double.doubleToLongBits(body.getAngularVelocity()));
+			h = mix(h, body.isAsleep() ? 1 : 0);
+		}
+		return h;
+	}
+
+	private static long mix(long hash, long value) {
+		return Long.rotateLeft(hash ^ (value * M1), 29) * M2;
+	}
+
+}
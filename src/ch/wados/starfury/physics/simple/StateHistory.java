@@ -0,0 +1,271 @@
+package ch.wados.starfury.physics.simple;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+import org.dyn4j.dynamics.Body;
+import org.dyn4j.geometry.Vector2;
+
+import ch.wados.starfury.physics.simple.SimpleEntity.TimedTorque;
+
+/**
+ * Ring buffer holding the state of all entities of a registry after each of
+ * the most recent steps. Used to rewind a manager.
+ * <p>
+ * A frame stores the registered entities in slot order together with their
+ * exact transforms, velocities, sleep flags, level of detail state, thrust
+ * levels and timed torques in primitive columns. All frames are allocated up front for an initial
+ * capacity. A frame only grows if a step has more entities (or thrusters or
+ * timed torques) than any step recorded into it before, so recording does
+ * not allocate in a steady state.
+ * </p>
+ * <p>
+ * The frames keep despawned entities reachable until they are overwritten or
+ * the history is cleared.
+ * </p>
+ */
+final class StateHistory {
+
+	private final Frame[] frames;
+	// the newest recorded step and the number of consecutive steps up to it
+	private long newest = 0;
+	private int count = 0;
+
+	/**
+	 * @param length
+	 *            the number of frames
+	 * @param capacity
+	 *            the initial entity capacity of each frame
+	 */
+	StateHistory(int length, int capacity) {
+		this.frames = new Frame[length];
+		for (int i = 0; i < length; i++)
+			this.frames[i] = new Frame(capacity);
+	}
+
+	/**
+	 * @return {@code true} if the state after the given step is held.
+	 */
+	boolean contains(long step) {
+		return step <= this.newest && step > this.newest - this.count;
+	}
+
+	/**
+	 * Records the state after a step. All recorded steps following the
+	 * previous step are discarded, since they belong to a timeline that has
+	 * been rewound.
+	 */
+	void record(long step, long hash, EntityRegistry registry, TransformAccess scratch) {
+		int valid = this.contains(step - 1) ? (int) (step - 1 - (this.newest - this.count)) : 0;
+		this.count = Math.min(valid + 1, this.frames.length);
+		this.newest = step;
+		this.frames[this.index(step)].record(hash, registry, scratch);
+	}
+
+	/**
+	 * Restores the state after a recorded step. The caller must ensure the
+	 * step is {@link #contains(long) contained} and that no operations are
+	 * queued in the registry. The registered entities are reduced to the
+	 * longest prefix they have in common with the recorded ones, the
+	 * remaining recorded entities are spawned again after their state has
+	 * been restored. The level of detail state of the entities is restored
+	 * as well, the caller must account for the reduced entities.
+	 *
+	 * @param despawn
+	 *            the action despawning a single entity
+	 * @param spawn
+	 *            the action spawning a single entity
+	 * @return the state hash recorded with the step
+	 */
+	long restore(long step, EntityRegistry registry, Consumer<SimpleEntity> despawn, Consumer<SimpleEntity> spawn,
+			TransformAccess scratch) {
+		return this.frames[this.index(step)].restore(registry, despawn, spawn, scratch);
+	}
+
+	/**
+	 * Discards all recorded steps.
+	 */
+	void clear() {
+		for (Frame frame : this.frames)
+			frame.clear();
+		this.count = 0;
+	}
+
+	private int index(long step) {
+		return (int) (step % this.frames.length);
+	}
+
+	private static final class Frame {
+
+		private long hash;
+		private int size;
+		private SimpleEntity[] entities;
+		private double[] cos;
+		private double[] sin;
+		private double[] x;
+		private double[] y;
+		private double[] vx;
+		private double[] vy;
+		private double[] omega;
+		private boolean[] asleep;
+		// level of detail state, see SimpleEntity
+		private int[] lodInterval;
+		private int[] lodTicks;
+		private double[] lodTime;
+		// thruster count per entity, the thrust levels of all entities are
+		// stored consecutively
+		private int[] thrusterCount;
+		private int thrustSize;
+		private double[] thrusts = new double[0];
+		// timed torques in entity order
+		private int torqueSize;
+		private int[] torqueEntity = new int[0];
+		private double[] torque = new double[0];
+		private double[] torqueRemaining = new double[0];
+
+		Frame(int capacity) {
+			this.entities = new SimpleEntity[capacity];
+			this.cos = new double[capacity];
+			this.sin = new double[capacity];
+			this.x = new double[capacity];
+			this.y = new double[capacity];
+			this.vx = new double[capacity];
+			this.vy = new double[capacity];
+			this.omega = new double[capacity];
+			this.asleep = new boolean[capacity];
+			this.lodInterval = new int[capacity];
+			this.lodTicks = new int[capacity];
+			this.lodTime = new double[capacity];
+			this.thrusterCount = new int[capacity];
+		}
+
+		private void ensureCapacity(int capacity) {
+			if (capacity <= this.entities.length)
+				return;
+			int length = Math.max(capacity, this.entities.length * 2);
+			this.entities = Arrays.copyOf(this.entities, length);
+			this.cos = new double[length];
+			this.sin = new double[length];
+			this.x = new double[length];
+			this.y = new double[length];
+			this.vx = new double[length];
+			this.vy = new double[length];
+			this.omega = new double[length];
+			this.asleep = new boolean[length];
+			this.lodInterval = new int[length];
+			this.lodTicks = new int[length];
+			this.lodTime = new double[length];
+			this.thrusterCount = new int[length];
+		}
+
+		void record(long hash, EntityRegistry registry, TransformAccess scratch) {
+			int n = registry.size();
+			this.ensureCapacity(n);
+			if (this.size > n)
+				Arrays.fill(this.entities, n, this.size, null);
+			this.hash = hash;
+			this.size = n;
+			this.thrustSize = 0;
+			this.torqueSize = 0;
+			for (int i = 0; i < n; i++) {
+				SimpleEntity entity = registry.get(i);
+				Body body = entity.body;
+				scratch.load(body.getTransform());
+				Vector2 v = body.getLinearVelocity();
+				this.entities[i] = entity;
+				this.cos[i] = scratch.getCos();
+				this.sin[i] = scratch.getSin();
+				this.x[i] = scratch.getTranslationX();
+				this.y[i] = scratch.getTranslationY();
+				this.vx[i] = v.x;
+				this.vy[i] = v.y;
+				this.omega[i] = body.getAngularVelocity();
+				this.asleep[i] = body.isAsleep();
+				// reduced entities are recorded at their last position
+				// together with the time they have to catch up on
+				this.lodInterval[i] = entity.lodInterval;
+				this.lodTicks[i] = entity.lodTicks;
+				this.lodTime[i] = entity.lodTime;
+				this.recordThrusts(i, entity.getThrusters());
+				this.recordTorques(i, entity.getTimedTorques());
+			}
+		}
+
+		private void recordThrusts(int index, ThrusterSystem thrusters) {
+			int count = thrusters.getThrusterCount();
+			this.thrusterCount[index] = count;
+			if (this.thrustSize + count > this.thrusts.length)
+				this.thrusts = Arrays.copyOf(this.thrusts, Math.max(this.thrustSize + count, this.thrusts.length * 2));
+			for (int t = 0; t < count; t++)
+				this.thrusts[this.thrustSize++] = thrusters.getThruster(t).getThrust();
+		}
+
+		private void recordTorques(int index, List<TimedTorque> torques) {
+			int count = torques.size();
+			if (this.torqueSize + count > this.torque.length) {
+				int length = Math.max(this.torqueSize + count, this.torque.length * 2);
+				this.torqueEntity = Arrays.copyOf(this.torqueEntity, length);
+				this.torque = Arrays.copyOf(this.torque, length);
+				this.torqueRemaining = Arrays.copyOf(this.torqueRemaining, length);
+			}
+			for (int t = 0; t < count; t++) {
+				TimedTorque timed = torques.get(t);
+				this.torqueEntity[this.torqueSize] = index;
+				this.torque[this.torqueSize] = timed.getTorque();
+				this.torqueRemaining[this.torqueSize] = timed.getRemaining();
+				this.torqueSize++;
+			}
+		}
+
+		long restore(EntityRegistry registry, Consumer<SimpleEntity> despawn, Consumer<SimpleEntity> spawn,
+				TransformAccess scratch) {
+			int common = 0;
+			int limit = Math.min(this.size, registry.size());
+			while (common < limit && registry.get(common) == this.entities[common])
+				common++;
+			// despawning from the end never reorders the remaining entities
+			while (registry.size() > common)
+				despawn.accept(registry.get(registry.size() - 1));
+			int thrust = 0;
+			int torque = 0;
+			for (int i = 0; i < this.size; i++) {
+				SimpleEntity entity = this.entities[i];
+				Body body = entity.body;
+				scratch.store(body.getTransform(), this.cos[i], this.sin[i], this.x[i], this.y[i]);
+				entity.clearTimedTorques();
+				if (this.asleep[i]) {
+					body.setAsleep(true);
+				} else {
+					body.setAsleep(false);
+					body.setLinearVelocity(this.vx[i], this.vy[i]);
+					body.setAngularVelocity(this.omega[i]);
+				}
+				entity.lodInterval = this.lodInterval[i];
+				entity.lodTicks = this.lodTicks[i];
+				entity.lodTime = this.lodTime[i];
+				body.setActive(entity.lodInterval == 1);
+				ThrusterSystem thrusters = entity.getThrusters();
+				int count = this.thrusterCount[i];
+				// skip thrust levels of entities whose thrusters changed since
+				if (count > 0 && thrusters.getThrusterCount() == count)
+					thrusters.restoreThrusts(this.thrusts, thrust);
+				thrust += count;
+				for (; torque < this.torqueSize && this.torqueEntity[torque] == i; torque++)
+					entity.restoreTimedTorque(this.torque[torque], this.torqueRemaining[torque]);
+			}
+			// spawn after restoring, so the entities are placed at their
+			// recorded positions
+			for (int i = common; i < this.size; i++)
+				spawn.accept(this.entities[i]);
+			return this.hash;
+		}
+
+		void clear() {
+			Arrays.fill(this.entities, 0, this.size, null);
+			this.size = 0;
+		}
+
+	}
+
+}
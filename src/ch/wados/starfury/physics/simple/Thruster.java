@@ -12,6 +12,8 @@ import ch.wados.starfury.physics.api.ThrustPointDefinition;
 class Thruster {
 
 	final String identifier;
+	// handle within the owning ThrusterSystem
+	int handle = -1;
 	private final Vector2 position;
 	private final Vector2 direction;
 	private double torqueFactor;
@@ -30,6 +32,21 @@ class Thruster {
 		this.torque = 0;
 	}
 
+	/**
+	 * Creates a thruster from precompiled data. The vectors are shared and
+	 * must therefore not be modified.
+	 */
+	Thruster(String identifier, Vector2 position, Vector2 direction,
+			double torqueFactor) {
+		this.identifier = identifier;
+		this.position = position;
+		this.direction = direction;
+		this.torqueFactor = torqueFactor;
+		this.thrust = 0;
+		this.force = new Vector2(0, 0);
+		this.torque = 0;
+	}
+
 	/**
 	 * updates the torque value
 	 * 
@@ -48,6 +65,22 @@ class Thruster {
 		this.torque = this.torqueFactor * thrust;
 	}
 
+	double getThrust() {
+		return this.thrust;
+	}
+
+	Vector2 getPosition() {
+		return this.position;
+	}
+
+	Vector2 getDirection() {
+		return this.direction;
+	}
+
+	double getTorqueFactor() {
+		return this.torqueFactor;
+	}
+
 	Vector2 getForce() {
 		return this.force;
 	}
@@ -1,7 +1,10 @@
 package ch.wados.starfury.physics.simple;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.dyn4j.dynamics.Force;
 import org.dyn4j.dynamics.Torque;
@@ -13,10 +16,23 @@ import ch.wados.starfury.physics.api.ThrustPointDefinition;
 /**
  * The set of all {@link Thruster Thrusters} of an entity. Includes force/torque
  * caching and update management.
+ * <p>
+ * Thrust changes update the net force and torque incrementally. To bound the
+ * accumulated rounding error a full refresh is performed every
+ * {@value #REFRESH_INTERVAL} incremental updates.
+ * </p>
  */
 class ThrusterSystem {
 
+	static final int REFRESH_INTERVAL = 1024;
+
 	private final List<Thruster> thrusters;
+	// lookup by identifier and by handle. Handles are never reused.
+	private final Map<String, Thruster> index;
+	private Thruster[] handles;
+	private int nextHandle;
+	private int incrementalUpdates;
+	private double net_torque;
 	private Vector2 net_force;
 	private Vector2 force_vector;
 	private Vector2 CoM;
@@ -25,6 +41,9 @@ class ThrusterSystem {
 
 	ThrusterSystem(int capacity) {
 		this.thrusters = new ArrayList<>(capacity);
+		this.index = new HashMap<>();
+		this.handles = new Thruster[capacity];
+		this.nextHandle = 0;
 		this.net_force = new Vector2(0, 0);
 		this.force_vector = new Vector2(0, 0);
 		this.force = new Force(this.force_vector);
@@ -51,12 +70,67 @@ class ThrusterSystem {
 
 	private void refresh() {
 		this.net_force.set(0, 0);
-		double net_torque = 0;
+		this.net_torque = 0;
 		for (Thruster t : this.thrusters) {
 			this.net_force.add(t.getForce());
-			net_torque += t.getTorque();
+			this.net_torque += t.getTorque();
 		}
-		this.torque.set(net_torque);
+		this.torque.set(this.net_torque);
+		this.incrementalUpdates = 0;
+	}
+
+	/**
+	 * updates the thrust of a single thruster and applies the change to the
+	 * net force and torque. Does not update the {@link Torque} instance.
+	 */
+	private void apply(Thruster t, double thrust) {
+		double delta = thrust - t.getThrust();
+		t.setThrust(thrust);
+		if (delta == 0)
+			return;
+		Vector2 direction = t.getDirection();
+		this.net_force.add(direction.x * delta, direction.y * delta);
+		this.net_torque += t.getTorqueFactor() * delta;
+	}
+
+	/**
+	 * publishes the incrementally updated net torque and performs a full
+	 * refresh if required.
+	 */
+	private void commit() {
+		if (++this.incrementalUpdates >= REFRESH_INTERVAL)
+			this.refresh();
+		else
+			this.torque.set(this.net_torque);
+	}
+
+	private Thruster get(int handle) {
+		Thruster t = (handle < 0 || handle >= this.nextHandle) ? null
+				: this.handles[handle];
+		if (t == null)
+			throw new IllegalArgumentException(
+					"thruster with handle [" + handle + "] not found");
+		return t;
+	}
+
+	/**
+	 * Provides the handle of a thrust point.
+	 * 
+	 * @param id
+	 *            the identifier of the thrust point. May not be {@code null}.
+	 * @return the handle
+	 * @throws NullPointerException
+	 *             if the {@code id} is {@code null}.
+	 * @throws IllegalArgumentException
+	 *             if the {@code id} is not known.
+	 */
+	int getHandle(String id) {
+		if (id == null)
+			throw new NullPointerException("id may not be null");
+		Thruster t = this.index.get(id);
+		if (t == null)
+			throw new IllegalArgumentException("thruster [" + id + "] not found");
+		return t.handle;
 	}
 
 	/**
@@ -84,14 +158,63 @@ class ThrusterSystem {
 		if (!Double.isFinite(thrust))
 			throw new IllegalArgumentException("thrust must be finite");
 		// search thruster and perform update
-		for (Thruster t : this.thrusters)
-			if (t.identifier.equals(id)) {
-				t.setThrust(thrust);
-				this.refresh();
-				return;
-			}
-		// thruster not found!
-		throw new IllegalArgumentException("thruster [" + id + "] not found");
+		Thruster t = this.index.get(id);
+		if (t == null)
+			throw new IllegalArgumentException("thruster [" + id + "] not found");
+		this.apply(t, thrust);
+		this.commit();
+	}
+
+	/**
+	 * Sets the force applied at a thrust point.
+	 * 
+	 * @param handle
+	 *            the handle of the thrust point.
+	 * @param thrust
+	 *            the force (in Newtons) to apply. May not be non-finite.
+	 * @throws IllegalArgumentException
+	 *             if the {@code handle} is not known or the {@code thrust} is
+	 *             non-finite.
+	 * @see #setThrust(String, double)
+	 */
+	void setThrust(int handle, double thrust) {
+		if (!Double.isFinite(thrust))
+			throw new IllegalArgumentException("thrust must be finite");
+		this.apply(this.get(handle), thrust);
+		this.commit();
+	}
+
+	/**
+	 * Sets the forces applied at multiple thrust points. The net force and
+	 * torque are only updated once. The input is validated as a whole, so no
+	 * thrust point is changed if any value is invalid.
+	 * 
+	 * @param handles
+	 *            the handles of the thrust points. May not be {@code null}.
+	 * @param thrusts
+	 *            the forces (in Newtons) to apply. Must have the same length
+	 *            as the {@code handles} and may not contain non-finite values.
+	 * @throws NullPointerException
+	 *             if any array is {@code null}.
+	 * @throws IllegalArgumentException
+	 *             if the lengths differ, any handle is not known or any thrust
+	 *             is non-finite.
+	 */
+	void setThrusts(int[] handles, double[] thrusts) {
+		if (handles == null)
+			throw new NullPointerException("handles may not be null");
+		if (thrusts == null)
+			throw new NullPointerException("thrusts may not be null");
+		if (handles.length != thrusts.length)
+			throw new IllegalArgumentException("array lengths differ");
+		for (int i = 0; i < handles.length; i++) {
+			this.get(handles[i]);
+			if (!Double.isFinite(thrusts[i]))
+				throw new IllegalArgumentException("thrust must be finite");
+		}
+		for (int i = 0; i < handles.length; i++)
+			this.apply(this.handles[handles[i]], thrusts[i]);
+		this.commit();
 	}
 
 	int getThrusterCount() {
@@ -107,25 +230,86 @@ class ThrusterSystem {
 	 *            this entity.
 	 * @throws NullPointerException
 	 *             if the {@code def} is {@code null}
+	 * @return the handle of the new thrust point.
 	 * @throws IllegalArgumentException
 	 *             if the {@code def} has an {@code id} that is already present.
 	 */
-	void addThruster(ThrustPointDefinition def) {
+	int addThruster(ThrustPointDefinition def) {
 		// validate
 		if (def == null)
 			throw new NullPointerException("def may not be null");
 		String id = def.getIdentifier();
-		for (Thruster t : this.thrusters)
-			if (t.identifier.equals(id))
-				throw new IllegalArgumentException(
-						"thruster with id [" + id + "] already exists");
+		if (this.index.containsKey(id))
+			throw new IllegalArgumentException(
+					"thruster with id [" + id + "] already exists");
 		// create thruster
 		Thruster t = new Thruster(def);
 		t.update(this.CoM);
+		this.register(t, this.nextHandle);
+		// refresh not required since new thrusters are turned off by default
+		return t.handle;
+	}
+
+	private void register(Thruster t, int handle) {
+		t.handle = handle;
+		this.nextHandle = Math.max(this.nextHandle, handle + 1);
+		if (handle >= this.handles.length)
+			this.handles = Arrays.copyOf(this.handles,
+					Math.max(Math.max(4, handle + 1), 2 * this.handles.length));
+		this.handles[t.handle] = t;
+		this.index.put(t.identifier, t);
 		this.thrusters.add(t);
+	}
+
+	/**
+	 * Initialises the thrust points from a {@link Prefab}. Must only be called
+	 * on a new system.
+	 * 
+	 * @param prefab
+	 *            the prefab. The centre of mass of its mass is used.
+	 */
+	void addThrusters(Prefab prefab) {
+		this.CoM.set(prefab.mass.getCenter());
+		for (int i = 0; i < prefab.thrusterIds.length; i++)
+			this.register(new Thruster(prefab.thrusterIds[i],
+					prefab.thrusterPositions[i], prefab.thrusterDirections[i],
+					prefab.torqueFactors[i]), prefab.thrusterHandles[i]);
+		this.nextHandle = prefab.nextThrusterHandle;
 		// refresh not required since new thrusters are turned off by default
 	}
 
+	double getTorqueFactor(int index) {
+		return this.thrusters.get(index).getTorqueFactor();
+	}
+
+	/**
+	 * @param index
+	 *            the index of the thruster in insertion order.
+	 */
+	Thruster getThruster(int index) {
+		return this.thrusters.get(index);
+	}
+
+	int getNextHandle() {
+		return this.nextHandle;
+	}
+
+	/**
+	 * Sets the thrust of all thrusters in insertion order and performs a full
+	 * refresh. Used to restore a snapshot, therefore no validation is
+	 * performed.
+	 * 
+	 * @param thrusts
+	 *            the thrust values
+	 * @param offset
+	 *            the index of the value of the first thruster
+	 */
+	void restoreThrusts(double[] thrusts, int offset) {
+		for (int i = 0; i < this.thrusters.size(); i++)
+			this.thrusters.get(i).setThrust(thrusts[offset + i]);
+		this.refresh();
+	}
+
 	/**
 	 * Removes a thrust point.
 	 * 
@@ -145,12 +329,29 @@ class ThrusterSystem {
 		if (id.isEmpty())
 			throw new IllegalArgumentException("id may not be empty");
 		// remove thruster if it exists
-		for (int i = 0; i < this.thrusters.size(); i++)
-			if (this.thrusters.get(i).identifier.equals(id)) {
-				this.thrusters.remove(i);
-				this.refresh();
-				return;
-			}
+		Thruster t = this.index.get(id);
+		if (t != null)
+			this.remove(t);
+	}
+
+	/**
+	 * Removes a thrust point.
+	 * 
+	 * @param handle
+	 *            the handle of the thrust point to remove. If no matching
+	 *            thrust point is found, this is ignored.
+	 */
+	void removeThruster(int handle) {
+		if (handle >= 0 && handle < this.nextHandle
+				&& this.handles[handle] != null)
+			this.remove(this.handles[handle]);
+	}
+
+	private void remove(Thruster t) {
+		this.thrusters.remove(t);
+		this.index.remove(t.identifier);
+		this.handles[t.handle] = null;
+		this.refresh();
 	}
 
 }
@@ -0,0 +1,51 @@
+package ch.wados.starfury.physics.simple;
+
+import org.dyn4j.geometry.Transform;
+
+/**
+ * {@link Transform} exposing its raw rotation matrix. A transform can only be
+ * rotated through an angle, which does not reproduce the matrix exactly.
+ * Copying the matrix entries restores a transform bit for bit.
+ * <p>
+ * A rigid transform has the rotation matrix {@code [cos -sin; sin cos]}, so
+ * the cosine and the sine together with the translation describe it
+ * completely.
+ * </p>
+ */
+final class TransformAccess extends Transform {
+
+	/**
+	 * Loads the values of a transform into this instance.
+	 */
+	void load(Transform transform) {
+		this.set(transform);
+	}
+
+	/**
+	 * @return the cosine of the rotation of the loaded transform.
+	 */
+	double getCos() {
+		return this.m00;
+	}
+
+	/**
+	 * @return the sine of the rotation of the loaded transform.
+	 */
+	double getSin() {
+		return this.m10;
+	}
+
+	/**
+	 * Stores exact values into a transform.
+	 */
+	void store(Transform target, double cos, double sin, double x, double y) {
+		this.m00 = cos;
+		this.m01 = -sin;
+		this.m10 = sin;
+		this.m11 = cos;
+		this.x = x;
+		this.y = y;
+		target.set(this);
+	}
+
+}
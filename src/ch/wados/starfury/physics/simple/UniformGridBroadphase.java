@@ -0,0 +1,522 @@
+package ch.wados.starfury.physics.simple;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.dyn4j.collision.Collidable;
+import org.dyn4j.collision.Collisions;
+import org.dyn4j.collision.Fixture;
+import org.dyn4j.collision.broadphase.AbstractBroadphaseDetector;
+import org.dyn4j.collision.broadphase.BroadphaseFilter;
+import org.dyn4j.collision.broadphase.BroadphaseItem;
+import org.dyn4j.collision.broadphase.BroadphasePair;
+import org.dyn4j.geometry.AABB;
+import org.dyn4j.geometry.Ray;
+import org.dyn4j.geometry.Vector2;
+
+/**
+ * Broad-phase backed by a uniform spatial hash.
+ * <p>
+ * The plane is divided into square cells of a fixed size. Every fixture proxy
+ * is registered in all cells its expanded {@link AABB} overlaps. Candidate
+ * pairs are only searched within cells, so the cost of a detection is linear
+ * in the number of proxies as long as the cell size matches the size of the
+ * typical entity. This suits large numbers of similarly sized bodies.
+ * </p>
+ * <p>
+ * Cells are identified by a primitive {@code int} key packing the lower 16
+ * bits of both cell coordinates. They are kept in an open addressing hash
+ * table, so no keys are boxed. Cells far apart may share a key, which only
+ * adds candidates that are then rejected by the {@link AABB} test. Updates are
+ * incremental: a proxy is only re-registered if its fixture left the expanded
+ * {@link AABB}, and then only if the covered cell range changed. Proxies
+ * spanning more than {@value #MAX_SPAN} cells along an axis (e.g. stations)
+ * are kept in a separate list and tested against all other proxies.
+ * </p>
+ *
+ * @param <E>
+ *            the collidable type
+ * @param <T>
+ *            the fixture type
+ */
+final class UniformGridBroadphase<E extends Collidable<T>, T extends Fixture> extends AbstractBroadphaseDetector<E, T> {
+
+	/**
+	 * The maximum number of cells a regular proxy may span along an axis.
+	 */
+	static final int MAX_SPAN = 8;
+
+	private final double cellSize;
+	private final double invCellSize;
+	// all proxies by fixture. fixtures are never shared between collidables
+	private final Map<T, Proxy<E, T>> proxies;
+	private final List<Proxy<E, T>> regular;
+	private final List<Proxy<E, T>> large = new ArrayList<>();
+	// open addressing cell table
+	private int[] keys;
+	private Cell[] cells;
+	private int cellCount = 0;
+	private int mask;
+
+	/**
+	 * @param cellSize
+	 *            the edge length of a cell. Must be strictly positive.
+	 * @param initialCapacity
+	 *            the estimated number of proxies.
+	 */
+	UniformGridBroadphase(double cellSize, int initialCapacity) {
+		if (cellSize <= 0 || !Double.isFinite(cellSize))
+			throw new IllegalArgumentException("cell size must be positive. Was " + cellSize);
+		this.cellSize = cellSize;
+		this.invCellSize = 1 / cellSize;
+		this.proxies = new IdentityHashMap<>(initialCapacity);
+		this.regular = new ArrayList<>(initialCapacity);
+		int tableSize = Integer.highestOneBit(Math.max(16, initialCapacity * 2) - 1) << 1;
+		this.keys = new int[tableSize];
+		this.cells = new Cell[tableSize];
+		this.mask = tableSize - 1;
+	}
+
+	double getCellSize() {
+		return this.cellSize;
+	}
+
+	/**
+	 * @return the number of cells currently allocated. Includes empty cells
+	 *         not yet reclaimed.
+	 */
+	int getCellCount() {
+		return this.cellCount;
+	}
+
+	// PROXY MANAGEMENT
+
+	@Override
+	public void add(E collidable, T fixture) {
+		Proxy<E, T> proxy = this.proxies.get(fixture);
+		if (proxy == null)
+			this.insert(collidable, fixture);
+		else
+			this.update(proxy);
+	}
+
+	@Override
+	public boolean remove(E collidable, T fixture) {
+		Proxy<E, T> proxy = this.proxies.remove(fixture);
+		if (proxy == null)
+			return false;
+		this.unregister(proxy);
+		return true;
+	}
+
+	@Override
+	public void update(E collidable, T fixture) {
+		Proxy<E, T> proxy = this.proxies.get(fixture);
+		if (proxy == null)
+			this.insert(collidable, fixture);
+		else
+			this.update(proxy);
+	}
+
+	private void insert(E collidable, T fixture) {
+		AABB aabb = fixture.getShape().createAABB(collidable.getTransform());
+		aabb.expand(this.expansion);
+		Proxy<E, T> proxy = new Proxy<>(collidable, fixture, aabb);
+		this.proxies.put(fixture, proxy);
+		this.setRange(proxy);
+		this.register(proxy);
+	}
+
+	private void update(Proxy<E, T> proxy) {
+		AABB aabb = proxy.fixture.getShape().createAABB(proxy.collidable.getTransform());
+		if (proxy.aabb.contains(aabb))
+			return;
+		aabb.expand(this.expansion);
+		proxy.aabb = aabb;
+		int minX = proxy.minX, minY = proxy.minY, maxX = proxy.maxX, maxY = proxy.maxY;
+		this.setRange(proxy);
+		if (minX == proxy.minX && minY == proxy.minY && maxX == proxy.maxX && maxY == proxy.maxY)
+			return;
+		// the cell range changed: unregister with the old range and register
+		// with the new one
+		int newMinX = proxy.minX, newMinY = proxy.minY, newMaxX = proxy.maxX, newMaxY = proxy.maxY;
+		proxy.minX = minX;
+		proxy.minY = minY;
+		proxy.maxX = maxX;
+		proxy.maxY = maxY;
+		this.unregister(proxy);
+		proxy.minX = newMinX;
+		proxy.minY = newMinY;
+		proxy.maxX = newMaxX;
+		proxy.maxY = newMaxY;
+		this.register(proxy);
+	}
+
+	private void setRange(Proxy<E, T> proxy) {
+		proxy.minX = this.cell(proxy.aabb.getMinX());
+		proxy.minY = this.cell(proxy.aabb.getMinY());
+		proxy.maxX = this.cell(proxy.aabb.getMaxX());
+		proxy.maxY = this.cell(proxy.aabb.getMaxY());
+	}
+
+	private int cell(double coordinate) {
+		return (int) Math.floor(coordinate * this.invCellSize);
+	}
+
+	private void register(Proxy<E, T> proxy) {
+		if (proxy.isLarge()) {
+			this.addTo(this.large, proxy);
+		} else {
+			this.addTo(this.regular, proxy);
+			this.registerCells(proxy);
+		}
+	}
+
+	private void unregister(Proxy<E, T> proxy) {
+		if (proxy.isLarge()) {
+			this.removeFrom(this.large, proxy);
+		} else {
+			this.removeFrom(this.regular, proxy);
+			this.unregisterCells(proxy);
+		}
+	}
+
+	private void registerCells(Proxy<E, T> proxy) {
+		// count in long: far from the origin the cell coordinates saturate at
+		// the int range and an int counter would never pass the maximum
+		for (long x = proxy.minX; x <= proxy.maxX; x++)
+			for (long y = proxy.minY; y <= proxy.maxY; y++)
+				this.getOrCreateCell(key((int) x, (int) y)).add(proxy);
+	}
+
+	private void unregisterCells(Proxy<E, T> proxy) {
+		for (long x = proxy.minX; x <= proxy.maxX; x++)
+			for (long y = proxy.minY; y <= proxy.maxY; y++) {
+				Cell cell = this.getCell(key((int) x, (int) y));
+				if (cell != null)
+					cell.remove(proxy);
+			}
+	}
+
+	private void addTo(List<Proxy<E, T>> list, Proxy<E, T> proxy) {
+		proxy.index = list.size();
+		list.add(proxy);
+	}
+
+	private void removeFrom(List<Proxy<E, T>> list, Proxy<E, T> proxy) {
+		int last = list.size() - 1;
+		Proxy<E, T> moved = list.remove(last);
+		if (moved != proxy) {
+			list.set(proxy.index, moved);
+			moved.index = proxy.index;
+		}
+		proxy.index = -1;
+	}
+
+	@Override
+	public AABB getAABB(E collidable, T fixture) {
+		Proxy<E, T> proxy = this.proxies.get(fixture);
+		if (proxy != null)
+			return proxy.aabb;
+		return fixture.getShape().createAABB(collidable.getTransform());
+	}
+
+	@Override
+	public boolean contains(E collidable) {
+		int size = collidable.getFixtureCount();
+		boolean result = true;
+		for (int i = 0; i < size; i++)
+			result &= this.proxies.containsKey(collidable.getFixture(i));
+		return result;
+	}
+
+	@Override
+	public boolean contains(E collidable, T fixture) {
+		return this.proxies.containsKey(fixture);
+	}
+
+	@Override
+	public void clear() {
+		this.proxies.clear();
+		this.regular.clear();
+		this.large.clear();
+		Arrays.fill(this.cells, null);
+		this.cellCount = 0;
+	}
+
+	@Override
+	public void shift(Vector2 shift) {
+		// all cell ranges change: rebuild the grid. the proxies are taken from
+		// the lists rather than the identity map, so the cells are refilled in
+		// a reproducible order
+		List<Proxy<E, T>> all = new ArrayList<>(this.proxies.size());
+		all.addAll(this.regular);
+		all.addAll(this.large);
+		this.regular.clear();
+		this.large.clear();
+		Arrays.fill(this.cells, null);
+		this.cellCount = 0;
+		for (Proxy<E, T> proxy : all) {
+			proxy.aabb.translate(shift);
+			this.setRange(proxy);
+			this.register(proxy);
+		}
+	}
+
+	@Override
+	public int size() {
+		return this.proxies.size();
+	}
+
+	// DETECTION
+
+	@Override
+	public List<BroadphasePair<E, T>> detect(BroadphaseFilter<E, T> filter) {
+		if (this.proxies.isEmpty())
+			return Collections.emptyList();
+		List<BroadphasePair<E, T>> pairs = new ArrayList<>(Collisions.getEstimatedCollisionPairs(this.proxies.size()));
+		// regular proxies: candidates share a cell. every pair is reported
+		// only in the first cell of the overlap of both cell ranges
+		for (int c = 0; c < this.cells.length; c++) {
+			Cell cell = this.cells[c];
+			if (cell == null || cell.count < 2)
+				continue;
+			int key = this.keys[c];
+			for (int i = 0; i < cell.count; i++) {
+				@SuppressWarnings("unchecked")
+				Proxy<E, T> a = (Proxy<E, T>) cell.items[i];
+				for (int j = i + 1; j < cell.count; j++) {
+					@SuppressWarnings("unchecked")
+					Proxy<E, T> b = (Proxy<E, T>) cell.items[j];
+					if (key(Math.max(a.minX, b.minX), Math.max(a.minY, b.minY)) != key)
+						continue;
+					this.test(a, b, filter, pairs);
+				}
+			}
+		}
+		// large proxies: tested against everything
+		for (int i = 0; i < this.large.size(); i++) {
+			Proxy<E, T> a = this.large.get(i);
+			for (int j = i + 1; j < this.large.size(); j++)
+				this.test(a, this.large.get(j), filter, pairs);
+			for (int j = 0; j < this.regular.size(); j++)
+				this.test(a, this.regular.get(j), filter, pairs);
+		}
+		return pairs;
+	}
+
+	private void test(Proxy<E, T> a, Proxy<E, T> b, BroadphaseFilter<E, T> filter, List<BroadphasePair<E, T>> pairs) {
+		if (a.collidable == b.collidable || !a.aabb.overlaps(b.aabb))
+			return;
+		if (filter.isAllowed(a.collidable, a.fixture, b.collidable, b.fixture))
+			pairs.add(new BroadphasePair<>(a.collidable, a.fixture, b.collidable, b.fixture));
+	}
+
+	@Override
+	public List<BroadphaseItem<E, T>> detect(AABB aabb, BroadphaseFilter<E, T> filter) {
+		if (this.proxies.isEmpty())
+			return Collections.emptyList();
+		List<BroadphaseItem<E, T>> list = new ArrayList<>(Collisions.getEstimatedCollisionsPerObject());
+		this.candidates(aabb, proxy -> {
+			if (proxy.aabb.overlaps(aabb) && filter.isAllowed(aabb, proxy.collidable, proxy.fixture))
+				list.add(new BroadphaseItem<>(proxy.collidable, proxy.fixture));
+		});
+		return list;
+	}
+
+	@Override
+	public List<BroadphaseItem<E, T>> raycast(Ray ray, double length, BroadphaseFilter<E, T> filter) {
+		if (this.proxies.isEmpty())
+			return Collections.emptyList();
+		Vector2 s = ray.getStart();
+		Vector2 d = ray.getDirectionVector();
+		double l = length <= 0.0 ? Double.MAX_VALUE : length;
+		double invDx = 1.0 / d.x;
+		double invDy = 1.0 / d.y;
+		List<BroadphaseItem<E, T>> list = new ArrayList<>(Collisions.getEstimatedRaycastCollisions(this.proxies.size()));
+		ProxyAction<E, T> action = proxy -> {
+			if (this.raycast(s, l, invDx, invDy, proxy.aabb) && filter.isAllowed(ray, length, proxy.collidable, proxy.fixture))
+				list.add(new BroadphaseItem<>(proxy.collidable, proxy.fixture));
+		};
+		double x2 = s.x + d.x * l;
+		double y2 = s.y + d.y * l;
+		if (length > 0 && Double.isFinite(x2) && Double.isFinite(y2)) {
+			AABB bounds = new AABB(Math.min(s.x, x2), Math.min(s.y, y2), Math.max(s.x, x2), Math.max(s.y, y2));
+			this.candidates(bounds, action);
+		} else {
+			this.all(action);
+		}
+		return list;
+	}
+
+	/**
+	 * Invokes the action once for every proxy that may overlap the given
+	 * bounds. Falls back to all proxies if the bounds cover too many cells.
+	 * Does not modify any state, so queries may run concurrently as long as
+	 * the broad-phase is not modified.
+	 */
+	private void candidates(AABB bounds, ProxyAction<E, T> action) {
+		long minX = this.cell(bounds.getMinX());
+		long minY = this.cell(bounds.getMinY());
+		long maxX = this.cell(bounds.getMaxX());
+		long maxY = this.cell(bounds.getMaxY());
+		if ((maxX - minX + 1) * (maxY - minY + 1) > this.regular.size() + this.cellCount) {
+			this.all(action);
+			return;
+		}
+		for (long x = minX; x <= maxX; x++)
+			for (long y = minY; y <= maxY; y++) {
+				Cell cell = this.getCell(key((int) x, (int) y));
+				if (cell == null)
+					continue;
+				for (int i = 0; i < cell.count; i++) {
+					@SuppressWarnings("unchecked")
+					Proxy<E, T> proxy = (Proxy<E, T>) cell.items[i];
+					// visit every proxy only in the first cell of the overlap
+					if (x == Math.max(proxy.minX, minX) && y == Math.max(proxy.minY, minY))
+						action.accept(proxy);
+				}
+			}
+		for (int i = 0; i < this.large.size(); i++)
+			action.accept(this.large.get(i));
+	}
+
+	private void all(ProxyAction<E, T> action) {
+		for (int i = 0; i < this.regular.size(); i++)
+			action.accept(this.regular.get(i));
+		for (int i = 0; i < this.large.size(); i++)
+			action.accept(this.large.get(i));
+	}
+
+	// CELL TABLE
+
+	private static int key(int x, int y) {
+		return (x << 16) | (y & 0xFFFF);
+	}
+
+	private static int hash(int key) {
+		int h = key * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	private Cell getCell(int key) {
+		for (int slot = hash(key) & this.mask;; slot = (slot + 1) & this.mask) {
+			Cell cell = this.cells[slot];
+			if (cell == null)
+				return null;
+			if (this.keys[slot] == key)
+				return cell;
+		}
+	}
+
+	private Cell getOrCreateCell(int key) {
+		int slot = hash(key) & this.mask;
+		for (;; slot = (slot + 1) & this.mask) {
+			Cell cell = this.cells[slot];
+			if (cell == null)
+				break;
+			if (this.keys[slot] == key)
+				return cell;
+		}
+		if ((this.cellCount + 1) * 2 > this.cells.length) {
+			this.rehash();
+			return this.getOrCreateCell(key);
+		}
+		Cell cell = new Cell();
+		this.keys[slot] = key;
+		this.cells[slot] = cell;
+		this.cellCount++;
+		return cell;
+	}
+
+	/**
+	 * Rebuilds the cell table, dropping all empty cells. Grows the table if
+	 * most cells are still in use.
+	 */
+	private void rehash() {
+		int[] oldKeys = this.keys;
+		Cell[] oldCells = this.cells;
+		int used = 0;
+		for (Cell cell : oldCells)
+			if (cell != null && cell.count > 0)
+				used++;
+		int size = oldCells.length;
+		if (used * 4 > size)
+			size <<= 1;
+		this.keys = new int[size];
+		this.cells = new Cell[size];
+		this.mask = size - 1;
+		this.cellCount = 0;
+		for (int i = 0; i < oldCells.length; i++) {
+			Cell cell = oldCells[i];
+			if (cell == null || cell.count == 0)
+				continue;
+			int slot = hash(oldKeys[i]) & this.mask;
+			while (this.cells[slot] != null)
+				slot = (slot + 1) & this.mask;
+			this.keys[slot] = oldKeys[i];
+			this.cells[slot] = cell;
+			this.cellCount++;
+		}
+	}
+
+	@FunctionalInterface
+	private interface ProxyAction<E extends Collidable<T>, T extends Fixture> {
+		void accept(Proxy<E, T> proxy);
+	}
+
+	/**
+	 * A single cell. Holds the proxies registered in it in no particular order.
+	 */
+	private static final class Cell {
+
+		Object[] items = new Object[4];
+		int count = 0;
+
+		void add(Object proxy) {
+			if (this.count == this.items.length)
+				this.items = Arrays.copyOf(this.items, this.count * 2);
+			this.items[this.count++] = proxy;
+		}
+
+		void remove(Object proxy) {
+			for (int i = 0; i < this.count; i++)
+				if (this.items[i] == proxy) {
+					this.items[i] = this.items[--this.count];
+					this.items[this.count] = null;
+					return;
+				}
+		}
+
+	}
+
+	/**
+	 * A fixture registered in the broad-phase.
+	 */
+	private static final class Proxy<E extends Collidable<T>, T extends Fixture> {
+
+		final E collidable;
+		final T fixture;
+		AABB aabb;
+		// covered cell range
+		int minX, minY, maxX, maxY;
+		// index in the regular or large list
+		int index = -1;
+
+		Proxy(E collidable, T fixture, AABB aabb) {
+			this.collidable = collidable;
+			this.fixture = fixture;
+			this.aabb = aabb;
+		}
+
+		boolean isLarge() {
+			return (long) this.maxX - this.minX >= MAX_SPAN || (long) this.maxY - this.minY >= MAX_SPAN;
+		}
+
+	}
+
+}
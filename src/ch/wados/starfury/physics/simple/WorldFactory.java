@@ -0,0 +1,57 @@
+package ch.wados.starfury.physics.simple;
+
+import org.dyn4j.collision.broadphase.BroadphaseDetector;
+import org.dyn4j.collision.broadphase.DynamicAABBTree;
+import org.dyn4j.collision.broadphase.Sap;
+import org.dyn4j.dynamics.Body;
+import org.dyn4j.dynamics.BodyFixture;
+import org.dyn4j.dynamics.Capacity;
+import org.dyn4j.dynamics.ParallelWorld;
+import org.dyn4j.dynamics.World;
+import org.dyn4j.dynamics.contact.OrderedContactManager;
+
+import ch.wados.starfury.physics.api.PhysicsWorldConfig;
+
+/**
+ * Creates dyn4j {@link World Worlds} from a {@link PhysicsWorldConfig}.
+ */
+final class WorldFactory {
+
+	private WorldFactory() {
+	}
+
+	/**
+	 * Creates a new world. No listeners are registered.
+	 * 
+	 * @param config
+	 *            the configuration
+	 * @return the world
+	 */
+	static World create(PhysicsWorldConfig config) {
+		int capacity = config.getCapacity();
+		Capacity initialCapacity = new Capacity(capacity, Capacity.DEFAULT_JOINT_COUNT, Capacity.DEFAULT_LISTENER_COUNT);
+		World world = config.getSolverPool() == null ? new World(initialCapacity)
+				: new ParallelWorld(initialCapacity, config.getSolverPool());
+		// the stock contact manager notifies in the order of random body ids
+		if (config.isDeterministic())
+			world.setContactManager(new OrderedContactManager(initialCapacity));
+		world.setBroadphaseDetector(createBroadphase(config, capacity));
+		world.setSettings(config.getSettings());
+		world.setGravity(config.getGravity());
+		return world;
+	}
+
+	private static BroadphaseDetector<Body, BodyFixture> createBroadphase(PhysicsWorldConfig config, int capacity) {
+		// every body has at least one fixture, so the capacity is a lower bound
+		switch (config.getBroadphase()) {
+		case SAP:
+			return new Sap<>(capacity);
+		case UNIFORM_GRID:
+			return new UniformGridBroadphase<>(config.getGridCellSize(), capacity);
+		case DYNAMIC_AABB_TREE:
+		default:
+			return new DynamicAABBTree<>(capacity);
+		}
+	}
+
+}
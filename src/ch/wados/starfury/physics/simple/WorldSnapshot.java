@@ -0,0 +1,588 @@
+package ch.wados.starfury.physics.simple;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.dyn4j.collision.CategoryFilter;
+import org.dyn4j.collision.Filter;
+import org.dyn4j.dynamics.Body;
+import org.dyn4j.geometry.Circle;
+import org.dyn4j.geometry.Convex;
+import org.dyn4j.geometry.Mass;
+import org.dyn4j.geometry.Polygon;
+import org.dyn4j.geometry.Rectangle;
+import org.dyn4j.geometry.Segment;
+import org.dyn4j.geometry.Triangle;
+import org.dyn4j.geometry.Vector2;
+
+import ch.wados.starfury.physics.api.EntityType;
+import ch.wados.starfury.physics.api.FixtureDefinition;
+import ch.wados.starfury.physics.api.PhysicsEntityDefinition;
+
+/**
+ * Binary snapshot codec for the entities of a manager.
+ * <p>
+ * A snapshot consists of a header, the definitions and the entities. The
+ * definition of an entity holds its structure (fixtures, thrusters, mass and
+ * damping). Entities with an identical structure share a single definition,
+ * so a sector of identical ships stores the ship structure only once. The
+ * entity records only hold the dynamic state: the exact transform, the
+ * velocities, the sleep state, the level of detail state, the thrust levels
+ * and the timed torques still acting on the body. All values are written
+ * little-endian.
+ * </p>
+ *
+ * <pre>
+ * header:     int magic, int version, int definitions, int entities
+ * definition: byte type, double linear damping, double angular damping,
+ *             double mass centre x, y, double mass, double inertia,
+ *             int fixtures, int next fixture handle, fixture[],
+ *             int thrusters, int next thruster handle, thruster[]
+ * fixture:    int handle, string id, double density, double friction,
+ *             double restitution, byte sensor, int category, int mask, shape
+ * thruster:   int handle, string id, double position x, y,
+ *             double direction x, y, double torque factor
+ * shape:      byte kind, kind specific data
+ * string:     int length (-1 for null), UTF-8 bytes
+ * entity:     int definition, double cos, sin, x, y, double velocity x, y,
+ *             double angular velocity, byte asleep, int lod interval,
+ *             int lod ticks, double lod time, double thrust[],
+ *             int timed torques, (double torque, double remaining)[]
+ * </pre>
+ * <p>
+ * Listeners, filters and user data are not part of a snapshot.
+ * </p>
+ */
+final class WorldSnapshot {
+
+	static final int MAGIC = 0x4E534653; // "SFSN" little-endian
+	static final int VERSION = 2;
+
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	// the smallest possible records, used to check counts against the data
+	private static final int MIN_DEFINITION = 65;
+	private static final int MIN_FIXTURE = 66;
+	private static final int MIN_THRUSTER = 48;
+	private static final int MIN_ENTITY = 81;
+
+	private static final byte CIRCLE = 0;
+	private static final byte POLYGON = 1;
+	private static final byte RECTANGLE = 2;
+	private static final byte TRIANGLE = 3;
+	private static final byte SEGMENT = 4;
+
+	private static final EntityType[] TYPES = EntityType.values();
+
+	private WorldSnapshot() {
+	}
+
+	// SAVING
+
+	/**
+	 * Writes all entities of a registry in slot order.
+	 *
+	 * @throws IllegalArgumentException
+	 *             if any entity has a shape that is not supported.
+	 */
+	static void save(EntityRegistry registry, WritableByteChannel channel) throws IOException {
+		int count = registry.size();
+		// collect the distinct definitions
+		int[] definitions = new int[count];
+		Map<ByteBuffer, Integer> index = new HashMap<>();
+		ByteBuffer scratch = order(ByteBuffer.allocate(256));
+		ByteBuffer defined = order(ByteBuffer.allocate(4096));
+		for (int i = 0; i < count; i++) {
+			scratch = writeDefinition(registry.get(i), scratch);
+			scratch.flip();
+			Integer definition = index.get(scratch);
+			if (definition == null) {
+				definition = index.size();
+				defined = ensure(defined, scratch.remaining());
+				ByteBuffer key = order(ByteBuffer.allocate(scratch.remaining()));
+				key.put(scratch.duplicate()).flip();
+				defined.put(scratch);
+				index.put(key, definition);
+			}
+			definitions[i] = definition;
+			scratch.clear();
+		}
+		Writer out = new Writer(channel);
+		out.ensure(16);
+		out.buffer.putInt(MAGIC).putInt(VERSION).putInt(index.size()).putInt(count);
+		defined.flip();
+		out.write(defined);
+		TransformAccess transform = new TransformAccess();
+		for (int i = 0; i < count; i++) {
+			SimpleEntity entity = registry.get(i);
+			Body body = entity.body;
+			ThrusterSystem thrusters = entity.getThrusters();
+			List<SimpleEntity.TimedTorque> torques = entity.getTimedTorques();
+			int thrusterCount = thrusters.getThrusterCount();
+			ByteBuffer buffer = out.ensure(77 + 8 * thrusterCount + 4 + 16 * torques.size());
+			transform.load(body.getTransform());
+			Vector2 velocity = body.getLinearVelocity();
+			buffer.putInt(definitions[i]);
+			buffer.putDouble(transform.getCos()).putDouble(transform.getSin());
+			buffer.putDouble(transform.getTranslationX()).putDouble(transform.getTranslationY());
+			buffer.putDouble(velocity.x).putDouble(velocity.y).putDouble(body.getAngularVelocity());
+			buffer.put((byte) (body.isAsleep() ? 1 : 0));
+			// reduced entities are saved at their last position together
+			// with the time they have to catch up on
+			buffer.putInt(entity.lodInterval).putInt(entity.lodTicks).putDouble(entity.lodTime);
+			for (int t = 0; t < thrusterCount; t++)
+				buffer.putDouble(thrusters.getThruster(t).getThrust());
+			buffer.putInt(torques.size());
+			for (int t = 0; t < torques.size(); t++)
+				buffer.putDouble(torques.get(t).getTorque()).putDouble(torques.get(t).getRemaining());
+		}
+		out.flush();
+	}
+
+	private static ByteBuffer writeDefinition(SimpleEntity entity, ByteBuffer buffer) {
+		Body body = entity.body;
+		Mass mass = body.getMass();
+		buffer = ensure(buffer, 57);
+		buffer.put((byte) entity.getEntityType().ordinal());
+		buffer.putDouble(body.getLinearDamping()).putDouble(body.getAngularDamping());
+		buffer.putDouble(mass.getCenter().x).putDouble(mass.getCenter().y);
+		buffer.putDouble(mass.getMass()).putDouble(mass.getInertia());
+		int fixtures = body.getFixtureCount();
+		buffer.putInt(fixtures).putInt(entity.getNextFixtureHandle());
+		for (int i = 0; i < fixtures; i++) {
+			SimpleFixture fixture = entity.getFixtureAt(i);
+			buffer = ensure(buffer, 4);
+			buffer.putInt(fixture.handle);
+			buffer = writeString(buffer, fixture.id);
+			buffer = ensure(buffer, 33);
+			buffer.putDouble(fixture.getDensity()).putDouble(fixture.getFriction());
+			buffer.putDouble(fixture.getRestitution());
+			buffer.put((byte) (fixture.isSensor() ? 1 : 0));
+			Filter filter = fixture.getFilter();
+			if (filter instanceof CategoryFilter) {
+				CategoryFilter category = (CategoryFilter) filter;
+				buffer.putInt((int) category.getCategory()).putInt((int) category.getMask());
+			} else {
+				buffer.putInt(FixtureDefinition.DEFAULT_CATEGORY).putInt(FixtureDefinition.DEFAULT_MASK);
+			}
+			buffer = writeShape(buffer, fixture.getShape());
+		}
+		ThrusterSystem thrusters = entity.getThrusters();
+		int count = thrusters.getThrusterCount();
+		buffer = ensure(buffer, 8);
+		buffer.putInt(count).putInt(thrusters.getNextHandle());
+		for (int i = 0; i < count; i++) {
+			Thruster thruster = thrusters.getThruster(i);
+			buffer = ensure(buffer, 4);
+			buffer.putInt(thruster.handle);
+			buffer = writeString(buffer, thruster.identifier);
+			buffer = ensure(buffer, 40);
+			buffer.putDouble(thruster.getPosition().x).putDouble(thruster.getPosition().y);
+			buffer.putDouble(thruster.getDirection().x).putDouble(thruster.getDirection().y);
+			buffer.putDouble(thruster.getTorqueFactor());
+		}
+		return buffer;
+	}
+
+	private static ByteBuffer writeShape(ByteBuffer buffer, Convex shape) {
+		if (shape instanceof Circle) {
+			buffer = ensure(buffer, 25);
+			buffer.put(CIRCLE);
+			buffer.putDouble(shape.getCenter().x).putDouble(shape.getCenter().y);
+			buffer.putDouble(((Circle) shape).getRadius());
+		} else if (shape instanceof Polygon) {
+			// vertices, normals and centre are copied exactly on restore
+			Polygon polygon = (Polygon) shape;
+			Vector2[] vertices = polygon.getVertices();
+			buffer = ensure(buffer, 37 + 32 * vertices.length);
+			if (shape instanceof Rectangle) {
+				buffer.put(RECTANGLE);
+				buffer.putDouble(((Rectangle) shape).getWidth()).putDouble(((Rectangle) shape).getHeight());
+			} else if (shape instanceof Triangle) {
+				buffer.put(TRIANGLE);
+			} else {
+				buffer.put(POLYGON);
+				buffer.putInt(vertices.length);
+			}
+			buffer.putDouble(shape.getCenter().x).putDouble(shape.getCenter().y);
+			for (Vector2 v : vertices)
+				buffer.putDouble(v.x).putDouble(v.y);
+			for (Vector2 n : polygon.getNormals())
+				buffer.putDouble(n.x).putDouble(n.y);
+		} else if (shape instanceof Segment) {
+			Vector2[] vertices = ((Segment) shape).getVertices();
+			buffer = ensure(buffer, 33);
+			buffer.put(SEGMENT);
+			buffer.putDouble(vertices[0].x).putDouble(vertices[0].y);
+			buffer.putDouble(vertices[1].x).putDouble(vertices[1].y);
+		} else {
+			throw new IllegalArgumentException("shape not supported by snapshots: " + shape.getClass().getName());
+		}
+		return buffer;
+	}
+
+	private static ByteBuffer writeString(ByteBuffer buffer, String string) {
+		if (string == null) {
+			buffer = ensure(buffer, 4);
+			buffer.putInt(-1);
+			return buffer;
+		}
+		byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+		buffer = ensure(buffer, 4 + bytes.length);
+		buffer.putInt(bytes.length).put(bytes);
+		return buffer;
+	}
+
+	/**
+	 * Grows a heap buffer to hold the given number of additional bytes.
+	 */
+	private static ByteBuffer ensure(ByteBuffer buffer, int bytes) {
+		if (buffer.remaining() >= bytes)
+			return buffer;
+		int capacity = Math.max(buffer.capacity() * 2, buffer.position() + bytes);
+		ByteBuffer grown = order(ByteBuffer.allocate(capacity));
+		buffer.flip();
+		grown.put(buffer);
+		return grown;
+	}
+
+	private static ByteBuffer order(ByteBuffer buffer) {
+		return buffer.order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	// RESTORING
+
+	/**
+	 * Reads a snapshot. The entities are created but not spawned.
+	 *
+	 * @return the entities in the order they were saved.
+	 * @throws IOException
+	 *             if reading fails or the data is not a valid snapshot.
+	 */
+	static List<SimpleEntity> restore(ReadableByteChannel channel) throws IOException {
+		Reader in = new Reader(channel);
+		ByteBuffer buffer = in.ensure(16);
+		if (buffer.getInt() != MAGIC)
+			throw new IOException("not a snapshot");
+		int version = buffer.getInt();
+		if (version != VERSION)
+			throw new IOException("unsupported snapshot version " + version);
+		int definitionCount = buffer.getInt();
+		int count = buffer.getInt();
+		if (definitionCount < 0 || count < 0
+				|| (long) definitionCount * MIN_DEFINITION + (long) count * MIN_ENTITY > in.remaining())
+			throw new IOException("invalid snapshot header");
+		// the counts may exceed the data if the channel length is unknown, so
+		// the lists grow with the records actually read
+		List<Prefab> definitions = new ArrayList<>(Math.min(definitionCount, BUFFER_SIZE / MIN_DEFINITION));
+		try {
+			for (int i = 0; i < definitionCount; i++)
+				definitions.add(readDefinition(in));
+		} catch (IllegalArgumentException e) {
+			throw new IOException("invalid snapshot definition", e);
+		}
+		PhysicsEntityDefinition origin = new PhysicsEntityDefinition(EntityType.DEFAULT);
+		TransformAccess transform = new TransformAccess();
+		double[] thrusts = new double[0];
+		List<SimpleEntity> entities = new ArrayList<>(Math.min(count, BUFFER_SIZE / MIN_ENTITY));
+		for (int i = 0; i < count; i++) {
+			buffer = in.ensure(77);
+			int definition = buffer.getInt();
+			if (definition < 0 || definition >= definitionCount)
+				throw new IOException("invalid definition index " + definition);
+			Prefab prefab = definitions.get(definition);
+			SimpleEntity entity = new SimpleEntity(origin, prefab);
+			Body body = entity.body;
+			double cos = buffer.getDouble();
+			double sin = buffer.getDouble();
+			transform.store(body.getTransform(), cos, sin, buffer.getDouble(), buffer.getDouble());
+			double vx = buffer.getDouble();
+			double vy = buffer.getDouble();
+			double omega = buffer.getDouble();
+			boolean asleep = buffer.get() != 0;
+			int lodInterval = buffer.getInt();
+			int lodTicks = buffer.getInt();
+			double lodTime = buffer.getDouble();
+			if (lodInterval < 1 || lodTicks < 0 || !(lodTime >= 0) || lodTime == Double.POSITIVE_INFINITY
+					|| (lodTicks == 0) != (lodTime == 0))
+				throw new IOException("invalid level of detail state");
+			entity.lodInterval = lodInterval;
+			entity.lodTicks = lodTicks;
+			entity.lodTime = lodTime;
+			body.setActive(lodInterval == 1);
+			int thrusterCount = prefab.thrusterIds.length;
+			if (thrusts.length < thrusterCount)
+				thrusts = new double[thrusterCount];
+			buffer = in.ensure(8 * thrusterCount + 4);
+			for (int t = 0; t < thrusterCount; t++)
+				thrusts[t] = buffer.getDouble();
+			entity.getThrusters().restoreThrusts(thrusts, 0);
+			int torques = buffer.getInt();
+			if (torques < 0)
+				throw new IOException("invalid timed torque count " + torques);
+			if (asleep) {
+				body.setAsleep(true);
+			} else {
+				body.setLinearVelocity(vx, vy);
+				body.setAngularVelocity(omega);
+			}
+			for (int t = 0; t < torques; t++) {
+				buffer = in.ensure(16);
+				double torque = buffer.getDouble();
+				double remaining = buffer.getDouble();
+				if (!asleep)
+					entity.restoreTimedTorque(torque, remaining);
+			}
+			entities.add(entity);
+		}
+		return entities;
+	}
+
+	private static Prefab readDefinition(Reader in) throws IOException {
+		ByteBuffer buffer = in.ensure(57);
+		int type = buffer.get();
+		if (type < 0 || type >= TYPES.length)
+			throw new IOException("invalid entity type " + type);
+		double linearDamping = buffer.getDouble();
+		double angularDamping = buffer.getDouble();
+		Vector2 center = new Vector2(buffer.getDouble(), buffer.getDouble());
+		Mass mass = new Mass(center, buffer.getDouble(), buffer.getDouble());
+		int fixtureCount = count(in, buffer.getInt(), MIN_FIXTURE);
+		int nextFixtureHandle = in.ensure(4).getInt();
+		FixtureDefinition[] fixtures = new FixtureDefinition[fixtureCount];
+		int[] fixtureHandles = new int[fixtureCount];
+		for (int i = 0; i < fixtureCount; i++) {
+			fixtureHandles[i] = handle(in.ensure(4).getInt(), nextFixtureHandle);
+			String id = readString(in);
+			buffer = in.ensure(33);
+			double density = buffer.getDouble();
+			double friction = buffer.getDouble();
+			double restitution = buffer.getDouble();
+			boolean sensor = buffer.get() != 0;
+			int category = buffer.getInt();
+			int mask = buffer.getInt();
+			fixtures[i] = new FixtureDefinition(readShape(in)).setIdentifier(id).setDensityCoefficient(density)
+					.setFrictionCoefficient(friction).setRestitutionCoefficient(restitution).setSensor(sensor)
+					.setCategoryBits(category).setMaskBits(mask);
+		}
+		buffer = in.ensure(8);
+		int thrusterCount = count(in, buffer.getInt(), MIN_THRUSTER);
+		int nextThrusterHandle = in.ensure(4).getInt();
+		String[] ids = new String[thrusterCount];
+		Vector2[] positions = new Vector2[thrusterCount];
+		Vector2[] directions = new Vector2[thrusterCount];
+		double[] torqueFactors = new double[thrusterCount];
+		int[] thrusterHandles = new int[thrusterCount];
+		for (int i = 0; i < thrusterCount; i++) {
+			thrusterHandles[i] = handle(in.ensure(4).getInt(), nextThrusterHandle);
+			ids[i] = readString(in);
+			buffer = in.ensure(40);
+			positions[i] = new Vector2(buffer.getDouble(), buffer.getDouble());
+			directions[i] = new Vector2(buffer.getDouble(), buffer.getDouble());
+			torqueFactors[i] = buffer.getDouble();
+		}
+		return new Prefab(TYPES[type], fixtures, fixtureHandles, nextFixtureHandle, mass, ids, positions, directions,
+				torqueFactors, thrusterHandles, nextThrusterHandle, linearDamping, angularDamping);
+	}
+
+	private static Convex readShape(Reader in) throws IOException {
+		ByteBuffer buffer = in.ensure(1);
+		byte kind = buffer.get();
+		switch (kind) {
+		case CIRCLE: {
+			buffer = in.ensure(24);
+			double x = buffer.getDouble();
+			double y = buffer.getDouble();
+			Circle circle = new Circle(buffer.getDouble());
+			circle.translate(x, y);
+			return circle;
+		}
+		case RECTANGLE: {
+			buffer = in.ensure(16);
+			Rectangle rectangle = new Rectangle(buffer.getDouble(), buffer.getDouble());
+			return readPolygon(in, rectangle);
+		}
+		case TRIANGLE: {
+			Vector2[] vertices = peekVertices(in, 3);
+			return readPolygon(in, new Triangle(vertices[0], vertices[1], vertices[2]));
+		}
+		case POLYGON: {
+			int count = in.ensure(4).getInt();
+			if (count < 3 || count > (Integer.MAX_VALUE - 16) / 32)
+				throw new IOException("invalid vertex count " + count);
+			return readPolygon(in, new Polygon(peekVertices(in, count)));
+		}
+		case SEGMENT: {
+			buffer = in.ensure(32);
+			return new Segment(new Vector2(buffer.getDouble(), buffer.getDouble()),
+					new Vector2(buffer.getDouble(), buffer.getDouble()));
+		}
+		default:
+			throw new IOException("invalid shape kind " + kind);
+		}
+	}
+
+	/**
+	 * Reads the vertices of a polygon without consuming them.
+	 */
+	private static Vector2[] peekVertices(Reader in, int count) throws IOException {
+		ByteBuffer buffer = in.ensure(16 + 16 * count);
+		int position = buffer.position() + 16;
+		Vector2[] vertices = new Vector2[count];
+		for (int i = 0; i < count; i++)
+			vertices[i] = new Vector2(buffer.getDouble(position + 16 * i), buffer.getDouble(position + 16 * i + 8));
+		return vertices;
+	}
+
+	/**
+	 * Overwrites the centre, the vertices and the normals of a polygon with
+	 * the exact values stored in the snapshot.
+	 */
+	private static Polygon readPolygon(Reader in, Polygon polygon) throws IOException {
+		Vector2[] vertices = polygon.getVertices();
+		Vector2[] normals = polygon.getNormals();
+		ByteBuffer buffer = in.ensure(16 + 32 * vertices.length);
+		polygon.getCenter().set(buffer.getDouble(), buffer.getDouble());
+		for (Vector2 v : vertices)
+			v.set(buffer.getDouble(), buffer.getDouble());
+		for (Vector2 n : normals)
+			n.set(buffer.getDouble(), buffer.getDouble());
+		return polygon;
+	}
+
+	private static String readString(Reader in) throws IOException {
+		int length = in.ensure(4).getInt();
+		if (length == -1)
+			return null;
+		if (length < 0)
+			throw new IOException("invalid string length " + length);
+		ByteBuffer buffer = in.ensure(length);
+		byte[] bytes = new byte[length];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Checks a count of records with the given minimum size. The records
+	 * are buffered, so arrays are only allocated for data that exists.
+	 */
+	private static int count(Reader in, int count, int size) throws IOException {
+		if (count < 0 || count > Integer.MAX_VALUE / size)
+			throw new IOException("invalid count " + count);
+		in.ensure(count * size);
+		return count;
+	}
+
+	private static int handle(int handle, int next) throws IOException {
+		if (handle < 0 || handle >= next)
+			throw new IOException("invalid handle " + handle);
+		return handle;
+	}
+
+	/**
+	 * Buffered little-endian channel output.
+	 */
+	private static final class Writer {
+
+		private final WritableByteChannel channel;
+		private ByteBuffer buffer = order(ByteBuffer.allocateDirect(BUFFER_SIZE));
+
+		Writer(WritableByteChannel channel) {
+			this.channel = channel;
+		}
+
+		/**
+		 * Provides the buffer with space for at least the given number of
+		 * bytes, flushing it if required.
+		 */
+		ByteBuffer ensure(int bytes) throws IOException {
+			if (this.buffer.remaining() < bytes) {
+				this.flush();
+				if (this.buffer.capacity() < bytes)
+					this.buffer = order(ByteBuffer.allocateDirect(bytes));
+			}
+			return this.buffer;
+		}
+
+		void write(ByteBuffer data) throws IOException {
+			this.flush();
+			while (data.hasRemaining())
+				this.channel.write(data);
+		}
+
+		void flush() throws IOException {
+			this.buffer.flip();
+			while (this.buffer.hasRemaining())
+				this.channel.write(this.buffer);
+			this.buffer.clear();
+		}
+
+	}
+
+	/**
+	 * Buffered little-endian channel input.
+	 */
+	private static final class Reader {
+
+		private final ReadableByteChannel channel;
+		private ByteBuffer buffer = order(ByteBuffer.allocateDirect(BUFFER_SIZE));
+
+		Reader(ReadableByteChannel channel) {
+			this.channel = channel;
+			this.buffer.flip();
+		}
+
+		/**
+		 * The number of bytes left, or {@link Long#MAX_VALUE} if the length
+		 * of the channel is unknown.
+		 */
+		long remaining() throws IOException {
+			if (!(this.channel instanceof SeekableByteChannel))
+				return Long.MAX_VALUE;
+			SeekableByteChannel seekable = (SeekableByteChannel) this.channel;
+			return this.buffer.remaining() + Math.max(0, seekable.size() - seekable.position());
+		}
+
+		/**
+		 * Provides the buffer with at least the given number of bytes
+		 * remaining, reading from the channel if required. The buffer grows
+		 * at most to twice the data read, so a forged length fails at the end
+		 * of the channel instead of allocating.
+		 *
+		 * @throws EOFException
+		 *             if the channel ends before.
+		 */
+		ByteBuffer ensure(int bytes) throws IOException {
+			if (this.buffer.remaining() >= bytes)
+				return this.buffer;
+			if (bytes > this.remaining())
+				throw new EOFException("snapshot truncated");
+			this.buffer.compact();
+			while (this.buffer.position() < bytes) {
+				if (!this.buffer.hasRemaining()) {
+					int capacity = (int) Math.min(bytes, 2L * this.buffer.capacity());
+					ByteBuffer grown = order(ByteBuffer.allocateDirect(capacity));
+					this.buffer.flip();
+					grown.put(this.buffer);
+					this.buffer = grown;
+				}
+				if (this.channel.read(this.buffer) < 0)
+					throw new EOFException("snapshot truncated");
+			}
+			this.buffer.flip();
+			return this.buffer;
+		}
+
+	}
+
+}
@@ -0,0 +1,52 @@
+package ch.wados.starfury.server;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+import org.dyn4j.geometry.Vector2;
+
+import ch.wados.starfury.physics.simple.SimplePhysicsManager;
+
+/**
+ * Entry point of the headless server. Runs one {@link TickLoop} per sector on
+ * its own thread and periodically logs the tick statistics of every sector.
+ * No window, GLFW or GL context is created.
+ * <p>
+ * Usage: {@code ServerLauncher [sectors] [tick rate]}, defaulting to a single
+ * sector at 60 ticks per second.
+ * </p>
+ */
+public class ServerLauncher {
+
+	private static final int MAX_CATCH_UP_STEPS = 5;
+	private static final long REPORT_INTERVAL_MILLIS = 10_000;
+
+	private final List<TickLoop> sectors = new ArrayList<>();
+
+	public static void main(String[] args) throws InterruptedException {
+		int sectors = args.length > 0 ? Integer.parseInt(args[0]) : 1;
+		int rate = args.length > 1 ? Integer.parseInt(args[1]) : 60;
+		new ServerLauncher(sectors, rate).report();
+	}
+
+	public ServerLauncher(int sectors, int rate) {
+		for (int i = 0; i < sectors; i++) {
+			SimplePhysicsManager manager = new SimplePhysicsManager();
+			manager.initialiseWorld(new Vector2(0, 0));
+			TickLoop loop = new TickLoop(manager, 1.0 / rate, MAX_CATCH_UP_STEPS);
+			this.sectors.add(loop);
+			new Thread(loop, "sector-" + i).start();
+		}
+	}
+
+	private void report() throws InterruptedException {
+		Logger logger = Logger.getLogger(this.getClass().getName());
+		while (true) {
+			Thread.sleep(REPORT_INTERVAL_MILLIS);
+			for (int i = 0; i < this.sectors.size(); i++)
+				logger.info("sector-" + i + ": " + this.sectors.get(i).getStats());
+		}
+	}
+
+}
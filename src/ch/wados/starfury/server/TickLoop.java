@@ -0,0 +1,266 @@
+package ch.wados.starfury.server;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.locks.LockSupport;
+
+import ch.wados.starfury.model.NanoTimer;
+import ch.wados.starfury.model.Timer;
+import ch.wados.starfury.physics.api.FixedStepDriver;
+import ch.wados.starfury.physics.api.PhysicsManager;
+import ch.wados.starfury.physics.api.UpdateListener;
+
+/**
+ * Headless tick loop driving a {@link PhysicsManager} without any window or
+ * GL context.
+ * <p>
+ * Every tick advances the simulation and then notifies the tick listeners
+ * (e.g. game logic or networking) once. A throttled loop runs at the rate of
+ * the step time: it steps through a {@link FixedStepDriver} by the elapsed
+ * time of the {@link Timer} and parks the thread until the next step is due.
+ * An unthrottled loop performs exactly one step per tick as fast as possible,
+ * e.g. for replays, tests or offline simulation.
+ * </p>
+ * <p>
+ * The duration of every tick is recorded in the {@link TickStats}. A server
+ * hosting many sectors runs one loop per sector, either on its own thread
+ * through {@link #run()} or by calling {@link #tick()} from a shared
+ * scheduler, and monitors the load of every sector through its statistics.
+ * </p>
+ *
+ * <pre>
+ * TickLoop loop = new TickLoop(manager, 1 / 60.0, 5);
+ * new Thread(loop, "sector-1").start();
+ * // later, from any thread
+ * loop.getStats().getLoad();
+ * loop.stop();
+ * </pre>
+ */
+public final class TickLoop implements Runnable {
+
+	private final PhysicsManager manager;
+	private final Timer timer;
+	private final FixedStepDriver driver;
+	private final TickStats stats;
+	private final List<UpdateListener> tickListeners = new ArrayList<>();
+	private volatile boolean throttled = true;
+	private volatile boolean running = false;
+	// set by stop(), also before run() has started, and cleared when run()
+	// returns
+	private volatile boolean stopped = false;
+	private volatile Thread thread;
+
+	/**
+	 * Creates a new throttled loop timed by a {@link NanoTimer}.
+	 *
+	 * @param manager
+	 *            the manager to step. May not be {@code null}. Must be
+	 *            initialised before the first tick.
+	 * @param stepTime
+	 *            the fixed step duration in seconds. Must be strictly positive
+	 *            and finite.
+	 * @param maxSteps
+	 *            the maximum number of steps performed per tick to catch up.
+	 *            Must be strictly positive.
+	 * @throws NullPointerException
+	 *             if the {@code manager} is {@code null}.
+	 * @throws IllegalArgumentException
+	 *             if the {@code stepTime} or the {@code maxSteps} is invalid.
+	 */
+	public TickLoop(PhysicsManager manager, double stepTime, int maxSteps) {
+		this(manager, new NanoTimer(), stepTime, maxSteps);
+	}
+
+	/**
+	 * Creates a new throttled loop.
+	 *
+	 * @param manager
+	 *            the manager to step. May not be {@code null}. Must be
+	 *            initialised before the first tick.
+	 * @param timer
+	 *            the timer to measure the elapsed time with. May not be
+	 *            {@code null}. It is initialised by the loop.
+	 * @param stepTime
+	 *            the fixed step duration in seconds. Must be strictly positive
+	 *            and finite.
+	 * @param maxSteps
+	 *            the maximum number of steps performed per tick to catch up.
+	 *            Must be strictly positive.
+	 * @throws NullPointerException
+	 *             if the {@code manager} or the {@code timer} is {@code null}.
+	 * @throws IllegalArgumentException
+	 *             if the {@code stepTime} or the {@code maxSteps} is invalid.
+	 */
+	public TickLoop(PhysicsManager manager, Timer timer, double stepTime, int maxSteps) {
+		this.driver = new FixedStepDriver(manager, stepTime, maxSteps);
+		this.manager = manager;
+		this.timer = Objects.requireNonNull(timer);
+		this.stats = new TickStats(stepTime, TickStats.DEFAULT_WINDOW);
+		this.timer.init();
+	}
+
+	/**
+	 * Adds a listener invoked once after the steps of every tick. Must not be
+	 * called while the loop is running.
+	 *
+	 * @param listener
+	 *            the listener. May not be {@code null}.
+	 * @throws NullPointerException
+	 *             if the {@code listener} is {@code null}.
+	 */
+	public void addTickListener(UpdateListener listener) {
+		Objects.requireNonNull(listener);
+		if (!this.tickListeners.contains(listener))
+			this.tickListeners.add(listener);
+	}
+
+	/**
+	 * Removes a tick listener. Must not be called while the loop is running.
+	 *
+	 * @param listener
+	 *            the listener. May not be {@code null}.
+	 * @throws NullPointerException
+	 *             if the {@code listener} is {@code null}.
+	 */
+	public void removeTickListener(UpdateListener listener) {
+		Objects.requireNonNull(listener);
+		this.tickListeners.remove(listener);
+	}
+
+	/**
+	 * Selects whether the loop runs at the rate of the step time or as fast
+	 * as possible.
+	 *
+	 * @param throttled
+	 *            {@code true} to run in real time, {@code false} to perform one
+	 *            step per tick without waiting.
+	 */
+	public void setThrottled(boolean throttled) {
+		this.throttled = throttled;
+	}
+
+	public boolean isThrottled() {
+		return this.throttled;
+	}
+
+	/**
+	 * Performs a single tick. A throttled tick performs as many steps as the
+	 * time elapsed since the previous tick allows (possibly none), an
+	 * unthrottled tick exactly one. The tick listeners are only notified and
+	 * the tick is only recorded in the statistics if at least one step was
+	 * performed.
+	 *
+	 * @return the number of steps performed.
+	 * @throws IllegalStateException
+	 *             if the manager is not initialised.
+	 */
+	public int tick() {
+		double start = this.timer.getTime();
+		double delta = this.timer.getDelta();
+		int steps = this.driver.advance(this.throttled ? delta : this.driver.getStepTime());
+		if (steps == 0)
+			return 0;
+		for (int i = 0; i < steps; i++)
+			this.timer.updateUPS();
+		for (int i = 0; i < this.tickListeners.size(); i++)
+			this.tickListeners.get(i).update();
+		this.timer.update();
+		this.stats.record(this.timer.getTime() - start, steps);
+		return steps;
+	}
+
+	/**
+	 * Runs ticks until the loop is {@link #stop() stopped}. Time accumulated
+	 * before the call is discarded. A throttled loop parks the thread between
+	 * ticks. If the loop has been stopped before the call, it returns without
+	 * ticking.
+	 *
+	 * @throws IllegalStateException
+	 *             if the loop is already running.
+	 */
+	@Override
+	public void run() {
+		synchronized (this) {
+			if (this.running)
+				throw new IllegalStateException("loop already running");
+			this.running = true;
+			this.thread = Thread.currentThread();
+		}
+		try {
+			this.timer.init();
+			this.driver.reset();
+			while (!this.stopped) {
+				this.tick();
+				if (this.throttled)
+					this.park();
+			}
+		} finally {
+			synchronized (this) {
+				this.running = false;
+				this.stopped = false;
+				this.thread = null;
+			}
+		}
+	}
+
+	/**
+	 * parks the thread until the next step is due.
+	 */
+	private void park() {
+		double stepTime = this.driver.getStepTime();
+		double pending = this.driver.getAlpha() * stepTime + this.timer.getTime() - this.timer.getLastLoopTime();
+		double wait = stepTime - pending;
+		if (wait > 0 && !this.stopped)
+			LockSupport.parkNanos(this, (long) (wait * 1e9));
+	}
+
+	/**
+	 * Requests the loop to stop. The current tick is completed first. May be
+	 * called from any thread, including from a tick listener. If the loop is
+	 * not running yet, the next {@link #run()} returns immediately, so a stop
+	 * right after starting the thread of the loop is not lost.
+	 */
+	public synchronized void stop() {
+		this.stopped = true;
+		if (this.thread != null)
+			LockSupport.unpark(this.thread);
+	}
+
+	/**
+	 * @return {@code true} if {@link #run()} is executing.
+	 */
+	public boolean isRunning() {
+		return this.running;
+	}
+
+	/**
+	 * @return the stepped manager.
+	 */
+	public PhysicsManager getManager() {
+		return this.manager;
+	}
+
+	/**
+	 * @return the timer of the loop. Its UPS counter counts the steps.
+	 */
+	public Timer getTimer() {
+		return this.timer;
+	}
+
+	/**
+	 * @return the tick statistics.
+	 */
+	public TickStats getStats() {
+		return this.stats;
+	}
+
+	/**
+	 * @return the total simulation time in seconds dropped because a tick
+	 *         could not catch up.
+	 */
+	public double getDroppedTime() {
+		return this.driver.getDroppedTime();
+	}
+
+}
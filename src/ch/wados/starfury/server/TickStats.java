@@ -0,0 +1,186 @@
+package ch.wados.starfury.server;
+
+import java.util.Arrays;
+
+/**
+ * Tick time statistics of a {@link TickLoop}.
+ * <p>
+ * Besides the totals the statistics keep the durations of the most recent
+ * ticks in a fixed window, over which the average, maximum, percentiles and
+ * the load are computed. The load is the fraction of the simulated time spent
+ * working, so a sector with a load close to or above 1 cannot keep up with
+ * real time. All methods are synchronized, so the statistics can be read
+ * from a monitoring thread while the loop is running.
+ * </p>
+ */
+public final class TickStats {
+
+	/**
+	 * The default number of ticks in the window.
+	 */
+	public static final int DEFAULT_WINDOW = 600;
+
+	private final double stepTime;
+	private final double[] window;
+	private final double[] sorted;
+	private final int[] windowSteps;
+	private int index = 0;
+	private int filled = 0;
+	private long ticks = 0;
+	private long steps = 0;
+	private long overruns = 0;
+	private double last = 0;
+
+	/**
+	 * Creates new empty statistics.
+	 *
+	 * @param stepTime
+	 *            the step time of the loop in seconds. Must be strictly
+	 *            positive and finite.
+	 * @param window
+	 *            the number of recent ticks to keep. Must be strictly
+	 *            positive.
+	 * @throws IllegalArgumentException
+	 *             if the {@code stepTime} or the {@code window} is invalid.
+	 */
+	public TickStats(double stepTime, int window) {
+		if (stepTime <= 0 || !Double.isFinite(stepTime))
+			throw new IllegalArgumentException("step time must be positive. Was " + stepTime);
+		if (window <= 0)
+			throw new IllegalArgumentException("window must be positive. Was " + window);
+		this.stepTime = stepTime;
+		this.window = new double[window];
+		this.sorted = new double[window];
+		this.windowSteps = new int[window];
+	}
+
+	/**
+	 * Records a tick. A tick is an overrun if it took longer than the time it
+	 * simulated.
+	 *
+	 * @param duration
+	 *            the duration of the tick in seconds.
+	 * @param steps
+	 *            the number of steps performed in the tick.
+	 */
+	synchronized void record(double duration, int steps) {
+		this.window[this.index] = duration;
+		this.windowSteps[this.index] = steps;
+		this.index = (this.index + 1) % this.window.length;
+		this.filled = Math.min(this.filled + 1, this.window.length);
+		this.ticks++;
+		this.steps += steps;
+		if (duration > steps * this.stepTime)
+			this.overruns++;
+		this.last = duration;
+	}
+
+	/**
+	 * Discards all recorded ticks.
+	 */
+	public synchronized void reset() {
+		this.index = 0;
+		this.filled = 0;
+		this.ticks = 0;
+		this.steps = 0;
+		this.overruns = 0;
+		this.last = 0;
+	}
+
+	/**
+	 * @return the total number of ticks recorded.
+	 */
+	public synchronized long getTickCount() {
+		return this.ticks;
+	}
+
+	/**
+	 * @return the total number of steps performed.
+	 */
+	public synchronized long getStepCount() {
+		return this.steps;
+	}
+
+	/**
+	 * @return the total number of ticks that took longer than the time they
+	 *         simulated.
+	 */
+	public synchronized long getOverrunCount() {
+		return this.overruns;
+	}
+
+	/**
+	 * @return the duration of the last tick in seconds. 0 if no tick was
+	 *         recorded yet.
+	 */
+	public synchronized double getLastTickTime() {
+		return this.last;
+	}
+
+	/**
+	 * @return the average tick duration over the window in seconds. 0 if no
+	 *         tick was recorded yet.
+	 */
+	public synchronized double getAverageTickTime() {
+		if (this.filled == 0)
+			return 0;
+		double sum = 0;
+		for (int i = 0; i < this.filled; i++)
+			sum += this.window[i];
+		return sum / this.filled;
+	}
+
+	/**
+	 * @return the longest tick duration in the window in seconds. 0 if no
+	 *         tick was recorded yet.
+	 */
+	public synchronized double getMaxTickTime() {
+		double max = 0;
+		for (int i = 0; i < this.filled; i++)
+			max = Math.max(max, this.window[i]);
+		return max;
+	}
+
+	/**
+	 * Provides a percentile of the tick durations in the window, using the
+	 * nearest rank.
+	 *
+	 * @param percentile
+	 *            the percentile in the range {@code [0, 100]}.
+	 * @return the tick duration in seconds. 0 if no tick was recorded yet.
+	 * @throws IllegalArgumentException
+	 *             if the {@code percentile} is out of range.
+	 */
+	public synchronized double getPercentileTickTime(double percentile) {
+		if (!(percentile >= 0 && percentile <= 100))
+			throw new IllegalArgumentException("percentile must be in [0, 100]. Was " + percentile);
+		if (this.filled == 0)
+			return 0;
+		System.arraycopy(this.window, 0, this.sorted, 0, this.filled);
+		Arrays.sort(this.sorted, 0, this.filled);
+		int rank = (int) Math.ceil(percentile / 100 * this.filled);
+		return this.sorted[Math.max(rank - 1, 0)];
+	}
+
+	/**
+	 * @return the time spent in the ticks of the window divided by the time
+	 *         they simulated. 0 if no step was performed in the window.
+	 */
+	public synchronized double getLoad() {
+		double busy = 0;
+		long simulated = 0;
+		for (int i = 0; i < this.filled; i++) {
+			busy += this.window[i];
+			simulated += this.windowSteps[i];
+		}
+		return simulated == 0 ? 0 : busy / (simulated * this.stepTime);
+	}
+
+	@Override
+	public synchronized String toString() {
+		return String.format("ticks=%d steps=%d overruns=%d avg=%.3fms p99=%.3fms max=%.3fms load=%.1f%%",
+				this.ticks, this.steps, this.overruns, this.getAverageTickTime() * 1e3,
+				this.getPercentileTickTime(99) * 1e3, this.getMaxTickTime() * 1e3, this.getLoad() * 100);
+	}
+
+}
@@ -0,0 +1,309 @@
+package org.dyn4j.dynamics;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import org.dyn4j.dynamics.contact.ContactConstraint;
+import org.dyn4j.dynamics.contact.ContactConstraintSolver;
+import org.dyn4j.dynamics.contact.ContactListener;
+import org.dyn4j.dynamics.contact.OrderedContactManager;
+import org.dyn4j.dynamics.contact.SequentialImpulses;
+import org.dyn4j.dynamics.joint.Joint;
+
+/**
+ * {@link World} solving independent islands concurrently.
+ * <p>
+ * The stock step builds the islands of the contact and joint graph and solves
+ * them one after another. This world first builds all islands, in the same
+ * order and with the same contents as the stock step, and then solves them on
+ * a {@link ForkJoinPool}. The islands are split recursively by their number of
+ * bodies and constraints, so idle workers steal the remaining ranges. Islands
+ * share no dynamic bodies and no constraints. Static bodies may be part of
+ * several islands, but the solver only applies zero impulses to them, and
+ * their sleep state is settled in island order afterwards. The results are
+ * therefore identical to the stock step, bit for bit.
+ * </p>
+ * <p>
+ * Only the island solving runs concurrently. Collision detection, continuous
+ * collision detection and all listener callbacks run on the calling thread.
+ * The world uses an {@link OrderedContactManager}, so the contact callbacks
+ * are also delivered in a reproducible order, unlike in the stock world. The
+ * {@link ContactConstraintSolver} must be stateless, like
+ * the default {@link SequentialImpulses}. Steps with less work than the
+ * {@link #setGrain(int) grain} are solved on the calling thread.
+ * </p>
+ * <p>
+ * The class is part of the dyn4j package, since the island flags and the
+ * contact graph it traverses are package-private.
+ * </p>
+ */
+public class ParallelWorld extends World {
+
+	/**
+	 * The default minimal number of bodies and constraints solved by one task.
+	 */
+	public static final int DEFAULT_GRAIN = 64;
+
+	private final ForkJoinPool pool;
+	// islands of the current step, reused across steps
+	private final List<Island> islands = new ArrayList<>();
+	// weights[i] holds the number of bodies and constraints of the islands
+	// before island i
+	private int[] weights = new int[17];
+	private int islandCount = 0;
+	private int grain = DEFAULT_GRAIN;
+
+	/**
+	 * Creates a new world with an {@link OrderedContactManager}.
+	 *
+	 * @param initialCapacity
+	 *            the initial capacity. May not be {@code null}.
+	 * @param pool
+	 *            the pool the islands are solved on. May not be {@code null}.
+	 * @throws NullPointerException
+	 *             if any argument is {@code null}.
+	 */
+	public ParallelWorld(Capacity initialCapacity, ForkJoinPool pool) {
+		super(initialCapacity);
+		this.pool = Objects.requireNonNull(pool);
+		this.setContactManager(new OrderedContactManager(initialCapacity));
+	}
+
+	/**
+	 * sets the minimal number of bodies and constraints solved by one task.
+	 * Larger values reduce the scheduling overhead, smaller values improve the
+	 * load balancing.
+	 *
+	 * @param grain
+	 *            the grain. Must be strictly positive.
+	 * @return the world itself
+	 * @throws IllegalArgumentException
+	 *             if the {@code grain} is not positive.
+	 */
+	public ParallelWorld setGrain(int grain) {
+		if (grain <= 0)
+			throw new IllegalArgumentException("grain must be positive. Was " + grain);
+		this.grain = grain;
+		return this;
+	}
+
+	public int getGrain() {
+		return this.grain;
+	}
+
+	public ForkJoinPool getPool() {
+		return this.pool;
+	}
+
+	/**
+	 * @return the number of islands solved in the last step.
+	 */
+	public int getIslandCount() {
+		return this.islandCount;
+	}
+
+	/**
+	 * Performs one time step. Equivalent to the stock step except for the
+	 * island solving.
+	 */
+	@Override
+	protected void step() {
+		List<StepListener> stepListeners = this.getListeners(StepListener.class);
+		List<ContactListener> contactListeners = this.getListeners(ContactListener.class);
+		int sSize = stepListeners.size();
+		for (int i = 0; i < sSize; i++)
+			stepListeners.get(i).begin(this.step, this);
+		if (this.isUpdateRequired()) {
+			this.detect();
+			for (int i = 0; i < sSize; i++)
+				stepListeners.get(i).updatePerformed(this.step, this);
+			this.setUpdateRequired(false);
+		}
+		this.contactManager.preSolveNotify(contactListeners);
+		ContinuousDetectionMode continuousDetectionMode = this.settings.getContinuousDetectionMode();
+		int size = this.getBodyCount();
+		for (int i = 0; i < size; i++) {
+			Body body = this.getBody(i);
+			body.setOnIsland(false);
+			if (continuousDetectionMode != ContinuousDetectionMode.NONE)
+				body.transform0.set(body.getTransform());
+		}
+		for (int i = 0; i < this.getJointCount(); i++) {
+			Constraint joint = this.getJoint(i);
+			joint.setOnIsland(false);
+		}
+
+		this.buildIslands(size);
+		this.solveIslands();
+		this.settleStatics();
+		for (int i = 0; i < this.islandCount; i++)
+			this.islands.get(i).clear();
+
+		this.contactManager.postSolveNotify(contactListeners);
+		if (continuousDetectionMode != ContinuousDetectionMode.NONE)
+			this.solveTOI(continuousDetectionMode);
+		for (int i = 0; i < sSize; i++)
+			stepListeners.get(i).postSolve(this.step, this);
+		this.detect();
+		this.setUpdateRequired(false);
+		for (int i = 0; i < sSize; i++)
+			stepListeners.get(i).end(this.step, this);
+	}
+
+	/**
+	 * Builds the islands by a depth first search of the contact and joint
+	 * graph, exactly like the stock step.
+	 */
+	private void buildIslands(int size) {
+		this.islandCount = 0;
+		Deque<Body> stack = new ArrayDeque<Body>();
+		for (int i = 0; i < size; i++) {
+			Body seed = this.getBody(i);
+			if (seed.isOnIsland() || seed.isAsleep() || !seed.isActive() || seed.isStatic())
+				continue;
+			Island island = this.nextIsland();
+			stack.push(seed);
+			while (stack.size() > 0) {
+				Body body = stack.pop();
+				island.add(body);
+				body.setOnIsland(true);
+				body.setAsleep(false);
+				// islands do not span static bodies
+				if (body.isStatic())
+					continue;
+				for (int j = 0; j < body.contacts.size(); j++) {
+					ContactEdge edge = body.contacts.get(j);
+					ContactConstraint contactConstraint = edge.interaction;
+					Constraint constraint = contactConstraint;
+					if (contactConstraint.isSensor() || constraint.isOnIsland())
+						continue;
+					island.add(contactConstraint);
+					constraint.setOnIsland(true);
+					if (!edge.other.isOnIsland()) {
+						stack.push(edge.other);
+						edge.other.setOnIsland(true);
+					}
+				}
+				for (int j = 0; j < body.joints.size(); j++) {
+					JointEdge edge = body.joints.get(j);
+					Joint joint = edge.interaction;
+					Constraint constraint = joint;
+					if (!joint.isActive() || constraint.isOnIsland() || !edge.other.isActive())
+						continue;
+					island.add(joint);
+					constraint.setOnIsland(true);
+					if (!edge.other.isOnIsland()) {
+						stack.push(edge.other);
+						edge.other.setOnIsland(true);
+					}
+				}
+			}
+			// allow static bodies to participate in other islands
+			for (int j = 0; j < island.bodies.size(); j++) {
+				Body body = island.bodies.get(j);
+				if (body.isStatic())
+					body.setOnIsland(false);
+			}
+			this.weights[this.islandCount] = this.weights[this.islandCount - 1] + island.bodies.size()
+					+ island.contactConstraints.size() + island.joints.size();
+		}
+	}
+
+	private Island nextIsland() {
+		if (this.islandCount == this.islands.size())
+			this.islands.add(new Island());
+		if (this.islandCount + 2 > this.weights.length) {
+			int[] weights = new int[this.weights.length * 2];
+			System.arraycopy(this.weights, 0, weights, 0, this.weights.length);
+			this.weights = weights;
+		}
+		return this.islands.get(this.islandCount++);
+	}
+
+	private void solveIslands() {
+		int count = this.islandCount;
+		if (count > 1 && this.weight(0, count) >= 2 * this.grain)
+			this.pool.invoke(new SolveTask(0, count));
+		else
+			this.solve(0, count);
+	}
+
+	/**
+	 * Solves the islands in the range [from, to) on the current thread.
+	 */
+	private void solve(int from, int to) {
+		for (int i = from; i < to; i++)
+			this.islands.get(i).solve(this.contactConstraintSolver, this.gravity, this.step, this.settings);
+	}
+
+	/**
+	 * @return the number of bodies and constraints of the islands in the range
+	 *         [from, to).
+	 */
+	private int weight(int from, int to) {
+		return this.weights[to] - this.weights[from];
+	}
+
+	/**
+	 * Applies the sleep state of the islands to their static bodies in island
+	 * order. In the stock step the last island holding a static body decides
+	 * its state.
+	 */
+	private void settleStatics() {
+		for (int i = 0; i < this.islandCount; i++) {
+			Island island = this.islands.get(i);
+			// the seed is never static and all bodies of an island sleep
+			// together
+			boolean asleep = island.bodies.get(0).isAsleep();
+			for (int j = 1; j < island.bodies.size(); j++) {
+				Body body = island.bodies.get(j);
+				if (body.isStatic())
+					body.setAsleep(asleep);
+			}
+		}
+	}
+
+	/**
+	 * Solves a range of islands, splitting it in halves of about the same
+	 * weight while it is larger than the grain.
+	 */
+	private final class SolveTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final int from, to;
+
+		SolveTask(int from, int to) {
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			ParallelWorld world = ParallelWorld.this;
+			if (this.to - this.from < 2 || world.weight(this.from, this.to) < 2 * world.grain) {
+				world.solve(this.from, this.to);
+				return;
+			}
+			// the first island ending past half the weight of the range
+			int half = (world.weights[this.from] + world.weights[this.to]) / 2;
+			int low = this.from + 1, high = this.to - 1;
+			while (low < high) {
+				int mid = (low + high) >>> 1;
+				if (world.weights[mid] < half)
+					low = mid + 1;
+				else
+					high = mid;
+			}
+			int mid = low;
+			invokeAll(new SolveTask(this.from, mid), new SolveTask(mid, this.to));
+		}
+
+	}
+
+}
@@ -0,0 +1,39 @@
+package org.dyn4j.dynamics.contact;
+
+import java.util.LinkedHashMap;
+
+import org.dyn4j.collision.Collisions;
+import org.dyn4j.dynamics.Capacity;
+
+/**
+ * {@link WarmStartingContactManager} notifying the listeners in a reproducible
+ * order.
+ * <p>
+ * The stock manager keeps the contact constraints in hash maps keyed by random
+ * body ids, so the order of the {@link ContactListener} callbacks differs
+ * between two otherwise identical worlds. This manager keeps them in the order
+ * they were detected. The simulation itself is not affected.
+ * </p>
+ * <p>
+ * The class is part of the dyn4j package, since the second map of the stock
+ * manager is package-private.
+ * </p>
+ */
+public class OrderedContactManager extends WarmStartingContactManager {
+
+	/**
+	 * Creates a new manager.
+	 *
+	 * @param initialCapacity
+	 *            the estimated number of bodies. May not be {@code null}.
+	 * @throws NullPointerException
+	 *             if the {@code initialCapacity} is {@code null}.
+	 */
+	public OrderedContactManager(Capacity initialCapacity) {
+		super(initialCapacity);
+		int size = Collisions.getEstimatedCollisionPairs(initialCapacity.getBodyCount()) * 4 / 3 + 1;
+		this.constraints = new LinkedHashMap<ContactConstraintId, ContactConstraint>(size);
+		this.constraints1 = new LinkedHashMap<ContactConstraintId, ContactConstraint>(size);
+	}
+
+}
@@ -0,0 +1,96 @@
+package ch.wados.starfury.physics.simple;
+
+import java.util.Random;
+
+import org.dyn4j.geometry.Circle;
+import org.dyn4j.geometry.Rectangle;
+import org.dyn4j.geometry.Vector2;
+
+import ch.wados.starfury.physics.api.BroadphaseType;
+import ch.wados.starfury.physics.api.EntityType;
+import ch.wados.starfury.physics.api.FixtureDefinition;
+import ch.wados.starfury.physics.api.PhysicsEntity;
+import ch.wados.starfury.physics.api.PhysicsEntityDefinition;
+import ch.wados.starfury.physics.api.PhysicsManager;
+import ch.wados.starfury.physics.api.PhysicsWorldConfig;
+
+/**
+ * Benchmark comparing the broad-phase implementations on typical sector
+ * layouts.
+ * 
+ * Usage: BroadphaseBenchmark [entities] [steps]
+ */
+public class BroadphaseBenchmark {
+
+	enum Layout {
+		/** similarly sized ships spread evenly over the sector */
+		UNIFORM,
+		/** ships grouped in a few dense fleets */
+		FLEETS,
+		/** ships around a few large static stations */
+		STATIONS
+	}
+
+	static final double SECTOR = 2000;
+
+	static void populate(PhysicsManager m, Layout layout, int count, Random rng) {
+		PhysicsEntityDefinition ship = new PhysicsEntityDefinition(EntityType.DEFAULT)
+				.addFixture(new FixtureDefinition(new Rectangle(4, 2)));
+		int fleets = 8;
+		Vector2[] centres = new Vector2[fleets];
+		for (int i = 0; i < fleets; i++)
+			centres[i] = new Vector2(rng.nextDouble() * SECTOR, rng.nextDouble() * SECTOR);
+		if (layout == Layout.STATIONS)
+			for (Vector2 c : centres)
+				m.spawnEntity(m.createEntity(new PhysicsEntityDefinition(EntityType.STATIC).setPosition(c)
+						.addFixture(new FixtureDefinition(new Circle(60)))));
+		for (int i = 0; i < count; i++) {
+			Vector2 p;
+			switch (layout) {
+			case FLEETS:
+				p = centres[i % fleets].sum(rng.nextGaussian() * 40, rng.nextGaussian() * 40);
+				break;
+			case STATIONS:
+				double a = rng.nextDouble() * 2 * Math.PI;
+				double r = 70 + rng.nextDouble() * 150;
+				p = centres[i % fleets].sum(Math.cos(a) * r, Math.sin(a) * r);
+				break;
+			default:
+				p = new Vector2(rng.nextDouble() * SECTOR, rng.nextDouble() * SECTOR);
+			}
+			PhysicsEntity e = m.createEntity(new PhysicsEntityDefinition(ship).setPosition(p));
+			e.setLinearVelocity(new Vector2(rng.nextGaussian() * 10, rng.nextGaussian() * 10));
+			m.spawnEntity(e);
+		}
+	}
+
+	static double run(BroadphaseType type, Layout layout, int count, int steps) {
+		PhysicsManager m = new SimplePhysicsManager();
+		m.initialiseWorld(new PhysicsWorldConfig().setBroadphase(type).setCapacity(count));
+		populate(m, layout, count, new Random(42));
+		// warm up
+		for (int i = 0; i < steps / 4; i++)
+			m.stepWorld(1.0 / 60);
+		long start = System.nanoTime();
+		for (int i = 0; i < steps; i++)
+			m.stepWorld(1.0 / 60);
+		return (System.nanoTime() - start) / 1e6 / steps;
+	}
+
+	public static void main(String[] args) {
+		int count = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+		int steps = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+		System.out.printf("%d entities, %d steps%n", count, steps);
+		System.out.printf("%-20s", "");
+		for (Layout layout : Layout.values())
+			System.out.printf("%12s", layout);
+		System.out.println();
+		for (BroadphaseType type : BroadphaseType.values()) {
+			System.out.printf("%-20s", type);
+			for (Layout layout : Layout.values())
+				System.out.printf("%9.3f ms", run(type, layout, count, steps));
+			System.out.println();
+		}
+	}
+
+}
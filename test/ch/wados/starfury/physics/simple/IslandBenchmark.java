@@ -0,0 +1,73 @@
+package ch.wados.starfury.physics.simple;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.dyn4j.geometry.Circle;
+import org.dyn4j.geometry.Rectangle;
+import org.dyn4j.geometry.Vector2;
+
+import ch.wados.starfury.physics.api.EntityType;
+import ch.wados.starfury.physics.api.FixtureDefinition;
+import ch.wados.starfury.physics.api.PhysicsEntity;
+import ch.wados.starfury.physics.api.PhysicsEntityDefinition;
+import ch.wados.starfury.physics.api.PhysicsManager;
+import ch.wados.starfury.physics.api.PhysicsWorldConfig;
+
+/**
+ * Benchmark comparing the stock sequential island solver with the parallel
+ * solver on sectors holding many separate battles. Every battle is a swarm of
+ * ships converging on a small static wreck, so it forms one or a few large
+ * islands.
+ *
+ * Usage: IslandBenchmark [battles] [ships per battle] [steps]
+ */
+public class IslandBenchmark {
+
+	static final double SPACING = 150;
+
+	static void populate(PhysicsManager m, int battles, int ships, Random rng) {
+		PhysicsEntityDefinition ship = new PhysicsEntityDefinition(EntityType.DEFAULT)
+				.addFixture(new FixtureDefinition(new Rectangle(4, 2)));
+		int columns = (int) Math.ceil(Math.sqrt(battles));
+		for (int b = 0; b < battles; b++) {
+			Vector2 centre = new Vector2((b % columns) * SPACING, (b / columns) * SPACING);
+			m.spawnEntity(m.createEntity(new PhysicsEntityDefinition(EntityType.STATIC).setPosition(centre)
+					.addFixture(new FixtureDefinition(new Circle(4)))));
+			for (int i = 0; i < ships; i++) {
+				double a = rng.nextDouble() * 2 * Math.PI;
+				double r = 10 + rng.nextDouble() * 40;
+				PhysicsEntity e = m.createEntity(new PhysicsEntityDefinition(ship)
+						.setPosition(centre.sum(Math.cos(a) * r, Math.sin(a) * r)));
+				e.setLinearVelocity(new Vector2(-Math.cos(a) * 8, -Math.sin(a) * 8));
+				m.spawnEntity(e);
+			}
+		}
+	}
+
+	static double run(ForkJoinPool pool, int battles, int ships, int steps) {
+		PhysicsManager m = new SimplePhysicsManager();
+		m.initialiseWorld(new PhysicsWorldConfig().setCapacity(battles * (ships + 1)).setSolverPool(pool));
+		populate(m, battles, ships, new Random(42));
+		// warm up and let the swarms collapse into piles
+		for (int i = 0; i < steps / 2; i++)
+			m.stepWorld(1.0 / 60);
+		long start = System.nanoTime();
+		for (int i = 0; i < steps; i++)
+			m.stepWorld(1.0 / 60);
+		return (System.nanoTime() - start) / 1e6 / steps;
+	}
+
+	public static void main(String[] args) {
+		int battles = args.length > 0 ? Integer.parseInt(args[0]) : 48;
+		int ships = args.length > 1 ? Integer.parseInt(args[1]) : 60;
+		int steps = args.length > 2 ? Integer.parseInt(args[2]) : 300;
+		System.out.printf("%d battles, %d ships each, %d steps, %d workers%n", battles, ships, steps,
+				ForkJoinPool.commonPool().getParallelism());
+		double sequential = run(null, battles, ships, steps);
+		double parallel = run(ForkJoinPool.commonPool(), battles, ships, steps);
+		System.out.printf("%-12s%9.3f ms%n", "sequential", sequential);
+		System.out.printf("%-12s%9.3f ms  (x%.2f)%n", "parallel", parallel, sequential / parallel);
+	}
+
+}
@@ -10,12 +10,14 @@ import javax.swing.UnsupportedLookAndFeelException;
 
 import org.dyn4j.dynamics.Body;
 
+import ch.wados.starfury.physics.api.FixedStepDriver;
 import ch.wados.starfury.physics.api.PhysicsManager;
 
 public class SandboxController {
 
 	private final SandboxFrame frame;
 	private final PhysicsManager world;
+	private final FixedStepDriver driver;
 	private long last;
 	private volatile boolean stopped = false;
 
@@ -34,6 +36,7 @@ public class SandboxController {
 		}
 		this.frame = new SandboxFrame(width, height, render_scale, this::stop);
 		this.world = new SimplePhysicsManager();
+		this.driver = new FixedStepDriver(this.world, 1.0 / 120, 8);
 	}
 
 	public final void stop() {
@@ -77,7 +80,7 @@ public class SandboxController {
 		}
 		this.last = time;
 		double elapsedTime = diff / 1.0e9;
-		this.world.stepWorld(elapsedTime);
+		this.driver.advance(elapsedTime);
 	}
 
 	public final SandboxFrame getFrame() {
@@ -4,7 +4,9 @@ import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
 import org.junit.runners.Suite.SuiteClasses;
 
+import ch.wados.starfury.net.NetSuite;
 import ch.wados.starfury.physics.PhysicsSuite;
+import ch.wados.starfury.server.ServerSuite;
 
 /**
  * Global master suite combining all tests from all suites.
@@ -12,6 +14,6 @@ import ch.wados.starfury.physics.PhysicsSuite;
  * Running this suite allows for full coverage of all test cases in one step.
  */
 @RunWith(Suite.class)
-@SuiteClasses(PhysicsSuite.class)
+@SuiteClasses({ PhysicsSuite.class, ServerSuite.class, NetSuite.class })
 public class FullSuite {
 }
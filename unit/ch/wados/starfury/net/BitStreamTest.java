@@ -0,0 +1,79 @@
+package ch.wados.starfury.net;
+
+import static org.junit.Assert.*;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+public class BitStreamTest {
+
+	@Test
+	public void roundTrip() {
+		ByteBuffer buffer = ByteBuffer.allocate(64);
+		BitWriter writer = new BitWriter().reset(buffer);
+		writer.write(5, 3);
+		writer.writeBoolean(true);
+		writer.write(-1, 32);
+		writer.write(0x1234, 13);
+		writer.writeVarInt(0);
+		writer.writeVarInt(1000);
+		writer.writeVarInt(Integer.MAX_VALUE);
+		writer.write(0, 0);
+		writer.writeBoolean(false);
+		writer.flush();
+		buffer.flip();
+		BitReader reader = new BitReader().reset(buffer);
+		assertEquals(5, reader.read(3));
+		assertTrue(reader.readBoolean());
+		assertEquals(-1, reader.read(32));
+		assertEquals(0x1234, reader.read(13));
+		assertEquals(0, reader.readVarInt());
+		assertEquals(1000, reader.readVarInt());
+		assertEquals(Integer.MAX_VALUE, reader.readVarInt());
+		assertEquals(0, reader.read(0));
+		assertFalse(reader.readBoolean());
+		assertFalse(buffer.hasRemaining());
+	}
+
+	@Test
+	public void packing() {
+		ByteBuffer buffer = ByteBuffer.allocate(8);
+		BitWriter writer = new BitWriter().reset(buffer);
+		for (int i = 0; i < 9; i++)
+			writer.writeBoolean(i % 2 == 0);
+		writer.flush();
+		// 9 bits take 2 bytes, least significant bit first
+		assertEquals(2, buffer.position());
+		assertEquals(0x55, buffer.get(0) & 0xFF);
+		assertEquals(0x01, buffer.get(1) & 0xFF);
+	}
+
+	@Test
+	public void remaining() {
+		ByteBuffer buffer = ByteBuffer.allocate(3);
+		BitReader reader = new BitReader().reset(buffer);
+		assertEquals(24, reader.remaining());
+		reader.read(5);
+		assertEquals(19, reader.remaining());
+		reader.read(11);
+		assertEquals(8, reader.remaining());
+	}
+
+	@Test
+	public void varIntSize() {
+		ByteBuffer buffer = ByteBuffer.allocate(8);
+		BitWriter writer = new BitWriter().reset(buffer);
+		// 5 bit prefix plus 3 value bits
+		writer.writeVarInt(7);
+		assertEquals(1, buffer.position());
+	}
+
+	@Test(expected = BufferUnderflowException.class)
+	public void underflow() {
+		ByteBuffer buffer = ByteBuffer.allocate(2);
+		new BitReader().reset(buffer).read(17);
+	}
+
+}
@@ -0,0 +1,199 @@
+package ch.wados.starfury.net;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.dyn4j.geometry.Circle;
+import org.dyn4j.geometry.Vector2;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import ch.wados.starfury.physics.api.EntityType;
+import ch.wados.starfury.physics.api.FixtureDefinition;
+import ch.wados.starfury.physics.api.PhysicsEntity;
+import ch.wados.starfury.physics.api.PhysicsEntityDefinition;
+import ch.wados.starfury.physics.api.PhysicsManager;
+import ch.wados.starfury.physics.api.PhysicsWorldConfig;
+import ch.wados.starfury.physics.simple.SimplePhysicsManager;
+
+public class InterestManagerTest {
+
+	private static final double STEP = 1 / 60.0;
+
+	@Rule
+	public ExpectedException thrown = ExpectedException.none();
+
+	private final PhysicsManager manager = new SimplePhysicsManager();
+	private final InterestManager interest = new InterestManager(this.manager);
+	private final List<String> events = new ArrayList<>();
+
+	public InterestManagerTest() {
+		this.manager.initialiseWorld(new PhysicsWorldConfig().setDeterministicStep(STEP));
+	}
+
+	private PhysicsEntity spawn(String name, double x, double y) {
+		PhysicsEntity e = this.manager.createEntity(new PhysicsEntityDefinition(EntityType.DEFAULT)
+				.addFixture(new FixtureDefinition(new Circle(0.5))).setPosition(new Vector2(x, y)));
+		e.setUserData(name);
+		this.manager.spawnEntity(e);
+		return e;
+	}
+
+	/**
+	 * Records the events of an observer as "+name" and "-name".
+	 */
+	private InterestListener recorder(String prefix) {
+		return new InterestListener() {
+			@Override
+			public void entered(PhysicsEntity entity) {
+				events.add(prefix + "+" + entity.getUserData());
+			}
+
+			@Override
+			public void left(PhysicsEntity entity) {
+				events.add(prefix + "-" + entity.getUserData());
+			}
+		};
+	}
+
+	private void step() {
+		this.manager.stepWorld(STEP);
+		this.interest.update();
+	}
+
+	private List<String> drain() {
+		List<String> result = new ArrayList<>(this.events);
+		this.events.clear();
+		return result;
+	}
+
+	@Test
+	public void enterAndLeaveWithMargin() {
+		PhysicsEntity near = this.spawn("near", 5, 0);
+		PhysicsEntity mid = this.spawn("mid", 12, 0);
+		this.spawn("far", 30, 0);
+		InterestManager.Observer o = this.interest.addObserver(10).setMargin(5).setCenter(new Vector2(0, 0));
+		o.addInterestListener(this.recorder(""));
+		this.step();
+		assertEquals(Arrays.asList("+near"), this.drain());
+		assertTrue(o.isRelevant(near));
+		assertFalse(o.isRelevant(mid));
+		mid.setPosition(new Vector2(9, 0));
+		this.step();
+		assertEquals(Arrays.asList("+mid"), this.drain());
+		// within the margin the entity stays relevant
+		mid.setPosition(new Vector2(13, 0));
+		this.step();
+		assertTrue(this.drain().isEmpty());
+		assertTrue(o.isRelevant(mid));
+		mid.setPosition(new Vector2(20, 0));
+		this.step();
+		assertEquals(Arrays.asList("-mid"), this.drain());
+		assertEquals(Arrays.asList(near), o.getRelevant());
+	}
+
+	@Test
+	public void despawnLeaves() {
+		PhysicsEntity a = this.spawn("a", 1, 0);
+		this.spawn("b", 2, 0);
+		InterestManager.Observer o = this.interest.addObserver(10).setCenter(new Vector2(0, 0));
+		o.addInterestListener(this.recorder(""));
+		this.step();
+		assertEquals(2, o.getRelevant().size());
+		this.drain();
+		this.manager.despawnEntity(a);
+		this.step();
+		assertEquals(Arrays.asList("-a"), this.drain());
+		assertTrue(this.interest.getObservers(a).isEmpty());
+	}
+
+	@Test
+	public void anchorFollowsEntity() {
+		PhysicsEntity ship = this.spawn("ship", 0, 0);
+		ship.setLinearVelocity(new Vector2(60, 0));
+		for (int i = 1; i <= 5; i++)
+			this.spawn("p" + i, 20 * i, 5);
+		InterestManager.Observer o = this.interest.addObserver(8).setMargin(2).setAnchor(ship);
+		o.addInterestListener(this.recorder(""));
+		this.step();
+		assertEquals(Arrays.asList("+ship"), this.drain());
+		// one second moves the ship past p1 and p2
+		for (int i = 0; i < 60; i++)
+			this.step();
+		assertEquals(Arrays.asList("+p1", "-p1", "+p2", "-p2", "+p3"), this.drain());
+	}
+
+	@Test
+	public void observersOfEntity() {
+		PhysicsEntity shared = this.spawn("shared", 0, 0);
+		PhysicsEntity left = this.spawn("left", -8, 0);
+		InterestManager.Observer a = this.interest.addObserver(5).setCenter(new Vector2(-4, 0));
+		InterestManager.Observer b = this.interest.addObserver(5).setCenter(new Vector2(4, 0));
+		b.addInterestListener(this.recorder("b"));
+		this.step();
+		assertEquals(Arrays.asList(a, b), this.interest.getObservers(shared));
+		assertEquals(Arrays.asList(a), this.interest.getObservers(left));
+		this.interest.removeObserver(b);
+		assertEquals(Arrays.asList("b+shared", "b-shared"), this.drain());
+		assertEquals(Arrays.asList(a), this.interest.getObservers(shared));
+		assertTrue(b.getRelevant().isEmpty());
+		assertEquals(Arrays.asList(a), this.interest.getObservers());
+	}
+
+	@Test
+	public void collisionFanOut() {
+		this.manager.addCollisionBatchListener(this.interest);
+		// two pairs on collision course, far apart
+		PhysicsEntity a0 = this.spawn("a0", -1, 0);
+		PhysicsEntity a1 = this.spawn("a1", 1, 0);
+		PhysicsEntity b0 = this.spawn("b0", 99, 0);
+		PhysicsEntity b1 = this.spawn("b1", 101, 0);
+		a0.setLinearVelocity(new Vector2(5, 0));
+		a1.setLinearVelocity(new Vector2(-5, 0));
+		b0.setLinearVelocity(new Vector2(5, 0));
+		b1.setLinearVelocity(new Vector2(-5, 0));
+		InterestManager.Observer a = this.interest.addObserver(5).setCenter(new Vector2(0, 0));
+		InterestManager.Observer b = this.interest.addObserver(5).setCenter(new Vector2(100, 0));
+		InterestManager.Observer both = this.interest.addObserver(60).setCenter(new Vector2(50, 0));
+		InterestManager.Observer none = this.interest.addObserver(5).setCenter(new Vector2(50, 0));
+		int[] counts = new int[4];
+		InterestManager.Observer[] observers = { a, b, both, none };
+		for (int i = 0; i < observers.length; i++) {
+			InterestManager.Observer o = observers[i];
+			int index = i;
+			o.addCollisionBatchListener(batch -> {
+				assertFalse(batch.isEmpty());
+				for (int r = 0; r < batch.size(); r++)
+					assertTrue(o.isRelevant(batch.getEntity0(r)) || o.isRelevant(batch.getEntity1(r)));
+				counts[index] += batch.size();
+			});
+		}
+		this.interest.update();
+		for (int i = 0; i < 30; i++)
+			this.step();
+		assertTrue(counts[0] > 0);
+		assertTrue(counts[1] > 0);
+		// each contact point is delivered once per observer
+		assertEquals(counts[0] + counts[1], counts[2]);
+		assertEquals(0, counts[3]);
+	}
+
+	@Test
+	public void unknownObserver() {
+		InterestManager other = new InterestManager(this.manager);
+		InterestManager.Observer o = other.addObserver(1);
+		thrown.expect(IllegalArgumentException.class);
+		this.interest.removeObserver(o);
+	}
+
+	@Test
+	public void invalidRadius() {
+		thrown.expect(IllegalArgumentException.class);
+		this.interest.addObserver(-1);
+	}
+
+}
@@ -0,0 +1,14 @@
+package ch.wados.starfury.net;
+
+import org.junit.runner.RunWith;
+import org.junit.runners.Suite;
+import org.junit.runners.Suite.SuiteClasses;
+
+/**
+ * Suite combining all network replication tests
+ */
+@RunWith(Suite.class)
+@SuiteClasses({ BitStreamTest.class, QuantizationTest.class, ReplicationTest.class, SnapshotBufferTest.class,
+		ShipPredictorTest.class, InterestManagerTest.class })
+public class NetSuite {
+}
@@ -0,0 +1,68 @@
+package ch.wados.starfury.net;
+
+import static org.junit.Assert.*;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+public class QuantizationTest {
+
+	@Rule
+	public ExpectedException thrown = ExpectedException.none();
+
+	@Test
+	public void precision() {
+		Quantization q = new Quantization().setPosition(20, 1000);
+		double resolution = q.getResolution(Quantization.X);
+		assertEquals(1000.0 / (1 << 19), resolution, 0);
+		for (double v = -999; v < 999; v += 12.345) {
+			double restored = q.dequantize(Quantization.X, q.quantize(Quantization.X, v));
+			assertEquals(v, restored, resolution / 2);
+		}
+	}
+
+	@Test
+	public void exactRoundTrip() {
+		Quantization q = new Quantization();
+		for (int f = 0; f < Quantization.FIELD_COUNT; f++) {
+			int value = q.quantize(f, 1.2345);
+			assertEquals(value, q.quantize(f, q.dequantize(f, value)));
+		}
+	}
+
+	@Test
+	public void clamping() {
+		Quantization q = new Quantization().setVelocity(8, 10);
+		int max = q.quantize(Quantization.VX, 1000);
+		int min = q.quantize(Quantization.VX, -1000);
+		assertEquals(255, max);
+		assertEquals(0, min);
+		assertEquals(-10, q.dequantize(Quantization.VX, min), 0);
+	}
+
+	@Test
+	public void angleWraps() {
+		Quantization q = new Quantization().setAngle(12);
+		double resolution = q.getResolution(Quantization.ANGLE);
+		assertEquals(2 * Math.PI / 4096, resolution, 1e-15);
+		assertEquals(q.quantize(Quantization.ANGLE, 0.5), q.quantize(Quantization.ANGLE, 0.5 + 2 * Math.PI));
+		assertEquals(q.quantize(Quantization.ANGLE, -0.5), q.quantize(Quantization.ANGLE, 2 * Math.PI - 0.5));
+		double restored = q.dequantize(Quantization.ANGLE, q.quantize(Quantization.ANGLE, 3 * Math.PI + 0.25));
+		assertEquals(-Math.PI + 0.25, restored, resolution);
+		assertTrue(restored >= -Math.PI && restored < Math.PI);
+	}
+
+	@Test
+	public void invalidBits() {
+		thrown.expect(IllegalArgumentException.class);
+		new Quantization().setPosition(32, 100);
+	}
+
+	@Test
+	public void invalidRange() {
+		thrown.expect(IllegalArgumentException.class);
+		new Quantization().setVelocity(16, 0);
+	}
+
+}
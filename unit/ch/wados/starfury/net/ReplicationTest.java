@@ -0,0 +1,419 @@
+package ch.wados.starfury.net;
+
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.dyn4j.geometry.Rectangle;
+import org.dyn4j.geometry.Vector2;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import ch.wados.starfury.physics.api.EntityStateBuffer;
+import ch.wados.starfury.physics.api.EntityType;
+import ch.wados.starfury.physics.api.FixtureDefinition;
+import ch.wados.starfury.physics.api.PhysicsEntity;
+import ch.wados.starfury.physics.api.PhysicsEntityDefinition;
+import ch.wados.starfury.physics.api.PhysicsManager;
+import ch.wados.starfury.physics.api.PhysicsWorldConfig;
+import ch.wados.starfury.physics.api.ThrustPointDefinition;
+import ch.wados.starfury.physics.simple.SimplePhysicsManager;
+
+public class ReplicationTest {
+
+	private static final double STEP = 1 / 60.0;
+	private static final int HEADER = 12;
+
+	@Rule
+	public ExpectedException thrown = ExpectedException.none();
+
+	private final Quantization quantization = new Quantization();
+	private final ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+
+	private static PhysicsManager manager() {
+		PhysicsManager m = new SimplePhysicsManager();
+		m.initialiseWorld(new PhysicsWorldConfig().setDeterministicStep(STEP));
+		return m;
+	}
+
+	/**
+	 * Spawns a row of separated ships, which never collide.
+	 */
+	private static List<PhysicsEntity> fleet(PhysicsManager m, int count, boolean moving) {
+		PhysicsEntityDefinition def = new PhysicsEntityDefinition(EntityType.DEFAULT)
+				.addFixture(new FixtureDefinition(new Rectangle(2, 1)))
+				.addThrustPoint(new ThrustPointDefinition(new Vector2(-1, 0), new Vector2(1, 0), "main"));
+		List<PhysicsEntity> entities = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			PhysicsEntity e = m.createEntity(def.setPosition(new Vector2(i * 10, 0)));
+			if (moving) {
+				e.setLinearVelocity(new Vector2(1, 0.1 * i));
+				e.setAngularVelocity(0.2 * i);
+				e.setThrust("main", i);
+			}
+			m.spawnEntity(e);
+			entities.add(e);
+		}
+		return entities;
+	}
+
+	/**
+	 * Sends the latest frame to the client and the acknowledgement back.
+	 *
+	 * @return the size of the packet in bytes
+	 */
+	private int round(ReplicationServer server, ReplicationServer.Client c, ReplicationClient client) {
+		int size = this.send(server, c);
+		assertTrue(client.decode(this.buffer));
+		this.acknowledge(server, c, client);
+		return size;
+	}
+
+	private int send(ReplicationServer server, ReplicationServer.Client c) {
+		this.buffer.clear();
+		server.encode(c, this.buffer);
+		this.buffer.flip();
+		return this.buffer.remaining();
+	}
+
+	private void acknowledge(ReplicationServer server, ReplicationServer.Client c, ReplicationClient client) {
+		this.buffer.clear();
+		client.writeAck(this.buffer);
+		this.buffer.flip();
+		server.receiveAck(c, this.buffer);
+	}
+
+	/**
+	 * @return the baseline sequence of the packet in the buffer
+	 */
+	private int baselineOf(ByteBuffer packet) {
+		BitReader reader = new BitReader().reset(packet.duplicate());
+		reader.read(32);
+		return reader.read(32);
+	}
+
+	/**
+	 * Asserts the client holds exactly the quantized state of the manager.
+	 * Requires the entities to be exported in spawn order.
+	 */
+	private void assertReplicated(PhysicsManager m, ReplicatedSnapshot s) {
+		EntityStateBuffer state = new EntityStateBuffer();
+		m.exportState(state);
+		assertEquals(state.size(), s.size());
+		for (int i = 0; i < s.size(); i++) {
+			assertEquals(this.restore(Quantization.X, state.getX()[i]), s.getX()[i], 0);
+			assertEquals(this.restore(Quantization.Y, state.getY()[i]), s.getY()[i], 0);
+			assertEquals(this.restore(Quantization.ANGLE, state.getAngle()[i]), s.getAngle()[i], 0);
+			assertEquals(this.restore(Quantization.VX, state.getVelocityX()[i]), s.getVelocityX()[i], 0);
+			assertEquals(this.restore(Quantization.VY, state.getVelocityY()[i]), s.getVelocityY()[i], 0);
+			assertEquals(this.restore(Quantization.OMEGA, state.getAngularVelocity()[i]), s.getAngularVelocity()[i], 0);
+			assertEquals(state.getAsleep()[i], s.getAsleep()[i]);
+		}
+	}
+
+	private double restore(int field, double value) {
+		return this.quantization.dequantize(field, this.quantization.quantize(field, value));
+	}
+
+	@Test
+	public void unchangedEntitiesAreCheap() {
+		PhysicsManager m = manager();
+		fleet(m, 100, false);
+		ReplicationServer server = new ReplicationServer(m, this.quantization, 8);
+		ReplicationClient client = new ReplicationClient(this.quantization, 8);
+		ReplicationServer.Client c = server.addClient();
+		server.capture();
+		int full = this.round(server, c, client);
+		// 112 bits of state per entity
+		assertTrue("full frame was " + full, full > 100 * 14);
+		m.stepWorld(STEP);
+		server.capture();
+		int delta = this.round(server, c, client);
+		// 2 bits per unchanged entity
+		assertTrue("delta frame was " + delta, delta <= HEADER + 2 + 100 * 2 / 8);
+		assertEquals(2, client.getSequence());
+		assertEquals(1, client.getSnapshot().getStep());
+		assertReplicated(m, client.getSnapshot());
+	}
+
+	@Test
+	public void deltasDecodeExactly() {
+		PhysicsManager m = manager();
+		fleet(m, 20, true);
+		ReplicationServer server = new ReplicationServer(m, this.quantization, 8);
+		ReplicationClient client = new ReplicationClient(this.quantization, 8);
+		ReplicationServer.Client c = server.addClient();
+		int full = 0;
+		for (int i = 0; i < 30; i++) {
+			m.stepWorld(STEP);
+			server.capture();
+			int size = this.round(server, c, client);
+			if (i == 0)
+				full = size;
+			else
+				assertTrue(size < full);
+			assertReplicated(m, client.getSnapshot());
+		}
+		assertEquals(30, c.getAcknowledged());
+	}
+
+	@Test
+	public void packetLoss() {
+		PhysicsManager m = manager();
+		fleet(m, 20, true);
+		ReplicationServer server = new ReplicationServer(m, this.quantization, 8);
+		ReplicationClient client = new ReplicationClient(this.quantization, 8);
+		ReplicationServer.Client c = server.addClient();
+		LoopbackTransport down = new LoopbackTransport().setLoss(0.4, 1);
+		LoopbackTransport up = down.getPeer().setLoss(0.4, 2);
+		ByteBuffer packet = ByteBuffer.allocate(1 << 12);
+		int decoded = 0;
+		for (int i = 0; i < 200; i++) {
+			m.stepWorld(STEP);
+			server.capture();
+			packet.clear();
+			server.encode(c, packet);
+			packet.flip();
+			down.send(packet);
+			packet.clear();
+			if (down.getPeer().receive(packet)) {
+				packet.flip();
+				assertTrue(client.decode(packet));
+				assertReplicated(m, client.getSnapshot());
+				decoded++;
+				packet.clear();
+				client.writeAck(packet);
+				packet.flip();
+				up.send(packet);
+			}
+			packet.clear();
+			if (down.receive(packet)) {
+				packet.flip();
+				server.receiveAck(c, packet);
+			}
+		}
+		assertTrue(decoded > 80 && decoded < 160);
+	}
+
+	@Test
+	public void fullFrameWhenAcknowledgementIsTooOld() {
+		PhysicsManager m = manager();
+		fleet(m, 10, true);
+		ReplicationServer server = new ReplicationServer(m, this.quantization, 4);
+		ReplicationClient client = new ReplicationClient(this.quantization, 4);
+		ReplicationServer.Client c = server.addClient();
+		server.capture();
+		this.round(server, c, client);
+		// the client receives the frames but the acknowledgements are lost
+		for (int i = 0; i < 3; i++) {
+			m.stepWorld(STEP);
+			server.capture();
+			this.send(server, c);
+			assertEquals(1, this.baselineOf(this.buffer));
+			assertTrue(client.decode(this.buffer));
+		}
+		m.stepWorld(STEP);
+		server.capture();
+		this.send(server, c);
+		assertEquals(0, this.baselineOf(this.buffer));
+		assertTrue(client.decode(this.buffer));
+		assertReplicated(m, client.getSnapshot());
+	}
+
+	@Test
+	public void outdatedPacketsAreIgnored() {
+		PhysicsManager m = manager();
+		fleet(m, 5, true);
+		ReplicationServer server = new ReplicationServer(m, this.quantization, 8);
+		ReplicationClient client = new ReplicationClient(this.quantization, 8);
+		ReplicationServer.Client c = server.addClient();
+		server.capture();
+		this.send(server, c);
+		ByteBuffer first = ByteBuffer.allocate(this.buffer.remaining()).put(this.buffer);
+		first.flip();
+		m.stepWorld(STEP);
+		server.capture();
+		this.send(server, c);
+		assertTrue(client.decode(this.buffer));
+		assertFalse(client.decode(first));
+		assertEquals(2, client.getSnapshot().getSequence());
+		assertReplicated(m, client.getSnapshot());
+	}
+
+	@Test
+	public void missingBaselineIsRejected() {
+		PhysicsManager m = manager();
+		fleet(m, 5, true);
+		ReplicationServer server = new ReplicationServer(m, this.quantization, 8);
+		ReplicationServer.Client c = server.addClient();
+		server.capture();
+		this.round(server, c, new ReplicationClient(this.quantization, 8));
+		m.stepWorld(STEP);
+		server.capture();
+		this.send(server, c);
+		ReplicationClient other = new ReplicationClient(this.quantization, 8);
+		assertFalse(other.decode(this.buffer));
+		assertEquals(0, other.getSequence());
+		assertEquals(0, other.getSnapshot().size());
+	}
+
+	@Test
+	public void oversizedEntityCountIsRejected() {
+		PhysicsManager m = manager();
+		fleet(m, 5, true);
+		ReplicationServer server = new ReplicationServer(m, this.quantization, 8);
+		ReplicationServer.Client c = server.addClient();
+		ReplicationClient client = new ReplicationClient(this.quantization, 8);
+		server.capture();
+		this.round(server, c, client);
+		// a full frame claiming far more entities than the packet holds
+		this.buffer.clear();
+		BitWriter writer = new BitWriter().reset(this.buffer);
+		writer.write(2, 32);
+		writer.write(0, 32);
+		writer.write(0, 32);
+		writer.writeVarInt(Integer.MAX_VALUE);
+		for (int i = 0; i < 64; i++)
+			writer.writeBoolean(true);
+		writer.flush();
+		this.buffer.flip();
+		try {
+			client.decode(this.buffer);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		assertEquals(1, client.getSequence());
+		assertReplicated(m, client.getSnapshot());
+	}
+
+	@Test
+	public void spawnsAndDespawns() {
+		PhysicsManager m = manager();
+		List<PhysicsEntity> entities = fleet(m, 10, true);
+		ReplicationServer server = new ReplicationServer(m, this.quantization, 8);
+		ReplicationClient client = new ReplicationClient(this.quantization, 8);
+		ReplicationServer.Client c = server.addClient();
+		server.capture();
+		this.round(server, c, client);
+		ReplicatedSnapshot s = client.getSnapshot();
+		assertEquals(10, s.size());
+		for (int id = 0; id < 10; id++)
+			assertEquals(id, s.indexOf(id));
+		m.despawnEntity(entities.get(3));
+		m.despawnEntity(entities.get(7));
+		fleet(m, 3, false);
+		m.stepWorld(STEP);
+		server.capture();
+		this.round(server, c, client);
+		assertEquals(11, server.getEntityCount());
+		assertEquals(11, s.size());
+		assertTrue(s.indexOf(3) < 0);
+		assertTrue(s.indexOf(7) < 0);
+		// network ids are never reused
+		for (int id = 10; id < 13; id++)
+			assertTrue(s.indexOf(id) >= 0);
+		// an entity respawned after a capture gets a new id
+		m.despawnEntity(entities.get(0));
+		m.stepWorld(STEP);
+		server.capture();
+		this.round(server, c, client);
+		assertTrue(s.indexOf(0) < 0);
+		m.spawnEntity(entities.get(0));
+		m.stepWorld(STEP);
+		server.capture();
+		this.round(server, c, client);
+		assertTrue(s.indexOf(13) >= 0);
+		assertEquals(entities.get(0).getPosition().x, s.getX()[s.indexOf(13)], this.quantization.getResolution(Quantization.X));
+	}
+
+	@Test
+	public void areaOfInterest() {
+		PhysicsManager m = manager();
+		List<PhysicsEntity> entities = fleet(m, 100, false);
+		InterestManager interest = new InterestManager(m);
+		InterestManager.Observer observer = interest.addObserver(25).setMargin(0).setCenter(new Vector2(0, 0));
+		ReplicationServer server = new ReplicationServer(m, this.quantization, 8);
+		ReplicationServer.Client c = server.addClient(observer);
+		ReplicationServer.Client all = server.addClient();
+		assertSame(observer, c.getObserver());
+		ReplicationClient client = new ReplicationClient(this.quantization, 8);
+		m.stepWorld(STEP);
+		interest.update();
+		server.capture();
+		int filtered = this.round(server, c, client);
+		assertTrue(filtered * 10 < this.send(server, all));
+		ReplicatedSnapshot s = client.getSnapshot();
+		// the ships at x = 0, 10 and 20
+		assertEquals(3, s.size());
+		assertEquals(3, observer.getRelevant().size());
+		for (int id = 0; id < 3; id++)
+			assertTrue(s.indexOf(id) >= 0);
+		observer.setCenter(new Vector2(505, 0));
+		m.stepWorld(STEP);
+		interest.update();
+		server.capture();
+		this.round(server, c, client);
+		assertEquals(6, s.size());
+		for (int i = 0; i < s.size(); i++) {
+			assertEquals(48 + i, s.getIds()[i]);
+			assertEquals(entities.get(48 + i).getPosition().x, s.getX()[i], this.quantization.getResolution(Quantization.X));
+		}
+	}
+
+	@Test
+	public void acknowledgedFrameKeepsBaseline() {
+		PhysicsManager m = manager();
+		List<PhysicsEntity> entities = fleet(m, 100, true);
+		InterestManager interest = new InterestManager(m);
+		InterestManager.Observer observer = interest.addObserver(25).setMargin(0).setCenter(new Vector2(0, 0));
+		ReplicationServer server = new ReplicationServer(m, this.quantization, 8);
+		ReplicationServer.Client c = server.addClient(observer);
+		ReplicationClient client = new ReplicationClient(this.quantization, 8);
+		m.stepWorld(STEP);
+		interest.update();
+		server.capture();
+		this.round(server, c, client);
+		// the relevant set changes, the frame is encoded again
+		observer.setCenter(new Vector2(505, 0));
+		interest.update();
+		this.send(server, c);
+		assertEquals(0, this.baselineOf(this.buffer));
+		assertFalse(client.decode(this.buffer));
+		m.stepWorld(STEP);
+		interest.update();
+		server.capture();
+		this.send(server, c);
+		assertEquals(1, this.baselineOf(this.buffer));
+		assertTrue(client.decode(this.buffer));
+		ReplicatedSnapshot s = client.getSnapshot();
+		assertEquals(6, s.size());
+		for (int i = 0; i < s.size(); i++) {
+			assertEquals(48 + i, s.getIds()[i]);
+			assertEquals(entities.get(48 + i).getPosition().x, s.getX()[i], this.quantization.getResolution(Quantization.X));
+		}
+	}
+
+	@Test
+	public void encodeBeforeCapture() {
+		ReplicationServer server = new ReplicationServer(manager(), this.quantization, 8);
+		thrown.expect(IllegalStateException.class);
+		server.encode(server.addClient(), this.buffer);
+	}
+
+	@Test
+	public void invalidHistory() {
+		thrown.expect(IllegalArgumentException.class);
+		new ReplicationClient(this.quantization, 0);
+	}
+
+	@Test
+	public void invalidLossRate() {
+		thrown.expect(IllegalArgumentException.class);
+		new LoopbackTransport().setLoss(1.5, 0);
+	}
+
+}
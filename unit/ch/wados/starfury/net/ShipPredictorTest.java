@@ -0,0 +1,220 @@
+package ch.wados.starfury.net;
+
+import static org.junit.Assert.*;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+
+import org.dyn4j.geometry.Rectangle;
+import org.dyn4j.geometry.Vector2;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import ch.wados.starfury.physics.api.EntityType;
+import ch.wados.starfury.physics.api.FixtureDefinition;
+import ch.wados.starfury.physics.api.PhysicsEntity;
+import ch.wados.starfury.physics.api.PhysicsEntityDefinition;
+import ch.wados.starfury.physics.api.PhysicsManager;
+import ch.wados.starfury.physics.api.PhysicsWorldConfig;
+import ch.wados.starfury.physics.api.ThrustPointDefinition;
+import ch.wados.starfury.physics.simple.SimplePhysicsManager;
+
+public class ShipPredictorTest {
+
+	private static final double STEP = 1 / 60.0;
+
+	@Rule
+	public ExpectedException thrown = ExpectedException.none();
+
+	// fine enough to make the quantization error negligible
+	private final Quantization quantization = new Quantization().setPosition(31, 1024).setAngle(31)
+			.setVelocity(31, 1024).setAngularVelocity(31, 64);
+	private final ByteBuffer buffer = ByteBuffer.allocate(1 << 12);
+
+	private PhysicsManager server;
+	private PhysicsEntity serverShip;
+	private ReplicationServer replication;
+	private ReplicationServer.Client remote;
+	private ReplicationClient client;
+	private PhysicsManager local;
+	private PhysicsEntity localShip;
+
+	private static PhysicsManager manager() {
+		PhysicsManager m = new SimplePhysicsManager();
+		m.initialiseWorld(new PhysicsWorldConfig().setDeterministicStep(STEP));
+		return m;
+	}
+
+	private static PhysicsEntity ship(PhysicsManager m) {
+		// the thrusters are off-centre to make the ship rotate
+		PhysicsEntity e = m.createEntity(new PhysicsEntityDefinition(EntityType.DEFAULT)
+				.addFixture(new FixtureDefinition(new Rectangle(2, 1)))
+				.addThrustPoint(new ThrustPointDefinition(new Vector2(-1, 0.3), new Vector2(1, 0), "left"))
+				.addThrustPoint(new ThrustPointDefinition(new Vector2(-1, -0.3), new Vector2(1, 0), "right"))
+				.setPosition(new Vector2(5, 5)));
+		m.spawnEntity(e);
+		return e;
+	}
+
+	private static double[] input(int tag) {
+		return new double[] { 20 + 10 * Math.sin(tag * 0.1), 20 + 10 * Math.cos(tag * 0.07) };
+	}
+
+	private ShipPredictor setup(int capacity) {
+		this.server = manager();
+		this.serverShip = ship(this.server);
+		this.replication = new ReplicationServer(this.server, this.quantization, 8);
+		this.remote = this.replication.addClient();
+		this.client = new ReplicationClient(this.quantization, 8);
+		this.local = manager();
+		this.localShip = ship(this.local);
+		int[] handles = { this.localShip.getThrustPointHandle("left"), this.localShip.getThrustPointHandle("right") };
+		return new ShipPredictor(this.local, this.localShip, handles, STEP, capacity);
+	}
+
+	/**
+	 * Captures the server state and delivers it to the client.
+	 */
+	private ReplicatedSnapshot deliver() {
+		this.replication.capture();
+		this.buffer.clear();
+		this.replication.encode(this.remote, this.buffer);
+		this.buffer.flip();
+		assertTrue(this.client.decode(this.buffer));
+		this.buffer.clear();
+		this.client.writeAck(this.buffer);
+		this.buffer.flip();
+		this.replication.receiveAck(this.remote, this.buffer);
+		return this.client.getSnapshot();
+	}
+
+	/**
+	 * Steps the server with the input of its current step.
+	 */
+	private void stepServer() {
+		int[] handles = { this.serverShip.getThrustPointHandle("left"), this.serverShip.getThrustPointHandle("right") };
+		this.serverShip.setThrusts(handles, input((int) this.server.getStep()));
+		this.server.stepWorld(STEP);
+	}
+
+	@Test
+	public void predictionMatchesServer() {
+		int latency = 6;
+		ShipPredictor predictor = this.setup(16);
+		assertTrue(predictor.reconcile(this.deliver(), 0));
+		assertEquals(0, predictor.getStep());
+		for (int t = 0; t < 120; t++) {
+			assertEquals(t, predictor.step(input(t)));
+			// the server receives the inputs late
+			if (t >= latency) {
+				this.stepServer();
+				assertTrue(predictor.reconcile(this.deliver(), 0));
+				assertEquals(t + 1, predictor.getStep());
+			}
+		}
+		Vector2 predicted = this.localShip.getPosition();
+		double angle = this.localShip.getOrientation();
+		while (this.server.getStep() < 120)
+			this.stepServer();
+		assertEquals(this.serverShip.getPosition().x, predicted.x, 1e-6);
+		assertEquals(this.serverShip.getPosition().y, predicted.y, 1e-6);
+		assertEquals(this.serverShip.getOrientation(), angle, 1e-6);
+		// the ship has moved and turned noticeably
+		assertTrue(predicted.distance(5, 5) > 1);
+		assertTrue(Math.abs(angle) > 0.1);
+	}
+
+	@Test
+	public void correctionsAreBlended() {
+		ShipPredictor predictor = this.setup(16).setSmoothing(0.1);
+		predictor.reconcile(this.deliver(), 0);
+		for (int t = 0; t < 10; t++)
+			predictor.step(input(t));
+		for (int t = 0; t < 4; t++)
+			this.stepServer();
+		// the server ship is pushed by something the client does not know of
+		this.serverShip.setLinearVelocity(new Vector2(0, 30));
+		predictor.sample(1, 0);
+		double before = predictor.getRenderY();
+		predictor.reconcile(this.deliver(), 0);
+		assertEquals(10, predictor.getStep());
+		double corrected = this.localShip.getPosition().y;
+		assertTrue(corrected > before + 2);
+		// the correction is hidden at first and blended in over time
+		predictor.sample(1, 0);
+		assertEquals(before, predictor.getRenderY(), 1e-9);
+		predictor.sample(1, 0.1);
+		assertEquals(before + (corrected - before) * (1 - Math.exp(-1)), predictor.getRenderY(), 1e-9);
+		predictor.sample(1, 10);
+		assertEquals(corrected, predictor.getRenderY(), 1e-9);
+	}
+
+	@Test
+	public void renderInterpolation() {
+		ShipPredictor predictor = this.setup(16);
+		predictor.reconcile(this.deliver(), 0);
+		predictor.step(new double[] { 100, 100 });
+		predictor.step(new double[] { 100, 100 });
+		double x = this.localShip.getPosition().x;
+		predictor.sample(1, 0);
+		assertEquals(x, predictor.getRenderX(), 1e-12);
+		predictor.sample(0, 0);
+		double previous = predictor.getRenderX();
+		assertTrue(previous < x);
+		predictor.sample(0.5, 0);
+		assertEquals((previous + x) / 2, predictor.getRenderX(), 1e-12);
+	}
+
+	@Test
+	public void restartsWhenInputsAreLost() {
+		ShipPredictor predictor = this.setup(4);
+		predictor.reconcile(this.deliver(), 0);
+		for (int t = 0; t < 10; t++)
+			predictor.step(input(t));
+		this.stepServer();
+		predictor.reconcile(this.deliver(), 0);
+		assertEquals(1, predictor.getStep());
+		assertEquals(this.serverShip.getPosition().x, this.localShip.getPosition().x, 1e-6);
+		assertEquals(this.serverShip.getPosition().y, this.localShip.getPosition().y, 1e-6);
+	}
+
+	@Test
+	public void missingShip() {
+		ShipPredictor predictor = this.setup(4);
+		assertFalse(predictor.reconcile(this.deliver(), 7));
+		assertEquals(-1, predictor.getStep());
+	}
+
+	@Test
+	public void samplingDoesNotAllocate() {
+		ShipPredictor predictor = this.setup(16);
+		predictor.reconcile(this.deliver(), 0);
+		predictor.step(input(0));
+		predictor.sample(0, 0);
+		com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) ManagementFactory
+				.getThreadMXBean();
+		long thread = Thread.currentThread().getId();
+		long before = bean.getThreadAllocatedBytes(thread);
+		for (int i = 0; i < 10000; i++)
+			predictor.sample((i % 7) / 7.0, 1 / 144.0);
+		long allocated = bean.getThreadAllocatedBytes(thread) - before;
+		assertTrue("allocated " + allocated + " bytes", allocated < 16 * 1024);
+	}
+
+	@Test
+	public void stepBeforeSynchronisation() {
+		ShipPredictor predictor = this.setup(4);
+		thrown.expect(IllegalStateException.class);
+		predictor.step(input(0));
+	}
+
+	@Test
+	public void wrongInputLength() {
+		ShipPredictor predictor = this.setup(4);
+		predictor.reconcile(this.deliver(), 0);
+		thrown.expect(IllegalArgumentException.class);
+		predictor.step(new double[1]);
+	}
+
+}
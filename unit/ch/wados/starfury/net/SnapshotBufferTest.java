@@ -0,0 +1,180 @@
+package ch.wados.starfury.net;
+
+import static org.junit.Assert.*;
+
+import java.lang.management.ManagementFactory;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+public class SnapshotBufferTest {
+
+	private static final double STEP = 1 / 60.0;
+
+	@Rule
+	public ExpectedException thrown = ExpectedException.none();
+
+	/**
+	 * Creates a snapshot of entities moving along the x axis.
+	 */
+	private static ReplicatedSnapshot frame(int step, int[] ids, double[] x, double vx) {
+		ReplicatedSnapshot s = new ReplicatedSnapshot();
+		s.resize(ids.length);
+		s.setHeader(step, step);
+		for (int i = 0; i < ids.length; i++) {
+			s.getIds()[i] = ids[i];
+			s.getX()[i] = x[i];
+			s.getY()[i] = 0;
+			s.getAngle()[i] = 0;
+			s.getVelocityX()[i] = vx;
+			s.getVelocityY()[i] = 0;
+			s.getAngularVelocity()[i] = 0;
+		}
+		return s;
+	}
+
+	private static ReplicatedSnapshot frame(int step, double x) {
+		return frame(step, new int[] { 0 }, new double[] { x }, 60);
+	}
+
+	@Test
+	public void interpolates() {
+		SnapshotBuffer buffer = new SnapshotBuffer(STEP, 4);
+		ReplicatedSnapshot out = new ReplicatedSnapshot();
+		assertFalse(buffer.sample(0, out));
+		assertTrue(buffer.add(frame(0, 0)));
+		assertTrue(buffer.add(frame(6, 6)));
+		assertTrue(buffer.sample(3 * STEP, out));
+		assertEquals(1, out.size());
+		assertEquals(3, out.getX()[0], 1e-12);
+		assertEquals(6, out.getStep());
+		buffer.sample(STEP, out);
+		assertEquals(1, out.getX()[0], 1e-12);
+	}
+
+	@Test
+	public void beforeOldest() {
+		SnapshotBuffer buffer = new SnapshotBuffer(STEP, 4);
+		buffer.add(frame(6, 6));
+		buffer.add(frame(12, 12));
+		ReplicatedSnapshot out = new ReplicatedSnapshot();
+		buffer.sample(0, out);
+		assertEquals(6, out.getX()[0], 0);
+		assertEquals(6, out.getStep());
+	}
+
+	@Test
+	public void extrapolatesLimited() {
+		SnapshotBuffer buffer = new SnapshotBuffer(STEP, 4).setExtrapolationLimit(0.05);
+		buffer.add(frame(0, 0));
+		buffer.add(frame(6, 6));
+		ReplicatedSnapshot out = new ReplicatedSnapshot();
+		buffer.sample(8 * STEP, out);
+		assertEquals(8, out.getX()[0], 1e-9);
+		// stops after the limit
+		buffer.sample(60 * STEP, out);
+		assertEquals(9, out.getX()[0], 1e-9);
+	}
+
+	@Test
+	public void shortestRotation() {
+		SnapshotBuffer buffer = new SnapshotBuffer(STEP, 4);
+		ReplicatedSnapshot a = frame(0, 0);
+		a.getAngle()[0] = Math.PI - 0.2;
+		ReplicatedSnapshot b = frame(6, 6);
+		b.getAngle()[0] = -Math.PI + 0.2;
+		buffer.add(a);
+		buffer.add(b);
+		ReplicatedSnapshot out = new ReplicatedSnapshot();
+		buffer.sample(3 * STEP, out);
+		assertEquals(Math.PI, Math.abs(out.getAngle()[0]), 1e-9);
+		buffer.sample(STEP * 4.5, out);
+		assertEquals(-Math.PI + 0.1, out.getAngle()[0], 1e-9);
+	}
+
+	@Test
+	public void entitySetOfNewerSnapshot() {
+		SnapshotBuffer buffer = new SnapshotBuffer(STEP, 4);
+		buffer.add(frame(0, new int[] { 1, 2 }, new double[] { 0, 10 }, 0));
+		buffer.add(frame(6, new int[] { 2, 3 }, new double[] { 20, 30 }, 0));
+		ReplicatedSnapshot out = new ReplicatedSnapshot();
+		buffer.sample(3 * STEP, out);
+		assertEquals(2, out.size());
+		assertEquals(2, out.getIds()[0]);
+		assertEquals(15, out.getX()[0], 1e-12);
+		assertEquals(3, out.getIds()[1]);
+		assertEquals(30, out.getX()[1], 0);
+	}
+
+	@Test
+	public void ignoresOutdatedSnapshots() {
+		SnapshotBuffer buffer = new SnapshotBuffer(STEP, 2);
+		buffer.add(frame(6, 6));
+		assertFalse(buffer.add(frame(3, 3)));
+		assertFalse(buffer.add(frame(6, 7)));
+		buffer.add(frame(9, 9));
+		buffer.add(frame(12, 12));
+		assertEquals(2, buffer.size());
+		ReplicatedSnapshot out = new ReplicatedSnapshot();
+		// the snapshot of step 6 has been overwritten
+		buffer.sample(6 * STEP, out);
+		assertEquals(9, out.getX()[0], 0);
+	}
+
+	@Test
+	public void clock() {
+		SnapshotBuffer buffer = new SnapshotBuffer(STEP, 4).setDelay(0.05);
+		buffer.advance(1);
+		assertTrue(Double.isNaN(buffer.getTime()));
+		buffer.add(frame(6, 6));
+		assertEquals(0.1, buffer.getTime(), 1e-12);
+		buffer.advance(0.05);
+		assertEquals(0.15, buffer.getTime(), 1e-12);
+		// a snapshot behind the estimate pulls the clock back slightly
+		buffer.add(frame(7, 7));
+		assertTrue(buffer.getTime() < 0.15 && buffer.getTime() > 7 * STEP);
+		// a snapshot ahead of the estimate moves the clock forward
+		buffer.add(frame(30, 30));
+		assertEquals(0.5, buffer.getTime(), 1e-12);
+		ReplicatedSnapshot out = new ReplicatedSnapshot();
+		buffer.sample(out);
+		assertEquals(27, out.getX()[0], 1e-9);
+	}
+
+	@Test
+	public void samplingDoesNotAllocate() {
+		SnapshotBuffer buffer = new SnapshotBuffer(STEP, 8);
+		int[] ids = new int[500];
+		double[] x = new double[500];
+		for (int i = 0; i < ids.length; i++)
+			ids[i] = i;
+		for (int step = 0; step < 24; step += 3)
+			buffer.add(frame(step, ids, x, 1));
+		ReplicatedSnapshot out = new ReplicatedSnapshot();
+		buffer.sample(0, out);
+		com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) ManagementFactory
+				.getThreadMXBean();
+		long thread = Thread.currentThread().getId();
+		long before = bean.getThreadAllocatedBytes(thread);
+		for (int i = 0; i < 1000; i++) {
+			buffer.advance(1 / 144.0);
+			buffer.sample(i * STEP / 20, out);
+		}
+		long allocated = bean.getThreadAllocatedBytes(thread) - before;
+		assertTrue("allocated " + allocated + " bytes", allocated < 16 * 1024);
+	}
+
+	@Test
+	public void invalidCapacity() {
+		thrown.expect(IllegalArgumentException.class);
+		new SnapshotBuffer(STEP, 1);
+	}
+
+	@Test
+	public void invalidDelay() {
+		thrown.expect(IllegalArgumentException.class);
+		new SnapshotBuffer(STEP, 4).setDelay(-1);
+	}
+
+}
@@ -8,6 +8,8 @@ import org.junit.runners.Suite.SuiteClasses;
  * Suite combining all physics API tests
  */
 @RunWith(Suite.class)
-@SuiteClasses({ ThrustDefTest.class, FixtureDefTest.class })
+@SuiteClasses({ ThrustDefTest.class, FixtureDefTest.class, CollisionBatchTest.class,
+		PhysicsWorldConfigTest.class, DistanceLodPolicyTest.class,
+		SnapshotPublisherTest.class, FixedStepDriverTest.class })
 public class APISuite {
 }
@@ -0,0 +1,103 @@
+package ch.wados.starfury.physics.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.dyn4j.Epsilon;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+/**
+ * Tests for {@link CollisionBatch}
+ */
+public class CollisionBatchTest {
+
+	@Rule
+	public ExpectedException thrown = ExpectedException.none();
+
+	@Test
+	public void growsBeyondCapacity() {
+		CollisionBatch batch = new CollisionBatch(1);
+		for (int i = 0; i < 10; i++)
+			batch.add(null, "a" + i, 0, null, "b" + i, 1, i, -i, 3, 4, i * 2, i * 3);
+		assertEquals(10, batch.size());
+		assertEquals("a7", batch.getFixture0(7));
+		assertEquals("b7", batch.getFixture1(7));
+		assertEquals(0, batch.getFixtureHandle0(7));
+		assertEquals(1, batch.getFixtureHandle1(7));
+		assertEquals(7, batch.getPointX(7), Epsilon.E);
+		assertEquals(-7, batch.getPointY(7), Epsilon.E);
+		assertEquals(14, batch.getNormalImpulse(7), Epsilon.E);
+		assertEquals(21, batch.getTangentialImpulse(7), Epsilon.E);
+	}
+
+	@Test
+	public void normalIsNormalised() {
+		CollisionBatch batch = new CollisionBatch();
+		batch.add(null, null, 0, null, null, 1, 0, 0, 3, 4, 0, 0);
+		assertEquals(0.6, batch.getNormalX(0), Epsilon.E);
+		assertEquals(0.8, batch.getNormalY(0), Epsilon.E);
+	}
+
+	@Test
+	public void addAllAppends() {
+		CollisionBatch a = new CollisionBatch();
+		CollisionBatch b = new CollisionBatch();
+		a.add(null, "a", 0, null, "a", 1, 1, 1, 1, 0, 0, 0);
+		b.add(null, "b", 0, null, "b", 1, 2, 2, 0, 1, 0, 0);
+		a.addAll(b);
+		assertEquals(2, a.size());
+		assertEquals("b", a.getFixture0(1));
+		assertEquals(1, b.size());
+	}
+
+	@Test
+	public void addSingleRow() {
+		CollisionBatch a = new CollisionBatch(0);
+		CollisionBatch b = new CollisionBatch();
+		b.add(null, "x", 0, null, "x", 1, 1, 1, 1, 0, 0, 0);
+		b.add(null, "y", 2, null, "z", 3, 4, 5, 0, 1, 6, 7);
+		a.add(b, 1);
+		assertEquals(1, a.size());
+		assertEquals("y", a.getFixture0(0));
+		assertEquals("z", a.getFixture1(0));
+		assertEquals(3, a.getFixtureHandle1(0));
+		assertEquals(5, a.getPointY(0), 0);
+		assertEquals(1, a.getNormalY(0), 0);
+		assertEquals(7, a.getTangentialImpulse(0), 0);
+	}
+
+	@Test
+	public void addRowOutOfRange() {
+		CollisionBatch b = new CollisionBatch();
+		thrown.expect(IndexOutOfBoundsException.class);
+		new CollisionBatch().add(b, 0);
+	}
+
+	@Test
+	public void clearReleasesReferences() {
+		CollisionBatch batch = new CollisionBatch();
+		batch.add(null, "a", 0, null, "b", 1, 0, 0, 1, 0, 0, 0);
+		batch.clear();
+		assertTrue(batch.isEmpty());
+		batch.add(null, null, 0, null, null, 1, 0, 0, 1, 0, 0, 0);
+		assertNull(batch.getFixture0(0));
+	}
+
+	@Test
+	public void indexOutOfRange() {
+		CollisionBatch batch = new CollisionBatch();
+		batch.add(null, "a", 0, null, "b", 1, 0, 0, 1, 0, 0, 0);
+		thrown.expect(IndexOutOfBoundsException.class);
+		batch.getPointX(1);
+	}
+
+	@Test
+	public void negativeCapacity() {
+		thrown.expect(IllegalArgumentException.class);
+		new CollisionBatch(-1);
+	}
+
+}
@@ -0,0 +1,52 @@
+package ch.wados.starfury.physics.api;
+
+import static org.junit.Assert.*;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+public class DistanceLodPolicyTest {
+
+	@Rule
+	public ExpectedException thrown = ExpectedException.none();
+
+	@Test
+	public void noTiers() {
+		DistanceLodPolicy policy = new DistanceLodPolicy();
+		assertEquals(0, policy.getTierCount());
+		assertEquals(1, policy.getInterval(0));
+		assertEquals(1, policy.getInterval(Double.POSITIVE_INFINITY));
+	}
+
+	@Test
+	public void tiersInAnyOrder() {
+		DistanceLodPolicy policy = new DistanceLodPolicy().addTier(500, 8).addTier(100, 2).addTier(200, 4);
+		assertEquals(3, policy.getTierCount());
+		assertEquals(1, policy.getInterval(99.9));
+		assertEquals(2, policy.getInterval(100));
+		assertEquals(2, policy.getInterval(199));
+		assertEquals(4, policy.getInterval(200));
+		assertEquals(8, policy.getInterval(1e6));
+		assertEquals(8, policy.getInterval(Double.POSITIVE_INFINITY));
+	}
+
+	@Test
+	public void duplicateTier() {
+		thrown.expect(IllegalArgumentException.class);
+		new DistanceLodPolicy().addTier(100, 2).addTier(100, 4);
+	}
+
+	@Test
+	public void negativeDistance() {
+		thrown.expect(IllegalArgumentException.class);
+		new DistanceLodPolicy().addTier(-1, 2);
+	}
+
+	@Test
+	public void zeroInterval() {
+		thrown.expect(IllegalArgumentException.class);
+		new DistanceLodPolicy().addTier(100, 0);
+	}
+
+}
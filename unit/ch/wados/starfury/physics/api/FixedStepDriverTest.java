@@ -0,0 +1,73 @@
+package ch.wados.starfury.physics.api;
+
+import static org.junit.Assert.*;
+
+import org.dyn4j.geometry.Vector2;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import ch.wados.starfury.physics.simple.SimplePhysicsManager;
+
+public class FixedStepDriverTest {
+
+	@Rule
+	public ExpectedException thrown = ExpectedException.none();
+
+	private int steps = 0;
+
+	private SimplePhysicsManager manager() {
+		SimplePhysicsManager m = new SimplePhysicsManager();
+		m.initialiseWorld(new Vector2(0, 0));
+		m.addUpdateListener(() -> this.steps++);
+		return m;
+	}
+
+	@Test
+	public void invalidStepTime() {
+		thrown.expect(IllegalArgumentException.class);
+		new FixedStepDriver(manager(), 0, 1);
+	}
+
+	@Test
+	public void invalidMaxSteps() {
+		thrown.expect(IllegalArgumentException.class);
+		new FixedStepDriver(manager(), 0.01, 0);
+	}
+
+	@Test
+	public void negativeFrameTime() {
+		thrown.expect(IllegalArgumentException.class);
+		new FixedStepDriver(manager(), 0.01, 1).advance(-1);
+	}
+
+	@Test
+	public void accumulatesPartialSteps() {
+		FixedStepDriver d = new FixedStepDriver(manager(), 0.25, 10);
+		assertEquals(0, d.advance(0.125));
+		assertEquals(0.5, d.getAlpha(), 1e-12);
+		assertEquals(1, d.advance(0.25));
+		assertEquals(0.5, d.getAlpha(), 1e-12);
+		assertEquals(2, d.advance(0.5));
+		assertEquals(3, this.steps);
+		assertEquals(3, d.getStepCount());
+	}
+
+	@Test
+	public void catchUpIsCapped() {
+		FixedStepDriver d = new FixedStepDriver(manager(), 0.25, 4);
+		assertEquals(4, d.advance(10.125));
+		assertEquals(4, this.steps);
+		assertEquals(0.5, d.getAlpha(), 1e-12);
+		assertEquals(9, d.getDroppedTime(), 1e-12);
+		// the backlog is gone
+		assertEquals(0, d.advance(0));
+	}
+
+	@Test
+	public void angleInterpolationTakesShortArc() {
+		assertEquals(Math.PI, FixedStepDriver.interpolateAngle(Math.PI - 0.1, -Math.PI + 0.1, 0.5), 1e-12);
+		assertEquals(0.5, FixedStepDriver.interpolate(0, 1, 0.5), 1e-12);
+	}
+
+}
@@ -201,4 +201,40 @@ public class FixtureDefTest {
 		new FixtureDefinition((FixtureDefinition) null);
 	}
 
-}
\ No newline at end of file
+	@Test
+	public void defaultFilterBits() {
+		FixtureDefinition fix = new FixtureDefinition(getPoly());
+		assertEquals(FixtureDefinition.DEFAULT_CATEGORY, fix.getCategoryBits());
+		assertEquals(FixtureDefinition.DEFAULT_MASK, fix.getMaskBits());
+	}
+
+	@Test
+	public void copyFilterBits() {
+		FixtureDefinition fix = new FixtureDefinition(getPoly());
+		fix.setCategoryBits(0x4);
+		fix.setMaskBits(0x3);
+		FixtureDefinition copy = new FixtureDefinition(fix);
+		assertEquals(0x4, copy.getCategoryBits());
+		assertEquals(0x3, copy.getMaskBits());
+		assertEquals(fix, copy);
+		copy.setMaskBits(0x1);
+		assertNotEquals(fix, copy);
+	}
+
+	@Test
+	public void lockedCategoryBits() {
+		FixtureDefinition fix = new FixtureDefinition(getPoly());
+		fix.lock();
+		thrown.expect(IllegalStateException.class);
+		fix.setCategoryBits(0x2);
+	}
+
+	@Test
+	public void lockedMaskBits() {
+		FixtureDefinition fix = new FixtureDefinition(getPoly());
+		fix.lock();
+		thrown.expect(IllegalStateException.class);
+		fix.setMaskBits(0x2);
+	}
+
+}
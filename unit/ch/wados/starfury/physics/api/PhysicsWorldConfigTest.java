@@ -0,0 +1,105 @@
+package ch.wados.starfury.physics.api;
+
+import static org.junit.Assert.*;
+
+import org.dyn4j.dynamics.Settings;
+import org.dyn4j.geometry.Vector2;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+public class PhysicsWorldConfigTest {
+
+	@Rule
+	public ExpectedException thrown = ExpectedException.none();
+
+	@Test
+	public void defaults() {
+		PhysicsWorldConfig config = new PhysicsWorldConfig();
+		assertEquals(BroadphaseType.DYNAMIC_AABB_TREE, config.getBroadphase());
+		assertEquals(PhysicsWorldConfig.DEFAULT_CAPACITY, config.getCapacity());
+		assertEquals(new Vector2(0, 0), config.getGravity());
+		assertNotNull(config.getSettings());
+	}
+
+	@Test
+	public void gravityIsCopied() {
+		Vector2 g = new Vector2(0, -10);
+		PhysicsWorldConfig config = new PhysicsWorldConfig().setGravity(g);
+		g.y = 5;
+		assertEquals(-10, config.getGravity().y, 0);
+	}
+
+	@Test
+	public void settingsAreKept() {
+		Settings settings = new Settings();
+		assertSame(settings, new PhysicsWorldConfig().setSettings(settings).getSettings());
+	}
+
+	@Test
+	public void invalidCapacity() {
+		thrown.expect(IllegalArgumentException.class);
+		new PhysicsWorldConfig().setCapacity(0);
+	}
+
+	@Test
+	public void nullBroadphase() {
+		thrown.expect(NullPointerException.class);
+		new PhysicsWorldConfig().setBroadphase(null);
+	}
+
+	@Test
+	public void nullSettings() {
+		thrown.expect(NullPointerException.class);
+		new PhysicsWorldConfig().setSettings(null);
+	}
+
+	@Test
+	public void invalidGridCellSize() {
+		thrown.expect(IllegalArgumentException.class);
+		new PhysicsWorldConfig().setGridCellSize(Double.NaN);
+	}
+
+	@Test
+	public void deterministicStep() {
+		PhysicsWorldConfig config = new PhysicsWorldConfig();
+		assertFalse(config.isDeterministic());
+		config.setDeterministicStep(0.02);
+		assertTrue(config.isDeterministic());
+		assertEquals(0.02, config.getDeterministicStep(), 0);
+		config.setDeterministicStep(0);
+		assertFalse(config.isDeterministic());
+	}
+
+	@Test
+	public void invalidDeterministicStep() {
+		thrown.expect(IllegalArgumentException.class);
+		new PhysicsWorldConfig().setDeterministicStep(-1);
+	}
+
+	@Test
+	public void deterministicSap() {
+		thrown.expect(IllegalArgumentException.class);
+		new PhysicsWorldConfig().setDeterministicStep(0.02).setBroadphase(BroadphaseType.SAP);
+	}
+
+	@Test
+	public void sapDeterministic() {
+		thrown.expect(IllegalArgumentException.class);
+		new PhysicsWorldConfig().setBroadphase(BroadphaseType.SAP).setDeterministicStep(0.02);
+	}
+
+	@Test
+	public void historyLength() {
+		PhysicsWorldConfig config = new PhysicsWorldConfig();
+		assertEquals(0, config.getHistoryLength());
+		assertEquals(120, config.setHistoryLength(120).getHistoryLength());
+	}
+
+	@Test
+	public void invalidHistoryLength() {
+		thrown.expect(IllegalArgumentException.class);
+		new PhysicsWorldConfig().setHistoryLength(-1);
+	}
+
+}
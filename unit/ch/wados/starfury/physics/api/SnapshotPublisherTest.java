@@ -0,0 +1,88 @@
+package ch.wados.starfury.physics.api;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.dyn4j.geometry.Circle;
+import org.dyn4j.geometry.Vector2;
+import org.junit.Test;
+
+import ch.wados.starfury.physics.simple.SimplePhysicsManager;
+
+public class SnapshotPublisherTest {
+
+	/**
+	 * creates a manager with a row of entities all moving with the same
+	 * velocity, so within a consistent frame all x coordinates are equal.
+	 */
+	private static SimplePhysicsManager manager(int count) {
+		SimplePhysicsManager m = new SimplePhysicsManager();
+		m.initialiseWorld(new Vector2(0, 0));
+		for (int i = 0; i < count; i++) {
+			PhysicsEntity e = m.createEntity(new PhysicsEntityDefinition(EntityType.DEFAULT)
+					.addFixture(new FixtureDefinition(new Circle(0.1))).setPosition(new Vector2(0, i))
+					.setLinearDampening(0));
+			e.setLinearVelocity(new Vector2(1, 0));
+			m.spawnEntity(e);
+		}
+		return m;
+	}
+
+	@Test
+	public void emptyBeforeFirstStep() {
+		SnapshotPublisher p = new SnapshotPublisher(manager(3));
+		assertFalse(p.hasNewFrame());
+		assertEquals(0, p.acquire().size());
+		assertEquals(0, p.getFrame());
+	}
+
+	@Test
+	public void acquireReturnsLatestFrame() {
+		SimplePhysicsManager m = manager(3);
+		SnapshotPublisher p = new SnapshotPublisher(m);
+		m.addUpdateListener(p);
+		m.stepWorld(0.1);
+		m.stepWorld(0.1);
+		assertTrue(p.hasNewFrame());
+		EntityStateBuffer frame = p.acquire();
+		assertEquals(2, p.getFrame());
+		assertEquals(3, frame.size());
+		assertEquals(0.2, frame.getX()[0], 1e-9);
+		assertFalse(p.hasNewFrame());
+		// without a new step the same frame is returned
+		assertSame(frame, p.acquire());
+		assertEquals(2, p.getFrame());
+	}
+
+	@Test
+	public void concurrentConsumerNeverSeesTornFrames() throws Exception {
+		SimplePhysicsManager m = manager(50);
+		SnapshotPublisher p = new SnapshotPublisher(m);
+		m.addUpdateListener(p);
+		AtomicBoolean done = new AtomicBoolean(false);
+		AtomicReference<String> failure = new AtomicReference<>();
+		Thread consumer = new Thread(() -> {
+			long last = 0;
+			while (!done.get()) {
+				EntityStateBuffer frame = p.acquire();
+				long current = p.getFrame();
+				if (current < last)
+					failure.set("frame went backwards");
+				last = current;
+				double[] x = frame.getX();
+				for (int i = 1; i < frame.size(); i++)
+					if (x[i] != x[0])
+						failure.set("torn frame " + current);
+			}
+		});
+		consumer.start();
+		for (int i = 0; i < 2000; i++)
+			m.stepWorld(0.01);
+		done.set(true);
+		consumer.join();
+		assertNull(failure.get());
+	}
+
+}
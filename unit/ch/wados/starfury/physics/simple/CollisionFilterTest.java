@@ -0,0 +1,126 @@
+package ch.wados.starfury.physics.simple;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.dyn4j.geometry.Rectangle;
+import org.dyn4j.geometry.Vector2;
+import org.junit.Test;
+
+import ch.wados.starfury.physics.api.CollisionPoint;
+import ch.wados.starfury.physics.api.EntityType;
+import ch.wados.starfury.physics.api.FixtureDefinition;
+import ch.wados.starfury.physics.api.PhysicsEntity;
+import ch.wados.starfury.physics.api.PhysicsEntityDefinition;
+import ch.wados.starfury.physics.api.PhysicsManager;
+
+public class CollisionFilterTest {
+
+	private static PhysicsEntityDefinition box(double x, int category, int mask) {
+		FixtureDefinition fix = new FixtureDefinition(new Rectangle(1, 1));
+		fix.setCategoryBits(category);
+		fix.setMaskBits(mask);
+		return new PhysicsEntityDefinition(EntityType.DEFAULT).addFixture(fix).setPosition(new Vector2(x, 5))
+				.setAngularDampening(0);
+	}
+
+	private static PhysicsManager simple() {
+		PhysicsManager m = new SimplePhysicsManager();
+		m.initialiseWorld(new Vector2(0, 0));
+		return m;
+	}
+
+	private static PhysicsManager sharded() {
+		PhysicsManager m = new ShardedPhysicsManager(10, 2);
+		m.initialiseWorld(new Vector2(0, 0));
+		return m;
+	}
+
+	/**
+	 * Lets two boxes fly into each other and collects all contacts.
+	 */
+	private static List<CollisionPoint> collide(PhysicsManager m, PhysicsEntityDefinition d0,
+			PhysicsEntityDefinition d1) {
+		PhysicsEntity e0 = m.createEntity(d0);
+		PhysicsEntity e1 = m.createEntity(d1);
+		m.spawnEntity(e0);
+		m.spawnEntity(e1);
+		e0.setLinearVelocity(new Vector2(5, 0));
+		e1.setLinearVelocity(new Vector2(-5, 0));
+		List<CollisionPoint> points = new ArrayList<>();
+		m.addCollisionListener(points::add);
+		for (int i = 0; i < 100; i++)
+			m.stepWorld(0.01);
+		return points;
+	}
+
+	@Test
+	public void defaultBitsCollide() {
+		int c = FixtureDefinition.DEFAULT_CATEGORY;
+		int k = FixtureDefinition.DEFAULT_MASK;
+		assertFalse(collide(simple(), box(2, c, k), box(5, c, k)).isEmpty());
+		assertFalse(collide(sharded(), box(2, c, k), box(5, c, k)).isEmpty());
+	}
+
+	@Test
+	public void maskedPairsPassThrough() {
+		assertTrue(collide(simple(), box(2, 0x1, 0x1), box(5, 0x2, 0x2)).isEmpty());
+		assertTrue(collide(sharded(), box(2, 0x1, 0x1), box(5, 0x2, 0x2)).isEmpty());
+		// a one-sided mask suffices
+		assertTrue(collide(simple(), box(2, 0x1, 0x1), box(5, 0x2, 0x3)).isEmpty());
+	}
+
+	@Test
+	public void maskedPassThroughDefault() {
+		int c = FixtureDefinition.DEFAULT_CATEGORY;
+		int k = FixtureDefinition.DEFAULT_MASK;
+		for (PhysicsManager m : new PhysicsManager[] { simple(), sharded() })
+			assertTrue(collide(m, box(2, c, k), box(5, 0x2, 0x2)).isEmpty());
+		// in both spawn orders
+		assertTrue(collide(simple(), box(2, 0x2, 0x2), box(5, c, k)).isEmpty());
+	}
+
+	@Test
+	public void highCategoryBitCollides() {
+		int high = 0x80000000;
+		assertFalse(collide(simple(), box(2, high, high), box(5, high, high)).isEmpty());
+	}
+
+	@Test
+	public void globalFilterRejectsPairs() {
+		for (PhysicsManager m : new PhysicsManager[] { simple(), sharded() }) {
+			List<PhysicsEntity> seen = new ArrayList<>();
+			m.addCollisionFilter((e0, f0, e1, f1) -> {
+				seen.add(e0);
+				return false;
+			});
+			int c = FixtureDefinition.DEFAULT_CATEGORY;
+			int k = FixtureDefinition.DEFAULT_MASK;
+			assertTrue(collide(m, box(2, c, k), box(5, c, k)).isEmpty());
+			assertFalse(seen.isEmpty());
+		}
+	}
+
+	@Test
+	public void entityFilterRejectsPairs() {
+		PhysicsManager m = simple();
+		int c = FixtureDefinition.DEFAULT_CATEGORY;
+		int k = FixtureDefinition.DEFAULT_MASK;
+		PhysicsEntity e0 = m.createEntity(box(2, c, k));
+		PhysicsEntity e1 = m.createEntity(box(5, c, k));
+		e0.addCollisionFilter((a, fa, b, fb) -> false);
+		m.spawnEntity(e0);
+		m.spawnEntity(e1);
+		e0.setLinearVelocity(new Vector2(5, 0));
+		e1.setLinearVelocity(new Vector2(-5, 0));
+		List<CollisionPoint> points = new ArrayList<>();
+		m.addCollisionListener(points::add);
+		for (int i = 0; i < 100; i++)
+			m.stepWorld(0.01);
+		assertTrue(points.isEmpty());
+		assertTrue(e0.getPosition().x > e1.getPosition().x);
+	}
+
+}
@@ -0,0 +1,128 @@
+package ch.wados.starfury.physics.simple;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.dyn4j.geometry.Rectangle;
+import org.dyn4j.geometry.Vector2;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import ch.wados.starfury.physics.api.CollisionBatch;
+import ch.wados.starfury.physics.api.CollisionListener;
+import ch.wados.starfury.physics.api.CollisionPoint;
+import ch.wados.starfury.physics.api.EntityType;
+import ch.wados.starfury.physics.api.FixtureDefinition;
+import ch.wados.starfury.physics.api.PhysicsEntityDefinition;
+
+public class CollisionRoutingTest {
+
+	@Rule
+	public ExpectedException thrown = ExpectedException.none();
+
+	private static SimpleEntity entity(EntityType type, String... ids) {
+		PhysicsEntityDefinition def = new PhysicsEntityDefinition(type).setPosition(new Vector2(0, 0));
+		for (String id : ids)
+			def.addFixture(new FixtureDefinition(new Rectangle(1, 1)).setIdentifier(id));
+		return new SimpleEntity(def);
+	}
+
+	private static void contact(CollisionBatch batch, SimpleEntity e0, String f0, SimpleEntity e1, String f1) {
+		batch.add(e0, f0, e0.getFixtureHandle(f0), e1, f1, e1.getFixtureHandle(f1), 0, 0, 1, 0, 1, 0);
+	}
+
+	@Test
+	public void unsubscribedContactsAreDropped() {
+		CollisionPointAdapter adapter = new CollisionPointAdapter(new ArrayList<>());
+		SimpleEntity a = entity(EntityType.DEFAULT, "hull");
+		SimpleEntity b = entity(EntityType.DEFAULT, "hull");
+		List<CollisionPoint> points = new ArrayList<>();
+		adapter.addListener(EntityType.DEFAULT, EntityType.STATIC, points::add);
+		a.addCollisionListener("gun", points::add);
+		CollisionBatch batch = new CollisionBatch();
+		contact(batch, a, "hull", b, "hull");
+		adapter.collisions(batch);
+		assertTrue(points.isEmpty());
+	}
+
+	@Test
+	public void typePairsAreUnordered() {
+		CollisionPointAdapter adapter = new CollisionPointAdapter(new ArrayList<>());
+		SimpleEntity ship = entity(EntityType.DEFAULT, "hull");
+		SimpleEntity rock = entity(EntityType.STATIC, "rock");
+		List<CollisionPoint> points = new ArrayList<>();
+		adapter.addListener(EntityType.STATIC, EntityType.DEFAULT, points::add);
+		CollisionBatch batch = new CollisionBatch();
+		contact(batch, ship, "hull", rock, "rock");
+		contact(batch, rock, "rock", ship, "hull");
+		adapter.collisions(batch);
+		assertEquals(2, points.size());
+		assertSame(ship, points.get(0).entity0);
+		assertSame(rock, points.get(1).entity0);
+	}
+
+	@Test
+	public void typePairListenerRemoval() {
+		CollisionPointAdapter adapter = new CollisionPointAdapter(new ArrayList<>());
+		SimpleEntity a = entity(EntityType.BULLET, "shot");
+		SimpleEntity b = entity(EntityType.BULLET, "shot");
+		List<CollisionPoint> points = new ArrayList<>();
+		CollisionListener listener = points::add;
+		adapter.addListener(EntityType.BULLET, EntityType.BULLET, listener);
+		adapter.addListener(EntityType.BULLET, EntityType.BULLET, listener);
+		CollisionBatch batch = new CollisionBatch();
+		contact(batch, a, "shot", b, "shot");
+		adapter.collisions(batch);
+		assertEquals(1, points.size());
+		adapter.removeListener(EntityType.BULLET, EntityType.BULLET, listener);
+		adapter.collisions(batch);
+		assertEquals(1, points.size());
+	}
+
+	@Test
+	public void fixtureListenersOnlySeeTheirFixture() {
+		CollisionPointAdapter adapter = new CollisionPointAdapter(new ArrayList<>());
+		SimpleEntity ship = entity(EntityType.DEFAULT, "hull", "shield");
+		SimpleEntity rock = entity(EntityType.DEFAULT, "rock");
+		List<String> shield = new ArrayList<>();
+		List<String> entity = new ArrayList<>();
+		ship.addCollisionListener("shield", cp -> shield.add("shield"));
+		ship.addCollisionListener(cp -> entity.add("entity"));
+		CollisionBatch batch = new CollisionBatch();
+		contact(batch, ship, "hull", rock, "rock");
+		contact(batch, rock, "rock", ship, "shield");
+		adapter.collisions(batch);
+		assertEquals(1, shield.size());
+		assertEquals(2, entity.size());
+	}
+
+	@Test
+	public void fixtureListenerRemoval() {
+		SimpleEntity ship = entity(EntityType.DEFAULT, "hull");
+		CollisionListener listener = cp -> fail();
+		ship.addCollisionListener("hull", listener);
+		assertTrue(ship.isRouted("hull"));
+		ship.removeCollisionListener("hull", listener);
+		assertFalse(ship.isRouted("hull"));
+		// unknown listeners are ignored
+		ship.removeCollisionListener("hull", listener);
+	}
+
+	@Test
+	public void nullFixtureSubscription() {
+		thrown.expect(NullPointerException.class);
+		entity(EntityType.DEFAULT, "hull").addCollisionListener(null, cp -> {
+		});
+	}
+
+	@Test
+	public void nullTypeSubscription() {
+		thrown.expect(NullPointerException.class);
+		new SimplePhysicsManager().addCollisionListener(null, EntityType.DEFAULT, cp -> {
+		});
+	}
+
+}
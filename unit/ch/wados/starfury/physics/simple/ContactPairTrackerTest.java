@@ -0,0 +1,144 @@
+package ch.wados.starfury.physics.simple;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.dyn4j.geometry.Rectangle;
+import org.dyn4j.geometry.Vector2;
+import org.junit.Test;
+
+import ch.wados.starfury.physics.api.CollisionBatch;
+import ch.wados.starfury.physics.api.ContactPair;
+import ch.wados.starfury.physics.api.ContactPairListener;
+import ch.wados.starfury.physics.api.EntityType;
+import ch.wados.starfury.physics.api.FixtureDefinition;
+import ch.wados.starfury.physics.api.PhysicsEntity;
+import ch.wados.starfury.physics.api.PhysicsEntityDefinition;
+import ch.wados.starfury.physics.api.PhysicsManager;
+
+public class ContactPairTrackerTest {
+
+	/**
+	 * Records all events as strings.
+	 */
+	private static final class Recorder implements ContactPairListener {
+
+		final List<String> events = new ArrayList<>();
+		final List<ContactPair> pairs = new ArrayList<>();
+
+		@Override
+		public void contactBegin(ContactPair pair) {
+			this.events.add("begin");
+			this.pairs.add(pair);
+		}
+
+		@Override
+		public void contactPersist(ContactPair pair) {
+			this.events.add("persist");
+			this.pairs.add(pair);
+		}
+
+		@Override
+		public void contactEnd(ContactPair pair) {
+			this.events.add("end");
+			this.pairs.add(pair);
+		}
+
+	}
+
+	private static SimpleEntity entity(EntityType type, double y, double w) {
+		return new SimpleEntity(new PhysicsEntityDefinition(type).setPosition(new Vector2(0, y))
+				.addFixture(new FixtureDefinition(new Rectangle(w, 1)).setIdentifier("hull")));
+	}
+
+	private static void contact(CollisionBatch batch, SimpleEntity e0, SimpleEntity e1, double impulse) {
+		batch.add(e0, "hull", 0, e1, "hull", 0, 0, 0, 0, 1, impulse, 0);
+	}
+
+	@Test
+	public void pointsAreSummedPerPair() {
+		ContactPairTracker tracker = new ContactPairTracker();
+		Recorder r = new Recorder();
+		tracker.addListener(r, true);
+		SimpleEntity a = entity(EntityType.DEFAULT, 0, 1);
+		SimpleEntity b = entity(EntityType.DEFAULT, 0, 1);
+		CollisionBatch batch = new CollisionBatch();
+		contact(batch, a, b, 1);
+		contact(batch, b, a, 2);
+		tracker.update(batch);
+		assertEquals(1, r.events.size());
+		assertEquals("begin", r.events.get(0));
+		assertEquals(2, r.pairs.get(0).pointCount);
+		assertEquals(3, r.pairs.get(0).normalImpulse, 1e-12);
+		assertEquals(1, tracker.size());
+	}
+
+	@Test
+	public void beginPersistEnd() {
+		ContactPairTracker tracker = new ContactPairTracker();
+		Recorder all = new Recorder();
+		Recorder edges = new Recorder();
+		tracker.addListener(all, true);
+		tracker.addListener(edges, false);
+		SimpleEntity a = entity(EntityType.DEFAULT, 0, 1);
+		SimpleEntity b = entity(EntityType.DEFAULT, 0, 1);
+		CollisionBatch batch = new CollisionBatch();
+		contact(batch, a, b, 1);
+		tracker.update(batch);
+		tracker.update(batch);
+		tracker.update(batch);
+		batch.clear();
+		tracker.update(batch);
+		tracker.update(batch);
+		assertEquals(4, all.events.size());
+		assertEquals("begin", all.events.get(0));
+		assertEquals("persist", all.events.get(1));
+		assertEquals("persist", all.events.get(2));
+		assertEquals("end", all.events.get(3));
+		assertEquals(0, all.pairs.get(3).pointCount);
+		assertEquals(2, edges.events.size());
+		assertEquals("end", edges.events.get(1));
+		assertEquals(0, tracker.size());
+	}
+
+	@Test
+	public void noTrackingWithoutListeners() {
+		ContactPairTracker tracker = new ContactPairTracker();
+		Recorder r = new Recorder();
+		tracker.addListener(r, false);
+		SimpleEntity a = entity(EntityType.DEFAULT, 0, 1);
+		SimpleEntity b = entity(EntityType.DEFAULT, 0, 1);
+		CollisionBatch batch = new CollisionBatch();
+		contact(batch, a, b, 1);
+		tracker.update(batch);
+		tracker.removeListener(r);
+		tracker.update(batch);
+		assertEquals(0, tracker.size());
+	}
+
+	@Test
+	public void restingContactProducesSingleBegin() {
+		PhysicsManager m = new SimplePhysicsManager();
+		m.initialiseWorld(new Vector2(0, -10));
+		PhysicsEntity ground = m.createEntity(new PhysicsEntityDefinition(EntityType.STATIC)
+				.addFixture(new FixtureDefinition(new Rectangle(10, 1))));
+		PhysicsEntity box = m.createEntity(new PhysicsEntityDefinition(EntityType.DEFAULT)
+				.setPosition(new Vector2(0, 1)).addFixture(new FixtureDefinition(new Rectangle(1, 1))));
+		m.spawnEntity(ground);
+		m.spawnEntity(box);
+		Recorder r = new Recorder();
+		m.addContactPairListener(r, false);
+		for (int i = 0; i < 600; i++)
+			m.stepWorld(1.0 / 60);
+		assertTrue(box.isAsleep());
+		assertEquals(1, r.events.size());
+		assertEquals("begin", r.events.get(0));
+		m.despawnEntity(box);
+		m.stepWorld(1.0 / 60);
+		assertEquals(2, r.events.size());
+		assertEquals("end", r.events.get(1));
+	}
+
+}
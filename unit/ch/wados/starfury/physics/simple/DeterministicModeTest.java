@@ -0,0 +1,197 @@
+package ch.wados.starfury.physics.simple;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.dyn4j.dynamics.World;
+import org.dyn4j.dynamics.contact.OrderedContactManager;
+import org.dyn4j.geometry.Circle;
+import org.dyn4j.geometry.Rectangle;
+import org.dyn4j.geometry.Vector2;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import ch.wados.starfury.physics.api.BroadphaseType;
+import ch.wados.starfury.physics.api.EntityType;
+import ch.wados.starfury.physics.api.FixtureDefinition;
+import ch.wados.starfury.physics.api.PhysicsEntity;
+import ch.wados.starfury.physics.api.PhysicsEntityDefinition;
+import ch.wados.starfury.physics.api.PhysicsManager;
+import ch.wados.starfury.physics.api.PhysicsWorldConfig;
+
+public class DeterministicModeTest {
+
+	private static final double STEP = 1 / 60.0;
+
+	@Rule
+	public ExpectedException thrown = ExpectedException.none();
+
+	private static PhysicsWorldConfig config(BroadphaseType broadphase) {
+		return new PhysicsWorldConfig().setGravity(new Vector2(0, -10)).setBroadphase(broadphase)
+				.setDeterministicStep(STEP);
+	}
+
+	/**
+	 * Runs a scenario with contacts, spawns, despawns and impulses and
+	 * records the state hash after every step.
+	 */
+	private static long[] run(PhysicsManager m) {
+		m.spawnEntity(m.createEntity(new PhysicsEntityDefinition(EntityType.STATIC)
+				.addFixture(new FixtureDefinition(new Rectangle(50, 1)))));
+		PhysicsEntityDefinition box = new PhysicsEntityDefinition(EntityType.DEFAULT)
+				.addFixture(new FixtureDefinition(new Rectangle(1, 1)));
+		for (int i = 0; i < 30; i++)
+			m.spawnEntity(m.createEntity(box.setPosition(new Vector2((i % 6) * 1.1 - 3, 1 + (i / 6) * 1.1))));
+		long[] hashes = new long[120];
+		for (int step = 0; step < hashes.length; step++) {
+			if (step == 20)
+				m.despawnEntity(m.getSpawnedEntities().get(7));
+			if (step == 40) {
+				List<PhysicsEntity> balls = new ArrayList<>();
+				for (int i = 0; i < 5; i++)
+					balls.add(m.createEntity(new PhysicsEntityDefinition(EntityType.DEFAULT)
+							.setPosition(new Vector2(i - 2, 12)).addFixture(new FixtureDefinition(new Circle(0.4)))));
+				m.spawnEntities(balls);
+			}
+			if (step == 60)
+				m.getSpawnedEntities().get(3).applyImpulse(new Vector2(0, 2), new Vector2(5, 0));
+			m.stepWorld(STEP);
+			hashes[step] = m.getStateHash();
+		}
+		return hashes;
+	}
+
+	@Test
+	public void reproducible() {
+		for (BroadphaseType type : new BroadphaseType[] { BroadphaseType.DYNAMIC_AABB_TREE,
+				BroadphaseType.UNIFORM_GRID }) {
+			PhysicsManager a = new SimplePhysicsManager();
+			a.initialiseWorld(config(type));
+			PhysicsManager b = new SimplePhysicsManager();
+			b.initialiseWorld(config(type));
+			assertArrayEquals(run(a), run(b));
+		}
+	}
+
+	@Test
+	public void eventOrderReproducible() {
+		List<List<Integer>> orders = new ArrayList<>();
+		for (int run = 0; run < 2; run++) {
+			PhysicsManager m = new SimplePhysicsManager();
+			m.initialiseWorld(config(BroadphaseType.DYNAMIC_AABB_TREE));
+			List<Integer> order = new ArrayList<>();
+			m.addCollisionBatchListener(batch -> {
+				List<PhysicsEntity> spawned = m.getSpawnedEntities();
+				for (int i = 0; i < batch.size(); i++) {
+					order.add(spawned.indexOf(batch.getEntity0(i)));
+					order.add(spawned.indexOf(batch.getEntity1(i)));
+				}
+			});
+			run(m);
+			orders.add(order);
+		}
+		assertFalse(orders.get(0).isEmpty());
+		assertEquals(orders.get(0), orders.get(1));
+	}
+
+	@Test
+	public void orderedContactManager() {
+		World world = WorldFactory.create(config(BroadphaseType.DYNAMIC_AABB_TREE));
+		assertTrue(world.getContactManager() instanceof OrderedContactManager);
+		world = WorldFactory.create(new PhysicsWorldConfig());
+		assertFalse(world.getContactManager() instanceof OrderedContactManager);
+	}
+
+	@Test
+	public void shardedReproducible() {
+		PhysicsManager a = new ShardedPhysicsManager(12, 3);
+		a.initialiseWorld(config(BroadphaseType.DYNAMIC_AABB_TREE));
+		PhysicsManager b = new ShardedPhysicsManager(12, 3);
+		b.initialiseWorld(config(BroadphaseType.DYNAMIC_AABB_TREE));
+		assertArrayEquals(run(a), run(b));
+	}
+
+	@Test
+	public void hashDetectsDivergence() {
+		PhysicsManager a = new SimplePhysicsManager();
+		a.initialiseWorld(config(BroadphaseType.DYNAMIC_AABB_TREE));
+		PhysicsManager b = new SimplePhysicsManager();
+		b.initialiseWorld(config(BroadphaseType.DYNAMIC_AABB_TREE));
+		for (PhysicsManager m : new PhysicsManager[] { a, b })
+			m.spawnEntity(m.createEntity(new PhysicsEntityDefinition(EntityType.DEFAULT)
+					.addFixture(new FixtureDefinition(new Circle(1)))));
+		a.stepWorld(STEP);
+		b.stepWorld(STEP);
+		assertEquals(a.getStateHash(), b.getStateHash());
+		Vector2 p = b.getSpawnedEntities().get(0).getPosition();
+		b.getSpawnedEntities().get(0).setPosition(new Vector2(Math.nextUp(p.x), p.y));
+		a.stepWorld(STEP);
+		b.stepWorld(STEP);
+		assertNotEquals(a.getStateHash(), b.getStateHash());
+		// the hash is rolling, so the difference persists
+		b.getSpawnedEntities().get(0).setPosition(a.getSpawnedEntities().get(0).getPosition());
+		b.getSpawnedEntities().get(0).setLinearVelocity(a.getSpawnedEntities().get(0).getLinearVelocity());
+		a.stepWorld(STEP);
+		b.stepWorld(STEP);
+		assertNotEquals(a.getStateHash(), b.getStateHash());
+	}
+
+	@Test
+	public void emptyStepChangesHash() {
+		PhysicsManager m = new SimplePhysicsManager();
+		m.initialiseWorld(config(BroadphaseType.DYNAMIC_AABB_TREE));
+		assertEquals(0, m.getStateHash());
+		m.stepWorld(STEP);
+		long first = m.getStateHash();
+		assertNotEquals(0, first);
+		m.stepWorld(STEP);
+		assertNotEquals(first, m.getStateHash());
+	}
+
+	@Test
+	public void despawnKeepsSpawnOrder() {
+		for (PhysicsManager m : new PhysicsManager[] { new SimplePhysicsManager(),
+				new ShardedPhysicsManager(12, 3) }) {
+			m.initialiseWorld(config(BroadphaseType.DYNAMIC_AABB_TREE));
+			List<PhysicsEntity> entities = new ArrayList<>();
+			for (int i = 0; i < 10; i++) {
+				PhysicsEntity e = m.createEntity(new PhysicsEntityDefinition(EntityType.DEFAULT)
+						.setPosition(new Vector2(i * 5, 0)).addFixture(new FixtureDefinition(new Circle(1))));
+				m.spawnEntity(e);
+				entities.add(e);
+			}
+			m.despawnEntity(entities.remove(2));
+			m.despawnEntity(entities.remove(0));
+			m.stepWorld(STEP);
+			assertEquals(entities, m.getSpawnedEntities());
+		}
+	}
+
+	@Test
+	public void hashDisabledByDefault() {
+		PhysicsManager m = new SimplePhysicsManager();
+		m.initialiseWorld(new Vector2(0, 0));
+		m.stepWorld(STEP);
+		assertEquals(0, m.getStateHash());
+	}
+
+	@Test
+	public void variableStepRejected() {
+		PhysicsManager m = new SimplePhysicsManager();
+		m.initialiseWorld(config(BroadphaseType.DYNAMIC_AABB_TREE));
+		thrown.expect(IllegalArgumentException.class);
+		m.stepWorld(STEP * 2);
+	}
+
+	@Test
+	public void shardedVariableStepRejected() {
+		PhysicsManager m = new ShardedPhysicsManager(12, 3);
+		m.initialiseWorld(config(BroadphaseType.DYNAMIC_AABB_TREE));
+		thrown.expect(IllegalArgumentException.class);
+		m.stepWorld(STEP / 2);
+	}
+
+}
@@ -0,0 +1,145 @@
+package ch.wados.starfury.physics.simple;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.dyn4j.Epsilon;
+import org.dyn4j.geometry.Circle;
+import org.dyn4j.geometry.Vector2;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import ch.wados.starfury.physics.api.EntityStateBuffer;
+import ch.wados.starfury.physics.api.EntityType;
+import ch.wados.starfury.physics.api.FixtureDefinition;
+import ch.wados.starfury.physics.api.PhysicsEntity;
+import ch.wados.starfury.physics.api.PhysicsEntityDefinition;
+
+public class EntityRegistryTest {
+
+	@Rule
+	public ExpectedException thrown = ExpectedException.none();
+
+	private static final PhysicsEntityDefinition DEF = new PhysicsEntityDefinition(EntityType.DEFAULT)
+			.addFixture(new FixtureDefinition(new Circle(0.5)));
+
+	private static SimplePhysicsManager manager() {
+		SimplePhysicsManager m = new SimplePhysicsManager();
+		m.initialiseWorld(new Vector2(0, 0));
+		return m;
+	}
+
+	private static List<PhysicsEntity> entities(SimplePhysicsManager m, int count) {
+		List<PhysicsEntity> list = new ArrayList<>();
+		for (int i = 0; i < count; i++)
+			list.add(m.createEntity(new PhysicsEntityDefinition(DEF).setPosition(new Vector2(3 * i, 0))));
+		return list;
+	}
+
+	@Test
+	public void swapRemoveKeepsSlotsConsistent() {
+		EntityRegistry r = new EntityRegistry();
+		List<PhysicsEntity> list = entities(manager(), 5);
+		for (PhysicsEntity e : list)
+			r.add((SimpleEntity) e);
+		r.remove((SimpleEntity) list.get(1));
+		r.remove((SimpleEntity) list.get(4));
+		assertEquals(3, r.size());
+		for (int i = 0; i < r.size(); i++)
+			assertEquals(i, r.get(i).slot);
+		assertFalse(r.contains((SimpleEntity) list.get(1)));
+		assertFalse(r.contains((SimpleEntity) list.get(4)));
+		assertTrue(r.contains((SimpleEntity) list.get(3)));
+	}
+
+	@Test
+	public void bulkOperationsCommitAtStep() {
+		SimplePhysicsManager m = manager();
+		List<PhysicsEntity> list = entities(m, 10);
+		m.spawnEntities(list);
+		assertTrue(m.getSpawnedEntities().isEmpty());
+		m.stepWorld(0.01);
+		assertEquals(10, m.getSpawnedEntities().size());
+		m.despawnEntities(list.subList(2, 7));
+		assertEquals(10, m.getSpawnedEntities().size());
+		m.stepWorld(0.01);
+		assertEquals(5, m.getSpawnedEntities().size());
+		for (PhysicsEntity e : list.subList(2, 7))
+			assertFalse(m.getSpawnedEntities().contains(e));
+	}
+
+	@Test
+	public void duplicateInBulkSpawnQueuesNothing() {
+		SimplePhysicsManager m = manager();
+		List<PhysicsEntity> list = entities(m, 2);
+		try {
+			m.spawnEntities(Arrays.asList(list.get(0), list.get(1), list.get(0)));
+			fail();
+		} catch (IllegalStateException e) {
+			// expected
+		}
+		m.stepWorld(0.01);
+		assertTrue(m.getSpawnedEntities().isEmpty());
+		// the rejected entities must not remain marked as queued
+		m.spawnEntities(list);
+		m.stepWorld(0.01);
+		assertEquals(2, m.getSpawnedEntities().size());
+	}
+
+	@Test
+	public void bulkDespawnRequiresSpawned() {
+		SimplePhysicsManager m = manager();
+		thrown.expect(IllegalStateException.class);
+		m.despawnEntities(entities(m, 1));
+	}
+
+	@Test
+	public void despawnRequiresSpawned() {
+		SimplePhysicsManager m = manager();
+		thrown.expect(IllegalStateException.class);
+		m.despawnEntity(entities(m, 1).get(0));
+	}
+
+	@Test
+	public void queuedEntityCannotBeSpawnedDirectly() {
+		SimplePhysicsManager m = manager();
+		List<PhysicsEntity> list = entities(m, 1);
+		m.spawnEntities(list);
+		thrown.expect(IllegalStateException.class);
+		m.spawnEntity(list.get(0));
+	}
+
+	@Test
+	public void exportMatchesEntityState() {
+		SimplePhysicsManager m = manager();
+		List<PhysicsEntity> list = entities(m, 100);
+		for (int i = 0; i < list.size(); i++) {
+			list.get(i).setLinearVelocity(new Vector2(i, -i));
+			list.get(i).setAngularVelocity(0.1 * i);
+			list.get(i).setOrientation(0.01 * i);
+		}
+		m.spawnEntities(list);
+		m.stepWorld(0.01);
+		EntityStateBuffer buffer = new EntityStateBuffer(1);
+		m.exportState(buffer);
+		assertEquals(100, buffer.size());
+		for (int i = 0; i < buffer.size(); i++) {
+			PhysicsEntity e = buffer.getEntities()[i];
+			assertSame(m.getSpawnedEntities().get(i), e);
+			assertEquals(e.getPosition().x, buffer.getX()[i], Epsilon.E);
+			assertEquals(e.getPosition().y, buffer.getY()[i], Epsilon.E);
+			assertEquals(e.getOrientation(), buffer.getAngle()[i], Epsilon.E);
+			assertEquals(e.getLinearVelocity().x, buffer.getVelocityX()[i], Epsilon.E);
+			assertEquals(e.getLinearVelocity().y, buffer.getVelocityY()[i], Epsilon.E);
+			assertEquals(e.getAngularVelocity(), buffer.getAngularVelocity()[i], Epsilon.E);
+		}
+		m.despawnEntity(list.get(0));
+		m.exportState(buffer);
+		assertEquals(99, buffer.size());
+	}
+
+}
@@ -0,0 +1,91 @@
+package ch.wados.starfury.physics.simple;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.dyn4j.geometry.Rectangle;
+import org.dyn4j.geometry.Vector2;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import ch.wados.starfury.physics.api.CollisionPoint;
+import ch.wados.starfury.physics.api.EntityType;
+import ch.wados.starfury.physics.api.FixtureDefinition;
+import ch.wados.starfury.physics.api.PhysicsEntity;
+import ch.wados.starfury.physics.api.PhysicsEntityDefinition;
+
+public class FixtureHandleTest {
+
+	@Rule
+	public ExpectedException thrown = ExpectedException.none();
+
+	private static PhysicsEntityDefinition box(double x, String... ids) {
+		PhysicsEntityDefinition def = new PhysicsEntityDefinition(EntityType.DEFAULT).setPosition(new Vector2(x, 0));
+		for (String id : ids)
+			def.addFixture(new FixtureDefinition(new Rectangle(1, 1)).setIdentifier(id));
+		return def;
+	}
+
+	@Test
+	public void handlesResolveIdentifiers() {
+		PhysicsEntity e = new SimpleEntity(box(0, "a", "b"));
+		int a = e.getFixtureHandle("a");
+		int b = e.getFixtureHandle("b");
+		assertNotEquals(a, b);
+		assertEquals("a", e.getFixtureIdentifier(a));
+		assertEquals("b", e.getFixtureIdentifier(b));
+		e.setSensor(b, true);
+		assertTrue(e.isSensor("b"));
+		assertFalse(e.isSensor(a));
+	}
+
+	@Test
+	public void anonymousFixturesHaveHandles() {
+		PhysicsEntity e = new SimpleEntity(box(0));
+		int handle = e.addFixture(new FixtureDefinition(new Rectangle(1, 1)));
+		assertNull(e.getFixtureIdentifier(handle));
+		assertFalse(e.isSensor(handle));
+	}
+
+	@Test
+	public void handlesAreNotReused() {
+		PhysicsEntity e = new SimpleEntity(box(0, "a"));
+		int a = e.getFixtureHandle("a");
+		e.removeFixture(a);
+		assertEquals(0, e.getFixtureCount());
+		int c = e.addFixture(new FixtureDefinition(new Rectangle(1, 1)).setIdentifier("a"));
+		assertNotEquals(a, c);
+		thrown.expect(IllegalArgumentException.class);
+		e.isSensor(a);
+	}
+
+	@Test
+	public void unknownHandleRemovalIsIgnored() {
+		PhysicsEntity e = new SimpleEntity(box(0, "a"));
+		e.removeFixture(42);
+		e.removeFixture(-1);
+		assertEquals(1, e.getFixtureCount());
+	}
+
+	@Test
+	public void collisionPointsCarryHandles() {
+		SimplePhysicsManager m = new SimplePhysicsManager();
+		m.initialiseWorld(new Vector2(0, 0));
+		PhysicsEntity e0 = m.createEntity(box(0, "x", "y"));
+		PhysicsEntity e1 = m.createEntity(box(0.9, "z"));
+		m.spawnEntity(e0);
+		m.spawnEntity(e1);
+		List<CollisionPoint> points = new ArrayList<>();
+		m.addCollisionListener(points::add);
+		m.stepWorld(0.01);
+		assertFalse(points.isEmpty());
+		for (CollisionPoint cp : points) {
+			assertEquals(cp.fixture0, cp.entity0.getFixtureIdentifier(cp.fixtureHandle0));
+			assertEquals(cp.fixture1, cp.entity1.getFixtureIdentifier(cp.fixtureHandle1));
+		}
+	}
+
+}
@@ -0,0 +1,367 @@
+package ch.wados.starfury.physics.simple;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.dyn4j.geometry.AABB;
+import org.dyn4j.geometry.Rectangle;
+import org.dyn4j.geometry.Vector2;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import ch.wados.starfury.physics.api.DistanceLodPolicy;
+import ch.wados.starfury.physics.api.EntityType;
+import ch.wados.starfury.physics.api.FixtureDefinition;
+import ch.wados.starfury.physics.api.PhysicsEntity;
+import ch.wados.starfury.physics.api.PhysicsEntityDefinition;
+import ch.wados.starfury.physics.api.PhysicsManager;
+import ch.wados.starfury.physics.api.PhysicsWorldConfig;
+import ch.wados.starfury.physics.api.RaycastHit;
+import ch.wados.starfury.physics.api.ThrustPointDefinition;
+
+public class LevelOfDetailTest {
+
+	private static final double STEP = 1 / 60.0;
+
+	@Rule
+	public ExpectedException thrown = ExpectedException.none();
+
+	private static SimplePhysicsManager manager(int historyLength) {
+		SimplePhysicsManager m = new SimplePhysicsManager();
+		m.initialiseWorld(new PhysicsWorldConfig().setGravity(new Vector2()).setHistoryLength(historyLength));
+		return m;
+	}
+
+	private static PhysicsEntityDefinition ship(EntityType type) {
+		return new PhysicsEntityDefinition(type)
+				.addFixture(new FixtureDefinition(new Rectangle(2, 1)).setIdentifier("hull"))
+				.addThrustPoint(new ThrustPointDefinition(new Vector2(-1, 0), new Vector2(1, 0), "main"));
+	}
+
+	private static PhysicsEntity spawn(SimplePhysicsManager m, EntityType type, double x, double y, double vx) {
+		PhysicsEntity e = m.createEntity(ship(type).setPosition(new Vector2(x, y)));
+		e.setLinearVelocity(new Vector2(vx, 0));
+		m.spawnEntity(e);
+		return e;
+	}
+
+	/**
+	 * Spawns an observer at the origin and enables a policy reducing all
+	 * entities beyond 100 to every 4th step.
+	 */
+	private static PhysicsEntity observe(SimplePhysicsManager m) {
+		PhysicsEntity observer = spawn(m, EntityType.DEFAULT, 0, 0, 0);
+		m.addLodObserver(observer);
+		m.setLodPolicy(new DistanceLodPolicy().addTier(100, 4));
+		return observer;
+	}
+
+	private static void step(SimplePhysicsManager m, int steps) {
+		for (int i = 0; i < steps; i++)
+			m.stepWorld(STEP);
+	}
+
+	@Test
+	public void distantEntitiesAreReduced() {
+		SimplePhysicsManager m = manager(0);
+		PhysicsEntity observer = observe(m);
+		PhysicsEntity near = spawn(m, EntityType.DEFAULT, 50, 0, 0);
+		List<PhysicsEntity> far = new ArrayList<>();
+		for (int i = 0; i < 10; i++)
+			far.add(spawn(m, EntityType.DEFAULT, 1000, i * 20, 10));
+		step(m, LevelOfDetail.DEMOTION_STRIDE + 1);
+		assertEquals(10, m.getReducedCount());
+		assertEquals(1, m.getLodInterval(observer));
+		assertEquals(1, m.getLodInterval(near));
+		for (PhysicsEntity e : far)
+			assertEquals(4, m.getLodInterval(e));
+	}
+
+	@Test
+	public void reducedEntitiesFollowTheirVelocity() {
+		SimplePhysicsManager m = manager(0);
+		observe(m);
+		PhysicsEntity e = spawn(m, EntityType.DEFAULT, 1000, 0, 10);
+		step(m, 40);
+		assertEquals(4, m.getLodInterval(e));
+		// promoting catches up on the pending steps
+		m.setLodPolicy(null);
+		assertEquals(0, m.getReducedCount());
+		assertEquals(1, m.getLodInterval(e));
+		assertEquals(1000 + 10 * 40 * STEP, e.getTransform().getTranslationX(), 1e-9);
+		assertEquals(0, e.getTransform().getTranslationY(), 1e-9);
+	}
+
+	@Test
+	public void reducedEntitiesApplyThrust() {
+		SimplePhysicsManager reference = manager(0);
+		PhysicsEntity expected = spawn(reference, EntityType.DEFAULT, 1000, 0, 0);
+		expected.setThrust("main", 5);
+		SimplePhysicsManager m = manager(0);
+		observe(m);
+		PhysicsEntity e = spawn(m, EntityType.DEFAULT, 1000, 0, 0);
+		e.setThrust("main", 5);
+		step(reference, 40);
+		step(m, 40);
+		m.setLodPolicy(null);
+		assertEquals(expected.getLinearVelocity().x, e.getLinearVelocity().x, 1e-9);
+		assertEquals(expected.getTransform().getTranslationX(), e.getTransform().getTranslationX(), 0.1);
+	}
+
+	@Test
+	public void reducedEntitiesApplyDamping() {
+		SimplePhysicsManager reference = manager(0);
+		PhysicsEntity expected = spawn(reference, EntityType.DEFAULT, 1000, 0, 10);
+		((SimpleEntity) expected).getBody().setLinearDamping(1);
+		((SimpleEntity) expected).getBody().setAngularDamping(2);
+		expected.setAngularVelocity(1);
+		SimplePhysicsManager m = manager(0);
+		observe(m);
+		PhysicsEntity e = spawn(m, EntityType.DEFAULT, 1000, 0, 10);
+		((SimpleEntity) e).getBody().setLinearDamping(1);
+		((SimpleEntity) e).getBody().setAngularDamping(2);
+		e.setAngularVelocity(1);
+		step(reference, 40);
+		step(m, 40);
+		m.setLodPolicy(null);
+		assertEquals(expected.getLinearVelocity().x, e.getLinearVelocity().x, 1e-12);
+		assertEquals(expected.getAngularVelocity(), e.getAngularVelocity(), 1e-12);
+		assertEquals(expected.getTransform().getTranslationX(), e.getTransform().getTranslationX(), 1e-9);
+		assertEquals(expected.getTransform().getRotation(), e.getTransform().getRotation(), 1e-9);
+	}
+
+	@Test
+	public void approachingObserverPromotes() {
+		SimplePhysicsManager m = manager(0);
+		PhysicsEntity observer = observe(m);
+		PhysicsEntity e = spawn(m, EntityType.DEFAULT, 150, 0, 0);
+		step(m, LevelOfDetail.DEMOTION_STRIDE);
+		assertEquals(4, m.getLodInterval(e));
+		observer.setLinearVelocity(new Vector2(60, 0));
+		step(m, 60);
+		assertEquals(1, m.getLodInterval(e));
+		assertEquals(0, m.getReducedCount());
+	}
+
+	@Test
+	public void approachingEntitiesPromote() {
+		SimplePhysicsManager m = manager(0);
+		observe(m);
+		PhysicsEntity a = spawn(m, EntityType.DEFAULT, 1000, 0, 10);
+		PhysicsEntity b = spawn(m, EntityType.DEFAULT, 1040, 0, -10);
+		step(m, LevelOfDetail.DEMOTION_STRIDE);
+		assertEquals(2, m.getReducedCount());
+		step(m, 180);
+		// both were promoted in time to collide
+		assertTrue(a.getTransform().getTranslationX() < b.getTransform().getTranslationX());
+		assertTrue(a.getLinearVelocity().x < 10);
+		assertTrue(b.getLinearVelocity().x > -10);
+	}
+
+	/**
+	 * Reduces every entity but the observer to every 8th step, with a small
+	 * margin. An entity passing at 100 m/s covers 13 m within an interval,
+	 * far more than the margin.
+	 */
+	private static PhysicsEntity observeFast(SimplePhysicsManager m) {
+		PhysicsEntity observer = spawn(m, EntityType.DEFAULT, -60, 0, 0);
+		m.addLodObserver(observer);
+		m.setLodPolicy(distance -> distance == 0 ? 1 : 8);
+		m.setLodMargin(1);
+		return observer;
+	}
+
+	@Test
+	public void fastShipsDoNotPassReducedEntities() {
+		SimplePhysicsManager m = manager(0);
+		PhysicsEntity ship = observeFast(m);
+		PhysicsEntity e = spawn(m, EntityType.DEFAULT, 0, 0, 0);
+		step(m, LevelOfDetail.DEMOTION_STRIDE);
+		assertEquals(8, m.getLodInterval(e));
+		ship.setLinearVelocity(new Vector2(100, 0));
+		step(m, 60);
+		assertEquals(1, m.getLodInterval(e));
+		// the ship hit the entity instead of passing through it
+		assertTrue(e.getLinearVelocity().x > 0);
+		assertTrue(ship.getLinearVelocity().x < 100);
+	}
+
+	@Test
+	public void fastReducedEntitiesDoNotPassShips() {
+		SimplePhysicsManager m = manager(0);
+		PhysicsEntity ship = observeFast(m);
+		PhysicsEntity e = spawn(m, EntityType.DEFAULT, 0, 0, 0);
+		step(m, LevelOfDetail.DEMOTION_STRIDE);
+		assertEquals(8, m.getLodInterval(e));
+		e.setLinearVelocity(new Vector2(-100, 0));
+		step(m, 60);
+		assertEquals(1, m.getLodInterval(e));
+		assertTrue(e.getLinearVelocity().x > -100);
+		assertTrue(ship.getLinearVelocity().x < 0);
+	}
+
+	@Test
+	public void crowdedEntitiesAreNotReduced() {
+		SimplePhysicsManager m = manager(0);
+		observe(m);
+		PhysicsEntity a = spawn(m, EntityType.DEFAULT, 1000, 0, 0);
+		PhysicsEntity b = spawn(m, EntityType.DEFAULT, 1005, 0, 0);
+		step(m, 2 * LevelOfDetail.DEMOTION_STRIDE);
+		assertEquals(1, m.getLodInterval(a));
+		assertEquals(1, m.getLodInterval(b));
+		m.setLodMargin(1);
+		step(m, LevelOfDetail.DEMOTION_STRIDE);
+		assertEquals(2, m.getReducedCount());
+	}
+
+	@Test
+	public void staticEntitiesAreNotReduced() {
+		SimplePhysicsManager m = manager(0);
+		observe(m);
+		PhysicsEntity e = spawn(m, EntityType.STATIC, 1000, 0, 0);
+		step(m, 2 * LevelOfDetail.DEMOTION_STRIDE);
+		assertEquals(1, m.getLodInterval(e));
+		assertEquals(0, m.getReducedCount());
+	}
+
+	@Test
+	public void noObserversReducesAll() {
+		SimplePhysicsManager m = manager(0);
+		PhysicsEntity observer = observe(m);
+		PhysicsEntity e = spawn(m, EntityType.DEFAULT, 50, 0, 0);
+		m.removeLodObserver(observer);
+		step(m, LevelOfDetail.DEMOTION_STRIDE);
+		assertEquals(4, m.getLodInterval(e));
+		assertEquals(4, m.getLodInterval(observer));
+	}
+
+	@Test
+	public void queriesFindReducedEntities() {
+		SimplePhysicsManager m = manager(0);
+		observe(m);
+		PhysicsEntity e = spawn(m, EntityType.DEFAULT, 1000, 0, 10);
+		step(m, 40);
+		assertEquals(4, m.getLodInterval(e));
+		double x = e.getTransform().getTranslationX();
+		assertTrue(x > 1005);
+		RaycastHit hit = new RaycastHit();
+		assertTrue(m.raycast(new Vector2(x, 50), new Vector2(0, -1), 100, hit));
+		assertSame(e, hit.getEntity());
+		List<PhysicsEntity> results = new ArrayList<>();
+		m.queryAABB(new AABB(x - 0.5, -0.5, x + 0.5, 0.5), results);
+		assertTrue(results.contains(e));
+		results.clear();
+		m.queryAABB(new AABB(999.5, -0.5, 1000.5, 0.5), results);
+		assertFalse(results.contains(e));
+	}
+
+	@Test
+	public void despawnReducedEntity() {
+		SimplePhysicsManager m = manager(0);
+		observe(m);
+		PhysicsEntity e = spawn(m, EntityType.DEFAULT, 1000, 0, 10);
+		step(m, LevelOfDetail.DEMOTION_STRIDE);
+		assertEquals(1, m.getReducedCount());
+		m.despawnEntity(e);
+		step(m, 1);
+		assertEquals(0, m.getReducedCount());
+		assertEquals(1, m.getLodInterval(e));
+		assertTrue(((SimpleEntity) e).getBody().isActive());
+	}
+
+	@Test
+	public void rewindRestoresLevelOfDetail() {
+		SimplePhysicsManager control = manager(32);
+		observe(control);
+		PhysicsEntity expected = spawn(control, EntityType.DEFAULT, 1000, 0, 10);
+		SimplePhysicsManager m = manager(32);
+		observe(m);
+		PhysicsEntity e = spawn(m, EntityType.DEFAULT, 1000, 0, 10);
+		step(control, 22);
+		step(m, 22);
+		// rewind into the middle of an interval and come back
+		m.rewind(m.getStep() - 2);
+		assertEquals(1, m.getReducedCount());
+		assertEquals(4, m.getLodInterval(e));
+		step(m, 2 + 24);
+		step(control, 24);
+		assertEquals(expected.getTransform().getTranslationX(), e.getTransform().getTranslationX(), 0);
+		m.setLodPolicy(null);
+		control.setLodPolicy(null);
+		assertEquals(expected.getTransform().getTranslationX(), e.getTransform().getTranslationX(), 0);
+		assertEquals(1000 + 10 * 46 * STEP, e.getTransform().getTranslationX(), 1e-9);
+	}
+
+	@Test
+	public void rewindBeforeReduction() {
+		SimplePhysicsManager m = manager(32);
+		observe(m);
+		PhysicsEntity e = spawn(m, EntityType.DEFAULT, 1000, 0, 10);
+		step(m, 1);
+		long step = m.getStep();
+		step(m, 20);
+		assertEquals(1, m.getReducedCount());
+		m.rewind(step);
+		assertEquals(0, m.getReducedCount());
+		assertEquals(1, m.getLodInterval(e));
+		assertTrue(((SimpleEntity) e).getBody().isActive());
+	}
+
+	private static byte[] save(PhysicsManager m) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		m.saveSnapshot(Channels.newChannel(out));
+		return out.toByteArray();
+	}
+
+	@Test
+	public void snapshotKeepsAccumulatedTime() throws IOException {
+		SimplePhysicsManager m = manager(0);
+		observe(m);
+		PhysicsEntity e = spawn(m, EntityType.DEFAULT, 1000, 0, 10);
+		step(m, 42);
+		assertEquals(4, m.getLodInterval(e));
+		byte[] data = save(m);
+		// the saving manager still holds the entity at its last position
+		m.setLodPolicy(null);
+		double x = e.getTransform().getTranslationX();
+		assertEquals(1000 + 10 * 42 * STEP, x, 1e-9);
+		// restored without level of detail, the entities catch up at once
+		SimplePhysicsManager copy = manager(0);
+		copy.restoreSnapshot(Channels.newChannel(new ByteArrayInputStream(data)));
+		assertEquals(0, copy.getReducedCount());
+		assertEquals(1, copy.getLodInterval(copy.getSpawnedEntities().get(1)));
+		assertEquals(x, copy.getSpawnedEntities().get(1).getTransform().getTranslationX(), 0);
+		ShardedPhysicsManager sharded = new ShardedPhysicsManager(100, 3);
+		sharded.initialiseWorld(new Vector2());
+		sharded.restoreSnapshot(Channels.newChannel(new ByteArrayInputStream(data)));
+		SimpleEntity r = (SimpleEntity) sharded.getSpawnedEntities().get(1);
+		assertEquals(x, r.getTransform().getTranslationX(), 0);
+		assertTrue(r.getBody().isActive());
+		// restored with level of detail, the entity remains reduced
+		SimplePhysicsManager reduced = manager(0);
+		reduced.setLodPolicy(new DistanceLodPolicy().addTier(100, 4));
+		reduced.restoreSnapshot(Channels.newChannel(new ByteArrayInputStream(data)));
+		assertEquals(1, reduced.getReducedCount());
+		assertEquals(4, reduced.getLodInterval(reduced.getSpawnedEntities().get(1)));
+	}
+
+	@Test
+	public void policyBeforeInitialisation() {
+		thrown.expect(IllegalStateException.class);
+		new SimplePhysicsManager().setLodPolicy(new DistanceLodPolicy());
+	}
+
+	@Test
+	public void negativeMargin() {
+		thrown.expect(IllegalArgumentException.class);
+		manager(0).setLodMargin(-1);
+	}
+
+}
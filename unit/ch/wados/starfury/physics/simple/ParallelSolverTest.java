@@ -0,0 +1,198 @@
+package ch.wados.starfury.physics.simple;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.dyn4j.dynamics.Body;
+import org.dyn4j.dynamics.Capacity;
+import org.dyn4j.dynamics.ParallelWorld;
+import org.dyn4j.dynamics.World;
+import org.dyn4j.dynamics.contact.ContactAdapter;
+import org.dyn4j.dynamics.contact.ContactPoint;
+import org.dyn4j.dynamics.contact.OrderedContactManager;
+import org.dyn4j.dynamics.contact.PersistedContactPoint;
+import org.dyn4j.geometry.Geometry;
+import org.dyn4j.geometry.MassType;
+import org.dyn4j.geometry.Rectangle;
+import org.dyn4j.geometry.Vector2;
+import org.junit.AfterClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import ch.wados.starfury.physics.api.CollisionBatch;
+import ch.wados.starfury.physics.api.EntityType;
+import ch.wados.starfury.physics.api.FixtureDefinition;
+import ch.wados.starfury.physics.api.PhysicsEntity;
+import ch.wados.starfury.physics.api.PhysicsEntityDefinition;
+import ch.wados.starfury.physics.api.PhysicsManager;
+import ch.wados.starfury.physics.api.PhysicsWorldConfig;
+
+public class ParallelSolverTest {
+
+	private static final double STEP = 1 / 60.0;
+	private static final ForkJoinPool POOL = new ForkJoinPool(4);
+
+	@Rule
+	public ExpectedException thrown = ExpectedException.none();
+
+	@AfterClass
+	public static void shutdown() {
+		POOL.shutdown();
+	}
+
+	/**
+	 * Drops 12 separate stacks of boxes onto a shared static floor. Every
+	 * stack forms at least one island until it falls asleep.
+	 */
+	private static List<Body> stacks(World world) {
+		world.setGravity(new Vector2(0, -10));
+		List<Body> bodies = new ArrayList<>();
+		Body floor = new Body();
+		floor.addFixture(new Rectangle(500, 1));
+		floor.setMass(MassType.INFINITE);
+		world.addBody(floor);
+		bodies.add(floor);
+		for (int s = 0; s < 12; s++)
+			for (int i = 0; i < 10; i++) {
+				Body box = new Body();
+				box.addFixture(Geometry.createSquare(1));
+				box.setMass(MassType.NORMAL);
+				box.translate(-200 + s * 30 + 0.05 * i, 1 + i * 1.1);
+				box.rotateAboutCenter(0.02 * i);
+				world.addBody(box);
+				bodies.add(box);
+			}
+		return bodies;
+	}
+
+	/**
+	 * Records the order of the contact callbacks as a hash.
+	 */
+	private static final class Order extends ContactAdapter {
+
+		private final List<Body> bodies;
+		long hash = 0;
+
+		Order(List<Body> bodies) {
+			this.bodies = bodies;
+		}
+
+		@Override
+		public boolean preSolve(ContactPoint point) {
+			this.add(point);
+			return true;
+		}
+
+		@Override
+		public boolean persist(PersistedContactPoint point) {
+			this.add(point);
+			return true;
+		}
+
+		private void add(ContactPoint point) {
+			this.hash = this.hash * 31 + this.bodies.indexOf(point.getBody1());
+			this.hash = this.hash * 31 + this.bodies.indexOf(point.getBody2());
+		}
+
+	}
+
+	@Test
+	public void identicalToStockStep() {
+		World stock = new World(Capacity.DEFAULT_CAPACITY);
+		// the stock contact manager notifies in the order of random body ids
+		stock.setContactManager(new OrderedContactManager(Capacity.DEFAULT_CAPACITY));
+		ParallelWorld parallel = new ParallelWorld(Capacity.DEFAULT_CAPACITY, POOL).setGrain(8);
+		List<Body> a = stacks(stock);
+		List<Body> b = stacks(parallel);
+		Order stockOrder = new Order(a);
+		Order parallelOrder = new Order(b);
+		stock.addListener(stockOrder);
+		parallel.addListener(parallelOrder);
+		int maxIslands = 0;
+		boolean slept = false;
+		for (int step = 0; step < 600; step++) {
+			stock.updatev(STEP);
+			parallel.updatev(STEP);
+			maxIslands = Math.max(maxIslands, parallel.getIslandCount());
+			for (int i = 0; i < a.size(); i++) {
+				Body x = a.get(i), y = b.get(i);
+				assertEquals(x.getTransform().getTranslationX(), y.getTransform().getTranslationX(), 0);
+				assertEquals(x.getTransform().getTranslationY(), y.getTransform().getTranslationY(), 0);
+				assertEquals(x.getTransform().getRotation(), y.getTransform().getRotation(), 0);
+				assertEquals(x.getLinearVelocity().x, y.getLinearVelocity().x, 0);
+				assertEquals(x.getLinearVelocity().y, y.getLinearVelocity().y, 0);
+				assertEquals(x.getAngularVelocity(), y.getAngularVelocity(), 0);
+				assertEquals(x.isAsleep(), y.isAsleep());
+				slept |= i > 0 && y.isAsleep();
+			}
+			assertEquals(stockOrder.hash, parallelOrder.hash);
+		}
+		// the boxes start separated, the stacks form at least one island each
+		assertTrue(maxIslands >= 12);
+		// some islands came to rest
+		assertTrue(slept);
+	}
+
+	private static List<PhysicsEntity> fleets(PhysicsManager m) {
+		List<PhysicsEntity> entities = new ArrayList<>();
+		PhysicsEntityDefinition ship = new PhysicsEntityDefinition(EntityType.DEFAULT)
+				.addFixture(new FixtureDefinition(new Rectangle(2, 1)));
+		for (int f = 0; f < 8; f++)
+			for (int i = 0; i < 12; i++) {
+				PhysicsEntity e = m.createEntity(new PhysicsEntityDefinition(ship)
+						.setPosition(new Vector2(f * 100 + (i % 4) * 3, (i / 4) * 3)));
+				e.setLinearVelocity(new Vector2(i % 2 == 0 ? 4 : -4, i % 3 - 1));
+				m.spawnEntity(e);
+				entities.add(e);
+			}
+		return entities;
+	}
+
+	@Test
+	public void managerIdenticalToSequential() {
+		PhysicsManager stock = new SimplePhysicsManager();
+		stock.initialiseWorld(new PhysicsWorldConfig().setDeterministicStep(STEP));
+		PhysicsManager parallel = new SimplePhysicsManager();
+		parallel.initialiseWorld(new PhysicsWorldConfig().setDeterministicStep(STEP).setSolverPool(POOL));
+		List<PhysicsEntity> a = fleets(stock);
+		List<PhysicsEntity> b = fleets(parallel);
+		long[] order = new long[2];
+		stock.addCollisionBatchListener(batch -> order[0] = hash(order[0], batch, a));
+		parallel.addCollisionBatchListener(batch -> order[1] = hash(order[1], batch, b));
+		for (int step = 0; step < 240; step++) {
+			stock.stepWorld(STEP);
+			parallel.stepWorld(STEP);
+			assertEquals(stock.getStateHash(), parallel.getStateHash());
+			assertEquals(order[0], order[1]);
+		}
+		assertNotEquals(0, order[0]);
+	}
+
+	private static long hash(long hash, CollisionBatch batch, List<PhysicsEntity> entities) {
+		for (int i = 0; i < batch.size(); i++) {
+			hash = hash * 31 + entities.indexOf(batch.getEntity0(i));
+			hash = hash * 31 + entities.indexOf(batch.getEntity1(i));
+			hash = hash * 31 + Double.hashCode(batch.getNormalImpulse(i));
+		}
+		return hash;
+	}
+
+	@Test
+	public void factorySelectsWorld() {
+		assertFalse(WorldFactory.create(new PhysicsWorldConfig()) instanceof ParallelWorld);
+		World world = WorldFactory.create(new PhysicsWorldConfig().setSolverPool(POOL));
+		assertTrue(world instanceof ParallelWorld);
+		assertSame(POOL, ((ParallelWorld) world).getPool());
+	}
+
+	@Test
+	public void invalidGrain() {
+		thrown.expect(IllegalArgumentException.class);
+		new ParallelWorld(Capacity.DEFAULT_CAPACITY, POOL).setGrain(0);
+	}
+
+}
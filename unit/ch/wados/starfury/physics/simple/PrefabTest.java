@@ -0,0 +1,91 @@
+package ch.wados.starfury.physics.simple;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.dyn4j.Epsilon;
+import org.dyn4j.geometry.Circle;
+import org.dyn4j.geometry.Mass;
+import org.dyn4j.geometry.Rectangle;
+import org.dyn4j.geometry.Vector2;
+import org.junit.Test;
+
+import ch.wados.starfury.physics.api.EntityType;
+import ch.wados.starfury.physics.api.FixtureDefinition;
+import ch.wados.starfury.physics.api.PhysicsEntityDefinition;
+import ch.wados.starfury.physics.api.ThrustPointDefinition;
+
+public class PrefabTest {
+
+	private static PhysicsEntityDefinition fighter(boolean locked) {
+		FixtureDefinition hull = new FixtureDefinition(new Rectangle(2, 1)).setIdentifier("hull");
+		FixtureDefinition nose = new FixtureDefinition(new Circle(0.5)).setIdentifier("nose")
+				.setDensityCoefficient(3);
+		ThrustPointDefinition main = new ThrustPointDefinition(new Vector2(-1, 0.2), new Vector2(1, 0), "main");
+		PhysicsEntityDefinition def = new PhysicsEntityDefinition(EntityType.DEFAULT).setMass(7)
+				.setPosition(new Vector2(3, 4)).setOrientation(0.5);
+		if (locked) {
+			hull.lock();
+			nose.lock();
+			main.lock();
+		}
+		def.addFixture(hull).addFixture(nose).addThrustPoint(main);
+		if (locked)
+			def.lock();
+		return def;
+	}
+
+	@Test
+	public void unlockedDefinitionsAreNotCompiled() {
+		SimplePhysicsManager m = new SimplePhysicsManager();
+		assertFalse(m.precompile(fighter(false)));
+		PhysicsEntityDefinition def = fighter(false);
+		def.lock();
+		// fixtures are still unlocked
+		assertFalse(m.precompile(def));
+	}
+
+	@Test
+	public void prefabEntityMatchesDirectEntity() {
+		PhysicsEntityDefinition def = fighter(true);
+		SimpleEntity direct = new SimpleEntity(def);
+		SimpleEntity prefab = new SimpleEntity(def, new Prefab(def));
+		Mass m0 = direct.body.getMass();
+		Mass m1 = prefab.body.getMass();
+		assertEquals(m0.getMass(), m1.getMass(), Epsilon.E);
+		assertEquals(m0.getInertia(), m1.getInertia(), Epsilon.E);
+		assertEquals(m0.getCenter(), m1.getCenter());
+		assertNotSame(m0, m1);
+		assertEquals(direct.body.getRotationDiscRadius(), prefab.body.getRotationDiscRadius(), Epsilon.E);
+		assertEquals(direct.getPosition().x, prefab.getPosition().x, Epsilon.E);
+		assertEquals(direct.getOrientation(), prefab.getOrientation(), Epsilon.E);
+		assertEquals(direct.getFixtureCount(), prefab.getFixtureCount());
+		direct.setThrust("main", 10);
+		prefab.setThrust("main", 10);
+		assertEquals(direct.getThrusters().getTorque().getTorque(), prefab.getThrusters().getTorque().getTorque(),
+				Epsilon.E);
+	}
+
+	@Test
+	public void concurrentPrewarm() throws Exception {
+		SimplePhysicsManager m = new SimplePhysicsManager();
+		PhysicsEntityDefinition def = fighter(true);
+		ExecutorService pool = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<Boolean>> results = new ArrayList<>();
+			for (int i = 0; i < 16; i++)
+				results.add(pool.submit(() -> m.precompile(def)));
+			for (Future<Boolean> f : results)
+				assertTrue(f.get());
+		} finally {
+			pool.shutdown();
+		}
+		assertNotSame(m.createEntity(def), m.createEntity(def));
+	}
+
+}
@@ -0,0 +1,164 @@
+package ch.wados.starfury.physics.simple;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.dyn4j.geometry.Circle;
+import org.dyn4j.geometry.Rectangle;
+import org.dyn4j.geometry.Vector2;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import ch.wados.starfury.physics.api.BroadphaseType;
+import ch.wados.starfury.physics.api.EntityType;
+import ch.wados.starfury.physics.api.FixtureDefinition;
+import ch.wados.starfury.physics.api.PhysicsEntity;
+import ch.wados.starfury.physics.api.PhysicsEntityDefinition;
+import ch.wados.starfury.physics.api.PhysicsManager;
+import ch.wados.starfury.physics.api.PhysicsWorldConfig;
+import ch.wados.starfury.physics.api.RayBatch;
+import ch.wados.starfury.physics.api.RaycastHit;
+
+public class RayBatchTest {
+
+	@Rule
+	public ExpectedException thrown = ExpectedException.none();
+
+	private static List<PhysicsManager> managers() {
+		List<PhysicsManager> list = new ArrayList<>();
+		for (BroadphaseType type : BroadphaseType.values()) {
+			PhysicsManager m = new SimplePhysicsManager();
+			m.initialiseWorld(new PhysicsWorldConfig().setBroadphase(type));
+			list.add(m);
+		}
+		PhysicsManager sharded = new ShardedPhysicsManager(12, 3);
+		sharded.initialiseWorld(new Vector2(0, 0));
+		list.add(sharded);
+		return list;
+	}
+
+	/**
+	 * Fills a manager with a 10x10 lattice of unit boxes spaced 5 apart,
+	 * starting at the origin.
+	 */
+	private static void lattice(PhysicsManager m) {
+		for (int x = 0; x < 10; x++)
+			for (int y = 0; y < 10; y++)
+				m.spawnEntity(m.createEntity(new PhysicsEntityDefinition(EntityType.STATIC)
+						.setPosition(new Vector2(x * 5, y * 5))
+						.addFixture(new FixtureDefinition(new Rectangle(1, 1)).setIdentifier("box"))));
+	}
+
+	@Test
+	public void singleRay() {
+		for (PhysicsManager m : managers()) {
+			lattice(m);
+			m.stepWorld(0.01);
+			RayBatch batch = new RayBatch();
+			assertEquals(0, batch.add(-10, 10, 10, 10));
+			assertEquals(1, batch.add(-10, 12.5, 10, 12.5));
+			assertEquals(2, batch.add(-10, 10, -5, 10));
+			m.raycastBatch(batch);
+			assertTrue(batch.isHit(0));
+			PhysicsEntity hit = m.getSpawnedEntities().get(batch.getEntity()[0]);
+			assertEquals(0, hit.getPosition().x, 1e-9);
+			assertEquals(10, hit.getPosition().y, 1e-9);
+			assertEquals(hit.getFixtureHandle("box"), batch.getFixtureHandle()[0]);
+			// hits the box at x = -0.5 on a segment of length 20
+			assertEquals(9.5 / 20, batch.getFraction()[0], 1e-9);
+			assertEquals(-1, batch.getNormalX()[0], 1e-9);
+			assertEquals(0, batch.getNormalY()[0], 1e-9);
+			assertFalse(batch.isHit(1));
+			assertEquals(-1, batch.getEntity()[1]);
+			assertEquals(-1, batch.getFixtureHandle()[1]);
+			assertFalse(batch.isHit(2));
+		}
+	}
+
+	@Test
+	public void matchesSingleRaycasts() {
+		Random random = new Random(7);
+		for (PhysicsManager m : managers()) {
+			lattice(m);
+			m.stepWorld(0.01);
+			RayBatch batch = new RayBatch(0);
+			for (int i = 0; i < 1000; i++)
+				batch.add(random.nextDouble() * 60 - 5, random.nextDouble() * 60 - 5, random.nextDouble() * 60 - 5,
+						random.nextDouble() * 60 - 5);
+			m.raycastBatch(batch);
+			RaycastHit hit = new RaycastHit();
+			for (int i = 0; i < batch.size(); i++) {
+				double sx = batch.getStartX()[i];
+				double sy = batch.getStartY()[i];
+				Vector2 d = new Vector2(batch.getEndX()[i] - sx, batch.getEndY()[i] - sy);
+				double length = d.getMagnitude();
+				boolean found = m.raycast(new Vector2(sx, sy), d, length, hit);
+				assertEquals(found, batch.isHit(i));
+				if (!found)
+					continue;
+				assertEquals(hit.getDistance() / length, batch.getFraction()[i], 1e-9);
+				assertSame(hit.getEntity(), m.getSpawnedEntities().get(batch.getEntity()[i]));
+				assertEquals(hit.getFixtureHandle(), batch.getFixtureHandle()[i]);
+			}
+		}
+	}
+
+	@Test
+	public void sensorsIgnored() {
+		PhysicsManager m = new SimplePhysicsManager();
+		m.initialiseWorld(new Vector2(0, 0));
+		m.spawnEntity(m.createEntity(new PhysicsEntityDefinition(EntityType.STATIC)
+				.addFixture(new FixtureDefinition(new Circle(1)).setSensor(true))));
+		m.stepWorld(0.01);
+		RayBatch batch = new RayBatch();
+		batch.add(-5, 0, 5, 0);
+		m.raycastBatch(batch);
+		assertFalse(batch.isHit(0));
+	}
+
+	@Test
+	public void reuseResetsResults() {
+		PhysicsManager m = new SimplePhysicsManager();
+		m.initialiseWorld(new Vector2(0, 0));
+		lattice(m);
+		m.stepWorld(0.01);
+		RayBatch batch = new RayBatch();
+		batch.add(-10, 0, 10, 0);
+		m.raycastBatch(batch);
+		assertTrue(batch.isHit(0));
+		batch.clear();
+		assertEquals(0, batch.add(-10, 2.5, 10, 2.5));
+		assertFalse(batch.isHit(0));
+	}
+
+	@Test
+	public void zeroLengthRay() {
+		thrown.expect(IllegalArgumentException.class);
+		new RayBatch().add(1, 1, 1, 1);
+	}
+
+	@Test
+	public void nonFiniteRay() {
+		thrown.expect(IllegalArgumentException.class);
+		new RayBatch().add(0, 0, Double.NaN, 1);
+	}
+
+	@Test
+	public void notInitialised() {
+		thrown.expect(IllegalStateException.class);
+		new SimplePhysicsManager().raycastBatch(new RayBatch());
+	}
+
+	@Test
+	public void nullBatch() {
+		PhysicsManager m = new SimplePhysicsManager();
+		m.initialiseWorld(new Vector2(0, 0));
+		thrown.expect(NullPointerException.class);
+		m.raycastBatch(null);
+	}
+
+}
@@ -0,0 +1,137 @@
+package ch.wados.starfury.physics.simple;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.dyn4j.geometry.Rectangle;
+import org.dyn4j.geometry.Vector2;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import ch.wados.starfury.physics.api.CollisionPoint;
+import ch.wados.starfury.physics.api.EntityType;
+import ch.wados.starfury.physics.api.FixtureDefinition;
+import ch.wados.starfury.physics.api.PhysicsEntity;
+import ch.wados.starfury.physics.api.PhysicsEntityDefinition;
+
+public class ShardedPhysicsManagerTest {
+
+	@Rule
+	public ExpectedException thrown = ExpectedException.none();
+
+	private static PhysicsEntityDefinition box(double x, double y) {
+		return new PhysicsEntityDefinition(EntityType.DEFAULT).addFixture(new FixtureDefinition(new Rectangle(1, 1)))
+				.setPosition(new Vector2(x, y)).setAngularDampening(0);
+	}
+
+	private static ShardedPhysicsManager manager() {
+		ShardedPhysicsManager m = new ShardedPhysicsManager(10, 2);
+		m.initialiseWorld(new Vector2(0, 0));
+		return m;
+	}
+
+	@Test
+	public void invalidRegionSize() {
+		thrown.expect(IllegalArgumentException.class);
+		new ShardedPhysicsManager(0, 0);
+	}
+
+	@Test
+	public void seamWiderThanRegion() {
+		thrown.expect(IllegalArgumentException.class);
+		new ShardedPhysicsManager(10, 5);
+	}
+
+	@Test
+	public void stepRequiresInitialisation() {
+		thrown.expect(IllegalStateException.class);
+		new ShardedPhysicsManager(10, 1).stepWorld(0.01);
+	}
+
+	@Test
+	public void gravityIsCopied() {
+		ShardedPhysicsManager m = manager();
+		m.getGravity().set(0, -10);
+		// regions created later still use the configured gravity
+		PhysicsEntity e = m.createEntity(box(5, 5));
+		m.spawnEntity(e);
+		m.stepWorld(0.1);
+		assertEquals(new Vector2(0, 0), m.getGravity());
+		assertEquals(0, e.getLinearVelocity().y, 0);
+	}
+
+	@Test
+	public void spawnAndDespawn() {
+		ShardedPhysicsManager m = manager();
+		PhysicsEntity e0 = m.createEntity(box(5, 5));
+		PhysicsEntity e1 = m.createEntity(box(25, 5));
+		m.spawnEntity(e0);
+		m.spawnEntity(e1);
+		assertEquals(2, m.getSpawnedEntities().size());
+		assertEquals(2, m.getRegionCount());
+		m.despawnEntity(e1);
+		assertEquals(1, m.getSpawnedEntities().size());
+		m.stepWorld(0.01);
+		assertEquals(1, m.getRegionCount());
+		thrown.expect(IllegalStateException.class);
+		m.despawnEntity(e1);
+	}
+
+	@Test
+	public void duplicateSpawn() {
+		ShardedPhysicsManager m = manager();
+		PhysicsEntity e = m.createEntity(box(5, 5));
+		m.spawnEntity(e);
+		thrown.expect(IllegalStateException.class);
+		m.spawnEntity(e);
+	}
+
+	@Test
+	public void entitiesMigrateAcrossBorders() {
+		ShardedPhysicsManager m = manager();
+		PhysicsEntity e = m.createEntity(box(5, 5));
+		m.spawnEntity(e);
+		assertEquals(0, m.getMirrorCount(e));
+		e.setLinearVelocity(new Vector2(10, 0));
+		// approach the border: mirrored
+		for (int i = 0; i < 30; i++)
+			m.stepWorld(0.01);
+		m.stepWorld(0.01);
+		assertEquals(1, m.getMirrorCount(e));
+		// cross the border and leave the seam: migrated, no mirror
+		for (int i = 0; i < 70; i++)
+			m.stepWorld(0.01);
+		m.stepWorld(0.01);
+		assertTrue(e.getPosition().x > 15);
+		assertEquals(0, m.getMirrorCount(e));
+		assertEquals(1, m.getRegionCount());
+		assertEquals(10, e.getLinearVelocity().x, 1e-9);
+	}
+
+	@Test
+	public void contactsAcrossSeamsResolve() {
+		ShardedPhysicsManager m = manager();
+		PhysicsEntity e0 = m.createEntity(box(8.5, 5));
+		PhysicsEntity e1 = m.createEntity(box(11.5, 5));
+		m.spawnEntity(e0);
+		m.spawnEntity(e1);
+		e0.setLinearVelocity(new Vector2(5, 0));
+		e1.setLinearVelocity(new Vector2(-5, 0));
+		List<CollisionPoint> points = new ArrayList<>();
+		m.addCollisionListener(points::add);
+		for (int i = 0; i < 100; i++)
+			m.stepWorld(0.01);
+		// the boxes bounced off each other instead of passing through
+		assertFalse(points.isEmpty());
+		assertTrue(e0.getPosition().x < e1.getPosition().x);
+		assertTrue(e0.getLinearVelocity().x <= 0);
+		assertTrue(e1.getLinearVelocity().x >= 0);
+		// every reported contact involves both entities exactly once
+		for (CollisionPoint cp : points)
+			assertTrue(cp.entity0 == e0 && cp.entity1 == e1 || cp.entity0 == e1 && cp.entity1 == e0);
+	}
+
+}
@@ -9,6 +9,13 @@ import org.junit.runners.Suite.SuiteClasses;
  */
 
 @RunWith(Suite.class)
-@SuiteClasses({ ThrusterTest.class, ThrusterSystemTest.class })
+@SuiteClasses({ ThrusterTest.class, ThrusterSystemTest.class, ShardedPhysicsManagerTest.class,
+		EntityRegistryTest.class, PrefabTest.class,
+		FixtureHandleTest.class, CollisionFilterTest.class,
+		CollisionRoutingTest.class, ContactPairTrackerTest.class,
+		WorldFactoryTest.class, UniformGridBroadphaseTest.class,
+		SpatialQueryTest.class, RayBatchTest.class, WorldSnapshotTest.class,
+		DeterministicModeTest.class, StateHistoryTest.class,
+		LevelOfDetailTest.class, ParallelSolverTest.class })
 public class SimpleSuite {
 }
\ No newline at end of file
@@ -0,0 +1,181 @@
+package ch.wados.starfury.physics.simple;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.dyn4j.geometry.AABB;
+import org.dyn4j.geometry.Rectangle;
+import org.dyn4j.geometry.Vector2;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import ch.wados.starfury.physics.api.BroadphaseType;
+import ch.wados.starfury.physics.api.EntityType;
+import ch.wados.starfury.physics.api.FixtureDefinition;
+import ch.wados.starfury.physics.api.PhysicsEntity;
+import ch.wados.starfury.physics.api.PhysicsEntityDefinition;
+import ch.wados.starfury.physics.api.PhysicsManager;
+import ch.wados.starfury.physics.api.PhysicsWorldConfig;
+import ch.wados.starfury.physics.api.RaycastHit;
+import ch.wados.starfury.physics.api.RaycastHitBuffer;
+
+public class SpatialQueryTest {
+
+	@Rule
+	public ExpectedException thrown = ExpectedException.none();
+
+	/**
+	 * Fills a manager with a 10x10 lattice of unit boxes spaced 5 apart,
+	 * starting at the origin.
+	 */
+	private static List<PhysicsEntity> lattice(PhysicsManager m) {
+		List<PhysicsEntity> entities = new ArrayList<>();
+		for (int x = 0; x < 10; x++)
+			for (int y = 0; y < 10; y++) {
+				PhysicsEntity e = m.createEntity(new PhysicsEntityDefinition(EntityType.STATIC)
+						.setPosition(new Vector2(x * 5, y * 5))
+						.addFixture(new FixtureDefinition(new Rectangle(1, 1)).setIdentifier("box")));
+				m.spawnEntity(e);
+				entities.add(e);
+			}
+		return entities;
+	}
+
+	private static List<PhysicsManager> managers() {
+		List<PhysicsManager> list = new ArrayList<>();
+		for (BroadphaseType type : BroadphaseType.values()) {
+			PhysicsManager m = new SimplePhysicsManager();
+			m.initialiseWorld(new PhysicsWorldConfig().setBroadphase(type));
+			list.add(m);
+		}
+		PhysicsManager sharded = new ShardedPhysicsManager(12, 3);
+		sharded.initialiseWorld(new Vector2(0, 0));
+		list.add(sharded);
+		return list;
+	}
+
+	@Test
+	public void queryAABB() {
+		for (PhysicsManager m : managers()) {
+			lattice(m);
+			m.stepWorld(0.01);
+			Set<PhysicsEntity> found = new HashSet<>();
+			m.queryAABB(new AABB(4, 4, 11, 16), found);
+			// x in {5, 10}, y in {5, 10, 15}
+			assertEquals(6, found.size());
+			for (PhysicsEntity e : found) {
+				assertTrue(e.getPosition().x >= 4.5 && e.getPosition().x <= 11.5);
+				assertTrue(e.getPosition().y >= 4.5 && e.getPosition().y <= 16.5);
+			}
+		}
+	}
+
+	@Test
+	public void queryRadius() {
+		for (PhysicsManager m : managers()) {
+			lattice(m);
+			m.stepWorld(0.01);
+			List<PhysicsEntity> found = new ArrayList<>();
+			found.add(null);
+			m.queryRadius(new Vector2(20, 20), 5, found);
+			// the centre box and its four direct neighbours
+			assertEquals(5, found.size());
+			assertEquals(5, new HashSet<>(found).size());
+		}
+	}
+
+	@Test
+	public void raycastFirstAndAll() {
+		for (PhysicsManager m : managers()) {
+			lattice(m);
+			m.stepWorld(0.01);
+			RaycastHit hit = new RaycastHit();
+			assertTrue(m.raycast(new Vector2(-10, 10), new Vector2(1, 0), 100, hit));
+			assertEquals(0, hit.getEntity().getPosition().x, 1e-9);
+			assertEquals(10, hit.getEntity().getPosition().y, 1e-9);
+			assertEquals(9.5, hit.getDistance(), 1e-6);
+			assertEquals(-0.5, hit.getPoint().x, 1e-6);
+			assertEquals("box", hit.getFixture());
+			assertFalse(m.raycast(new Vector2(-10, 12.5), new Vector2(1, 0), 100, hit));
+			assertNull(hit.getEntity());
+			RaycastHitBuffer hits = new RaycastHitBuffer();
+			assertEquals(10, m.raycastAll(new Vector2(-10, 10), new Vector2(1, 0), Double.POSITIVE_INFINITY, hits));
+			for (int i = 0; i < hits.size(); i++)
+				assertEquals(i * 5, hits.get(i).getEntity().getPosition().x, 1e-9);
+			assertEquals(3, m.raycastAll(new Vector2(-10, 10), new Vector2(1, 0), 20, hits));
+		}
+	}
+
+	@Test
+	public void raycastNonUnitDirection() {
+		for (PhysicsManager m : managers()) {
+			lattice(m);
+			m.stepWorld(0.01);
+			RaycastHit hit = new RaycastHit();
+			assertTrue(m.raycast(new Vector2(-10, 10), new Vector2(7, 0), 100, hit));
+			assertEquals(0, hit.getEntity().getPosition().x, 1e-9);
+			assertEquals(9.5, hit.getDistance(), 1e-6);
+			// the length is measured in world units, not in multiples of the
+			// direction
+			assertFalse(m.raycast(new Vector2(-10, 10), new Vector2(7, 0), 9, hit));
+			assertTrue(m.raycast(new Vector2(-10, -10), new Vector2(0.25, 0.25), 100, hit));
+			assertEquals(0, hit.getEntity().getPosition().x, 1e-9);
+			assertEquals(0, hit.getEntity().getPosition().y, 1e-9);
+			assertEquals(Math.sqrt(2) * 9.5, hit.getDistance(), 1e-6);
+			RaycastHitBuffer hits = new RaycastHitBuffer();
+			assertEquals(3, m.raycastAll(new Vector2(-10, 10), new Vector2(0.1, 0), 20, hits));
+		}
+	}
+
+	@Test
+	public void nearestIsOrdered() {
+		for (PhysicsManager m : managers()) {
+			List<PhysicsEntity> all = lattice(m);
+			m.stepWorld(0.01);
+			List<PhysicsEntity> found = new ArrayList<>();
+			m.nearest(new Vector2(21, 20), 3, found);
+			assertEquals(3, found.size());
+			assertEquals(new Vector2(20, 20), found.get(0).getPosition());
+			assertEquals(new Vector2(25, 20), found.get(1).getPosition());
+			m.nearest(new Vector2(1000, 1000), 4, found);
+			assertEquals(4, found.size());
+			assertEquals(new Vector2(45, 45), found.get(0).getPosition());
+			m.nearest(new Vector2(0, 0), 500, found);
+			assertEquals(all.size(), found.size());
+			assertEquals(all.size(), new HashSet<>(found).size());
+		}
+	}
+
+	@Test
+	public void invalidRadius() {
+		PhysicsManager m = managers().get(0);
+		thrown.expect(IllegalArgumentException.class);
+		m.queryRadius(new Vector2(0, 0), -1, new ArrayList<>());
+	}
+
+	@Test
+	public void invalidRayDirection() {
+		PhysicsManager m = managers().get(0);
+		thrown.expect(IllegalArgumentException.class);
+		m.raycast(new Vector2(0, 0), new Vector2(0, 0), 10, new RaycastHit());
+	}
+
+	@Test
+	public void invalidK() {
+		PhysicsManager m = managers().get(0);
+		thrown.expect(IllegalArgumentException.class);
+		m.nearest(new Vector2(0, 0), 0, new ArrayList<>());
+	}
+
+	@Test
+	public void queryRequiresInitialisation() {
+		thrown.expect(IllegalStateException.class);
+		new SimplePhysicsManager().queryAABB(new AABB(0, 0, 1, 1), new ArrayList<>());
+	}
+
+}
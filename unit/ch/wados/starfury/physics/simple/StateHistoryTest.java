@@ -0,0 +1,281 @@
+package ch.wados.starfury.physics.simple;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.dyn4j.geometry.Circle;
+import org.dyn4j.geometry.Rectangle;
+import org.dyn4j.geometry.Vector2;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import ch.wados.starfury.physics.api.EntityStateBuffer;
+import ch.wados.starfury.physics.api.EntityType;
+import ch.wados.starfury.physics.api.FixtureDefinition;
+import ch.wados.starfury.physics.api.PhysicsEntity;
+import ch.wados.starfury.physics.api.PhysicsEntityDefinition;
+import ch.wados.starfury.physics.api.PhysicsManager;
+import ch.wados.starfury.physics.api.PhysicsWorldConfig;
+import ch.wados.starfury.physics.api.RaycastHit;
+import ch.wados.starfury.physics.api.ThrustPointDefinition;
+
+public class StateHistoryTest {
+
+	private static final double STEP = 1 / 60.0;
+
+	@Rule
+	public ExpectedException thrown = ExpectedException.none();
+
+	private static PhysicsWorldConfig config(int length) {
+		return new PhysicsWorldConfig().setDeterministicStep(STEP).setHistoryLength(length);
+	}
+
+	private static PhysicsManager manager(int length) {
+		PhysicsManager m = new SimplePhysicsManager();
+		m.initialiseWorld(config(length));
+		return m;
+	}
+
+	private static PhysicsEntityDefinition ship() {
+		return new PhysicsEntityDefinition(EntityType.DEFAULT)
+				.addFixture(new FixtureDefinition(new Rectangle(2, 1)).setIdentifier("hull"))
+				.addThrustPoint(new ThrustPointDefinition(new Vector2(-1, 0), new Vector2(1, 0), "main"));
+	}
+
+	/**
+	 * Spawns a row of separated moving ships, which never collide.
+	 */
+	private static void fleet(PhysicsManager m, int count) {
+		PhysicsEntityDefinition def = ship();
+		for (int i = 0; i < count; i++) {
+			PhysicsEntity e = m.createEntity(def.setPosition(new Vector2(i * 10, 0)));
+			e.setLinearVelocity(new Vector2(1, 0.1 * i));
+			e.setAngularVelocity(0.2 * i);
+			e.setThrust("main", i);
+			m.spawnEntity(e);
+		}
+	}
+
+	private static void assertSameState(EntityStateBuffer a, EntityStateBuffer b) {
+		assertEquals(a.size(), b.size());
+		int n = a.size();
+		assertArrayEquals(Arrays.copyOf(a.getEntities(), n), Arrays.copyOf(b.getEntities(), n));
+		assertArrayEquals(Arrays.copyOf(a.getX(), n), Arrays.copyOf(b.getX(), n), 0);
+		assertArrayEquals(Arrays.copyOf(a.getY(), n), Arrays.copyOf(b.getY(), n), 0);
+		assertArrayEquals(Arrays.copyOf(a.getAngle(), n), Arrays.copyOf(b.getAngle(), n), 0);
+		assertArrayEquals(Arrays.copyOf(a.getVelocityX(), n), Arrays.copyOf(b.getVelocityX(), n), 0);
+		assertArrayEquals(Arrays.copyOf(a.getVelocityY(), n), Arrays.copyOf(b.getVelocityY(), n), 0);
+		assertArrayEquals(Arrays.copyOf(a.getAngularVelocity(), n), Arrays.copyOf(b.getAngularVelocity(), n), 0);
+		assertTrue(Arrays.equals(Arrays.copyOf(a.getAsleep(), n), Arrays.copyOf(b.getAsleep(), n)));
+	}
+
+	private static void resimulate(PhysicsManager m) {
+		fleet(m, 10);
+		m.getSpawnedEntities().get(2).applyForce(new Vector2(0, 1), new Vector2(1, 0), 0.5);
+		for (int i = 0; i < 10; i++)
+			m.stepWorld(STEP);
+		EntityStateBuffer at10 = new EntityStateBuffer();
+		m.exportState(at10);
+		long hash10 = m.getStateHash();
+		for (int i = 0; i < 40; i++)
+			m.stepWorld(STEP);
+		EntityStateBuffer at50 = new EntityStateBuffer();
+		m.exportState(at50);
+		long hash50 = m.getStateHash();
+		m.getSpawnedEntities().get(3).setThrust("main", 100);
+		m.rewind(10);
+		assertEquals(10, m.getStep());
+		assertEquals(hash10, m.getStateHash());
+		EntityStateBuffer state = new EntityStateBuffer();
+		m.exportState(state);
+		assertSameState(at10, state);
+		assertEquals(3, ((SimpleEntity) m.getSpawnedEntities().get(3)).getThrusters().getThruster(0).getThrust(), 0);
+		for (int i = 0; i < 40; i++)
+			m.stepWorld(STEP);
+		m.exportState(state);
+		assertSameState(at50, state);
+		assertEquals(hash50, m.getStateHash());
+	}
+
+	@Test
+	public void rewindAndResimulate() {
+		resimulate(manager(60));
+	}
+
+	@Test
+	public void shardedRewindAndResimulate() {
+		PhysicsManager m = new ShardedPhysicsManager(12, 3);
+		m.initialiseWorld(config(60));
+		resimulate(m);
+	}
+
+	@Test
+	public void sleepDiscardsTimedTorques() {
+		PhysicsManager m = manager(60);
+		SimpleEntity e = (SimpleEntity) m.createEntity(ship());
+		m.spawnEntity(e);
+		// too weak to keep the body awake
+		e.applyForce(new Vector2(0, 1), new Vector2(1e-6, 0), 100);
+		for (int i = 0; i < 200 && !e.isAsleep(); i++)
+			m.stepWorld(STEP);
+		assertTrue(e.isAsleep());
+		e.getBody().setAsleep(false);
+		m.stepWorld(STEP);
+		long step = m.getStep();
+		for (int i = 0; i < 5; i++)
+			m.stepWorld(STEP);
+		EntityStateBuffer expected = new EntityStateBuffer();
+		m.exportState(expected);
+		m.rewind(step);
+		assertTrue(e.getTimedTorques().isEmpty());
+		for (int i = 0; i < 5; i++)
+			m.stepWorld(STEP);
+		EntityStateBuffer state = new EntityStateBuffer();
+		m.exportState(state);
+		assertSameState(expected, state);
+	}
+
+	@Test
+	public void correctedInput() {
+		PhysicsManager m = manager(30);
+		fleet(m, 3);
+		for (int i = 0; i < 20; i++)
+			m.stepWorld(STEP);
+		Vector2 original = m.getSpawnedEntities().get(1).getPosition();
+		m.rewind(5);
+		m.getSpawnedEntities().get(1).setLinearVelocity(new Vector2(-1, 0));
+		for (int i = 0; i < 15; i++)
+			m.stepWorld(STEP);
+		assertEquals(20, m.getStep());
+		assertTrue(m.getSpawnedEntities().get(1).getPosition().x < original.x);
+	}
+
+	@Test
+	public void restoresMembership() {
+		PhysicsManager m = manager(30);
+		fleet(m, 5);
+		m.stepWorld(STEP);
+		List<PhysicsEntity> recorded = new ArrayList<>(m.getSpawnedEntities());
+		m.despawnEntity(recorded.get(1));
+		m.stepWorld(STEP);
+		PhysicsEntity added = m.createEntity(ship().setPosition(new Vector2(0, 50)));
+		m.spawnEntity(added);
+		m.despawnEntities(Arrays.asList(recorded.get(4)));
+		m.stepWorld(STEP);
+		m.spawnEntities(Arrays.asList(m.createEntity(ship())));
+		m.rewind(1);
+		assertEquals(recorded, m.getSpawnedEntities());
+		m.rewind(3);
+		assertEquals(4, m.getSpawnedEntities().size());
+		assertSame(added, m.getSpawnedEntities().get(3));
+		m.rewind(1);
+		// the discarded queued entity is not spawned by the next step
+		m.stepWorld(STEP);
+		assertEquals(recorded, m.getSpawnedEntities());
+	}
+
+	@Test
+	public void lagCompensation() {
+		PhysicsManager m = manager(120);
+		PhysicsEntity target = m.createEntity(new PhysicsEntityDefinition(EntityType.DEFAULT)
+				.addFixture(new FixtureDefinition(new Circle(0.5))));
+		target.setLinearVelocity(new Vector2(0, 6));
+		m.spawnEntity(target);
+		for (int i = 0; i < 60; i++)
+			m.stepWorld(STEP);
+		RaycastHit hit = new RaycastHit();
+		Vector2 right = new Vector2(1, 0);
+		// the target has moved on
+		assertFalse(m.raycast(new Vector2(-10, 0.5), right, 20, hit));
+		m.rewind(6);
+		assertTrue(m.raycast(new Vector2(-10, 0.5), right, 20, hit));
+		assertSame(target, hit.getEntity());
+		m.rewind(60);
+		assertFalse(m.raycast(new Vector2(-10, 0.5), right, 20, hit));
+		assertTrue(m.raycast(new Vector2(-10, 6), right, 20, hit));
+	}
+
+	@Test
+	public void recordedWindow() {
+		PhysicsManager m = manager(10);
+		assertFalse(m.isRecorded(0));
+		for (int i = 0; i < 25; i++)
+			m.stepWorld(STEP);
+		assertFalse(m.isRecorded(15));
+		assertTrue(m.isRecorded(16));
+		assertTrue(m.isRecorded(25));
+		assertFalse(m.isRecorded(26));
+		m.rewind(20);
+		// later steps remain until stepping overwrites them
+		assertTrue(m.isRecorded(25));
+		m.stepWorld(STEP);
+		assertEquals(21, m.getStep());
+		assertTrue(m.isRecorded(16));
+		assertTrue(m.isRecorded(21));
+		assertFalse(m.isRecorded(22));
+	}
+
+	@Test
+	public void snapshotClearsHistory() throws IOException {
+		PhysicsManager m = manager(10);
+		fleet(m, 2);
+		m.stepWorld(STEP);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		m.saveSnapshot(Channels.newChannel(out));
+		m.restoreSnapshot(Channels.newChannel(new ByteArrayInputStream(out.toByteArray())));
+		assertFalse(m.isRecorded(1));
+	}
+
+	@Test
+	public void recordingDoesNotAllocate() {
+		int count = 5000;
+		EntityRegistry registry = new EntityRegistry();
+		PhysicsManager m = manager(0);
+		PhysicsEntityDefinition def = ship();
+		for (int i = 0; i < count; i++)
+			registry.add((SimpleEntity) m.createEntity(def.setPosition(new Vector2(i, 0))));
+		StateHistory history = new StateHistory(120, count);
+		TransformAccess scratch = new TransformAccess();
+		for (int step = 1; step <= 120; step++)
+			history.record(step, step, registry, scratch);
+		com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) ManagementFactory
+				.getThreadMXBean();
+		long thread = Thread.currentThread().getId();
+		long before = bean.getThreadAllocatedBytes(thread);
+		for (int step = 121; step <= 360; step++)
+			history.record(step, step, registry, scratch);
+		long allocated = bean.getThreadAllocatedBytes(thread) - before;
+		assertTrue("allocated " + allocated + " bytes", allocated < 16 * 1024);
+		assertTrue(history.contains(241));
+		assertFalse(history.contains(240));
+	}
+
+	@Test
+	public void disabled() {
+		PhysicsManager m = new SimplePhysicsManager();
+		m.initialiseWorld(new Vector2(0, 0));
+		m.stepWorld(STEP);
+		assertEquals(1, m.getStep());
+		assertFalse(m.isRecorded(1));
+		thrown.expect(IllegalStateException.class);
+		m.rewind(1);
+	}
+
+	@Test
+	public void notRecorded() {
+		PhysicsManager m = manager(10);
+		m.stepWorld(STEP);
+		thrown.expect(IllegalArgumentException.class);
+		m.rewind(2);
+	}
+
+}
@@ -142,4 +142,79 @@ public class ThrusterSystemTest {
 		s.setThrust("t0", Double.POSITIVE_INFINITY);
 	}
 
+	@Test
+	public void handlesMatchIdentifiers() {
+		ThrusterSystem s = new ThrusterSystem(1);
+		int h0 = s.addThruster(new ThrustPointDefinition(new Vector2(1, 0), new Vector2(0, 1), "t0"));
+		int h1 = s.addThruster(new ThrustPointDefinition(new Vector2(-1, 0), new Vector2(0, 1), "t1"));
+		assertEquals(h0, s.getHandle("t0"));
+		assertEquals(h1, s.getHandle("t1"));
+		s.setThrust(h0, 1);
+		assertEquals(new Vector2(0, 1), s.getForce(Transform.IDENTITY).getForce());
+		assertEquals(1, s.getTorque().getTorque(), Epsilon.E);
+	}
+
+	@Test
+	public void removedHandlesAreNotReused() {
+		ThrusterSystem s = new ThrusterSystem(10);
+		int h0 = s.addThruster(new ThrustPointDefinition(new Vector2(1, 0), new Vector2(0, 1), "t0"));
+		s.removeThruster(h0);
+		assertEquals(0, s.getThrusterCount());
+		int h1 = s.addThruster(new ThrustPointDefinition(new Vector2(1, 0), new Vector2(0, 1), "t0"));
+		assertNotEquals(h0, h1);
+		thrown.expect(IllegalArgumentException.class);
+		s.setThrust(h0, 1);
+	}
+
+	@Test
+	public void batchUpdateMatchesSingleUpdates() {
+		ThrusterSystem a = new ThrusterSystem(40);
+		ThrusterSystem b = new ThrusterSystem(40);
+		int[] handles = new int[40];
+		double[] thrusts = new double[40];
+		for (int i = 0; i < 40; i++) {
+			ThrustPointDefinition def = new ThrustPointDefinition(new Vector2(i % 7 - 3, i % 5 - 2),
+					new Vector2(Math.cos(i), Math.sin(i)), "t" + i);
+			handles[i] = a.addThruster(def);
+			b.addThruster(def);
+			thrusts[i] = i * 0.5 - 7;
+		}
+		a.setThrusts(handles, thrusts);
+		for (int i = 0; i < 40; i++)
+			b.setThrust("t" + i, thrusts[i]);
+		Vector2 fa = a.getForce(Transform.IDENTITY).getForce().copy();
+		Vector2 fb = b.getForce(Transform.IDENTITY).getForce();
+		assertEquals(fb.x, fa.x, 1e-9);
+		assertEquals(fb.y, fa.y, 1e-9);
+		assertEquals(b.getTorque().getTorque(), a.getTorque().getTorque(), 1e-9);
+	}
+
+	@Test
+	public void invalidBatchChangesNothing() {
+		ThrusterSystem s = new ThrusterSystem(10);
+		int h0 = s.addThruster(new ThrustPointDefinition(new Vector2(1, 0), new Vector2(0, 1), "t0"));
+		try {
+			s.setThrusts(new int[] { h0, 5 }, new double[] { 1, 1 });
+			fail();
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		assertEquals(new Vector2(0, 0), s.getForce(Transform.IDENTITY).getForce());
+		thrown.expect(IllegalArgumentException.class);
+		s.setThrusts(new int[] { h0 }, new double[] { 1, 2 });
+	}
+
+	@Test
+	public void incrementalUpdatesStayAccurate() {
+		ThrusterSystem s = new ThrusterSystem(10);
+		int h = s.addThruster(new ThrustPointDefinition(new Vector2(1, 0), new Vector2(0.3, 0.7), "t0"));
+		for (int i = 0; i < 3 * ThrusterSystem.REFRESH_INTERVAL + 17; i++)
+			s.setThrust(h, Math.sin(i) * 1000);
+		s.setThrust(h, 0);
+		Vector2 f = s.getForce(Transform.IDENTITY).getForce();
+		assertEquals(0, f.x, 1e-9);
+		assertEquals(0, f.y, 1e-9);
+		assertEquals(0, s.getTorque().getTorque(), 1e-9);
+	}
+
 }
@@ -0,0 +1,181 @@
+package ch.wados.starfury.physics.simple;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.dyn4j.collision.broadphase.BroadphaseDetector;
+import org.dyn4j.collision.broadphase.BroadphaseItem;
+import org.dyn4j.collision.broadphase.BroadphasePair;
+import org.dyn4j.collision.broadphase.Sap;
+import org.dyn4j.dynamics.Body;
+import org.dyn4j.dynamics.BodyFixture;
+import org.dyn4j.geometry.AABB;
+import org.dyn4j.geometry.Circle;
+import org.dyn4j.geometry.Ray;
+import org.dyn4j.geometry.Rectangle;
+import org.dyn4j.geometry.Vector2;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+public class UniformGridBroadphaseTest {
+
+	@Rule
+	public ExpectedException thrown = ExpectedException.none();
+
+	private static List<Body> bodies(Random rng, int count) {
+		List<Body> bodies = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			Body body = new Body();
+			// a few large bodies among many small ones
+			body.addFixture(i % 50 == 0 ? new Circle(30) : new Rectangle(2 + rng.nextDouble() * 4, 2));
+			body.translate(rng.nextDouble() * 400 - 200, rng.nextDouble() * 400 - 200);
+			bodies.add(body);
+		}
+		return bodies;
+	}
+
+	private static Set<String> pairs(BroadphaseDetector<Body, BodyFixture> bp) {
+		Set<String> set = new HashSet<>();
+		for (BroadphasePair<Body, BodyFixture> p : bp.detect()) {
+			String a = p.getCollidable1().getId().toString();
+			String b = p.getCollidable2().getId().toString();
+			assertTrue(set.add(a.compareTo(b) < 0 ? a + b : b + a));
+		}
+		return set;
+	}
+
+	private static Set<Body> items(List<BroadphaseItem<Body, BodyFixture>> list) {
+		Set<Body> set = new HashSet<>();
+		for (BroadphaseItem<Body, BodyFixture> item : list)
+			assertTrue(set.add(item.getCollidable()));
+		return set;
+	}
+
+	@Test
+	public void matchesSweepAndPrune() {
+		Random rng = new Random(7);
+		List<Body> bodies = bodies(rng, 500);
+		UniformGridBroadphase<Body, BodyFixture> grid = new UniformGridBroadphase<>(8, 500);
+		Sap<Body, BodyFixture> sap = new Sap<>(500);
+		for (Body b : bodies) {
+			grid.add(b);
+			sap.add(b);
+		}
+		assertEquals(500, grid.size());
+		for (int step = 0; step < 20; step++) {
+			assertEquals(pairs(sap), pairs(grid));
+			AABB box = new AABB(-50, -20, 30, 60);
+			assertEquals(items(sap.detect(box)), items(grid.detect(box)));
+			Ray ray = new Ray(new Vector2(-200, -150), new Vector2(1, 0.7));
+			assertEquals(items(sap.raycast(ray, 300)), items(grid.raycast(ray, 300)));
+			assertEquals(items(sap.raycast(ray, 0)), items(grid.raycast(ray, 0)));
+			for (Body b : bodies) {
+				b.translate(rng.nextGaussian() * 3, rng.nextGaussian() * 3);
+				b.rotateAboutCenter(rng.nextGaussian());
+				grid.update(b);
+				sap.update(b);
+			}
+		}
+	}
+
+	@Test
+	public void removeAndClear() {
+		List<Body> bodies = bodies(new Random(3), 100);
+		UniformGridBroadphase<Body, BodyFixture> grid = new UniformGridBroadphase<>(8, 10);
+		for (Body b : bodies)
+			grid.add(b);
+		for (int i = 0; i < 50; i++)
+			grid.remove(bodies.get(i));
+		assertEquals(50, grid.size());
+		assertFalse(grid.contains(bodies.get(0)));
+		assertTrue(grid.contains(bodies.get(99)));
+		for (BroadphasePair<Body, BodyFixture> p : grid.detect()) {
+			assertTrue(bodies.indexOf(p.getCollidable1()) >= 50);
+			assertTrue(bodies.indexOf(p.getCollidable2()) >= 50);
+		}
+		grid.clear();
+		assertEquals(0, grid.size());
+		assertTrue(grid.detect().isEmpty());
+	}
+
+	@Test
+	public void emptyCellsAreReclaimed() {
+		Body body = new Body();
+		body.addFixture(new Rectangle(1, 1));
+		UniformGridBroadphase<Body, BodyFixture> grid = new UniformGridBroadphase<>(1, 1);
+		grid.add(body);
+		for (int i = 0; i < 10000; i++) {
+			body.translate(3, 0);
+			grid.update(body);
+		}
+		assertTrue(grid.getCellCount() < 64);
+	}
+
+	@Test
+	public void shiftKeepsPairs() {
+		List<Body> bodies = bodies(new Random(5), 200);
+		UniformGridBroadphase<Body, BodyFixture> grid = new UniformGridBroadphase<>(8, 200);
+		for (Body b : bodies)
+			grid.add(b);
+		Set<String> before = pairs(grid);
+		grid.shift(new Vector2(13.7, -4.2));
+		assertEquals(before, pairs(grid));
+	}
+
+	private static List<Integer> order(BroadphaseDetector<Body, BodyFixture> bp, List<Body> bodies) {
+		List<Integer> order = new ArrayList<>();
+		for (BroadphasePair<Body, BodyFixture> p : bp.detect()) {
+			order.add(bodies.indexOf(p.getCollidable1()));
+			order.add(bodies.indexOf(p.getCollidable2()));
+		}
+		return order;
+	}
+
+	@Test
+	public void shiftIsReproducible() {
+		List<Body> a = bodies(new Random(5), 200);
+		List<Body> b = bodies(new Random(5), 200);
+		UniformGridBroadphase<Body, BodyFixture> gridA = new UniformGridBroadphase<>(8, 200);
+		UniformGridBroadphase<Body, BodyFixture> gridB = new UniformGridBroadphase<>(8, 200);
+		for (int i = 0; i < 200; i++) {
+			gridA.add(a.get(i));
+			gridB.add(b.get(i));
+		}
+		gridA.shift(new Vector2(13.7, -4.2));
+		gridB.shift(new Vector2(13.7, -4.2));
+		List<Integer> order = order(gridA, a);
+		assertFalse(order.isEmpty());
+		assertEquals(order, order(gridB, b));
+	}
+
+	@Test
+	public void saturatedCellCoordinates() {
+		Body far = new Body();
+		far.addFixture(new Rectangle(1, 1));
+		far.translate(1e300, 1e300);
+		Body near = new Body();
+		near.addFixture(new Rectangle(1, 1));
+		UniformGridBroadphase<Body, BodyFixture> grid = new UniformGridBroadphase<>(8, 10);
+		grid.add(far);
+		grid.add(near);
+		// both corners map to the last cell along each axis
+		AABB box = new AABB(1e299, 1e299, 1e301, 1e301);
+		assertEquals(1, grid.detect(box).size());
+		assertSame(far, grid.detect(box).get(0).getCollidable());
+		grid.remove(far);
+		assertTrue(grid.detect(box).isEmpty());
+	}
+
+	@Test
+	public void invalidCellSize() {
+		thrown.expect(IllegalArgumentException.class);
+		new UniformGridBroadphase<Body, BodyFixture>(0, 10);
+	}
+
+}
@@ -0,0 +1,69 @@
+package ch.wados.starfury.physics.simple;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.dyn4j.collision.broadphase.DynamicAABBTree;
+import org.dyn4j.collision.broadphase.Sap;
+import org.dyn4j.dynamics.Settings;
+import org.dyn4j.dynamics.World;
+import org.dyn4j.geometry.Rectangle;
+import org.dyn4j.geometry.Vector2;
+import org.junit.Test;
+
+import ch.wados.starfury.physics.api.BroadphaseType;
+import ch.wados.starfury.physics.api.CollisionPoint;
+import ch.wados.starfury.physics.api.EntityType;
+import ch.wados.starfury.physics.api.FixtureDefinition;
+import ch.wados.starfury.physics.api.PhysicsEntity;
+import ch.wados.starfury.physics.api.PhysicsEntityDefinition;
+import ch.wados.starfury.physics.api.PhysicsManager;
+import ch.wados.starfury.physics.api.PhysicsWorldConfig;
+
+public class WorldFactoryTest {
+
+	@Test
+	public void broadphaseSelection() {
+		World tree = WorldFactory.create(new PhysicsWorldConfig());
+		World sap = WorldFactory.create(new PhysicsWorldConfig().setBroadphase(BroadphaseType.SAP));
+		assertTrue(tree.getBroadphaseDetector() instanceof DynamicAABBTree);
+		assertTrue(sap.getBroadphaseDetector() instanceof Sap);
+		World grid = WorldFactory.create(new PhysicsWorldConfig().setBroadphase(BroadphaseType.UNIFORM_GRID));
+		assertTrue(grid.getBroadphaseDetector() instanceof UniformGridBroadphase);
+	}
+
+	@Test
+	public void settingsAndGravityApplied() {
+		Settings settings = new Settings();
+		settings.setVelocityConstraintSolverIterations(3);
+		World world = WorldFactory
+				.create(new PhysicsWorldConfig().setSettings(settings).setGravity(new Vector2(0, -3)));
+		assertEquals(3, world.getSettings().getVelocityConstraintSolverIterations());
+		assertEquals(-3, world.getGravity().y, 0);
+	}
+
+	@Test
+	public void allBroadphasesDetectContacts() {
+		for (BroadphaseType type : BroadphaseType.values())
+			for (PhysicsManager m : new PhysicsManager[] { new SimplePhysicsManager(),
+					new ShardedPhysicsManager(10, 2) }) {
+				m.initialiseWorld(new PhysicsWorldConfig().setBroadphase(type).setCapacity(8));
+				PhysicsEntity e0 = m.createEntity(new PhysicsEntityDefinition(EntityType.DEFAULT)
+						.setPosition(new Vector2(2, 5)).addFixture(new FixtureDefinition(new Rectangle(1, 1))));
+				PhysicsEntity e1 = m.createEntity(new PhysicsEntityDefinition(EntityType.DEFAULT)
+						.setPosition(new Vector2(5, 5)).addFixture(new FixtureDefinition(new Rectangle(1, 1))));
+				m.spawnEntity(e0);
+				m.spawnEntity(e1);
+				e0.setLinearVelocity(new Vector2(5, 0));
+				e1.setLinearVelocity(new Vector2(-5, 0));
+				List<CollisionPoint> points = new ArrayList<>();
+				m.addCollisionListener(points::add);
+				for (int i = 0; i < 100; i++)
+					m.stepWorld(0.01);
+				assertFalse(type.toString(), points.isEmpty());
+			}
+	}
+
+}
@@ -0,0 +1,329 @@
+package ch.wados.starfury.physics.simple;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import org.dyn4j.geometry.Capsule;
+import org.dyn4j.geometry.Circle;
+import org.dyn4j.geometry.Polygon;
+import org.dyn4j.geometry.Rectangle;
+import org.dyn4j.geometry.Triangle;
+import org.dyn4j.geometry.Vector2;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
+
+import ch.wados.starfury.physics.api.EntityStateBuffer;
+import ch.wados.starfury.physics.api.EntityType;
+import ch.wados.starfury.physics.api.FixtureDefinition;
+import ch.wados.starfury.physics.api.PhysicsEntity;
+import ch.wados.starfury.physics.api.PhysicsEntityDefinition;
+import ch.wados.starfury.physics.api.PhysicsManager;
+import ch.wados.starfury.physics.api.ThrustPointDefinition;
+
+public class WorldSnapshotTest {
+
+	@Rule
+	public ExpectedException thrown = ExpectedException.none();
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static PhysicsEntityDefinition ship() {
+		Rectangle hull = new Rectangle(2, 1);
+		hull.rotate(0.3);
+		hull.translate(0.5, 0.25);
+		return new PhysicsEntityDefinition(EntityType.DEFAULT).setMass(5)
+				.addFixture(new FixtureDefinition(hull).setIdentifier("hull").setFrictionCoefficient(0.4))
+				.addFixture(new FixtureDefinition(new Triangle(new Vector2(0, 0), new Vector2(1, 0),
+						new Vector2(0, 1))).setIdentifier("nose").setCategoryBits(0x4).setMaskBits(0x3))
+				.addFixture(new FixtureDefinition(new Circle(0.5)).setIdentifier("radar").setSensor(true))
+				.addThrustPoint(new ThrustPointDefinition(new Vector2(-1, 0), new Vector2(1, 0), "main"))
+				.addThrustPoint(new ThrustPointDefinition(new Vector2(0, 1), new Vector2(0, -1), "side"));
+	}
+
+	private static PhysicsManager manager() {
+		PhysicsManager m = new SimplePhysicsManager();
+		m.initialiseWorld(new Vector2(0, 0));
+		return m;
+	}
+
+	private static byte[] save(PhysicsManager m) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		m.saveSnapshot(Channels.newChannel(out));
+		return out.toByteArray();
+	}
+
+	private static void restore(PhysicsManager m, byte[] data) throws IOException {
+		m.restoreSnapshot(Channels.newChannel(new ByteArrayInputStream(data)));
+	}
+
+	private static void assertSameState(PhysicsManager expected, PhysicsManager actual) {
+		EntityStateBuffer a = new EntityStateBuffer();
+		EntityStateBuffer b = new EntityStateBuffer();
+		expected.exportState(a);
+		actual.exportState(b);
+		assertEquals(a.size(), b.size());
+		int n = a.size();
+		assertArrayEquals(Arrays.copyOf(a.getX(), n), Arrays.copyOf(b.getX(), n), 0);
+		assertArrayEquals(Arrays.copyOf(a.getY(), n), Arrays.copyOf(b.getY(), n), 0);
+		assertArrayEquals(Arrays.copyOf(a.getAngle(), n), Arrays.copyOf(b.getAngle(), n), 0);
+		assertArrayEquals(Arrays.copyOf(a.getVelocityX(), n), Arrays.copyOf(b.getVelocityX(), n), 0);
+		assertArrayEquals(Arrays.copyOf(a.getVelocityY(), n), Arrays.copyOf(b.getVelocityY(), n), 0);
+		assertArrayEquals(Arrays.copyOf(a.getAngularVelocity(), n), Arrays.copyOf(b.getAngularVelocity(), n), 0);
+		assertTrue(Arrays.equals(Arrays.copyOf(a.getAsleep(), n), Arrays.copyOf(b.getAsleep(), n)));
+	}
+
+	/**
+	 * Spawns a row of separated ships with individual velocities.
+	 */
+	private static void fleet(PhysicsManager m, int count) {
+		PhysicsEntityDefinition def = ship();
+		for (int i = 0; i < count; i++) {
+			PhysicsEntity e = m.createEntity(def.setPosition(new Vector2(i * 10, 0)).setOrientation(i * 0.1));
+			e.setLinearVelocity(new Vector2(1, i * 0.01));
+			e.setAngularVelocity(0.1 * i);
+			m.spawnEntity(e);
+		}
+	}
+
+	@Test
+	public void restoresExactState() throws IOException {
+		PhysicsManager m = manager();
+		fleet(m, 20);
+		m.getSpawnedEntities().get(3).applyForce(new Vector2(0, 1), new Vector2(1, 0), 1);
+		m.getSpawnedEntities().get(4).setThrust("main", 3);
+		for (int i = 0; i < 10; i++)
+			m.stepWorld(1 / 60.0);
+		PhysicsManager copy = manager();
+		restore(copy, save(m));
+		assertSameState(m, copy);
+		// separated entities without contacts continue identically
+		for (int i = 0; i < 30; i++) {
+			m.stepWorld(1 / 60.0);
+			copy.stepWorld(1 / 60.0);
+		}
+		assertSameState(m, copy);
+	}
+
+	@Test
+	public void restoresStructure() throws IOException {
+		PhysicsManager m = manager();
+		PhysicsEntity e = m.createEntity(ship());
+		e.removeFixture("nose");
+		e.removeThrustPoint("main");
+		int radar = e.getFixtureHandle("radar");
+		e.setThrust("side", 2);
+		m.spawnEntity(e);
+		PhysicsManager copy = manager();
+		restore(copy, save(m));
+		PhysicsEntity r = copy.getSpawnedEntities().get(0);
+		assertNotSame(e, r);
+		assertEquals(EntityType.DEFAULT, r.getEntityType());
+		assertEquals(2, r.getFixtureCount());
+		assertEquals(radar, r.getFixtureHandle("radar"));
+		assertEquals(e.getFixtureHandle("hull"), r.getFixtureHandle("hull"));
+		assertTrue(r.isSensor("radar"));
+		assertEquals(1, r.getThrustPointCount());
+		assertEquals(e.getThrustPointHandle("side"), r.getThrustPointHandle("side"));
+		assertEquals(e.getMass(), r.getMass(), 0);
+		assertEquals(e.getCenterOfMass(), r.getCenterOfMass());
+		assertArrayEquals(((Polygon) e.getShapes().get(0)).getVertices(),
+				((Polygon) r.getShapes().get(0)).getVertices());
+		// new fixtures do not reuse the handle of the removed fixture
+		int added = r.addFixture(new FixtureDefinition(new Circle(1)).setIdentifier("extra"));
+		assertEquals(e.addFixture(new FixtureDefinition(new Circle(1)).setIdentifier("extra")), added);
+	}
+
+	@Test
+	public void deduplicatesDefinitions() throws IOException {
+		PhysicsManager m = manager();
+		fleet(m, 100);
+		m.spawnEntity(m.createEntity(new PhysicsEntityDefinition(EntityType.STATIC)
+				.addFixture(new FixtureDefinition(new Circle(3)))));
+		ByteBuffer header = ByteBuffer.wrap(save(m)).order(ByteOrder.LITTLE_ENDIAN);
+		assertEquals(WorldSnapshot.MAGIC, header.getInt());
+		assertEquals(WorldSnapshot.VERSION, header.getInt());
+		assertEquals(2, header.getInt());
+		assertEquals(101, header.getInt());
+	}
+
+	@Test
+	public void restoresSleepState() throws IOException {
+		PhysicsManager m = manager();
+		fleet(m, 2);
+		PhysicsEntity e = m.getSpawnedEntities().get(1);
+		e.setLinearVelocity(new Vector2(0, 0));
+		e.setAngularVelocity(0);
+		for (int i = 0; i < 200 && !e.isAsleep(); i++)
+			m.stepWorld(1 / 60.0);
+		assertTrue(e.isAsleep());
+		PhysicsManager copy = manager();
+		restore(copy, save(m));
+		assertTrue(copy.getSpawnedEntities().get(1).isAsleep());
+		assertFalse(copy.getSpawnedEntities().get(0).isAsleep());
+	}
+
+	@Test
+	public void sleepDiscardsTimedTorques() throws IOException {
+		PhysicsManager m = manager();
+		fleet(m, 1);
+		SimpleEntity e = (SimpleEntity) m.getSpawnedEntities().get(0);
+		e.setLinearVelocity(new Vector2(0, 0));
+		e.setAngularVelocity(0);
+		// too weak to keep the body awake
+		e.applyForce(new Vector2(0, 1), new Vector2(1e-6, 0), 100);
+		for (int i = 0; i < 200 && !e.isAsleep(); i++)
+			m.stepWorld(1 / 60.0);
+		assertTrue(e.isAsleep());
+		e.getBody().setAsleep(false);
+		assertTrue(e.getTimedTorques().isEmpty());
+		PhysicsManager copy = manager();
+		restore(copy, save(m));
+		assertTrue(((SimpleEntity) copy.getSpawnedEntities().get(0)).getTimedTorques().isEmpty());
+		m.stepWorld(1 / 60.0);
+		copy.stepWorld(1 / 60.0);
+		assertEquals(0, e.getAngularVelocity(), 0);
+		assertSameState(m, copy);
+	}
+
+	@Test
+	public void restoreReplacesEntities() throws IOException {
+		PhysicsManager m = manager();
+		fleet(m, 3);
+		byte[] data = save(m);
+		PhysicsManager target = manager();
+		fleet(target, 5);
+		List<PhysicsEntity> queued = Arrays.asList(target.createEntity(ship()));
+		target.spawnEntities(queued);
+		restore(target, data);
+		assertEquals(3, target.getSpawnedEntities().size());
+		target.stepWorld(0.01);
+		assertEquals(3, target.getSpawnedEntities().size());
+		// the discarded entity may be queued again
+		target.spawnEntities(queued);
+	}
+
+	@Test
+	public void shardedRoundTrip() throws IOException {
+		PhysicsManager m = new ShardedPhysicsManager(12, 3);
+		m.initialiseWorld(new Vector2(0, 0));
+		fleet(m, 10);
+		m.stepWorld(0.01);
+		PhysicsManager copy = new ShardedPhysicsManager(12, 3);
+		copy.initialiseWorld(new Vector2(0, 0));
+		restore(copy, save(m));
+		assertSameState(m, copy);
+	}
+
+	@Test
+	public void invalidDataKeepsWorld() throws IOException {
+		PhysicsManager m = manager();
+		fleet(m, 2);
+		try {
+			restore(m, new byte[] { 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16 });
+			fail();
+		} catch (IOException e) {
+			assertEquals(2, m.getSpawnedEntities().size());
+		}
+	}
+
+	@Test
+	public void truncatedData() throws IOException {
+		PhysicsManager m = manager();
+		fleet(m, 2);
+		byte[] data = save(m);
+		thrown.expect(EOFException.class);
+		restore(manager(), Arrays.copyOf(data, data.length - 1));
+	}
+
+	private static byte[] forge(byte[] data, int offset, int value) {
+		byte[] forged = data.clone();
+		ByteBuffer.wrap(forged).order(ByteOrder.LITTLE_ENDIAN).putInt(offset, value);
+		return forged;
+	}
+
+	@Test
+	public void forgedCountsKeepWorld() throws IOException {
+		PhysicsManager m = manager();
+		m.spawnEntity(m.createEntity(new PhysicsEntityDefinition(EntityType.DEFAULT).addFixture(new FixtureDefinition(
+				new Polygon(new Vector2(0, 0), new Vector2(1, 0), new Vector2(1, 1), new Vector2(0, 1))))));
+		byte[] data = save(m);
+		// the single definition: type, 6 doubles, fixture count at 65, the
+		// fixture identifier length at 77 and the vertex count at 115
+		assertEquals(1, data[114]);
+		assertEquals(4, ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN).getInt(115));
+		int[][] forgeries = { { 8, Integer.MAX_VALUE }, { 12, Integer.MAX_VALUE }, { 65, Integer.MAX_VALUE },
+				{ 65, 1 << 27 }, { 77, Integer.MAX_VALUE }, { 115, Integer.MAX_VALUE }, { 115, 1 << 27 } };
+		for (int[] forgery : forgeries) {
+			try {
+				restore(m, forge(data, forgery[0], forgery[1]));
+				fail("offset " + forgery[0] + ": " + forgery[1]);
+			} catch (IOException e) {
+				// expected
+			}
+			assertEquals(1, m.getSpawnedEntities().size());
+		}
+	}
+
+	@Test
+	public void forgedCountExceedsFile() throws IOException {
+		PhysicsManager m = manager();
+		fleet(m, 2);
+		File file = folder.newFile();
+		Files.write(file.toPath(), forge(save(m), 12, 1000));
+		thrown.expect(IOException.class);
+		thrown.expectMessage("invalid snapshot header");
+		try (FileChannel channel = FileChannel.open(file.toPath())) {
+			manager().restoreSnapshot(channel);
+		}
+	}
+
+	@Test
+	public void truncatedFile() throws IOException {
+		PhysicsManager m = manager();
+		fleet(m, 2);
+		byte[] data = save(m);
+		File file = folder.newFile();
+		Files.write(file.toPath(), Arrays.copyOf(data, data.length - 1));
+		thrown.expect(EOFException.class);
+		try (FileChannel channel = FileChannel.open(file.toPath())) {
+			manager().restoreSnapshot(channel);
+		}
+	}
+
+	@Test
+	public void unsupportedShape() throws IOException {
+		PhysicsManager m = manager();
+		m.spawnEntity(m.createEntity(new PhysicsEntityDefinition(EntityType.DEFAULT)
+				.addFixture(new FixtureDefinition(new Capsule(2, 1)))));
+		thrown.expect(IllegalArgumentException.class);
+		save(m);
+	}
+
+	@Test
+	public void notInitialised() throws IOException {
+		thrown.expect(IllegalStateException.class);
+		new SimplePhysicsManager().saveSnapshot(Channels.newChannel(new ByteArrayOutputStream()));
+	}
+
+	@Test
+	public void nullChannel() throws IOException {
+		thrown.expect(NullPointerException.class);
+		manager().restoreSnapshot(null);
+	}
+
+}
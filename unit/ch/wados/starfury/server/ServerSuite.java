@@ -0,0 +1,13 @@
+package ch.wados.starfury.server;
+
+import org.junit.runner.RunWith;
+import org.junit.runners.Suite;
+import org.junit.runners.Suite.SuiteClasses;
+
+/**
+ * Suite combining all headless server tests
+ */
+@RunWith(Suite.class)
+@SuiteClasses({ TickStatsTest.class, TickLoopTest.class })
+public class ServerSuite {
+}
@@ -0,0 +1,173 @@
+package ch.wados.starfury.server;
+
+import static org.junit.Assert.*;
+
+import org.dyn4j.geometry.Vector2;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import ch.wados.starfury.model.NanoTimer;
+import ch.wados.starfury.model.Timer;
+import ch.wados.starfury.physics.simple.SimplePhysicsManager;
+
+public class TickLoopTest {
+
+	private static final double STEP = 0.25;
+
+	@Rule
+	public ExpectedException thrown = ExpectedException.none();
+
+	/**
+	 * Timer advanced manually by the test.
+	 */
+	private static final class ManualTimer extends Timer {
+		double time = 0;
+
+		@Override
+		public double getTime() {
+			return this.time;
+		}
+	}
+
+	private final ManualTimer timer = new ManualTimer();
+	private int steps = 0;
+	private int ticks = 0;
+
+	private TickLoop loop(double stepTime) {
+		SimplePhysicsManager m = new SimplePhysicsManager();
+		m.initialiseWorld(new Vector2(0, 0));
+		m.addUpdateListener(() -> this.steps++);
+		TickLoop loop = new TickLoop(m, this.timer, stepTime, 4);
+		loop.addTickListener(() -> this.ticks++);
+		return loop;
+	}
+
+	@Test
+	public void throttledTick() {
+		TickLoop loop = loop(STEP);
+		this.timer.time = 0.125;
+		assertEquals(0, loop.tick());
+		assertEquals(0, this.ticks);
+		this.timer.time = 0.625;
+		assertEquals(2, loop.tick());
+		assertEquals(2, this.steps);
+		assertEquals(1, this.ticks);
+		assertEquals(1, loop.getStats().getTickCount());
+		assertEquals(2, loop.getStats().getStepCount());
+	}
+
+	@Test
+	public void catchUpIsCapped() {
+		TickLoop loop = loop(STEP);
+		this.timer.time = 10;
+		assertEquals(4, loop.tick());
+		assertEquals(9, loop.getDroppedTime(), 1e-6);
+	}
+
+	@Test
+	public void unthrottledTick() {
+		TickLoop loop = loop(STEP);
+		loop.setThrottled(false);
+		assertEquals(1, loop.tick());
+		assertEquals(1, loop.tick());
+		assertEquals(2, this.steps);
+		assertEquals(2, this.ticks);
+	}
+
+	@Test
+	public void recordsTickTime() {
+		TickLoop loop = loop(STEP);
+		loop.setThrottled(false);
+		// the tick listener simulates work by advancing the time
+		loop.addTickListener(() -> this.timer.time += 0.5);
+		loop.tick();
+		assertEquals(0.5, loop.getStats().getLastTickTime(), 1e-9);
+		assertEquals(1, loop.getStats().getOverrunCount());
+		assertEquals(2, loop.getStats().getLoad(), 1e-9);
+	}
+
+	@Test
+	public void countsUpdatesPerSecond() {
+		TickLoop loop = loop(STEP);
+		loop.setThrottled(false);
+		for (int i = 0; i < 3; i++)
+			loop.tick();
+		assertEquals(3, loop.getTimer().getUPS());
+	}
+
+	@Test
+	public void runUntilStopped() throws InterruptedException {
+		SimplePhysicsManager m = new SimplePhysicsManager();
+		m.initialiseWorld(new Vector2(0, 0));
+		TickLoop loop = new TickLoop(m, 0.005, 4);
+		loop.addTickListener(() -> {
+			if (++this.ticks == 10)
+				loop.stop();
+		});
+		NanoTimer clock = new NanoTimer();
+		Thread thread = new Thread(loop);
+		thread.start();
+		thread.join(5000);
+		assertFalse(loop.isRunning());
+		assertEquals(10, this.ticks);
+		// 10 steps at 5ms take at least 45ms of real time
+		assertTrue(clock.getTime() >= 0.045);
+	}
+
+	@Test
+	public void stopBeforeRun() throws InterruptedException {
+		TickLoop loop = loop(STEP);
+		loop.setThrottled(false);
+		loop.stop();
+		Thread thread = new Thread(loop);
+		thread.setDaemon(true);
+		thread.start();
+		thread.join(5000);
+		assertFalse(thread.isAlive());
+		assertEquals(0, this.ticks);
+		// the stop only applied to that run
+		loop.addTickListener(() -> {
+			if (this.ticks == 3)
+				loop.stop();
+		});
+		loop.run();
+		assertEquals(3, this.ticks);
+	}
+
+	@Test
+	public void runUnthrottled() {
+		SimplePhysicsManager m = new SimplePhysicsManager();
+		m.initialiseWorld(new Vector2(0, 0));
+		TickLoop loop = new TickLoop(m, 1, 1);
+		loop.setThrottled(false);
+		loop.addTickListener(() -> {
+			if (++this.ticks == 1000)
+				loop.stop();
+		});
+		loop.run();
+		assertEquals(1000, loop.getStats().getStepCount());
+		assertFalse(loop.isRunning());
+	}
+
+	@Test
+	public void nullTimer() {
+		thrown.expect(NullPointerException.class);
+		new TickLoop(new SimplePhysicsManager(), null, STEP, 1);
+	}
+
+	@Test
+	public void invalidStepTime() {
+		thrown.expect(IllegalArgumentException.class);
+		new TickLoop(new SimplePhysicsManager(), 0, 1);
+	}
+
+	@Test
+	public void uninitialisedManager() {
+		TickLoop loop = new TickLoop(new SimplePhysicsManager(), this.timer, STEP, 1);
+		loop.setThrottled(false);
+		thrown.expect(IllegalStateException.class);
+		loop.tick();
+	}
+
+}
@@ -0,0 +1,79 @@
+package ch.wados.starfury.server;
+
+import static org.junit.Assert.*;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+public class TickStatsTest {
+
+	@Rule
+	public ExpectedException thrown = ExpectedException.none();
+
+	@Test
+	public void empty() {
+		TickStats stats = new TickStats(0.1, 4);
+		assertEquals(0, stats.getTickCount());
+		assertEquals(0, stats.getAverageTickTime(), 0);
+		assertEquals(0, stats.getPercentileTickTime(50), 0);
+		assertEquals(0, stats.getLoad(), 0);
+	}
+
+	@Test
+	public void window() {
+		TickStats stats = new TickStats(0.1, 4);
+		stats.record(0.5, 1);
+		for (int i = 1; i <= 4; i++)
+			stats.record(0.01 * i, 1);
+		assertEquals(5, stats.getTickCount());
+		assertEquals(5, stats.getStepCount());
+		assertEquals(1, stats.getOverrunCount());
+		// the first tick has left the window
+		assertEquals(0.04, stats.getMaxTickTime(), 1e-12);
+		assertEquals(0.025, stats.getAverageTickTime(), 1e-12);
+		assertEquals(0.25, stats.getLoad(), 1e-12);
+		assertEquals(0.04, stats.getLastTickTime(), 0);
+	}
+
+	@Test
+	public void percentile() {
+		TickStats stats = new TickStats(0.1, 100);
+		for (int i = 100; i > 0; i--)
+			stats.record(i, 1);
+		assertEquals(1, stats.getPercentileTickTime(0), 0);
+		assertEquals(50, stats.getPercentileTickTime(50), 0);
+		assertEquals(99, stats.getPercentileTickTime(99), 0);
+		assertEquals(100, stats.getPercentileTickTime(100), 0);
+	}
+
+	@Test
+	public void multipleStepsPerTick() {
+		TickStats stats = new TickStats(0.1, 4);
+		stats.record(0.15, 2);
+		assertEquals(0, stats.getOverrunCount());
+		assertEquals(0.75, stats.getLoad(), 1e-12);
+	}
+
+	@Test
+	public void reset() {
+		TickStats stats = new TickStats(0.1, 4);
+		stats.record(0.5, 1);
+		stats.reset();
+		assertEquals(0, stats.getTickCount());
+		assertEquals(0, stats.getMaxTickTime(), 0);
+	}
+
+	@Test
+	public void invalidPercentile() {
+		thrown.expect(IllegalArgumentException.class);
+		new TickStats(0.1, 4).getPercentileTickTime(101);
+	}
+
+	@Test
+	public void invalidWindow() {
+		thrown.expect(IllegalArgumentException.class);
+		new TickStats(0.1, 0);
+	}
+
+}